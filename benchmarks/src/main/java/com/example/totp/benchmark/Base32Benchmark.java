@@ -0,0 +1,85 @@
+package com.example.totp.benchmark;
+
+import com.example.totp.util.Base32;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base32编解码基准测试
+ * 分别测量返回新对象的便捷接口和写入调用方缓冲区的接口
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Base32Benchmark {
+    
+    // 密钥长度（字节）：SHA1推荐20，SHA256推荐32，SHA512推荐64
+    @Param({"20", "32", "64"})
+    public int keyLength;
+    
+    private byte[] key;
+    private String encoded;
+    private char[] charBuffer;
+    private byte[] byteBuffer;
+    private ByteBuffer keyBuffer;
+    private ByteBuffer asciiBuffer;
+    private ByteBuffer decodeBuffer;
+    
+    @Setup
+    public void setUp() {
+        key = new byte[keyLength];
+        new SecureRandom().nextBytes(key);
+        encoded = Base32.encode(key);
+        charBuffer = new char[Base32.encodedLength(keyLength)];
+        byteBuffer = new byte[keyLength];
+        keyBuffer = ByteBuffer.wrap(key);
+        asciiBuffer = ByteBuffer.allocateDirect(charBuffer.length);
+        decodeBuffer = ByteBuffer.allocateDirect(keyLength);
+    }
+    
+    @Benchmark
+    public String encode() {
+        return Base32.encode(key);
+    }
+    
+    @Benchmark
+    public byte[] decode() {
+        return Base32.decode(encoded);
+    }
+    
+    @Benchmark
+    public int encodeIntoArray() {
+        return Base32.encode(key, 0, keyLength, charBuffer, 0);
+    }
+    
+    @Benchmark
+    public int decodeIntoArray() {
+        return Base32.decode(encoded, byteBuffer, 0);
+    }
+    
+    @Benchmark
+    public int encodeDecodeByteBuffer() {
+        keyBuffer.clear();
+        asciiBuffer.clear();
+        Base32.encode(keyBuffer, asciiBuffer);
+        asciiBuffer.flip();
+        decodeBuffer.clear();
+        return Base32.decode(asciiBuffer, decodeBuffer);
+    }
+}
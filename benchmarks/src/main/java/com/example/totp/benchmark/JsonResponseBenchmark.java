@@ -0,0 +1,54 @@
+package com.example.totp.benchmark;
+
+import com.example.totp.model.ApiResponse;
+import com.example.totp.model.CurrentCodeResponse;
+import com.example.totp.model.VerifyResponse;
+import com.example.totp.util.JsonUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 接口响应序列化基准测试
+ * 按TOTPServer处理器的做法构造类型化的响应数据，经{@link JsonUtil#toJsonBuffer}直接序列化为
+ * 线程复用缓冲区中的UTF-8字节（不含网络IO）
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonResponseBenchmark {
+    
+    @Benchmark
+    public JsonUtil.ResponseBuffer verifyResponse() {
+        VerifyResponse responseData = new VerifyResponse();
+        responseData.setValid(true);
+        responseData.setAlreadyUsed(false);
+        responseData.setUserCode("123456");
+        responseData.setDriftSteps(0);
+        responseData.setExpectedCode("123456");
+        return JsonUtil.toJsonBuffer(ApiResponse.success("验证码正确", responseData));
+    }
+    
+    @Benchmark
+    public JsonUtil.ResponseBuffer currentCodeResponse() {
+        CurrentCodeResponse responseData = new CurrentCodeResponse("123456",
+                "账户: benchmark@example.com, 发行者: TOTP Demo App, 密钥: ****, 算法: HmacSHA1, 位数: 6, 时间窗口: 30秒");
+        return JsonUtil.toJsonBuffer(ApiResponse.success("获取当前验证码成功", responseData));
+    }
+    
+    @Benchmark
+    public JsonUtil.ResponseBuffer errorResponse() {
+        return JsonUtil.toJsonBuffer(ApiResponse.error("账户未注册，请先生成TOTP配置"));
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.totp.benchmark;
+
+import com.example.totp.service.TOTPService;
+import com.example.totp.util.QRCodeGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 二维码PNG渲染基准测试
+ * renderUncached每次使用不同的账户名称，测量缓存未命中时的完整渲染；
+ * 其余基准测试重复渲染同一配置，测量缓存命中路径
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QRCodeBenchmark {
+    
+    private String secretKey;
+    private long sequence;
+    
+    @Setup
+    public void setUp() {
+        secretKey = new TOTPService().generateSecretKey();
+    }
+    
+    @Benchmark
+    public String generateTOTPQRCode() {
+        return QRCodeGenerator.generateTOTPQRCode(secretKey, "benchmark@example.com", "TOTP Demo App");
+    }
+    
+    @Benchmark
+    public byte[] generateTOTPQRCodePng() {
+        return QRCodeGenerator.generateTOTPQRCodePng(secretKey, "benchmark@example.com", "TOTP Demo App");
+    }
+    
+    @Benchmark
+    public byte[] renderUncached() {
+        return QRCodeGenerator.generateTOTPQRCodePng(secretKey, "user" + (sequence++) + "@example.com", "TOTP Demo App");
+    }
+}
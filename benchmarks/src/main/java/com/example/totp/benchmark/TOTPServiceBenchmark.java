@@ -0,0 +1,101 @@
+package com.example.totp.benchmark;
+
+import com.example.totp.service.TOTPEngine;
+import com.example.totp.service.TOTPService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TOTP生成与验证基准测试
+ * 覆盖SHA1/256/512三种算法、两种HMAC实现和不同的时间窗口偏移量；
+ * verifyMiss使用一个不可能命中的验证码，测量遍历整个窗口的最坏情况。
+ * 验证码随时间步变化，每轮迭代前按当前时间重新生成，避免一次试验跨过时间步边界后verifyHit变成未命中
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TOTPServiceBenchmark {
+    
+    @Param({"HmacSHA1", "HmacSHA256", "HmacSHA512"})
+    public String algorithm;
+    
+    @Param({"0", "1", "3"})
+    public int window;
+    
+    @Param({"DIGEST", "MAC"})
+    public TOTPEngine.Implementation implementation;
+    
+    private TOTPService service;
+    private TOTPEngine engine;
+    private String base32Key;
+    private byte[] key;
+    private String validCode;
+    private String invalidCode;
+    private long epochSeconds;
+    
+    @Setup
+    public void setUp() {
+        engine = new TOTPEngine(algorithm, TOTPEngine.DEFAULT_DIGITS, TOTPEngine.DEFAULT_PERIOD, implementation);
+        service = new TOTPService(engine, window, window);
+        base32Key = service.generateSecretKey();
+        key = service.decodeSecretKey(base32Key);
+    }
+    
+    @Setup(Level.Iteration)
+    public void refreshCodes() {
+        validCode = service.generateTOTP(key);
+        epochSeconds = System.currentTimeMillis() / 1000L;
+        // 找一个窗口内所有时间步都不会产生的验证码
+        for (int candidate = 0; ; candidate++) {
+            if (engine.verifyWindow(key, epochSeconds, candidate, window, window) == TOTPEngine.NO_MATCH) {
+                invalidCode = engine.format(candidate);
+                break;
+            }
+        }
+    }
+    
+    @Benchmark
+    public int engineGenerate() {
+        return engine.generate(key, epochSeconds);
+    }
+    
+    @Benchmark
+    public String generateTOTPFromBytes() {
+        return service.generateTOTP(key);
+    }
+    
+    @Benchmark
+    public String generateTOTPFromBase32() {
+        return service.generateTOTP(base32Key);
+    }
+    
+    @Benchmark
+    public int verifyHit() {
+        return service.verifyTOTPWithOffset(key, validCode);
+    }
+    
+    @Benchmark
+    public int verifyMiss() {
+        return service.verifyTOTPWithOffset(key, invalidCode);
+    }
+    
+    @Benchmark
+    public boolean verifyWithWindowFromBase32() {
+        return service.verifyTOTPWithWindow(base32Key, validCode);
+    }
+}
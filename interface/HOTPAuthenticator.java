@@ -0,0 +1,170 @@
+package com.example.totp.interface;
+
+import com.example.totp.service.HOTPService;
+import com.example.totp.util.Base32;
+
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * HOTP验证器（计数器型一次性密码，RFC 4226）
+ * 面向硬件令牌：每个用户的算法、位数和计数器独立保存在{@link HOTPService}中，
+ * 不依赖TOTPService的全局配置。
+ *
+ * generateConfig支持的参数：
+ *   secretKey - Base32编码的密钥（硬件令牌出厂密钥），不提供时随机生成
+ *   algorithm - HMAC算法，默认HmacSHA1
+ *   digits    - 验证码位数，默认6
+ *   counter   - 初始计数器，默认0
+ * verify支持的参数：
+ *   nextCode  - 紧随其后的第二个验证码，提供时按重新同步处理
+ */
+public class HOTPAuthenticator implements OTPAuthenticator {
+
+    // 随机生成的密钥长度（字节）
+    private static final int SECRET_KEY_BYTES = 20;
+
+    private final HOTPService hotpService;
+
+    private final SecureRandom random = new SecureRandom();
+
+    public HOTPAuthenticator(HOTPService hotpService) {
+        this.hotpService = hotpService;
+    }
+
+    @Override
+    public OTPConfig generateConfig(String userId, Map<String, Object> params) {
+        Map<String, Object> options = params == null ? Collections.<String, Object>emptyMap() : params;
+        String algorithm = String.valueOf(options.getOrDefault("algorithm", "HmacSHA1"));
+        int digits;
+        long counter;
+        try {
+            digits = Integer.parseInt(String.valueOf(options.getOrDefault("digits", 6)));
+            counter = Long.parseLong(String.valueOf(options.getOrDefault("counter", 0)));
+        } catch (NumberFormatException e) {
+            throw new OTPConfigException("HOTP参数无效: " + e.getMessage(), e);
+        }
+
+        byte[] key;
+        Object secretKey = options.get("secretKey");
+        if (secretKey != null) {
+            if (!Base32.isValid(secretKey.toString())) {
+                throw new OTPConfigException("HOTP密钥不是有效的Base32编码");
+            }
+            key = Base32.decode(secretKey.toString());
+        } else {
+            key = new byte[SECRET_KEY_BYTES];
+            random.nextBytes(key);
+        }
+
+        try {
+            hotpService.register(userId, key, algorithm, digits, counter);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            throw new OTPConfigException("注册HOTP令牌失败: " + e.getMessage(), e);
+        }
+
+        Map<String, Object> configData = new HashMap<>();
+        configData.put("secretKey", Base32.encode(key));
+        configData.put("algorithm", algorithm);
+        configData.put("digits", digits);
+        configData.put("counter", counter);
+        return new HOTPConfig(userId, configData);
+    }
+
+    @Override
+    public boolean verify(String userId, String code, Map<String, Object> params) {
+        Object nextCode = params == null ? null : params.get("nextCode");
+        if (nextCode != null) {
+            return hotpService.resync(userId, code, nextCode.toString());
+        }
+        return hotpService.verify(userId, code) != HOTPService.NO_MATCH;
+    }
+
+    @Override
+    public OTPType getType() {
+        return OTPType.HOTP;
+    }
+
+    @Override
+    public boolean supports(String userId) {
+        return userId != null && !userId.isEmpty();
+    }
+
+    @Override
+    public String getConfigInfo(String userId) {
+        if (!hotpService.isRegistered(userId)) {
+            return "用户 " + userId + " 尚未注册HOTP令牌";
+        }
+        return String.format("用户: %s, 算法: %s, 位数: %d, 下一个计数器: %d",
+                userId, hotpService.getAlgorithm(userId), hotpService.getDigits(userId),
+                hotpService.getCounter(userId));
+    }
+
+    /**
+     * HOTP配置
+     */
+    private static final class HOTPConfig implements OTPConfig {
+
+        private final String userId;
+        private final Map<String, Object> configData;
+        private final Date createdAt = new Date();
+        private Date updatedAt = createdAt;
+        private boolean active = true;
+
+        HOTPConfig(String userId, Map<String, Object> configData) {
+            this.userId = userId;
+            this.configData = configData;
+        }
+
+        @Override
+        public String getUserId() {
+            return userId;
+        }
+
+        @Override
+        public OTPType getType() {
+            return OTPType.HOTP;
+        }
+
+        @Override
+        public Map<String, Object> getConfigData() {
+            return Collections.unmodifiableMap(configData);
+        }
+
+        @Override
+        public boolean isActive() {
+            return active;
+        }
+
+        @Override
+        public void setActive(boolean active) {
+            this.active = active;
+            this.updatedAt = new Date();
+        }
+
+        @Override
+        public Date getCreatedAt() {
+            return createdAt;
+        }
+
+        @Override
+        public Date getUpdatedAt() {
+            return updatedAt;
+        }
+
+        @Override
+        public String getConfigInfo() {
+            return String.format("用户: %s, 类型: %s, 算法: %s, 位数: %s, 初始计数器: %s",
+                    userId, OTPType.HOTP.getDisplayName(), configData.get("algorithm"),
+                    configData.get("digits"), configData.get("counter"));
+        }
+
+        @Override
+        public boolean isValid() {
+            return userId != null && configData.get("secretKey") != null;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.totp.interface;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多种OTP方式批量验证的结果
+ * 记录命中的OTP类型、每种类型的验证结果和耗时，以及整体耗时
+ */
+public class OTPBatchVerifyResult {
+
+    /**
+     * 单个OTP类型的验证结果
+     */
+    public enum Outcome {
+        // 验证成功
+        MATCHED,
+        // 验证失败
+        REJECTED,
+        // 验证器抛出异常
+        FAILED,
+        // 其他类型已验证成功，本类型的验证被取消或未执行
+        CANCELLED,
+        // 超时未返回
+        TIMEOUT,
+        // 调用方线程被中断，本类型的验证被取消（不是验证器的问题）
+        INTERRUPTED,
+        // 未注册验证器或用户不支持，未执行
+        SKIPPED
+    }
+
+    private final Map<OTPType, Outcome> outcomes = new EnumMap<>(OTPType.class);
+
+    private final Map<OTPType, Long> timings = new EnumMap<>(OTPType.class);
+
+    private OTPType matchedType;
+
+    private long totalNanos;
+
+    /**
+     * 记录单个类型的验证结果
+     * @param type OTP类型
+     * @param outcome 验证结果
+     * @param nanos 耗时（纳秒）
+     */
+    void record(OTPType type, Outcome outcome, long nanos) {
+        outcomes.put(type, outcome);
+        timings.put(type, nanos);
+    }
+
+    /**
+     * 完成批量验证
+     * @param matchedType 命中的类型，都未命中时为null
+     * @param totalNanos 整体耗时（纳秒）
+     * @return 当前结果
+     */
+    OTPBatchVerifyResult complete(OTPType matchedType, long totalNanos) {
+        this.matchedType = matchedType;
+        this.totalNanos = totalNanos;
+        return this;
+    }
+
+    /**
+     * 是否有任意一种方式验证成功
+     */
+    public boolean isSuccess() {
+        return matchedType != null;
+    }
+
+    /**
+     * 获取验证成功的OTP类型
+     * @return OTP类型，都失败时返回null
+     */
+    public OTPType getMatchedType() {
+        return matchedType;
+    }
+
+    /**
+     * 获取指定类型的验证结果
+     * @param type OTP类型
+     * @return 验证结果，未参与本次验证时返回null
+     */
+    public Outcome getOutcome(OTPType type) {
+        return outcomes.get(type);
+    }
+
+    /**
+     * 获取所有参与验证的类型的结果
+     */
+    public Map<OTPType, Outcome> getOutcomes() {
+        return Collections.unmodifiableMap(outcomes);
+    }
+
+    /**
+     * 获取指定类型的验证耗时
+     * @param type OTP类型
+     * @param unit 时间单位
+     * @return 耗时，未参与本次验证时返回-1
+     */
+    public long getTiming(OTPType type, TimeUnit unit) {
+        Long nanos = timings.get(type);
+        return nanos == null ? -1 : unit.convert(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 获取所有参与验证的类型的耗时（纳秒）
+     */
+    public Map<OTPType, Long> getTimings() {
+        return Collections.unmodifiableMap(timings);
+    }
+
+    /**
+     * 获取整体耗时
+     * @param unit 时间单位
+     */
+    public long getTotalTime(TimeUnit unit) {
+        return unit.convert(totalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("批量验证结果: ").append(isSuccess() ? "成功(" + matchedType.getDisplayName() + ")" : "失败")
+          .append(", 总耗时: ").append(TimeUnit.NANOSECONDS.toMicros(totalNanos)).append("us");
+        for (Map.Entry<OTPType, Outcome> entry : outcomes.entrySet()) {
+            sb.append("\n- ").append(entry.getKey().getDisplayName())
+              .append(": ").append(entry.getValue())
+              .append(", ").append(TimeUnit.NANOSECONDS.toMicros(timings.get(entry.getKey()))).append("us");
+        }
+        return sb.toString();
+    }
+}
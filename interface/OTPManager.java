@@ -1,24 +1,76 @@
 package com.example.totp.interface;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * OTP管理器
  * 统一管理所有OTP验证器，提供统一的API接口
+ * 验证器注册表采用写时复制：注册/注销时构建新的不可变快照并整体替换，
+ * 请求线程读取时不加锁。每个用户支持的OTP类型按OTPType序号预先计算为位掩码并缓存在快照中，
+ * 路由一次验证只需要几次数组读取。
+ * 多种方式批量验证时，本地计算的软件令牌（TOTP/HOTP）先在调用线程上依次验证，
+ * 都未命中时再把外部服务类验证并发提交到线程池，任意一个成功即取消其余验证。
  */
 public class OTPManager {
     
-    private final Map<OTPType, OTPAuthenticator> authenticators = new HashMap<>();
+    // 用户位掩码缓存的最大条目数，超过后清空重建
+    private static final int MAX_CACHED_USERS = 100000;
+    
+    // OTP类型总数
+    private static final OTPType[] TYPES = OTPType.values();
+    
+    // 并发批量验证的默认超时时间（毫秒）
+    private static final long DEFAULT_BATCH_TIMEOUT_MILLIS = 5000;
+    
+    // 当前注册表快照
+    private volatile Registry registry = new Registry(new EnumMap<>(OTPType.class));
+    
+    // 执行外部验证的线程池
+    private final ExecutorService executor;
+    
+    /**
+     * 使用内部的缓存线程池执行外部验证
+     */
+    public OTPManager() {
+        this(newDefaultExecutor());
+    }
+    
+    /**
+     * 构造函数
+     * @param executor 执行外部验证的线程池
+     */
+    public OTPManager(ExecutorService executor) {
+        this.executor = executor;
+    }
+    
+    private static ExecutorService newDefaultExecutor() {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "otp-verify-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
     
     /**
      * 注册OTP验证器
      * @param authenticator OTP验证器实例
      */
-    public void registerAuthenticator(OTPAuthenticator authenticator) {
+    public synchronized void registerAuthenticator(OTPAuthenticator authenticator) {
         if (authenticator != null) {
-            authenticators.put(authenticator.getType(), authenticator);
-            System.out.println("注册OTP验证器: " + authenticator.getType().getDisplayName());
+            EnumMap<OTPType, OTPAuthenticator> copy = new EnumMap<>(registry.authenticators);
+            copy.put(authenticator.getType(), authenticator);
+            registry = new Registry(copy);
         }
     }
     
@@ -26,10 +78,24 @@ public class OTPManager {
      * 注销OTP验证器
      * @param type OTP类型
      */
-    public void unregisterAuthenticator(OTPType type) {
-        OTPAuthenticator removed = authenticators.remove(type);
-        if (removed != null) {
-            System.out.println("注销OTP验证器: " + type.getDisplayName());
+    public synchronized void unregisterAuthenticator(OTPType type) {
+        if (registry.authenticators.containsKey(type)) {
+            EnumMap<OTPType, OTPAuthenticator> copy = new EnumMap<>(registry.authenticators);
+            copy.remove(type);
+            registry = new Registry(copy);
+        }
+    }
+    
+    /**
+     * 清除用户的位掩码缓存（用户绑定或解绑某种OTP方式后调用）
+     * @param userId 用户ID
+     */
+    public void invalidateUser(String userId) {
+        if (userId != null) {
+            Registry current = registry;
+            // 先递增失效次数再删除，正在计算的旧掩码写入后会被userMask发现并撤销
+            current.invalidations.incrementAndGet();
+            current.userMasks.remove(userId);
         }
     }
     
@@ -42,7 +108,8 @@ public class OTPManager {
      * @throws UnsupportedOTPTypeException 不支持的OTP类型
      */
     public OTPConfig generateConfig(String userId, OTPType type, Map<String, Object> params) {
-        OTPAuthenticator authenticator = authenticators.get(type);
+        Registry current = registry;
+        OTPAuthenticator authenticator = current.byOrdinal[type.ordinal()];
         if (authenticator == null) {
             throw new UnsupportedOTPTypeException("不支持的OTP类型: " + type.getDisplayName());
         }
@@ -51,7 +118,10 @@ public class OTPManager {
             throw new UnsupportedUserException("用户 " + userId + " 不支持使用 " + type.getDisplayName());
         }
         
-        return authenticator.generateConfig(userId, params);
+        OTPConfig config = authenticator.generateConfig(userId, params);
+        // 绑定新的OTP方式后用户支持的类型可能变化
+        invalidateUser(userId);
+        return config;
     }
     
     /**
@@ -63,14 +133,10 @@ public class OTPManager {
      * @return 验证结果
      */
     public boolean verify(String userId, String code, OTPType type, Map<String, Object> params) {
-        OTPAuthenticator authenticator = authenticators.get(type);
-        if (authenticator == null) {
-            System.err.println("不支持的OTP类型: " + type.getDisplayName());
-            return false;
-        }
-        
-        if (!authenticator.supports(userId)) {
-            System.err.println("用户 " + userId + " 不支持使用 " + type.getDisplayName());
+        Registry current = registry;
+        OTPAuthenticator authenticator = current.byOrdinal[type.ordinal()];
+        if (authenticator == null || (current.userMask(userId) & (1 << type.ordinal())) == 0) {
+            // 不支持的类型或用户，调用方可通过supportsType/getSupportedTypes区分
             return false;
         }
         
@@ -83,10 +149,8 @@ public class OTPManager {
      * @return 支持的OTP类型列表
      */
     public List<OTPType> getSupportedTypes(String userId) {
-        return authenticators.values().stream()
-            .filter(auth -> auth.supports(userId))
-            .map(OTPAuthenticator::getType)
-            .collect(Collectors.toList());
+        Registry current = registry;
+        return current.typesByMask.get(current.userMask(userId));
     }
     
     /**
@@ -94,7 +158,7 @@ public class OTPManager {
      * @return 已注册的OTP类型列表
      */
     public List<OTPType> getRegisteredTypes() {
-        return new ArrayList<>(authenticators.keySet());
+        return new ArrayList<>(registry.authenticators.keySet());
     }
     
     /**
@@ -103,7 +167,7 @@ public class OTPManager {
      * @return true-支持，false-不支持
      */
     public boolean supportsType(OTPType type) {
-        return authenticators.containsKey(type);
+        return registry.byOrdinal[type.ordinal()] != null;
     }
     
     /**
@@ -112,7 +176,7 @@ public class OTPManager {
      * @return OTP验证器实例，如果不存在返回null
      */
     public OTPAuthenticator getAuthenticator(OTPType type) {
-        return authenticators.get(type);
+        return registry.byOrdinal[type.ordinal()];
     }
     
     /**
@@ -121,9 +185,8 @@ public class OTPManager {
      * @return 可用的OTP验证器列表
      */
     public List<OTPAuthenticator> getAvailableAuthenticators(String userId) {
-        return authenticators.values().stream()
-            .filter(auth -> auth.supports(userId))
-            .collect(Collectors.toList());
+        Registry current = registry;
+        return current.authenticatorsByMask.get(current.userMask(userId));
     }
     
     /**
@@ -133,8 +196,9 @@ public class OTPManager {
      * @return 配置信息字符串
      */
     public String getConfigInfo(String userId, OTPType type) {
-        OTPAuthenticator authenticator = authenticators.get(type);
-        if (authenticator != null && authenticator.supports(userId)) {
+        Registry current = registry;
+        OTPAuthenticator authenticator = current.byOrdinal[type.ordinal()];
+        if (authenticator != null && (current.userMask(userId) & (1 << type.ordinal())) != 0) {
             return authenticator.getConfigInfo(userId);
         }
         return "配置信息不可用";
@@ -157,20 +221,246 @@ public class OTPManager {
         return null;
     }
     
+    /**
+     * 并发批量验证（支持多种OTP方式），使用默认超时时间
+     * @see #batchVerifyParallel(String, String, List, Map, long)
+     */
+    public OTPBatchVerifyResult batchVerifyParallel(String userId, String code, List<OTPType> types, Map<String, Object> params) {
+        return batchVerifyParallel(userId, code, types, params, DEFAULT_BATCH_TIMEOUT_MILLIS);
+    }
+    
+    /**
+     * 并发批量验证（支持多种OTP方式）
+     * 本地计算的软件令牌先在调用线程上按列表顺序验证，命中即返回，不再发起外部验证；
+     * 其余类型并发验证，第一个成功的结果返回后取消仍在进行的验证
+     * @param userId 用户ID
+     * @param code 验证码
+     * @param types OTP类型列表
+     * @param params 验证参数
+     * @param timeoutMillis 并发验证的超时时间（毫秒）
+     * @return 批量验证结果，包含命中的类型和每种类型的耗时
+     */
+    public OTPBatchVerifyResult batchVerifyParallel(String userId, String code, List<OTPType> types,
+                                                    Map<String, Object> params, long timeoutMillis) {
+        long start = System.nanoTime();
+        Registry current = registry;
+        int mask = current.userMask(userId);
+        OTPBatchVerifyResult result = new OTPBatchVerifyResult();
+        
+        // 1. 本地验证：不涉及网络调用，耗时很短，依次执行
+        List<OTPAuthenticator> external = new ArrayList<>();
+        for (OTPType type : types) {
+            OTPAuthenticator authenticator = current.byOrdinal[type.ordinal()];
+            if (authenticator == null || (mask & (1 << type.ordinal())) == 0) {
+                result.record(type, OTPBatchVerifyResult.Outcome.SKIPPED, 0);
+                continue;
+            }
+            if (!type.isSoftwareToken()) {
+                external.add(authenticator);
+                continue;
+            }
+            long begin = System.nanoTime();
+            try {
+                boolean matched = authenticator.verify(userId, code, params);
+                result.record(type, matched ? OTPBatchVerifyResult.Outcome.MATCHED : OTPBatchVerifyResult.Outcome.REJECTED,
+                        System.nanoTime() - begin);
+                if (matched) {
+                    markRemaining(result, types, current, mask);
+                    return result.complete(type, System.nanoTime() - start);
+                }
+            } catch (RuntimeException e) {
+                result.record(type, OTPBatchVerifyResult.Outcome.FAILED, System.nanoTime() - begin);
+            }
+        }
+        if (external.isEmpty()) {
+            return result.complete(null, System.nanoTime() - start);
+        }
+        
+        // 2. 外部验证：并发执行，第一个成功的结果返回后取消其余验证
+        ExecutorCompletionService<Attempt> completion = new ExecutorCompletionService<>(executor);
+        Map<Future<Attempt>, OTPType> pending = new IdentityHashMap<>();
+        long externalStart = System.nanoTime();
+        for (OTPAuthenticator authenticator : external) {
+            pending.put(completion.submit(() -> {
+                long begin = System.nanoTime();
+                boolean matched = authenticator.verify(userId, code, params);
+                return new Attempt(authenticator.getType(), matched, System.nanoTime() - begin);
+            }), authenticator.getType());
+        }
+        
+        OTPType matchedType = null;
+        boolean interrupted = false;
+        long deadline = externalStart + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try {
+            while (!pending.isEmpty() && matchedType == null) {
+                long remaining = deadline - System.nanoTime();
+                Future<Attempt> future = remaining > 0 ? completion.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                if (future == null) {
+                    break;
+                }
+                OTPType type = pending.remove(future);
+                try {
+                    Attempt attempt = future.get();
+                    result.record(type, attempt.matched ? OTPBatchVerifyResult.Outcome.MATCHED
+                            : OTPBatchVerifyResult.Outcome.REJECTED, attempt.nanos);
+                    if (attempt.matched) {
+                        matchedType = type;
+                    }
+                } catch (ExecutionException | CancellationException e) {
+                    result.record(type, OTPBatchVerifyResult.Outcome.FAILED, System.nanoTime() - externalStart);
+                }
+            }
+        } catch (InterruptedException e) {
+            interrupted = true;
+            Thread.currentThread().interrupt();
+        } finally {
+            // 取消仍在进行的验证：调用方被中断时不能记为验证器超时
+            OTPBatchVerifyResult.Outcome outcome = matchedType != null ? OTPBatchVerifyResult.Outcome.CANCELLED
+                    : interrupted ? OTPBatchVerifyResult.Outcome.INTERRUPTED : OTPBatchVerifyResult.Outcome.TIMEOUT;
+            for (Map.Entry<Future<Attempt>, OTPType> entry : pending.entrySet()) {
+                entry.getKey().cancel(true);
+                result.record(entry.getValue(), outcome, System.nanoTime() - externalStart);
+            }
+        }
+        return result.complete(matchedType, System.nanoTime() - start);
+    }
+    
+    /**
+     * 本地验证命中后，把尚未执行的类型记为已取消（用户不支持的记为跳过）
+     */
+    private static void markRemaining(OTPBatchVerifyResult result, List<OTPType> types, Registry current, int mask) {
+        for (OTPType type : types) {
+            if (result.getOutcome(type) == null) {
+                boolean eligible = current.byOrdinal[type.ordinal()] != null && (mask & (1 << type.ordinal())) != 0;
+                result.record(type, eligible ? OTPBatchVerifyResult.Outcome.CANCELLED
+                        : OTPBatchVerifyResult.Outcome.SKIPPED, 0);
+            }
+        }
+    }
+    
+    /**
+     * 关闭执行外部验证的线程池
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+    
     /**
      * 获取管理器状态信息
      * @return 状态信息字符串
      */
     public String getStatusInfo() {
+        Registry current = registry;
         StringBuilder sb = new StringBuilder();
         sb.append("OTP管理器状态:\n");
-        sb.append("已注册验证器数量: ").append(authenticators.size()).append("\n");
+        sb.append("已注册验证器数量: ").append(current.authenticators.size()).append("\n");
         
-        for (OTPType type : authenticators.keySet()) {
+        for (OTPType type : current.authenticators.keySet()) {
             sb.append("- ").append(type.getDisplayName())
               .append(" (").append(type.name()).append(")\n");
         }
         
         return sb.toString();
     }
-}
\ No newline at end of file
+    
+    /**
+     * 单次外部验证的结果
+     */
+    private static final class Attempt {
+        final OTPType type;
+        final boolean matched;
+        final long nanos;
+        
+        Attempt(OTPType type, boolean matched, long nanos) {
+            this.type = type;
+            this.matched = matched;
+            this.nanos = nanos;
+        }
+    }
+    
+    /**
+     * 注册表快照（不可变）
+     * 除验证器映射外，预先计算每种位掩码对应的类型列表和验证器列表，并缓存每个用户的位掩码
+     */
+    private static final class Registry {
+        
+        // 已注册的验证器
+        final EnumMap<OTPType, OTPAuthenticator> authenticators;
+        
+        // 按OTPType序号索引的验证器，未注册的类型为null
+        final OTPAuthenticator[] byOrdinal;
+        
+        // 位掩码 -> 支持的类型列表 / 可用的验证器列表（不可修改）
+        final List<List<OTPType>> typesByMask;
+        final List<List<OTPAuthenticator>> authenticatorsByMask;
+        
+        // 用户ID -> 支持的类型位掩码
+        final ConcurrentHashMap<String, Integer> userMasks = new ConcurrentHashMap<>();
+        
+        // invalidateUser的调用次数，用于发现计算期间发生的失效
+        final AtomicLong invalidations = new AtomicLong();
+        
+        Registry(EnumMap<OTPType, OTPAuthenticator> authenticators) {
+            this.authenticators = authenticators;
+            this.byOrdinal = new OTPAuthenticator[TYPES.length];
+            for (Map.Entry<OTPType, OTPAuthenticator> entry : authenticators.entrySet()) {
+                byOrdinal[entry.getKey().ordinal()] = entry.getValue();
+            }
+            int combinations = 1 << TYPES.length;
+            List<List<OTPType>> types = new ArrayList<>(combinations);
+            List<List<OTPAuthenticator>> available = new ArrayList<>(combinations);
+            for (int mask = 0; mask < combinations; mask++) {
+                List<OTPType> typeList = new ArrayList<>();
+                List<OTPAuthenticator> authenticatorList = new ArrayList<>();
+                for (OTPType type : TYPES) {
+                    if ((mask & (1 << type.ordinal())) != 0 && byOrdinal[type.ordinal()] != null) {
+                        typeList.add(type);
+                        authenticatorList.add(byOrdinal[type.ordinal()]);
+                    }
+                }
+                types.add(Collections.unmodifiableList(typeList));
+                available.add(Collections.unmodifiableList(authenticatorList));
+            }
+            this.typesByMask = types;
+            this.authenticatorsByMask = available;
+        }
+        
+        /**
+         * 获取用户支持的类型位掩码，首次访问时询问各验证器并缓存
+         */
+        int userMask(String userId) {
+            if (userId == null) {
+                return computeMask(null);
+            }
+            Integer cached = userMasks.get(userId);
+            if (cached != null) {
+                return cached;
+            }
+            if (userMasks.size() >= MAX_CACHED_USERS) {
+                userMasks.clear();
+            }
+            // supports()可能查询外部存储，在桶锁之外计算，避免阻塞同一个桶里的其他用户；
+            // 计算期间发生过invalidateUser时撤销写入的结果，不会留下绑定新方式之前算出的旧掩码
+            long generation = invalidations.get();
+            int mask = computeMask(userId);
+            Integer existing = userMasks.putIfAbsent(userId, mask);
+            if (existing != null) {
+                return existing;
+            }
+            if (invalidations.get() != generation) {
+                userMasks.remove(userId, mask);
+            }
+            return mask;
+        }
+        
+        private int computeMask(String userId) {
+            int mask = 0;
+            for (int i = 0; i < byOrdinal.length; i++) {
+                if (byOrdinal[i] != null && byOrdinal[i].supports(userId)) {
+                    mask |= 1 << i;
+                }
+            }
+            return mask;
+        }
+    }
+}
@@ -1,22 +1,53 @@
 package com.example.totp;
 
+import com.example.totp.audit.AuditLog;
+import com.example.totp.bulk.BulkExporter;
+import com.example.totp.bulk.BulkFormat;
+import com.example.totp.bulk.ImportPipeline;
+import com.example.totp.metrics.Metrics;
 import com.example.totp.model.ApiResponse;
+import com.example.totp.model.BatchVerifyRequest;
+import com.example.totp.model.BatchVerifyResponse;
+import com.example.totp.model.BulkImportResponse;
+import com.example.totp.model.BulkQuery;
+import com.example.totp.model.Credential;
+import com.example.totp.model.CurrentCodeResponse;
+import com.example.totp.model.GenerateRequest;
+import com.example.totp.model.GenerateResponse;
 import com.example.totp.model.TOTPConfig;
+import com.example.totp.model.TokenQuery;
+import com.example.totp.model.VerifyRequest;
+import com.example.totp.model.VerifyResponse;
+import com.example.totp.service.RateLimiter;
+import com.example.totp.service.StepCodeCache;
+import com.example.totp.service.TOTPEngine;
+import com.example.totp.service.TOTPEnginePool;
 import com.example.totp.service.TOTPService;
+import com.example.totp.server.AdminTokenFilter;
+import com.example.totp.server.CodeStream;
+import com.example.totp.server.EnrollmentTokens;
+import com.example.totp.server.MetricsFilter;
+import com.example.totp.server.OverloadFilter;
+import com.example.totp.server.RequestDecoder;
+import com.example.totp.server.RequestException;
+import com.example.totp.server.RequestExecutor;
+import com.example.totp.server.StaticAssets;
+import com.example.totp.store.CredentialLog;
+import com.example.totp.store.CredentialStore;
+import com.example.totp.store.WriteAheadLog;
 import com.example.totp.util.JsonUtil;
 import com.example.totp.util.QRCodeGenerator;
 import com.sun.net.httpserver.HttpServer;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpContext;
 
 import java.io.*;
 import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * TOTP验证程序主服务器
@@ -27,41 +58,291 @@ public class TOTPServer {
     // HTTP服务器端口
     private static final int PORT = 8080;
     
+    // 验证时允许客户端时钟落后/超前的时间步数量（可通过-Dtotp.window.behind/-Dtotp.window.ahead调整）
+    private static final int WINDOW_BEHIND = Integer.getInteger("totp.window.behind", 1);
+    private static final int WINDOW_AHEAD = Integer.getInteger("totp.window.ahead", 1);
+    
+    // 是否启用"用过即失效"（-Dtotp.replay.enabled=false关闭），以及预期的每秒验证成功峰值（决定记录容量）
+    private static final boolean REPLAY_PROTECTION = Boolean.parseBoolean(System.getProperty("totp.replay.enabled", "true"));
+    private static final int REPLAY_PEAK_PER_SECOND = Integer.getInteger("totp.replay.peak-per-second", 1000);
+    
+    // 按时间步预计算验证码的凭据数量上限（0表示不启用缓存）
+    private static final int CODE_CACHE_CAPACITY = Integer.getInteger("totp.codecache.capacity", 10000);
+    
+    // 验证接口限流：每个账户/每个客户端地址在滑动窗口内允许的尝试次数
+    private static final int RATE_LIMIT_ACCOUNT = Integer.getInteger("totp.ratelimit.account", 10);
+    private static final int RATE_LIMIT_IP = Integer.getInteger("totp.ratelimit.ip", 100);
+    private static final int RATE_LIMIT_WINDOW_SECONDS = Integer.getInteger("totp.ratelimit.window-seconds", 60);
+    // 批量验证按请求计数：每个客户端地址在滑动窗口内允许的批量请求次数（条目只按账户计数）
+    private static final int RATE_LIMIT_BATCH_IP = Integer.getInteger("totp.ratelimit.batch-ip", 10);
+    private static final int RATE_LIMIT_TABLE_SIZE = 1 << 16;
+    
+    // 单个批量验证请求允许携带的最大条数
+    private static final int BATCH_MAX_SIZE = Integer.getInteger("totp.batch.max-size", 5000);
+    
+    // 验证码推送（SSE）最多同时保持的订阅连接数
+    private static final int STREAM_MAX_SUBSCRIBERS = Integer.getInteger("totp.stream.max-subscribers", 1000);
+    
+    // 凭据持久化：段文件目录、单个段文件大小和后台刷盘间隔
+    private static final String DATA_DIR = System.getProperty("totp.data.dir", "data");
+    private static final int SEGMENT_SIZE = Integer.getInteger("totp.store.segment-size", 64 * 1024 * 1024);
+    private static final long FLUSH_INTERVAL_MILLIS = Long.getLong("totp.store.flush-interval-ms", 1000L);
+    
+    // 预写日志：是否启用、组提交延迟预算（微秒）、缓冲区大小和检查点间隔
+    private static final boolean WAL_ENABLED = Boolean.parseBoolean(System.getProperty("totp.wal.enabled", "true"));
+    private static final long WAL_GROUP_COMMIT_MICROS = Long.getLong("totp.wal.group-commit-us", 1000L);
+    private static final int WAL_BUFFER_SIZE = Integer.getInteger("totp.wal.buffer-size", 1 << 20);
+    private static final long WAL_CHECKPOINT_INTERVAL_MILLIS = Long.getLong("totp.wal.checkpoint-interval-ms", 10000L);
+    
+    // 是否开放批量导入/导出接口（导出内容包含全部密钥，默认关闭，-Dtotp.bulk.enabled=true开启）
+    private static final boolean BULK_ENABLED = Boolean.getBoolean("totp.bulk.enabled");
+    
+    // 批量接口的管理令牌（-Dtotp.bulk.admin-token，或环境变量TOTP_BULK_ADMIN_TOKEN以免出现在进程参数中），
+    // 开启批量接口时必须配置，请求以"Authorization: Bearer 令牌"携带
+    private static final String BULK_ADMIN_TOKEN = System.getProperty("totp.bulk.admin-token",
+            System.getenv("TOTP_BULK_ADMIN_TOKEN"));
+    
     // 服务实例
     private final TOTPService totpService;
     
-    // 当前配置（简化实现，实际应用中应该使用数据库）
-    private TOTPConfig currentConfig;
+    // 已注册账户的凭据存储（内存实现，按账户名称查找）
+    private final CredentialStore credentialStore;
+    
+    // 凭据持久化日志（内存映射段文件）
+    private final CredentialLog credentialLog;
+    
+    // 预写日志，未启用时为null
+    private final WriteAheadLog writeAheadLog;
+    
+    // 请求执行器（有界线程池或虚拟线程）
+    private final RequestExecutor requestExecutor;
+    
+    // 按账户限流
+    private final RateLimiter accountLimiter;
+    
+    // 按客户端地址限流
+    private final RateLimiter ipLimiter;
+    
+    // 批量验证按客户端地址限流（每个请求计一次）
+    private final RateLimiter batchIpLimiter;
+    
+    // 异步审计日志（处理器中的日志和异常都写入这里）
+    private final AuditLog auditLog;
+    
+    // 内存中的静态资源
+    private final StaticAssets staticAssets;
+    
+    // 请求体和查询参数的解码器
+    private final RequestDecoder requestDecoder;
+    
+    // 当前验证码的SSE推送
+    private final CodeStream codeStream;
+    
+    // 注册时签发的一次性二维码令牌
+    private final EnrollmentTokens qrCodeTokens;
+    
+    // 注册时签发的查看令牌（当前验证码及其推送）
+    private final EnrollmentTokens codeTokens;
+    
+    // 批量导入流水线
+    private final ImportPipeline importPipeline;
+    
+    // 同一时间只允许一个批量导入（流水线线程数按CPU核数设置，并发导入只会互相争抢）
+    private final AtomicBoolean importRunning = new AtomicBoolean();
     
     /**
      * 构造函数
      */
-    public TOTPServer() {
-        this.totpService = new TOTPService();
-        this.currentConfig = null;
+    public TOTPServer() throws IOException {
+        // 导出包含全部密钥、导入会替换已有账户的密钥，开启批量接口却未配置管理令牌时拒绝启动
+        if (BULK_ENABLED && (BULK_ADMIN_TOKEN == null || BULK_ADMIN_TOKEN.length() < AdminTokenFilter.MIN_TOKEN_LENGTH)) {
+            throw new IllegalStateException("开启批量接口（totp.bulk.enabled）时必须通过totp.bulk.admin-token"
+                    + "或TOTP_BULK_ADMIN_TOKEN配置不短于" + AdminTokenFilter.MIN_TOKEN_LENGTH + "个字符的管理令牌");
+        }
+        this.totpService = new TOTPService(new TOTPEngine(), WINDOW_BEHIND, WINDOW_AHEAD);
+        if (REPLAY_PROTECTION) {
+            this.totpService.enableReplayProtection(REPLAY_PEAK_PER_SECOND);
+        }
+        if (CODE_CACHE_CAPACITY > 0) {
+            this.totpService.enableCodeCache(CODE_CACHE_CAPACITY);
+        }
+        this.credentialStore = new CredentialStore();
+        // 审计日志先于持久化日志创建，恢复时的截断和后台刷盘失败都记入审计日志
+        this.auditLog = AuditLog.fromSystemProperties();
+        this.credentialLog = CredentialLog.open(Paths.get(DATA_DIR), credentialStore, SEGMENT_SIZE,
+                FLUSH_INTERVAL_MILLIS, auditLog);
+        this.writeAheadLog = WAL_ENABLED ? openWriteAheadLog() : null;
+        this.requestExecutor = RequestExecutor.fromSystemProperties();
+        this.accountLimiter = new RateLimiter(RATE_LIMIT_ACCOUNT, RATE_LIMIT_WINDOW_SECONDS * 1000L, RATE_LIMIT_TABLE_SIZE);
+        this.ipLimiter = new RateLimiter(RATE_LIMIT_IP, RATE_LIMIT_WINDOW_SECONDS * 1000L, RATE_LIMIT_TABLE_SIZE);
+        this.batchIpLimiter = new RateLimiter(RATE_LIMIT_BATCH_IP, RATE_LIMIT_WINDOW_SECONDS * 1000L, RATE_LIMIT_TABLE_SIZE);
+        this.staticAssets = StaticAssets.fromSystemProperties();
+        this.requestDecoder = RequestDecoder.fromSystemProperties();
+        this.qrCodeTokens = EnrollmentTokens.fromSystemProperties("totp.qrcode", 300L);
+        this.codeTokens = EnrollmentTokens.fromSystemProperties("totp.code", 3600L);
+        this.codeStream = new CodeStream(totpService, credentialStore, codeTokens, requestDecoder,
+                STREAM_MAX_SUBSCRIBERS);
+        this.importPipeline = ImportPipeline.fromSystemProperties(totpService);
+    }
+    
+    /**
+     * 打开预写日志：回放段文件之后的记录，再把验证成功的时间步交给预写日志持久化
+     * 已使用标记需要在整个验证窗口内可恢复，旧日志文件至少保留窗口覆盖的时长（按最长的时间步长度计算）
+     */
+    private WriteAheadLog openWriteAheadLog() throws IOException {
+        long retentionMillis = (WINDOW_BEHIND + WINDOW_AHEAD + 2L) * TOTPEnginePool.MAX_PERIOD * 1000L;
+        WriteAheadLog log = WriteAheadLog.open(Paths.get(DATA_DIR, "wal"), WAL_BUFFER_SIZE, WAL_GROUP_COMMIT_MICROS,
+                retentionMillis, new WriteAheadLog.Listener() {
+                    @Override
+                    public void onEnroll(Credential credential) {
+                        // 段文件中已有相同或更新的凭据时跳过；否则补写到段文件，检查点之后日志即可删除
+                        Credential existing = credentialStore.get(credential.getAccountName());
+                        if (existing != null && existing.getId() >= credential.getId()) {
+                            return;
+                        }
+                        credentialStore.restore(credential);
+                        try {
+                            credentialLog.append(credential);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                    
+                    @Override
+                    public void onReplayMark(long credentialId, long step, int period) {
+                        totpService.restoreReplayMark(credentialId, step, period);
+                    }
+                }, auditLog);
+        if (totpService.isReplayProtectionEnabled()) {
+            totpService.setReplayJournal(log::logReplayMark);
+        }
+        log.scheduleCheckpoint(credentialLog, WAL_CHECKPOINT_INTERVAL_MILLIS);
+        return log;
     }
     
     /**
      * 启动HTTP服务器
      */
     public void start() throws IOException {
+        registerMetrics();
+        
         // 创建HTTP服务器
         HttpServer server = HttpServer.create(new InetSocketAddress(PORT), 0);
         
         // 设置API路由
-        server.createContext("/api/generate", new GenerateHandler());
-        server.createContext("/api/verify", new VerifyHandler());
-        server.createContext("/api/current-code", new CurrentCodeHandler());
-        server.createContext("/", new StaticFileHandler());
+        createContext(server, "/api/generate", new GenerateHandler());
+        createContext(server, "/api/verify", new VerifyHandler());
+        createContext(server, "/api/verify/batch", new BatchVerifyHandler());
+        createContext(server, "/api/current-code", new CurrentCodeHandler());
+        createContext(server, "/api/current-code/stream", codeStream);
+        createContext(server, "/api/qrcode", new QRCodeHandler());
+        createContext(server, "/api/executor-stats", new ExecutorStatsHandler());
+        createContext(server, "/api/metrics", new MetricsHandler());
+        if (BULK_ENABLED) {
+            AdminTokenFilter adminFilter = new AdminTokenFilter(BULK_ADMIN_TOKEN);
+            createContext(server, "/api/bulk/import", new BulkImportHandler()).getFilters().add(adminFilter);
+            createContext(server, "/api/bulk/export", new BulkExportHandler()).getFilters().add(adminFilter);
+        }
+        createContext(server, "/", new StaticFileHandler());
         
-        // 设置线程池
-        server.setExecutor(null);
+        // 设置线程池，请求不再在单一分发线程上执行
+        server.setExecutor(requestExecutor);
         
         // 启动服务器
         server.start();
         
+        // 进程退出时把尚未刷盘的凭据写入磁盘
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                if (writeAheadLog != null) {
+                    writeAheadLog.close();
+                }
+                credentialLog.close();
+            } catch (IOException e) {
+                System.err.println("关闭凭据日志失败: " + e.getMessage());
+            }
+            codeStream.shutdown();
+            auditLog.close();
+        }, "credential-log-shutdown"));
+        
         System.out.println("TOTP服务器已启动，访问地址: http://localhost:" + PORT);
         System.out.println("TOTP配置信息: " + totpService.getTOTPInfo());
+        System.out.println("请求执行器: " + requestExecutor.getMode() + ", 容量: " + requestExecutor.getCapacity());
+        System.out.println("已加载凭据: " + credentialStore.size() + " 个，段文件: " + credentialLog.getSegmentCount() + " 个");
+        System.out.println("静态资源: " + staticAssets.size() + " 个" + (staticAssets.isDevMode() ? "（开发模式，监听文件改动）" : ""));
+    }
+    
+    /**
+     * 注册路由并挂载指标过滤器和过载保护过滤器
+     * @return 路由上下文（可以继续追加过滤器）
+     */
+    private HttpContext createContext(HttpServer server, String path, HttpHandler handler) {
+        HttpContext context = server.createContext(path, handler);
+        context.getFilters().add(new MetricsFilter(path));
+        context.getFilters().add(new OverloadFilter());
+        return context;
+    }
+    
+    /**
+     * 把各组件已有的统计数据注册为指标
+     */
+    private void registerMetrics() {
+        Metrics.REGISTRY.counterFunction("totp_executor_submitted_total", "Requests submitted to the request executor",
+                requestExecutor::getSubmittedCount);
+        Metrics.REGISTRY.counterFunction("totp_executor_completed_total", "Requests completed by the request executor",
+                requestExecutor::getCompletedCount);
+        Metrics.REGISTRY.counterFunction("totp_executor_rejected_total", "Requests shed with 503 by the request executor",
+                requestExecutor::getRejectedCount);
+        Metrics.REGISTRY.counterFunction("totp_executor_shed_overflow_total",
+                "Shed requests answered on the dispatcher because the shedding threads were saturated",
+                requestExecutor::getShedOverflowCount);
+        Metrics.REGISTRY.gauge("totp_executor_active", "Requests currently executing",
+                requestExecutor::getActiveCount);
+        Metrics.REGISTRY.gauge("totp_executor_queued", "Requests waiting in the executor queue",
+                requestExecutor::getQueueSize);
+        Metrics.REGISTRY.counterFunction("totp_ratelimit_account_rejected_total", "Attempts rejected by the per-account limiter",
+                accountLimiter::getRejectedCount);
+        Metrics.REGISTRY.counterFunction("totp_ratelimit_ip_rejected_total", "Attempts rejected by the per-address limiter",
+                ipLimiter::getRejectedCount);
+        Metrics.REGISTRY.counterFunction("totp_ratelimit_batch_ip_rejected_total",
+                "Batch requests rejected by the per-address batch limiter", batchIpLimiter::getRejectedCount);
+        if (totpService.isReplayProtectionEnabled()) {
+            Metrics.REGISTRY.counterFunction("totp_replay_rejected_total", "Valid codes rejected because they were already used",
+                    totpService::getReplayCount);
+            Metrics.REGISTRY.counterFunction("totp_replay_overflow_total",
+                    "Codes accepted without replay protection because the used-code cache was full; alert when this increases",
+                    totpService::getReplayOverflowCount);
+        }
+        Metrics.REGISTRY.gauge("totp_engines", "Distinct (algorithm, digits, period) engines in the engine pool",
+                totpService.getEnginePool()::size);
+        StepCodeCache codeCache = totpService.getCodeCache();
+        if (codeCache != null) {
+            Metrics.REGISTRY.counterFunction("totp_code_cache_hits_total", "Code lookups answered from the step code cache",
+                    codeCache::getHitCount);
+            Metrics.REGISTRY.counterFunction("totp_code_cache_misses_total", "Code lookups that computed a new step window",
+                    codeCache::getMissCount);
+            Metrics.REGISTRY.counterFunction("totp_code_cache_evictions_total", "Entries evicted from the step code cache",
+                    codeCache::getEvictionCount);
+            Metrics.REGISTRY.gauge("totp_code_cache_entries", "Credentials held in the step code cache", codeCache::size);
+        }
+        Metrics.REGISTRY.gauge("totp_credentials", "Enrolled credentials", credentialStore::size);
+        Metrics.REGISTRY.gauge("totp_stream_subscribers", "Open current-code stream connections",
+                codeStream::getSubscriberCount);
+        Metrics.REGISTRY.counterFunction("totp_stream_dropped_total",
+                "Stream connections dropped for falling behind or exceeding the write timeout",
+                codeStream::getDroppedCount);
+        Metrics.REGISTRY.gauge("totp_credential_log_records", "Records in the credential segment log including dead ones",
+                credentialLog::getTotalRecords);
+        if (writeAheadLog != null) {
+            Metrics.REGISTRY.counterFunction("totp_wal_records_total", "Records appended to the write-ahead log",
+                    writeAheadLog::getRecordCount);
+            Metrics.REGISTRY.counterFunction("totp_wal_commits_total", "Group commits (fsyncs) of the write-ahead log",
+                    writeAheadLog::getCommitCount);
+        }
+        Metrics.REGISTRY.counterFunction("totp_audit_events_total", "Audit events written to the audit log",
+                auditLog::getWrittenCount);
+        Metrics.REGISTRY.counterFunction("totp_audit_dropped_total", "Audit events dropped because the ring buffer was full",
+                auditLog::getDroppedCount);
     }
     
     /**
@@ -77,48 +358,81 @@ public class TOTPServer {
             }
             
             try {
-                // 读取请求体
-                String requestBody = readRequestBody(exchange);
+                // 解析请求参数（表单或JSON），未填写的字段使用默认值
+                GenerateRequest request = requestDecoder.decodeBody(exchange, GenerateRequest.class);
+                String accountName = orDefault(request.getAccountName(), "Demo User");
+                String issuer = orDefault(request.getIssuer(), "TOTP Demo App");
                 
-                // 解析请求参数（简化处理，实际应该使用JSON解析）
-                Map<String, String> params = parseFormData(requestBody);
-                String accountName = params.getOrDefault("accountName", "Demo User");
-                String issuer = params.getOrDefault("issuer", "TOTP Demo App");
+                // 选择凭据参数对应的引擎，不支持的参数返回400
+                TOTPEngine engine;
+                try {
+                    engine = totpService.getEngine(orDefault(request.getAlgorithm(), null),
+                            request.getDigits() == null ? TOTPEngine.DEFAULT_DIGITS : request.getDigits(),
+                            request.getPeriod() == null ? TOTPEngine.DEFAULT_PERIOD : request.getPeriod());
+                } catch (IllegalArgumentException e) {
+                    sendJsonResponse(exchange, 400, ApiResponse.error(e.getMessage()));
+                    return;
+                }
                 
-                // 生成新的密钥
-                String secretKey = totpService.generateSecretKey();
+                // 生成新的密钥（长度与算法匹配）
+                String secretKey = totpService.generateSecretKey(engine.getAlgorithm());
+                byte[] key = totpService.decodeSecretKey(secretKey);
                 
                 // 生成当前验证码
-                String currentCode = totpService.generateTOTP(secretKey);
+                String currentCode = totpService.generateTOTP(engine, key);
                 
-                // 生成二维码
-                String qrCodeImage = QRCodeGenerator.generateTOTPQRCode(secretKey, accountName, issuer);
+                // 保存凭据（以解码后的密钥字节保存）：注册记录随组提交落盘后才发布到存储和段文件，
+                // 落盘失败时账户不会被占住；字段过长无法持久化时返回400；
+                // 已有账户返回409，不替换其密钥，否则任何人都能用同名注册接管别人的账户
+                Credential credential;
+                try {
+                    credential = credentialLog.enrollIfAbsent(accountName, issuer, key,
+                            engine.getAlgorithm(), engine.getDigits(), engine.getPeriod(), writeAheadLog);
+                } catch (IllegalArgumentException e) {
+                    sendJsonResponse(exchange, 400, ApiResponse.error(e.getMessage()));
+                    return;
+                }
+                if (credential == null) {
+                    sendJsonResponse(exchange, 409, ApiResponse.error("账户已存在: " + accountName));
+                    auditLog.info("enroll", accountName, "conflict", "账户已存在");
+                    return;
+                }
                 
                 // 创建配置对象
-                currentConfig = new TOTPConfig(secretKey, accountName, issuer);
-                currentConfig.setCurrentCode(currentCode);
-                currentConfig.setQrCodeImage(qrCodeImage);
+                TOTPConfig config = configOf(credential, secretKey);
+                config.setCurrentCode(currentCode);
                 
                 // 准备响应数据
-                Map<String, Object> responseData = new HashMap<>();
-                responseData.put("secretKey", secretKey);
-                responseData.put("accountName", accountName);
-                responseData.put("issuer", issuer);
-                responseData.put("currentCode", currentCode);
-                responseData.put("qrCodeImage", "data:image/png;base64," + qrCodeImage);
-                responseData.put("configInfo", currentConfig.getConfigInfo());
+                GenerateResponse responseData = new GenerateResponse();
+                responseData.setSecretKey(secretKey);
+                responseData.setAccountName(accountName);
+                responseData.setIssuer(issuer);
+                responseData.setCurrentCode(currentCode);
+                // 二维码通过单独的PNG接口渲染，不再以Base64内嵌在JSON中；
+                // 链接带一次性令牌，只有本次注册的调用方能在有效期内取到一次
+                responseData.setQrCodeUrl("/api/qrcode?token=" + qrCodeTokens.issue(accountName, credential.getId()));
+                // 查看令牌在有效期内可反复使用，只授权查看本次注册的凭据的当前验证码
+                responseData.setCodeToken(codeTokens.issue(accountName, credential.getId()));
+                responseData.setConfigInfo(config.getConfigInfo());
+                
+                Metrics.ENROLLMENTS.increment();
                 
                 // 发送成功响应
                 ApiResponse apiResponse = ApiResponse.success("TOTP配置生成成功", responseData);
                 sendJsonResponse(exchange, 200, apiResponse);
                 
-                System.out.println("生成新的TOTP配置: " + currentConfig.getConfigInfo());
+                // 只记录账户和发行者，密钥不进入日志
+                auditLog.info("enroll", accountName, "created", "issuer=" + issuer + ", id=" + credential.getId()
+                        + ", algorithm=" + engine.getAlgorithm() + ", digits=" + engine.getDigits()
+                        + ", period=" + engine.getPeriod());
                 
+            } catch (RequestException e) {
+                sendJsonResponse(exchange, e.getStatusCode(), ApiResponse.error(e.getMessage()));
             } catch (Exception e) {
                 // 发送错误响应
                 ApiResponse apiResponse = ApiResponse.error("生成TOTP配置失败: " + e.getMessage());
                 sendJsonResponse(exchange, 500, apiResponse);
-                e.printStackTrace();
+                auditLog.error("enroll", null, "生成TOTP配置失败", e);
             }
         }
     }
@@ -136,50 +450,193 @@ public class TOTPServer {
             }
             
             try {
-                // 检查是否已生成配置
-                if (currentConfig == null) {
-                    ApiResponse apiResponse = ApiResponse.error("请先生成TOTP配置");
+                // 解析请求参数（表单或JSON）
+                VerifyRequest request = requestDecoder.decodeBody(exchange, VerifyRequest.class);
+                String accountName = request.getAccountName();
+                String userCode = request.getCode();
+                
+                if (userCode == null || userCode.trim().isEmpty()) {
+                    ApiResponse apiResponse = ApiResponse.error("请输入验证码");
                     sendJsonResponse(exchange, 400, apiResponse);
                     return;
                 }
                 
-                // 读取请求体
-                String requestBody = readRequestBody(exchange);
-                
-                // 解析请求参数
-                Map<String, String> params = parseFormData(requestBody);
-                String userCode = params.get("code");
+                // 限流检查：在查找凭据和计算HMAC之前拒绝过多的尝试
+                long now = System.currentTimeMillis();
+                if (!ipLimiter.tryAcquire(exchange.getRemoteAddress().getAddress().getAddress(), now)
+                        || !accountLimiter.tryAcquire(accountName, now)) {
+                    exchange.getResponseHeaders().set("Retry-After", String.valueOf(RATE_LIMIT_WINDOW_SECONDS));
+                    recordVerifyResult(TOTPService.BATCH_RATE_LIMITED);
+                    ApiResponse apiResponse = ApiResponse.error("尝试次数过多，请稍后再试");
+                    sendJsonResponse(exchange, 429, apiResponse);
+                    return;
+                }
                 
-                if (userCode == null || userCode.trim().isEmpty()) {
-                    ApiResponse apiResponse = ApiResponse.error("请输入验证码");
-                    sendJsonResponse(exchange, 400, apiResponse);
+                // 查找账户凭据
+                Credential credential = credentialStore.get(accountName);
+                if (credential == null) {
+                    recordVerifyResult(TOTPService.BATCH_UNKNOWN_ACCOUNT);
+                    ApiResponse apiResponse = ApiResponse.error("账户未注册，请先生成TOTP配置");
+                    sendJsonResponse(exchange, 404, apiResponse);
                     return;
                 }
                 
-                // 验证验证码
-                boolean isValid = totpService.verifyTOTPWithWindow(currentConfig.getSecretKey(), userCode);
+                // 验证验证码，记录命中的时间步偏移
+                TOTPEngine engine = totpService.getEngine(credential);
+                int offset = totpService.verifyTOTPOnce(engine, credential.getId(), credential.getKey(), userCode);
+                boolean alreadyUsed = offset == TOTPService.ALREADY_USED;
+                boolean isValid = offset != TOTPService.NO_MATCH && !alreadyUsed;
+                
+                // 已使用标记落盘后才确认验证成功
+                if (isValid && writeAheadLog != null) {
+                    writeAheadLog.sync();
+                }
+                recordVerifyResult(isValid ? TOTPService.BATCH_VALID
+                        : (alreadyUsed ? TOTPService.BATCH_ALREADY_USED : TOTPService.BATCH_INVALID));
                 
                 // 准备响应数据
-                Map<String, Object> responseData = new HashMap<>();
-                responseData.put("isValid", isValid);
-                responseData.put("userCode", userCode);
-                responseData.put("expectedCode", totpService.generateTOTP(currentConfig.getSecretKey()));
+                VerifyResponse responseData = new VerifyResponse();
+                responseData.setValid(isValid);
+                responseData.setAlreadyUsed(alreadyUsed);
+                responseData.setUserCode(userCode);
+                responseData.setDriftSteps(isValid ? offset : null);
+                // 只有验证成功时才返回当前验证码，失败时返回会让一次错误猜测直接换来正确答案
+                if (isValid) {
+                    responseData.setExpectedCode(totpService.generateTOTP(engine, credential.getId(), credential.getKey()));
+                }
                 
                 // 发送响应
-                String message = isValid ? "验证码正确" : "验证码错误";
+                String message = isValid ? "验证码正确" : (alreadyUsed ? "验证码已被使用" : "验证码错误");
                 ApiResponse apiResponse = ApiResponse.success(message, responseData);
                 sendJsonResponse(exchange, 200, apiResponse);
                 
-                System.out.println("验证TOTP验证码: 用户输入=" + userCode + ", 结果=" + (isValid ? "正确" : "错误"));
+                // 用户输入的验证码不进入日志
+                auditLog.info("verify", accountName, isValid ? "valid" : (alreadyUsed ? "already_used" : "invalid"),
+                        isValid ? "drift=" + offset : null);
                 
+            } catch (RequestException e) {
+                sendJsonResponse(exchange, e.getStatusCode(), ApiResponse.error(e.getMessage()));
             } catch (Exception e) {
                 ApiResponse apiResponse = ApiResponse.error("验证TOTP验证码失败: " + e.getMessage());
                 sendJsonResponse(exchange, 500, apiResponse);
-                e.printStackTrace();
+                auditLog.error("verify", null, "验证TOTP验证码失败", e);
+            }
+        }
+    }
+    
+    /**
+     * 批量验证TOTP验证码的API处理器
+     * 请求体为JSON：{"items":[{"accountName":"...","code":"123456"}, ...]}
+     * 响应中的results数组与请求顺序一致：0-错误，1-正确，2-已使用，3-账户不存在，4-被限流
+     */
+    private class BatchVerifyHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            // 只处理POST请求
+            if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                sendResponse(exchange, 405, "Method Not Allowed");
+                return;
+            }
+            
+            try {
+                // 读取并解析请求体
+                BatchVerifyRequest request = requestDecoder.decodeBody(exchange, BatchVerifyRequest.class);
+                List<BatchVerifyRequest.Item> items = request.getItems();
+                if (items == null || items.isEmpty()) {
+                    ApiResponse apiResponse = ApiResponse.error("验证列表不能为空");
+                    sendJsonResponse(exchange, 400, apiResponse);
+                    return;
+                }
+                if (items.size() > BATCH_MAX_SIZE) {
+                    ApiResponse apiResponse = ApiResponse.error("单次最多验证" + BATCH_MAX_SIZE + "条");
+                    sendJsonResponse(exchange, 413, apiResponse);
+                    return;
+                }
+                
+                // 按客户端地址限流（整个请求计一次，网关一次提交的大批量不会被地址额度截断），
+                // 每个条目再按账户计一次，然后查找凭据，未通过的条目预先填入结果
+                int size = items.size();
+                long[] credentialIds = new long[size];
+                TOTPEngine[] engines = new TOTPEngine[size];
+                byte[][] keys = new byte[size][];
+                String[] codes = new String[size];
+                byte[] results = new byte[size];
+                if (!admitBatch(batchIpLimiter, accountLimiter, exchange.getRemoteAddress().getAddress().getAddress(),
+                        items, System.currentTimeMillis(), results)) {
+                    exchange.getResponseHeaders().set("Retry-After", String.valueOf(RATE_LIMIT_WINDOW_SECONDS));
+                    sendJsonResponse(exchange, 429, ApiResponse.error("批量请求过多，请稍后再试"));
+                    return;
+                }
+                for (int i = 0; i < size; i++) {
+                    if (results[i] == TOTPService.BATCH_RATE_LIMITED) {
+                        continue;
+                    }
+                    BatchVerifyRequest.Item item = items.get(i);
+                    Credential credential = credentialStore.get(item == null ? null : item.getAccountName());
+                    if (credential == null) {
+                        results[i] = TOTPService.BATCH_UNKNOWN_ACCOUNT;
+                        continue;
+                    }
+                    credentialIds[i] = credential.getId();
+                    engines[i] = totpService.getEngine(credential);
+                    keys[i] = credential.getKey();
+                    codes[i] = item.getCode();
+                }
+                
+                // 并行验证
+                totpService.verifyBatch(credentialIds, engines, keys, codes, results);
+                
+                // 整批的已使用标记一次等待落盘
+                if (writeAheadLog != null) {
+                    writeAheadLog.sync();
+                }
+                
+                // 准备响应数据
+                int[] resultCodes = new int[size];
+                int validCount = 0;
+                for (int i = 0; i < size; i++) {
+                    resultCodes[i] = results[i];
+                    recordVerifyResult(results[i]);
+                    if (results[i] == TOTPService.BATCH_VALID) {
+                        validCount++;
+                    }
+                }
+                BatchVerifyResponse responseData = new BatchVerifyResponse(size, validCount, resultCodes);
+                
+                ApiResponse apiResponse = ApiResponse.success("批量验证完成", responseData);
+                sendJsonResponse(exchange, 200, apiResponse);
+                
+                auditLog.info("verify_batch", null, "completed", "total=" + size + ", valid=" + validCount);
+                
+            } catch (RequestException e) {
+                sendJsonResponse(exchange, e.getStatusCode(), ApiResponse.error(e.getMessage()));
+            } catch (Exception e) {
+                ApiResponse apiResponse = ApiResponse.error("批量验证失败: " + e.getMessage());
+                sendJsonResponse(exchange, 500, apiResponse);
+                auditLog.error("verify_batch", null, "批量验证失败", e);
             }
         }
     }
     
+    /**
+     * 批量验证的限流：客户端地址在批量限流器上整个请求只计一次，每个条目再按账户各计一次
+     * （与单条验证共用账户额度），未通过账户限流的条目在结果中填入BATCH_RATE_LIMITED
+     * @return false-该地址的批量请求次数超过限制，整个请求都不处理
+     */
+    static boolean admitBatch(RateLimiter batchLimiter, RateLimiter accountLimiter, byte[] address,
+                              List<BatchVerifyRequest.Item> items, long now, byte[] results) {
+        if (!batchLimiter.tryAcquire(address, now)) {
+            return false;
+        }
+        for (int i = 0; i < items.size(); i++) {
+            BatchVerifyRequest.Item item = items.get(i);
+            if (!accountLimiter.tryAcquire(item == null ? null : item.getAccountName(), now)) {
+                results[i] = TOTPService.BATCH_RATE_LIMITED;
+            }
+        }
+        return true;
+    }
+    
     /**
      * 获取当前验证码的API处理器
      */
@@ -193,40 +650,252 @@ public class TOTPServer {
             }
             
             try {
-                // 检查是否已生成配置
-                if (currentConfig == null) {
-                    ApiResponse apiResponse = ApiResponse.error("请先生成TOTP配置");
-                    sendJsonResponse(exchange, 400, apiResponse);
+                // 只凭注册时签发的查看令牌返回验证码，不接受按账户名称查询；
+                // 令牌过期或账户已被重新注册时返回404
+                TokenQuery query = requestDecoder.decodeQuery(exchange, TokenQuery.class);
+                EnrollmentTokens.Grant grant = codeTokens.lookup(query.getToken());
+                Credential credential = grant == null ? null : credentialStore.get(grant.getAccountName());
+                if (credential == null || credential.getId() != grant.getCredentialId()) {
+                    ApiResponse apiResponse = ApiResponse.error("查看令牌无效或已过期，请重新生成TOTP配置");
+                    sendJsonResponse(exchange, 404, apiResponse);
                     return;
                 }
                 
                 // 生成当前验证码
-                String currentCode = totpService.generateTOTP(currentConfig.getSecretKey());
-                currentConfig.setCurrentCode(currentCode);
+                String currentCode = totpService.generateTOTP(totpService.getEngine(credential),
+                        credential.getId(), credential.getKey());
+                // 接口不做身份验证，配置信息只由非机密字段构成，不对密钥做编码
+                TOTPConfig config = configOf(credential, null);
+                config.setCurrentCode(currentCode);
                 
                 // 准备响应数据
-                Map<String, Object> responseData = new HashMap<>();
-                responseData.put("currentCode", currentCode);
-                responseData.put("config", currentConfig.getConfigInfo());
+                CurrentCodeResponse responseData = new CurrentCodeResponse(currentCode, config.getConfigInfo());
                 
                 // 发送响应
                 ApiResponse apiResponse = ApiResponse.success("获取当前验证码成功", responseData);
                 sendJsonResponse(exchange, 200, apiResponse);
                 
+            } catch (RequestException e) {
+                sendJsonResponse(exchange, e.getStatusCode(), ApiResponse.error(e.getMessage()));
             } catch (Exception e) {
                 ApiResponse apiResponse = ApiResponse.error("获取当前验证码失败: " + e.getMessage());
                 sendJsonResponse(exchange, 500, apiResponse);
-                e.printStackTrace();
+                auditLog.error("current_code", null, "获取当前验证码失败", e);
+            }
+        }
+    }
+    
+    /**
+     * 二维码图片的API处理器，直接返回image/png
+     * 二维码含有密钥，只凭/api/generate签发的一次性令牌渲染，不接受按账户名称查询
+     */
+    private class QRCodeHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            // 只处理GET请求
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                sendResponse(exchange, 405, "Method Not Allowed");
+                return;
+            }
+            
+            try {
+                // 兑换令牌（兑换后即失效），账户已被重新注册时旧令牌不再有效
+                TokenQuery query = requestDecoder.decodeQuery(exchange, TokenQuery.class);
+                EnrollmentTokens.Grant grant = qrCodeTokens.redeem(query.getToken());
+                Credential credential = grant == null ? null : credentialStore.get(grant.getAccountName());
+                if (credential == null || credential.getId() != grant.getCredentialId()) {
+                    sendResponse(exchange, 404, "QR Code Expired");
+                    return;
+                }
+                
+                byte[] png = QRCodeGenerator.generateTOTPQRCodePng(totpService.encodeSecretKey(credential.getKey()),
+                        credential.getAccountName(), credential.getIssuer(),
+                        credential.getAlgorithm(), credential.getDigits(), credential.getPeriod());
+                
+                // 二维码包含密钥，禁止浏览器和代理缓存
+                exchange.getResponseHeaders().set("Content-Type", "image/png");
+                exchange.getResponseHeaders().set("Cache-Control", "no-store");
+                exchange.sendResponseHeaders(200, png.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(png);
+                }
+                
+            } catch (RequestException e) {
+                sendResponse(exchange, e.getStatusCode(), e.getMessage());
+            } catch (Exception e) {
+                sendResponse(exchange, 500, "生成二维码失败: " + e.getMessage());
+                auditLog.error("qrcode", null, "生成二维码失败", e);
+            }
+        }
+    }
+    
+    /**
+     * 批量导入的API处理器（需要管理令牌，见{@link AdminTokenFilter}）
+     * 请求体为NDJSON或CSV（?format=ndjson|csv，或按Content-Type判断），边读边经{@link ImportPipeline}处理，
+     * 不受普通请求体大小限制；没有secret的记录按算法生成新密钥。导入不生成二维码，需要时通过导出接口获取。
+     */
+    private class BulkImportHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            // 只处理POST请求
+            if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                sendResponse(exchange, 405, "Method Not Allowed");
+                return;
+            }
+            
+            if (!importRunning.compareAndSet(false, true)) {
+                sendJsonResponse(exchange, 409, ApiResponse.error("已有批量导入正在进行"));
+                return;
+            }
+            try {
+                BulkQuery query = requestDecoder.decodeQuery(exchange, BulkQuery.class);
+                BulkFormat format;
+                try {
+                    format = BulkFormat.of(query.getFormat(), exchange.getRequestHeaders().getFirst("Content-Type"));
+                } catch (IllegalArgumentException e) {
+                    sendJsonResponse(exchange, 400, ApiResponse.error(e.getMessage()));
+                    return;
+                }
+                
+                BulkImportResponse result;
+                try (InputStream body = exchange.getRequestBody()) {
+                    result = importPipeline.run(body, format, new ImportPipeline.Sink() {
+                        // 最后一条注册记录的LSN，结束时等待它落盘即可覆盖之前的所有记录
+                        private long lastLsn = -1;
+                        
+                        @Override
+                        public void accept(ImportPipeline.Item item) throws IOException {
+                            TOTPEngine engine = item.getEngine();
+                            Credential credential = credentialLog.enroll(item.getAccountName(),
+                                    orDefault(item.getIssuer(), "TOTP Demo App"), item.getKey(),
+                                    engine.getAlgorithm(), engine.getDigits(), engine.getPeriod());
+                            if (writeAheadLog != null) {
+                                lastLsn = writeAheadLog.logEnroll(credential);
+                            }
+                        }
+                        
+                        @Override
+                        public void finish() throws IOException {
+                            if (writeAheadLog != null && lastLsn >= 0) {
+                                writeAheadLog.awaitDurable(lastLsn);
+                            }
+                        }
+                    });
+                }
+                
+                Metrics.BULK_IMPORTED.add(result.getImported());
+                Metrics.BULK_IMPORT_FAILED.add(result.getFailed());
+                
+                sendJsonResponse(exchange, 200, ApiResponse.success("批量导入完成", result));
+                auditLog.info("bulk_import", null, "completed", "format=" + format + ", total=" + result.getTotal()
+                        + ", imported=" + result.getImported() + ", failed=" + result.getFailed());
+                
+            } catch (RequestException e) {
+                sendJsonResponse(exchange, e.getStatusCode(), ApiResponse.error(e.getMessage()));
+            } catch (Exception e) {
+                sendJsonResponse(exchange, 500, ApiResponse.error("批量导入失败: " + e.getMessage()));
+                auditLog.error("bulk_import", null, "批量导入失败", e);
+            } finally {
+                importRunning.set(false);
+            }
+        }
+    }
+    
+    /**
+     * 批量导出的API处理器（需要管理令牌，见{@link AdminTokenFilter}）
+     * 以分块传输边遍历边写出所有凭据（?format=ndjson|csv），?qr=true时附带otpauth URI和二维码
+     */
+    private class BulkExportHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            // 只处理GET请求
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                sendResponse(exchange, 405, "Method Not Allowed");
+                return;
+            }
+            
+            BulkFormat format;
+            boolean includeQr;
+            try {
+                BulkQuery query = requestDecoder.decodeQuery(exchange, BulkQuery.class);
+                format = BulkFormat.of(query.getFormat(), null);
+                includeQr = Boolean.TRUE.equals(query.getQr());
+            } catch (RequestException e) {
+                sendJsonResponse(exchange, e.getStatusCode(), ApiResponse.error(e.getMessage()));
+                return;
+            } catch (IllegalArgumentException e) {
+                sendJsonResponse(exchange, 400, ApiResponse.error(e.getMessage()));
+                return;
+            }
+            
+            // 导出内容包含密钥，禁止浏览器和代理缓存；响应头发出后出错只能中断连接
+            exchange.getResponseHeaders().set("Content-Type", format.getContentType());
+            exchange.getResponseHeaders().set("Cache-Control", "no-store");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream os = exchange.getResponseBody()) {
+                long count = BulkExporter.export(credentialStore, format, includeQr, os);
+                Metrics.BULK_EXPORTED.add(count);
+                auditLog.info("bulk_export", null, "completed", "format=" + format + ", qr=" + includeQr
+                        + ", count=" + count);
+            } catch (IOException e) {
+                auditLog.error("bulk_export", null, "批量导出失败", e);
+                throw e;
+            }
+        }
+    }
+    
+    /**
+     * 请求执行器饱和度统计的API处理器
+     */
+    private class ExecutorStatsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            // 只处理GET请求
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                sendResponse(exchange, 405, "Method Not Allowed");
+                return;
+            }
+            
+            ApiResponse apiResponse = ApiResponse.success("获取执行器状态成功", requestExecutor.getStats());
+            sendJsonResponse(exchange, 200, apiResponse);
+        }
+    }
+    
+    /**
+     * 指标的API处理器（Prometheus文本格式）
+     */
+    private class MetricsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            // 只处理GET请求
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                sendResponse(exchange, 405, "Method Not Allowed");
+                return;
+            }
+            
+            byte[] body = Metrics.REGISTRY.toPrometheusText().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
             }
         }
     }
     
     /**
      * 静态文件处理器
+     * 资源由{@link StaticAssets}缓存在内存中，按Accept-Encoding选择gzip版本，
+     * 浏览器每次用If-None-Match重新验证，内容未变时返回304
      */
     private class StaticFileHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange exchange) throws IOException {
+            String method = exchange.getRequestMethod();
+            if (!"GET".equalsIgnoreCase(method) && !"HEAD".equalsIgnoreCase(method)) {
+                sendResponse(exchange, 405, "Method Not Allowed");
+                return;
+            }
+            
             String path = exchange.getRequestURI().getPath();
             
             // 默认返回index.html
@@ -239,108 +908,130 @@ public class TOTPServer {
                 path = path.substring(1);
             }
             
-            // 构建文件路径 - 使用绝对路径
-            Path baseDir = Paths.get("src", "main", "resources", "static");
-            Path filePath = baseDir.resolve(path).normalize();
+            // 只能访问已加载的资源，不会访问到目录之外的文件
+            StaticAssets.Asset asset = staticAssets.get(path);
+            if (asset == null) {
+                // 文件不存在，返回404
+                auditLog.info("static", null, "not_found", path);
+                sendResponse(exchange, 404, "File Not Found: " + path);
+                return;
+            }
+            
+            boolean gzipped = asset.hasGzip() && acceptsGzip(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+            
+            // 文件名没有内容指纹，浏览器每次都要重新验证
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.getResponseHeaders().set("ETag", asset.getEtag(gzipped));
+            exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+            
+            // 设置CORS头，允许跨域访问
+            exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+            exchange.getResponseHeaders().set("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
             
-            // 安全检查：确保文件路径在baseDir内
-            if (!filePath.startsWith(baseDir)) {
-                sendResponse(exchange, 403, "Access Denied");
+            if (asset.matches(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
                 return;
             }
             
-            // 检查文件是否存在
-            if (Files.exists(filePath) && !Files.isDirectory(filePath)) {
-                // 设置Content-Type
-                String contentType = getContentType(filePath.toString());
-                exchange.getResponseHeaders().set("Content-Type", contentType);
-                
-                // 设置缓存控制头，避免浏览器缓存问题
-                exchange.getResponseHeaders().set("Cache-Control", "no-cache, no-store, must-revalidate");
-                exchange.getResponseHeaders().set("Pragma", "no-cache");
-                exchange.getResponseHeaders().set("Expires", "0");
-                
-                // 设置CORS头，允许跨域访问
-                exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
-                exchange.getResponseHeaders().set("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
-                
-                // 发送文件内容
-                byte[] fileBytes = Files.readAllBytes(filePath);
-                exchange.sendResponseHeaders(200, fileBytes.length);
-                
-                try (OutputStream os = exchange.getResponseBody()) {
-                    os.write(fileBytes);
-                }
-                
-                System.out.println("成功加载静态文件: " + path);
-            } else {
-                // 文件不存在，返回404
-                System.out.println("文件不存在: " + filePath);
-                sendResponse(exchange, 404, "File Not Found: " + path);
+            exchange.getResponseHeaders().set("Content-Type", asset.getContentType());
+            if (gzipped) {
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            byte[] body = asset.body(gzipped);
+            if ("HEAD".equalsIgnoreCase(method)) {
+                exchange.getResponseHeaders().set("Content-Length", String.valueOf(body.length));
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
             }
         }
         
         /**
-         * 根据文件扩展名获取Content-Type
+         * Accept-Encoding中是否包含gzip（q=0表示拒绝）
          */
-        private String getContentType(String filename) {
-            if (filename.endsWith(".html")) return "text/html; charset=UTF-8";
-            if (filename.endsWith(".css")) return "text/css; charset=UTF-8";
-            if (filename.endsWith(".js")) return "application/javascript; charset=UTF-8";
-            if (filename.endsWith(".png")) return "image/png";
-            if (filename.endsWith(".jpg") || filename.endsWith(".jpeg")) return "image/jpeg";
-            return "text/plain; charset=UTF-8";
+        private boolean acceptsGzip(String acceptEncoding) {
+            if (acceptEncoding == null) {
+                return false;
+            }
+            for (String part : acceptEncoding.split(",")) {
+                String[] fields = part.trim().split(";");
+                String coding = fields[0].trim();
+                if (!coding.equalsIgnoreCase("gzip") && !coding.equals("*")) {
+                    continue;
+                }
+                for (int i = 1; i < fields.length; i++) {
+                    String param = fields[i].trim();
+                    if (param.startsWith("q=")) {
+                        try {
+                            return Double.parseDouble(param.substring(2)) > 0;
+                        } catch (NumberFormatException e) {
+                            return false;
+                        }
+                    }
+                }
+                return true;
+            }
+            return false;
         }
     }
     
     /**
-     * 读取请求体
+     * 参数为空时使用默认值
      */
-    private String readRequestBody(HttpExchange exchange) throws IOException {
-        InputStream inputStream = exchange.getRequestBody();
-        ByteArrayOutputStream result = new ByteArrayOutputStream();
-        byte[] buffer = new byte[1024];
-        int length;
-        while ((length = inputStream.read(buffer)) != -1) {
-            result.write(buffer, 0, length);
-        }
-        return result.toString(StandardCharsets.UTF_8.name());
+    private static String orDefault(String value, String defaultValue) {
+        return value == null || value.isEmpty() ? defaultValue : value;
     }
     
     /**
-     * 解析表单数据
+     * 按凭据创建配置对象（含算法、位数和时间步长度）
      */
-    private Map<String, String> parseFormData(String formData) {
-        Map<String, String> params = new HashMap<>();
-        if (formData != null && !formData.isEmpty()) {
-            String[] pairs = formData.split("&");
-            for (String pair : pairs) {
-                String[] keyValue = pair.split("=");
-                if (keyValue.length == 2) {
-                    try {
-                        String key = java.net.URLDecoder.decode(keyValue[0], StandardCharsets.UTF_8.name());
-                        String value = java.net.URLDecoder.decode(keyValue[1], StandardCharsets.UTF_8.name());
-                        params.put(key, value);
-                    } catch (UnsupportedEncodingException e) {
-                        // 忽略编码异常
-                    }
-                }
-            }
-        }
-        return params;
+    private static TOTPConfig configOf(Credential credential, String secretKey) {
+        TOTPConfig config = new TOTPConfig(secretKey, credential.getAccountName(), credential.getIssuer());
+        config.setAlgorithm(credential.getAlgorithm());
+        config.setDigits(credential.getDigits());
+        config.setPeriod(credential.getPeriod());
+        return config;
     }
     
     /**
      * 发送JSON响应
+     * 直接序列化到线程复用的字节缓冲区，长度已知后一次写出
      */
     private void sendJsonResponse(HttpExchange exchange, int statusCode, ApiResponse response) throws IOException {
-        String jsonResponse = JsonUtil.toJson(response);
+        JsonUtil.ResponseBuffer body = JsonUtil.toJsonBuffer(response);
         exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
         exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
-        exchange.sendResponseHeaders(statusCode, jsonResponse.getBytes(StandardCharsets.UTF_8).length);
+        exchange.sendResponseHeaders(statusCode, body.size());
         
         try (OutputStream os = exchange.getResponseBody()) {
-            os.write(jsonResponse.getBytes(StandardCharsets.UTF_8));
+            body.writeTo(os);
+        }
+    }
+    
+    /**
+     * 按验证结果（BATCH_*常量）累加验证计数
+     */
+    private static void recordVerifyResult(byte result) {
+        switch (result) {
+            case TOTPService.BATCH_VALID:
+                Metrics.VERIFY_VALID.increment();
+                break;
+            case TOTPService.BATCH_ALREADY_USED:
+                Metrics.VERIFY_ALREADY_USED.increment();
+                break;
+            case TOTPService.BATCH_UNKNOWN_ACCOUNT:
+                Metrics.VERIFY_UNKNOWN_ACCOUNT.increment();
+                break;
+            case TOTPService.BATCH_RATE_LIMITED:
+                Metrics.VERIFY_RATE_LIMITED.increment();
+                break;
+            default:
+                Metrics.VERIFY_INVALID.increment();
         }
     }
     
@@ -348,9 +1039,10 @@ public class TOTPServer {
      * 发送普通文本响应
      */
     private void sendResponse(HttpExchange exchange, int statusCode, String response) throws IOException {
-        exchange.sendResponseHeaders(statusCode, response.getBytes(StandardCharsets.UTF_8).length);
+        byte[] body = response.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(statusCode, body.length);
         try (OutputStream os = exchange.getResponseBody()) {
-            os.write(response.getBytes(StandardCharsets.UTF_8));
+            os.write(body);
         }
     }
     
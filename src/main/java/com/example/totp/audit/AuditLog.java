@@ -0,0 +1,369 @@
+package com.example.totp.audit;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 异步审计日志
+ * 请求线程把事件写入预分配的环形缓冲区后立即返回，不做格式化和IO；
+ * 后台线程按顺序取出事件，成批格式化为JSON行写入日志文件，每批只flush一次，
+ * 空闲时休眠时间从1ms逐次加倍到上限，长时间没有事件时每秒只唤醒几次；
+ * 文件超过大小上限后滚动（audit.log -> audit.log.1 -> ... -> audit.log.N）。
+ * 缓冲区写满时丢弃新事件并计数，验证请求永远不会因为日志而阻塞。
+ *
+ * 事件只包含调用方显式传入的字段，密钥等敏感信息不得作为字段传入（在来源处脱敏）。
+ */
+public class AuditLog implements Closeable {
+
+    // 日志级别
+    private static final String INFO = "INFO";
+    private static final String ERROR = "ERROR";
+
+    // 后台线程无事件时的休眠时间：从最小值开始，连续空闲时逐次加倍到最大值
+    private static final long MIN_IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long MAX_IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    // 已停止分配序号的标志位
+    private static final long CLOSED = Long.MIN_VALUE;
+
+    // 环形缓冲区
+    private final Slot[] slots;
+    private final int mask;
+
+    // 下一个待分配的序号；后台线程退出前置上CLOSED标志，之后的分配全部失败
+    private final AtomicLong claimed = new AtomicLong();
+
+    // 后台线程下一个要读取的序号，之前的槽位都可以重用
+    private volatile long consumed;
+
+    // 已发布/已丢弃/已写入的事件数
+    private final LongAdder published = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+
+    // 日志文件及滚动参数
+    private final Path file;
+    private final long maxFileSize;
+    private final int maxFiles;
+
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    // 以下字段只由后台线程访问
+    private BufferedWriter writer;
+    private long fileSize;
+    private boolean dirty;
+    private final StringBuilder line = new StringBuilder(256);
+
+    /**
+     * 创建审计日志并启动后台写入线程
+     * @param file 日志文件路径
+     * @param capacity 环形缓冲区容量（向上取整为2的幂）
+     * @param maxFileSize 单个日志文件大小上限（字节）
+     * @param maxFiles 保留的滚动文件数量
+     */
+    public AuditLog(Path file, int capacity, long maxFileSize, int maxFiles) throws IOException {
+        if (capacity <= 0 || maxFileSize <= 0 || maxFiles < 0) {
+            throw new IllegalArgumentException("审计日志参数无效");
+        }
+        int size = 2;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+        this.mask = size - 1;
+        this.file = file;
+        this.maxFileSize = maxFileSize;
+        this.maxFiles = maxFiles;
+
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        openWriter();
+
+        this.writerThread = new Thread(this::writeLoop, "audit-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * 按系统属性创建审计日志：
+     * -Dtotp.audit.file（默认logs/audit.log）、-Dtotp.audit.buffer-size（默认8192）、
+     * -Dtotp.audit.max-file-size（默认10MB）、-Dtotp.audit.max-files（默认5）
+     */
+    public static AuditLog fromSystemProperties() throws IOException {
+        return new AuditLog(
+                Paths.get(System.getProperty("totp.audit.file", "logs/audit.log")),
+                Integer.getInteger("totp.audit.buffer-size", 8192),
+                Long.getLong("totp.audit.max-file-size", 10L * 1024 * 1024),
+                Integer.getInteger("totp.audit.max-files", 5));
+    }
+
+    /**
+     * 记录一条事件
+     * @param event 事件名称，如verify
+     * @param account 账户名称，可为null
+     * @param outcome 结果，如valid，可为null
+     * @param detail 附加说明，可为null，不得包含密钥
+     * @return true-已进入缓冲区，false-缓冲区已满被丢弃
+     */
+    public boolean info(String event, String account, String outcome, String detail) {
+        return publish(INFO, event, account, outcome, detail, null);
+    }
+
+    /**
+     * 记录一条错误事件，异常堆栈由后台线程格式化
+     * @param event 事件名称
+     * @param account 账户名称，可为null
+     * @param detail 错误说明
+     * @param error 异常，可为null
+     * @return true-已进入缓冲区，false-缓冲区已满被丢弃
+     */
+    public boolean error(String event, String account, String detail, Throwable error) {
+        return publish(ERROR, event, account, "error", detail, error);
+    }
+
+    private boolean publish(String level, String event, String account, String outcome, String detail, Throwable error) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if ((sequence & CLOSED) != 0 || sequence - consumed >= slots.length || !running) {
+                dropped.increment();
+                return false;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        Slot slot = slots[(int) sequence & mask];
+        slot.timestamp = System.currentTimeMillis();
+        slot.level = level;
+        slot.event = event;
+        slot.account = account;
+        slot.outcome = outcome;
+        slot.detail = detail;
+        slot.error = error;
+        // 写入序号即发布，后台线程看到序号后才读取其他字段
+        slot.sequence = sequence;
+        published.increment();
+        return true;
+    }
+
+    /**
+     * 后台线程：按序号顺序取出已发布的事件，成批写入
+     */
+    private void writeLoop() {
+        long next = consumed;
+        long idleParkNanos = MIN_IDLE_PARK_NANOS;
+        while (true) {
+            Slot slot = slots[(int) next & mask];
+            if (slot.sequence != next) {
+                // 没有新事件（或下一个槽位还在填写中）：结束本批，本批有写入时flush一次
+                if (dirty) {
+                    flushQuietly();
+                    dirty = false;
+                }
+                // 用CAS封住序号再退出：检查running之后才分配到序号的发布方CAS失败，计为丢弃，
+                // 不会出现计入已发布却没有写入的事件
+                if (!running && claimed.compareAndSet(next, next | CLOSED)) {
+                    break;
+                }
+                LockSupport.parkNanos(idleParkNanos);
+                idleParkNanos = Math.min(idleParkNanos * 2, MAX_IDLE_PARK_NANOS);
+                continue;
+            }
+            idleParkNanos = MIN_IDLE_PARK_NANOS;
+            dirty = true;
+            try {
+                write(slot);
+            } catch (IOException e) {
+                dropped.increment();
+            }
+            slot.clear();
+            next++;
+            consumed = next;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            // 进程退出阶段，忽略
+        }
+    }
+
+    private void write(Slot slot) throws IOException {
+        line.setLength(0);
+        line.append("{\"ts\":\"").append(Instant.ofEpochMilli(slot.timestamp)).append('"');
+        line.append(",\"level\":\"").append(slot.level).append('"');
+        appendField("event", slot.event);
+        appendField("account", slot.account);
+        appendField("outcome", slot.outcome);
+        appendField("detail", slot.detail);
+        if (slot.error != null) {
+            StringWriter trace = new StringWriter();
+            slot.error.printStackTrace(new PrintWriter(trace));
+            appendField("error", trace.toString());
+        }
+        line.append("}\n");
+
+        if (fileSize + line.length() > maxFileSize && fileSize > 0) {
+            roll();
+        }
+        writer.append(line);
+        // 按字符数近似估算文件大小
+        fileSize += line.length();
+        written.increment();
+    }
+
+    private void appendField(String name, String value) {
+        if (value == null) {
+            return;
+        }
+        line.append(",\"").append(name).append("\":\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    line.append("\\\"");
+                    break;
+                case '\\':
+                    line.append("\\\\");
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                case '\t':
+                    line.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+            }
+        }
+        line.append('"');
+    }
+
+    /**
+     * 滚动日志文件
+     * 删除或移动文件失败时重新打开原文件继续写入，再写满一个文件大小后重试滚动，
+     * 避免写入器保持关闭导致之后的事件全部被丢弃
+     */
+    private void roll() throws IOException {
+        writer.close();
+        try {
+            if (maxFiles == 0) {
+                Files.deleteIfExists(file);
+            } else {
+                Files.deleteIfExists(rolled(maxFiles));
+                for (int i = maxFiles - 1; i >= 1; i--) {
+                    if (Files.exists(rolled(i))) {
+                        Files.move(rolled(i), rolled(i + 1), StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+                Files.move(file, rolled(1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            System.err.println("审计日志滚动失败: " + e.getMessage());
+            openWriter();
+            fileSize = 0;
+            return;
+        }
+        openWriter();
+    }
+
+    private Path rolled(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    private void openWriter() throws IOException {
+        writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND), StandardCharsets.UTF_8), 64 * 1024);
+        fileSize = Files.size(file);
+    }
+
+    private void flushQuietly() {
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            // 写入失败时事件已计入丢弃数，下一批重试
+        }
+    }
+
+    /**
+     * 写完缓冲区中剩余的事件后停止后台线程
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 进入缓冲区的事件数
+     */
+    public long getPublishedCount() {
+        return published.sum();
+    }
+
+    /**
+     * 因缓冲区已满或写入失败被丢弃的事件数
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * 已写入文件的事件数
+     */
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    /**
+     * 环形缓冲区槽位
+     */
+    private static final class Slot {
+        volatile long sequence = -1;
+        long timestamp;
+        String level;
+        String event;
+        String account;
+        String outcome;
+        String detail;
+        Throwable error;
+
+        void clear() {
+            event = null;
+            account = null;
+            outcome = null;
+            detail = null;
+            error = null;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.totp.bulk;
+
+import com.example.totp.model.BulkRecord;
+import com.example.totp.model.Credential;
+import com.example.totp.service.TOTPEnginePool;
+import com.example.totp.store.CredentialStore;
+import com.example.totp.util.Base32;
+import com.example.totp.util.JsonUtil;
+import com.example.totp.util.QRCodeGenerator;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 批量导出：遍历凭据存储，逐条编码后直接写入输出流，不在内存中汇总整个数据集
+ * 二维码渲染开销远大于编码本身，只有调用方明确要求时才生成（且不经过二维码缓存，避免挤掉在线请求的缓存项）。
+ * 遍历是弱一致的，导出期间新注册或删除的账户可能出现也可能不出现。
+ */
+public final class BulkExporter {
+
+    private static final ObjectWriter RECORD_WRITER = JsonUtil.streamWriter(BulkRecord.class);
+
+    private BulkExporter() {
+    }
+
+    /**
+     * 导出所有凭据
+     * @param store 凭据存储
+     * @param format 输出格式
+     * @param includeQr 是否附带otpauth URI和Base64编码的二维码PNG
+     * @param out 输出流（调用方负责关闭）
+     * @return 导出的条数
+     * @throws IOException 写入失败
+     */
+    public static long export(CredentialStore store, BulkFormat format, boolean includeQr, OutputStream out)
+            throws IOException {
+        long[] count = new long[1];
+        try {
+            if (format == BulkFormat.CSV) {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                writer.write(BulkFormat.CSV_HEADER);
+                if (includeQr) {
+                    writer.write(BulkFormat.CSV_QR_COLUMNS);
+                }
+                writer.write('\n');
+                store.forEach(credential -> {
+                    try {
+                        writeCsv(writer, toRecord(credential, includeQr), includeQr);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    count[0]++;
+                });
+                writer.flush();
+            } else {
+                try (JsonGenerator generator = JsonUtil.createGenerator(out)) {
+                    store.forEach(credential -> {
+                        try {
+                            RECORD_WRITER.writeValue(generator, toRecord(credential, includeQr));
+                            generator.writeRaw('\n');
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        count[0]++;
+                    });
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return count[0];
+    }
+
+    private static BulkRecord toRecord(Credential credential, boolean includeQr) {
+        String secret = Base32.encode(credential.getKey());
+        BulkRecord record = new BulkRecord();
+        record.setAccountName(credential.getAccountName());
+        record.setIssuer(credential.getIssuer());
+        record.setSecret(secret);
+        record.setAlgorithm(TOTPEnginePool.uriAlgorithm(credential.getAlgorithm()));
+        record.setDigits(credential.getDigits());
+        record.setPeriod(credential.getPeriod());
+        if (includeQr) {
+            String uri = QRCodeGenerator.generateTOTPUri(secret, credential.getAccountName(), credential.getIssuer(),
+                    credential.getAlgorithm(), credential.getDigits(), credential.getPeriod());
+            record.setOtpauthUri(uri);
+            record.setQrCode(Base64.getEncoder().encodeToString(QRCodeGenerator.renderPng(uri)));
+        }
+        return record;
+    }
+
+    private static void writeCsv(Writer writer, BulkRecord record, boolean includeQr) throws IOException {
+        BulkFormat.writeCsvField(writer, record.getAccountName());
+        writer.write(',');
+        BulkFormat.writeCsvField(writer, record.getIssuer());
+        writer.write(',');
+        BulkFormat.writeCsvField(writer, record.getSecret());
+        writer.write(',');
+        BulkFormat.writeCsvField(writer, record.getAlgorithm());
+        writer.write(',');
+        writer.write(Integer.toString(record.getDigits()));
+        writer.write(',');
+        writer.write(Integer.toString(record.getPeriod()));
+        if (includeQr) {
+            writer.write(',');
+            BulkFormat.writeCsvField(writer, record.getOtpauthUri());
+            writer.write(',');
+            BulkFormat.writeCsvField(writer, record.getQrCode());
+        }
+        writer.write('\n');
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.totp.bulk;
+
+import com.example.totp.model.BulkRecord;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * 批量导入/导出的文件格式
+ * - NDJSON ：每行一个JSON对象，字段同{@link BulkRecord}
+ * - CSV ：列依次为accountName,issuer,secret,algorithm,digits,period（导出二维码时追加otpauthUri,qrCode），
+ *   第一行为表头时跳过；字段含逗号、引号或换行时用双引号包围，引号写两次（RFC 4180，引号内可以换行）
+ */
+public enum BulkFormat {
+
+    NDJSON("application/x-ndjson; charset=UTF-8"),
+    CSV("text/csv; charset=UTF-8");
+
+    // CSV表头
+    public static final String CSV_HEADER = "accountName,issuer,secret,algorithm,digits,period";
+
+    // 导出二维码时CSV追加的列
+    public static final String CSV_QR_COLUMNS = ",otpauthUri,qrCode";
+
+    private final String contentType;
+
+    BulkFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * 按查询参数或Content-Type确定格式：format=csv|ndjson优先，其次Content-Type含csv时为CSV，默认NDJSON
+     * @param format 查询参数，可为null
+     * @param contentType 请求的Content-Type，可为null
+     * @throws IllegalArgumentException format取值无效
+     */
+    public static BulkFormat of(String format, String contentType) {
+        if (format != null && !format.isEmpty()) {
+            switch (format.toLowerCase(Locale.ROOT)) {
+                case "csv":
+                    return CSV;
+                case "ndjson":
+                case "jsonl":
+                    return NDJSON;
+                default:
+                    throw new IllegalArgumentException("不支持的格式: " + format + "（可选ndjson、csv）");
+            }
+        }
+        if (contentType != null && contentType.toLowerCase(Locale.ROOT).contains("csv")) {
+            return CSV;
+        }
+        return NDJSON;
+    }
+
+    /**
+     * 是否为CSV表头行：前六列依次为表头的列名（不区分大小写，可以带引号）
+     * 只比较第一列的前缀会把第一行名为"accountName..."的账户当作表头丢掉
+     */
+    static boolean isCsvHeader(String line) {
+        String[] fields;
+        try {
+            fields = splitCsv(line);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        String[] names = CSV_HEADER.split(",");
+        for (int i = 0; i < names.length; i++) {
+            if (!names[i].equalsIgnoreCase(fields[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 解析一行CSV为记录
+     * @throws IllegalArgumentException 格式错误
+     */
+    static BulkRecord parseCsv(String line) {
+        String[] fields = splitCsv(line);
+        BulkRecord record = new BulkRecord();
+        record.setAccountName(emptyToNull(fields[0]));
+        record.setIssuer(emptyToNull(fields[1]));
+        record.setSecret(emptyToNull(fields[2]));
+        record.setAlgorithm(emptyToNull(fields[3]));
+        record.setDigits(parseInt(fields[4], "digits"));
+        record.setPeriod(parseInt(fields[5], "period"));
+        return record;
+    }
+
+    /**
+     * 把一行CSV拆成前六列（去掉首尾空白），不足六列的位置为null
+     * @throws IllegalArgumentException 引号未闭合或引号后不是逗号
+     */
+    private static String[] splitCsv(String line) {
+        String[] fields = new String[6];
+        int count = 0;
+        int length = line.length();
+        int i = 0;
+        StringBuilder field = new StringBuilder();
+        while (true) {
+            field.setLength(0);
+            if (i < length && line.charAt(i) == '"') {
+                // 带引号的字段
+                i++;
+                while (true) {
+                    if (i >= length) {
+                        throw new IllegalArgumentException("CSV引号未闭合");
+                    }
+                    char c = line.charAt(i++);
+                    if (c == '"') {
+                        if (i < length && line.charAt(i) == '"') {
+                            field.append('"');
+                            i++;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        field.append(c);
+                    }
+                }
+                if (i < length && line.charAt(i) != ',') {
+                    throw new IllegalArgumentException("CSV引号后应为逗号");
+                }
+            } else {
+                while (i < length && line.charAt(i) != ',') {
+                    field.append(line.charAt(i++));
+                }
+            }
+            if (count < fields.length) {
+                fields[count] = field.toString().trim();
+            }
+            count++;
+            if (i >= length) {
+                break;
+            }
+            i++; // 跳过逗号
+        }
+        return fields;
+    }
+
+    /**
+     * 写入一个CSV字段，必要时加引号
+     */
+    static void writeCsvField(Writer out, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                quote = true;
+                break;
+            }
+        }
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.write('"');
+            }
+            out.write(c);
+        }
+        out.write('"');
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    private static Integer parseInt(String value, String name) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + "不是整数: " + value);
+        }
+    }
+}
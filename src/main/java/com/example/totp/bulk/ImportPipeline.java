@@ -0,0 +1,560 @@
+package com.example.totp.bulk;
+
+import com.example.totp.model.BulkImportResponse;
+import com.example.totp.model.BulkRecord;
+import com.example.totp.service.TOTPEngine;
+import com.example.totp.service.TOTPService;
+import com.example.totp.util.Base32;
+import com.example.totp.util.JsonUtil;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 批量导入流水线
+ * 请求体按行读取并分批（每批batchSize行），依次经过以下阶段：
+ *   读取（调用线程）→ 解析（NDJSON/CSV）→ Base32校验 → 密钥生成 → 存储（单线程，按批次顺序）
+ * 解析、校验和密钥生成三个阶段各有workers个线程，可以在多个核上同时处理不同批次；
+ * 阶段之间是容量为queueBatches的有界队列，下游处理不过来时上游阻塞，最终阻塞读取线程，
+ * 由TCP流控反压到客户端，内存中同时存在的记录数有上限，与导入总量无关。
+ * 存储阶段按批次序号重新排序后交给{@link Sink}，同一账户出现多次时以文件中靠后的一行为准。
+ * 单条记录出错只跳过该行并记录行号；Sink抛出IOException时停止读取并让整个导入失败。
+ */
+public class ImportPipeline {
+
+    // 默认每批行数
+    public static final int DEFAULT_BATCH_SIZE = 512;
+
+    // 默认每个阶段间队列的批次容量
+    public static final int DEFAULT_QUEUE_BATCHES = 16;
+
+    // 默认单行最大字节数
+    public static final int DEFAULT_MAX_LINE_BYTES = 64 * 1024;
+
+    // 响应中最多列出的失败记录数
+    private static final int MAX_REPORTED_ERRORS = 100;
+
+    // 密钥最短长度（字节），Google Authenticator可接受的最短密钥为80位
+    private static final int MIN_KEY_BYTES = 10;
+
+    // 持久化格式中密钥长度为1字节
+    private static final int MAX_KEY_BYTES = 0xFF;
+
+    // 读取请求体的缓冲区大小
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    // 阶段结束标记
+    private static final Batch END = new Batch(-1, 0);
+
+    private static final ObjectReader RECORD_READER = JsonUtil.requestReader(BulkRecord.class);
+
+    /**
+     * 导入记录的存储回调，只在存储线程上按文件顺序调用
+     */
+    public interface Sink {
+
+        /**
+         * 存储一条已校验的记录
+         */
+        void accept(Item item) throws IOException;
+
+        /**
+         * 所有记录都已交给accept后调用（如等待预写日志落盘）
+         */
+        default void finish() throws IOException {
+        }
+    }
+
+    /**
+     * 一条导入记录，在各阶段之间原地填充
+     */
+    public static final class Item {
+
+        private final long line;
+
+        // 原始行文本，解析后释放
+        private String text;
+
+        private String accountName;
+        private String issuer;
+        private String secret;
+        private TOTPEngine engine;
+        private byte[] key;
+
+        // 出错原因，非null时后续阶段跳过该记录
+        private String error;
+
+        Item(long line, String text) {
+            this.line = line;
+            this.text = text;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public String getAccountName() {
+            return accountName;
+        }
+
+        public String getIssuer() {
+            return issuer;
+        }
+
+        public TOTPEngine getEngine() {
+            return engine;
+        }
+
+        public byte[] getKey() {
+            return key;
+        }
+    }
+
+    /**
+     * 一批记录
+     */
+    private static final class Batch {
+        final long sequence;
+        final Item[] items;
+        int size;
+
+        Batch(long sequence, int capacity) {
+            this.sequence = sequence;
+            this.items = new Item[capacity];
+        }
+    }
+
+    private final TOTPService totpService;
+
+    private final int workers;
+
+    private final int batchSize;
+
+    private final int queueBatches;
+
+    private final int maxLineBytes;
+
+    /**
+     * @param totpService TOTP服务（校验参数、生成密钥）
+     * @param workers 解析、校验、密钥生成每个阶段的线程数
+     * @param batchSize 每批行数
+     * @param queueBatches 阶段间队列的批次容量
+     * @param maxLineBytes 单行最大字节数
+     */
+    public ImportPipeline(TOTPService totpService, int workers, int batchSize, int queueBatches, int maxLineBytes) {
+        if (workers <= 0 || batchSize <= 0 || queueBatches <= 0 || maxLineBytes <= 0) {
+            throw new IllegalArgumentException("批量导入参数必须大于0");
+        }
+        this.totpService = totpService;
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.queueBatches = queueBatches;
+        this.maxLineBytes = maxLineBytes;
+    }
+
+    /**
+     * 按系统属性创建：-Dtotp.bulk.workers（默认CPU核数）、-Dtotp.bulk.batch-size（默认512）、
+     * -Dtotp.bulk.queue-batches（默认16）、-Dtotp.bulk.max-line-bytes（默认64KB）
+     */
+    public static ImportPipeline fromSystemProperties(TOTPService totpService) {
+        return new ImportPipeline(totpService,
+                Integer.getInteger("totp.bulk.workers", Runtime.getRuntime().availableProcessors()),
+                Integer.getInteger("totp.bulk.batch-size", DEFAULT_BATCH_SIZE),
+                Integer.getInteger("totp.bulk.queue-batches", DEFAULT_QUEUE_BATCHES),
+                Integer.getInteger("totp.bulk.max-line-bytes", DEFAULT_MAX_LINE_BYTES));
+    }
+
+    /**
+     * 执行一次导入，读取完输入并存储完所有记录后返回
+     * @param in 输入流（NDJSON或CSV）
+     * @param format 输入格式
+     * @param sink 存储回调
+     * @return 导入结果
+     * @throws IOException 读取输入或存储失败
+     */
+    public BulkImportResponse run(InputStream in, BulkFormat format, Sink sink) throws IOException {
+        return new Run(format, sink).execute(in);
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * 一次导入的运行状态
+     */
+    private final class Run {
+
+        private final BulkFormat format;
+
+        private final Sink sink;
+
+        private final BlockingQueue<Batch> toParse = new ArrayBlockingQueue<>(queueBatches);
+        private final BlockingQueue<Batch> toValidate = new ArrayBlockingQueue<>(queueBatches);
+        private final BlockingQueue<Batch> toDerive = new ArrayBlockingQueue<>(queueBatches);
+        private final BlockingQueue<Batch> toStore = new ArrayBlockingQueue<>(queueBatches);
+
+        // 存储失败的原因，非null后读取停止，各阶段只转发不处理
+        private volatile IOException failure;
+
+        // 以下统计只在存储线程上修改，join之后读取
+        private long total;
+        private long imported;
+        private long failed;
+        private final List<BulkImportResponse.LineError> errors = new ArrayList<>();
+
+        Run(BulkFormat format, Sink sink) {
+            this.format = format;
+            this.sink = sink;
+        }
+
+        BulkImportResponse execute(InputStream in) throws IOException {
+            List<Thread> threads = new ArrayList<>();
+            threads.addAll(startStage("bulk-parse", toParse, toValidate, this::parse));
+            threads.addAll(startStage("bulk-validate", toValidate, toDerive, this::validate));
+            threads.addAll(startStage("bulk-derive", toDerive, toStore, this::derive));
+            Thread storer = new Thread(this::store, "bulk-store");
+            storer.setDaemon(true);
+            storer.start();
+            threads.add(storer);
+
+            IOException readFailure = null;
+            try {
+                read(in);
+            } catch (IOException e) {
+                readFailure = e;
+            } finally {
+                // 无论读取是否成功都发出结束标记，让各阶段处理完已读入的批次后退出
+                putUninterruptibly(toParse, END);
+                for (Thread thread : threads) {
+                    joinUninterruptibly(thread);
+                }
+            }
+            if (readFailure != null) {
+                throw readFailure;
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return new BulkImportResponse(total, imported, failed, errors);
+        }
+
+        /**
+         * 按行读取输入，空行跳过，CSV的表头跳过
+         * CSV中引号内的换行属于字段内容，不结束记录（与导出时对含换行字段加引号对应），
+         * 记录的行号为它开始的物理行
+         */
+        private void read(InputStream in) throws IOException {
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            byte[] line = new byte[256];
+            int lineLength = 0;
+            boolean overflow = false;
+            boolean csv = format == BulkFormat.CSV;
+            // CSV引号状态，与BulkFormat.parseCsv一致：只有字段开头的引号开始引用，
+            // 不带引号字段中间的引号是普通字符；引号内的引号结束引用，紧跟的第二个引号是转义，回到引号内
+            boolean quoted = false;
+            boolean fieldStart = true;
+            boolean closedQuote = false;
+            long lineNumber = 0;
+            long recordLine = 1;
+            long sequence = 0;
+            Batch batch = new Batch(sequence++, batchSize);
+            int n;
+            while (failure == null && (n = in.read(buffer)) != -1) {
+                for (int i = 0; i < n; i++) {
+                    byte b = buffer[i];
+                    if (b == '\n') {
+                        lineNumber++;
+                    } else if (csv) {
+                        boolean opens = b == '"' && !quoted && (fieldStart || closedQuote);
+                        boolean closes = b == '"' && quoted;
+                        if (opens || closes) {
+                            quoted = opens;
+                        }
+                        closedQuote = closes;
+                        fieldStart = !quoted && b == ',';
+                    }
+                    if (b != '\n' || quoted) {
+                        if (overflow) {
+                            continue;
+                        }
+                        if (lineLength == maxLineBytes) {
+                            overflow = true;
+                            continue;
+                        }
+                        if (lineLength == line.length) {
+                            byte[] grown = new byte[Math.min(maxLineBytes, line.length * 2)];
+                            System.arraycopy(line, 0, grown, 0, lineLength);
+                            line = grown;
+                        }
+                        line[lineLength++] = b;
+                        continue;
+                    }
+                    Item item = toItem(line, lineLength, overflow, recordLine);
+                    recordLine = lineNumber + 1;
+                    lineLength = 0;
+                    overflow = false;
+                    fieldStart = true;
+                    closedQuote = false;
+                    if (item == null) {
+                        continue;
+                    }
+                    batch.items[batch.size++] = item;
+                    if (batch.size == batchSize) {
+                        put(toParse, batch);
+                        batch = new Batch(sequence++, batchSize);
+                    }
+                }
+            }
+            if (lineLength > 0 || overflow) {
+                // 最后一行没有换行符
+                Item item = toItem(line, lineLength, overflow, recordLine);
+                if (item != null) {
+                    batch.items[batch.size++] = item;
+                }
+            }
+            if (batch.size > 0) {
+                put(toParse, batch);
+            }
+        }
+
+        /**
+         * 把一行转为记录，空行和CSV表头返回null
+         */
+        private Item toItem(byte[] line, int length, boolean overflow, long lineNumber) {
+            if (overflow) {
+                Item item = new Item(lineNumber, null);
+                item.error = "行超过" + maxLineBytes + "字节";
+                return item;
+            }
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            String text = new String(line, 0, length, StandardCharsets.UTF_8);
+            if (text.trim().isEmpty()) {
+                return null;
+            }
+            if (format == BulkFormat.CSV && lineNumber == 1 && BulkFormat.isCsvHeader(text)) {
+                return null;
+            }
+            return new Item(lineNumber, text);
+        }
+
+        /**
+         * 解析阶段：文本 -> 字段
+         */
+        private void parse(Item item) {
+            BulkRecord record;
+            if (format == BulkFormat.CSV) {
+                record = BulkFormat.parseCsv(item.text);
+            } else {
+                try {
+                    record = RECORD_READER.readValue(item.text);
+                } catch (JsonProcessingException e) {
+                    throw new IllegalArgumentException("JSON格式错误: " + e.getOriginalMessage());
+                }
+                if (record == null) {
+                    throw new IllegalArgumentException("记录不能为空");
+                }
+            }
+            item.text = null;
+            item.accountName = record.getAccountName();
+            item.issuer = record.getIssuer();
+            item.secret = record.getSecret();
+            item.engine = totpService.getEngine(record.getAlgorithm(),
+                    record.getDigits() == null ? TOTPEngine.DEFAULT_DIGITS : record.getDigits(),
+                    record.getPeriod() == null ? TOTPEngine.DEFAULT_PERIOD : record.getPeriod());
+        }
+
+        /**
+         * 校验阶段：账户名称和Base32密钥
+         */
+        private void validate(Item item) {
+            if (item.accountName == null || item.accountName.isEmpty()) {
+                throw new IllegalArgumentException("账户名称不能为空");
+            }
+            if (item.secret == null || item.secret.isEmpty()) {
+                return;
+            }
+            byte[] key;
+            try {
+                key = Base32.decode(item.secret);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("密钥不是有效的Base32: " + e.getMessage());
+            }
+            if (key.length < MIN_KEY_BYTES) {
+                throw new IllegalArgumentException("密钥过短，至少需要" + (MIN_KEY_BYTES * 8) + "位");
+            }
+            if (key.length > MAX_KEY_BYTES) {
+                throw new IllegalArgumentException("密钥过长，最多" + MAX_KEY_BYTES + "字节");
+            }
+            item.secret = null;
+            item.key = key;
+        }
+
+        /**
+         * 密钥生成阶段：没有提供密钥的记录按算法生成新密钥
+         */
+        private void derive(Item item) {
+            if (item.key == null) {
+                item.key = totpService.generateKey(item.engine.getAlgorithm());
+            }
+        }
+
+        /**
+         * 存储阶段：按批次序号顺序交给Sink，并汇总结果
+         */
+        private void store() {
+            Map<Long, Batch> pending = new HashMap<>();
+            long next = 0;
+            try {
+                while (true) {
+                    Batch batch = toStore.take();
+                    if (batch == END) {
+                        break;
+                    }
+                    pending.put(batch.sequence, batch);
+                    while ((batch = pending.remove(next)) != null) {
+                        store(batch);
+                        next++;
+                    }
+                }
+                if (failure == null) {
+                    sink.finish();
+                }
+            } catch (IOException e) {
+                failure = e;
+            } catch (InterruptedException e) {
+                failure = new InterruptedIOException("批量导入被中断");
+            }
+        }
+
+        private void store(Batch batch) {
+            for (int i = 0; i < batch.size; i++) {
+                Item item = batch.items[i];
+                total++;
+                if (item.error == null && failure == null) {
+                    try {
+                        sink.accept(item);
+                        imported++;
+                        continue;
+                    } catch (IOException e) {
+                        failure = e;
+                        item.error = "存储失败: " + e.getMessage();
+                    } catch (RuntimeException e) {
+                        item.error = e.getMessage();
+                    }
+                } else if (item.error == null) {
+                    item.error = "导入已中止";
+                }
+                failed++;
+                if (errors.size() < MAX_REPORTED_ERRORS) {
+                    errors.add(new BulkImportResponse.LineError(item.line, item.error));
+                }
+            }
+        }
+
+        /**
+         * 启动一个并行阶段：每个线程取一批、逐条处理后交给下一阶段；
+         * 最后一个退出的线程把结束标记传给下一阶段，保证结束标记在所有批次之后
+         */
+        private List<Thread> startStage(String name, BlockingQueue<Batch> input, BlockingQueue<Batch> output,
+                                        Consumer<Item> work) {
+            AtomicInteger running = new AtomicInteger(workers);
+            List<Thread> threads = new ArrayList<>(workers);
+            for (int i = 0; i < workers; i++) {
+                Thread thread = new Thread(() -> {
+                    try {
+                        while (true) {
+                            Batch batch = input.take();
+                            if (batch == END) {
+                                // 放回去让同一阶段的其他线程也能看到
+                                input.put(END);
+                                break;
+                            }
+                            if (failure == null) {
+                                process(batch, work);
+                            }
+                            output.put(batch);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        if (running.decrementAndGet() == 0) {
+                            putUninterruptibly(output, END);
+                        }
+                    }
+                }, name + "-" + i);
+                thread.setDaemon(true);
+                thread.start();
+                threads.add(thread);
+            }
+            return threads;
+        }
+
+        private void process(Batch batch, Consumer<Item> work) {
+            for (int i = 0; i < batch.size; i++) {
+                Item item = batch.items[i];
+                if (item.error != null) {
+                    continue;
+                }
+                try {
+                    work.accept(item);
+                } catch (RuntimeException e) {
+                    item.error = e.getMessage() == null ? e.toString() : e.getMessage();
+                }
+            }
+        }
+
+        private void put(BlockingQueue<Batch> queue, Batch batch) throws IOException {
+            try {
+                queue.put(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("批量导入被中断");
+            }
+        }
+    }
+
+    private static void putUninterruptibly(BlockingQueue<Batch> queue, Batch batch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(batch);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void joinUninterruptibly(Thread thread) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
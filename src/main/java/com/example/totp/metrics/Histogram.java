@@ -0,0 +1,91 @@
+package com.example.totp.metrics;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 固定分桶的延迟直方图
+ * 分桶上界固定（1微秒到10秒），记录一次耗时只是一次分桶查找加两次LongAdder累加，
+ * 不加锁也不分配对象，可以放在HMAC计算这样的热点路径上。
+ */
+public final class Histogram {
+
+    // 分桶上界（纳秒），最后还有一个+Inf桶
+    static final long[] BOUNDS = {
+        1_000L, 2_500L, 5_000L, 10_000L, 25_000L, 50_000L, 100_000L, 250_000L, 500_000L,
+        1_000_000L, 2_500_000L, 5_000_000L, 10_000_000L, 25_000_000L, 50_000_000L,
+        100_000_000L, 250_000_000L, 500_000_000L,
+        1_000_000_000L, 2_500_000_000L, 5_000_000_000L, 10_000_000_000L
+    };
+
+    // 分桶上界的文本形式（秒），用于输出le标签
+    static final String[] BOUND_LABELS = new String[BOUNDS.length];
+
+    static {
+        for (int i = 0; i < BOUNDS.length; i++) {
+            BOUND_LABELS[i] = BigDecimal.valueOf(BOUNDS[i], 9).stripTrailingZeros().toPlainString();
+        }
+    }
+
+    // 各桶的计数（非累计），最后一个为+Inf桶
+    private final LongAdder[] buckets = new LongAdder[BOUNDS.length + 1];
+
+    // 耗时总和（纳秒）
+    private final LongAdder sum = new LongAdder();
+
+    Histogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 记录一次耗时
+     * @param nanos 耗时（纳秒）
+     */
+    public void record(long nanos) {
+        int index = 0;
+        while (index < BOUNDS.length && nanos > BOUNDS[index]) {
+            index++;
+        }
+        buckets[index].increment();
+        sum.add(nanos);
+    }
+
+    /**
+     * 记录从startNanos（System.nanoTime()）到现在的耗时
+     * @param startNanos 开始时间
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * 记录次数
+     */
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    /**
+     * 耗时总和（纳秒）
+     */
+    public long getSumNanos() {
+        return sum.sum();
+    }
+
+    /**
+     * 各桶的计数（非累计）快照
+     */
+    long[] snapshot() {
+        long[] counts = new long[buckets.length];
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.totp.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 全局指标
+ * 服务层和工具类的热点路径直接引用这里的静态实例，服务器在/api/metrics输出{@link #REGISTRY}的内容
+ */
+public final class Metrics {
+
+    // 全局指标注册表
+    public static final MetricsRegistry REGISTRY = new MetricsRegistry();
+
+    // HMAC计算（生成或窗口验证一次验证码）耗时
+    public static final Histogram HMAC = REGISTRY.histogram("totp_hmac_duration_seconds",
+            "Time spent computing TOTP codes (one generate or one window verify)");
+
+    // Base32密钥解码耗时
+    public static final Histogram BASE32_DECODE = REGISTRY.histogram("totp_base32_decode_duration_seconds",
+            "Time spent decoding Base32 secret keys");
+
+    // 二维码渲染耗时（不含缓存命中）
+    public static final Histogram QR_RENDER = REGISTRY.histogram("totp_qr_render_duration_seconds",
+            "Time spent rendering QR code PNGs on cache miss");
+
+    // 二维码缓存命中/未命中次数
+    public static final LongAdder QR_CACHE_HITS = REGISTRY.counter("totp_qr_cache_requests_total",
+            "QR code cache lookups", "result=\"hit\"");
+    public static final LongAdder QR_CACHE_MISSES = REGISTRY.counter("totp_qr_cache_requests_total",
+            "QR code cache lookups", "result=\"miss\"");
+
+    // 验证结果计数
+    public static final LongAdder VERIFY_VALID = REGISTRY.counter("totp_verify_total",
+            "Verification attempts by result", "result=\"valid\"");
+    public static final LongAdder VERIFY_INVALID = REGISTRY.counter("totp_verify_total",
+            "Verification attempts by result", "result=\"invalid\"");
+    public static final LongAdder VERIFY_ALREADY_USED = REGISTRY.counter("totp_verify_total",
+            "Verification attempts by result", "result=\"already_used\"");
+    public static final LongAdder VERIFY_RATE_LIMITED = REGISTRY.counter("totp_verify_total",
+            "Verification attempts by result", "result=\"rate_limited\"");
+    public static final LongAdder VERIFY_UNKNOWN_ACCOUNT = REGISTRY.counter("totp_verify_total",
+            "Verification attempts by result", "result=\"unknown_account\"");
+
+    // 注册次数
+    public static final LongAdder ENROLLMENTS = REGISTRY.counter("totp_enrollments_total",
+            "Credentials enrolled through /api/generate");
+
+    // 批量导入/导出的记录数
+    public static final LongAdder BULK_IMPORTED = REGISTRY.counter("totp_bulk_records_total",
+            "Records processed by bulk import/export", "result=\"imported\"");
+    public static final LongAdder BULK_IMPORT_FAILED = REGISTRY.counter("totp_bulk_records_total",
+            "Records processed by bulk import/export", "result=\"import_failed\"");
+    public static final LongAdder BULK_EXPORTED = REGISTRY.counter("totp_bulk_records_total",
+            "Records processed by bulk import/export", "result=\"exported\"");
+
+    private Metrics() {
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.totp.metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 指标注册表
+ * 管理计数器（LongAdder）、直方图和由其他组件提供读数的指标，并输出Prometheus文本格式（0.0.4）。
+ * 注册一般在启动时完成；记录指标时不经过注册表，直接操作返回的LongAdder/Histogram。
+ */
+public final class MetricsRegistry {
+
+    private enum Type {
+        COUNTER("counter"), GAUGE("gauge"), HISTOGRAM("histogram");
+
+        private final String text;
+
+        Type(String text) {
+            this.text = text;
+        }
+    }
+
+    // 已注册的指标，按注册顺序输出
+    private final List<Entry> entries = new CopyOnWriteArrayList<>();
+
+    /**
+     * 注册计数器
+     * @param name 指标名称
+     * @param help 说明
+     * @return 计数器
+     */
+    public LongAdder counter(String name, String help) {
+        return counter(name, help, "");
+    }
+
+    /**
+     * 注册带标签的计数器
+     * @param name 指标名称
+     * @param help 说明
+     * @param labels 标签，如 result="valid"
+     * @return 计数器
+     */
+    public LongAdder counter(String name, String help, String labels) {
+        LongAdder adder = new LongAdder();
+        entries.add(new Entry(name, labels, help, Type.COUNTER, adder::sum, null));
+        return adder;
+    }
+
+    /**
+     * 注册直方图
+     * @param name 指标名称（以_seconds结尾）
+     * @param help 说明
+     * @return 直方图
+     */
+    public Histogram histogram(String name, String help) {
+        return histogram(name, help, "");
+    }
+
+    /**
+     * 注册带标签的直方图
+     * @param name 指标名称（以_seconds结尾）
+     * @param help 说明
+     * @param labels 标签，如 handler="/api/verify"
+     * @return 直方图
+     */
+    public Histogram histogram(String name, String help, String labels) {
+        Histogram histogram = new Histogram();
+        entries.add(new Entry(name, labels, help, Type.HISTOGRAM, null, histogram));
+        return histogram;
+    }
+
+    /**
+     * 注册由其他组件维护的累计值（如线程池拒绝次数）
+     * @param name 指标名称
+     * @param help 说明
+     * @param reader 读取当前值
+     */
+    public void counterFunction(String name, String help, LongSupplier reader) {
+        entries.add(new Entry(name, "", help, Type.COUNTER, reader, null));
+    }
+
+    /**
+     * 注册瞬时值（如活跃线程数）
+     * @param name 指标名称
+     * @param help 说明
+     * @param reader 读取当前值
+     */
+    public void gauge(String name, String help, LongSupplier reader) {
+        entries.add(new Entry(name, "", help, Type.GAUGE, reader, null));
+    }
+
+    /**
+     * 输出Prometheus文本格式
+     * @return 指标文本
+     */
+    public String toPrometheusText() {
+        // 同名指标（不同标签）合并在同一个HELP/TYPE下
+        Map<String, List<Entry>> families = new LinkedHashMap<>();
+        for (Entry entry : entries) {
+            families.computeIfAbsent(entry.name, k -> new ArrayList<>()).add(entry);
+        }
+
+        StringBuilder sb = new StringBuilder(4096);
+        for (Map.Entry<String, List<Entry>> family : families.entrySet()) {
+            Entry first = family.getValue().get(0);
+            sb.append("# HELP ").append(first.name).append(' ').append(first.help).append('\n');
+            sb.append("# TYPE ").append(first.name).append(' ').append(first.type.text).append('\n');
+            for (Entry entry : family.getValue()) {
+                if (entry.type == Type.HISTOGRAM) {
+                    writeHistogram(sb, entry);
+                } else {
+                    sb.append(entry.name);
+                    if (!entry.labels.isEmpty()) {
+                        sb.append('{').append(entry.labels).append('}');
+                    }
+                    sb.append(' ').append(entry.reader.getAsLong()).append('\n');
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void writeHistogram(StringBuilder sb, Entry entry) {
+        long[] counts = entry.histogram.snapshot();
+        String prefix = entry.labels.isEmpty() ? "" : entry.labels + ",";
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            sb.append(entry.name).append("_bucket{").append(prefix).append("le=\"");
+            if (i < Histogram.BOUNDS.length) {
+                sb.append(Histogram.BOUND_LABELS[i]);
+            } else {
+                sb.append("+Inf");
+            }
+            sb.append("\"} ").append(cumulative).append('\n');
+        }
+        String labels = entry.labels.isEmpty() ? "" : "{" + entry.labels + "}";
+        sb.append(entry.name).append("_sum").append(labels).append(' ')
+          .append(entry.histogram.getSumNanos() / 1e9).append('\n');
+        sb.append(entry.name).append("_count").append(labels).append(' ').append(cumulative).append('\n');
+    }
+
+    private static final class Entry {
+        final String name;
+        final String labels;
+        final String help;
+        final Type type;
+        final LongSupplier reader;
+        final Histogram histogram;
+
+        Entry(String name, String labels, String help, Type type, LongSupplier reader, Histogram histogram) {
+            this.name = name;
+            this.labels = labels;
+            this.help = help;
+            this.type = type;
+            this.reader = reader;
+            this.histogram = histogram;
+        }
+    }
+}
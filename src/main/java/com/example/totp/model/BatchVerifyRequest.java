@@ -0,0 +1,72 @@
+package com.example.totp.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量验证请求数据模型
+ * 格式：{"items":[{"accountName":"...","code":"123456"}, ...]}
+ */
+public class BatchVerifyRequest {
+    
+    // 待验证的（账户, 验证码）列表
+    private List<Item> items = new ArrayList<>();
+    
+    /**
+     * 默认构造函数
+     */
+    public BatchVerifyRequest() {
+    }
+    
+    public List<Item> getItems() {
+        return items;
+    }
+    
+    public void setItems(List<Item> items) {
+        this.items = items;
+    }
+    
+    /**
+     * 单条验证请求
+     */
+    public static class Item {
+        
+        // 账户名称
+        private String accountName;
+        
+        // 用户输入的验证码
+        private String code;
+        
+        /**
+         * 默认构造函数
+         */
+        public Item() {
+        }
+        
+        /**
+         * 带参数的构造函数
+         * @param accountName 账户名称
+         * @param code 验证码
+         */
+        public Item(String accountName, String code) {
+            this.accountName = accountName;
+            this.code = code;
+        }
+        
+        public String getAccountName() {
+            return accountName;
+        }
+        
+        public void setAccountName(String accountName) {
+            this.accountName = accountName;
+        }
+        
+        public String getCode() {
+            return code;
+        }
+        
+        public void setCode(String code) {
+            this.code = code;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.totp.model;
+
+/**
+ * 批量验证的响应数据
+ * results与请求顺序一致：0-错误，1-正确，2-已使用，3-账户不存在，4-被限流
+ */
+public class BatchVerifyResponse {
+    
+    // 请求条数
+    private int total;
+    
+    // 验证正确的条数
+    private int valid;
+    
+    // 每条的验证结果
+    private int[] results;
+    
+    /**
+     * 默认构造函数
+     */
+    public BatchVerifyResponse() {
+    }
+    
+    /**
+     * 带参数的构造函数
+     * @param total 请求条数
+     * @param valid 验证正确的条数
+     * @param results 每条的验证结果
+     */
+    public BatchVerifyResponse(int total, int valid, int[] results) {
+        this.total = total;
+        this.valid = valid;
+        this.results = results;
+    }
+    
+    // Getter和Setter方法
+    
+    public int getTotal() {
+        return total;
+    }
+    
+    public void setTotal(int total) {
+        this.total = total;
+    }
+    
+    public int getValid() {
+        return valid;
+    }
+    
+    public void setValid(int valid) {
+        this.valid = valid;
+    }
+    
+    public int[] getResults() {
+        return results;
+    }
+    
+    public void setResults(int[] results) {
+        this.results = results;
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.totp.model;
+
+import java.util.List;
+
+/**
+ * 批量导入的响应数据
+ * errors只列出前若干条失败记录（行号从1开始），failed为失败总数
+ */
+public class BulkImportResponse {
+    
+    // 读取的记录条数（不含空行和CSV表头）
+    private long total;
+    
+    // 成功导入的条数
+    private long imported;
+    
+    // 失败的条数
+    private long failed;
+    
+    // 失败记录明细（最多若干条）
+    private List<LineError> errors;
+    
+    /**
+     * 默认构造函数
+     */
+    public BulkImportResponse() {
+    }
+    
+    /**
+     * 带参数的构造函数
+     * @param total 读取的记录条数
+     * @param imported 成功导入的条数
+     * @param failed 失败的条数
+     * @param errors 失败记录明细
+     */
+    public BulkImportResponse(long total, long imported, long failed, List<LineError> errors) {
+        this.total = total;
+        this.imported = imported;
+        this.failed = failed;
+        this.errors = errors;
+    }
+    
+    // Getter和Setter方法
+    
+    public long getTotal() {
+        return total;
+    }
+    
+    public void setTotal(long total) {
+        this.total = total;
+    }
+    
+    public long getImported() {
+        return imported;
+    }
+    
+    public void setImported(long imported) {
+        this.imported = imported;
+    }
+    
+    public long getFailed() {
+        return failed;
+    }
+    
+    public void setFailed(long failed) {
+        this.failed = failed;
+    }
+    
+    public List<LineError> getErrors() {
+        return errors;
+    }
+    
+    public void setErrors(List<LineError> errors) {
+        this.errors = errors;
+    }
+    
+    /**
+     * 一条失败记录
+     */
+    public static class LineError {
+        
+        // 行号（从1开始）
+        private long line;
+        
+        // 失败原因
+        private String message;
+        
+        public LineError() {
+        }
+        
+        public LineError(long line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+        
+        public long getLine() {
+            return line;
+        }
+        
+        public void setLine(long line) {
+            this.line = line;
+        }
+        
+        public String getMessage() {
+            return message;
+        }
+        
+        public void setMessage(String message) {
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.totp.model;
+
+/**
+ * 批量导入/导出的请求参数（查询字符串：format、qr）
+ */
+public class BulkQuery {
+    
+    // 文件格式：ndjson或csv，为空时按Content-Type判断
+    private String format;
+    
+    // 导出时是否附带otpauth URI和二维码
+    private Boolean qr;
+    
+    /**
+     * 默认构造函数
+     */
+    public BulkQuery() {
+    }
+    
+    public String getFormat() {
+        return format;
+    }
+    
+    public void setFormat(String format) {
+        this.format = format;
+    }
+    
+    public Boolean getQr() {
+        return qr;
+    }
+    
+    public void setQr(Boolean qr) {
+        this.qr = qr;
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.totp.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * 批量导入/导出的单条账户记录（NDJSON的一行或CSV的一行）
+ * 导入时secret为空表示由服务器生成密钥；algorithm、digits、period为空时使用默认值。
+ * 导出时只有请求了二维码才填写otpauthUri和qrCode。
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BulkRecord {
+    
+    // 账户名称
+    private String accountName;
+    
+    // 发行者
+    private String issuer;
+    
+    // Base32编码的密钥
+    private String secret;
+    
+    // HMAC算法（SHA1/SHA256/SHA512）
+    private String algorithm;
+    
+    // 验证码位数
+    private Integer digits;
+    
+    // 时间步长度（秒）
+    private Integer period;
+    
+    // otpauth URI（仅导出且请求二维码时）
+    private String otpauthUri;
+    
+    // Base64编码的二维码PNG（仅导出且请求二维码时）
+    private String qrCode;
+    
+    /**
+     * 默认构造函数
+     */
+    public BulkRecord() {
+    }
+    
+    // Getter和Setter方法
+    
+    public String getAccountName() {
+        return accountName;
+    }
+    
+    public void setAccountName(String accountName) {
+        this.accountName = accountName;
+    }
+    
+    public String getIssuer() {
+        return issuer;
+    }
+    
+    public void setIssuer(String issuer) {
+        this.issuer = issuer;
+    }
+    
+    public String getSecret() {
+        return secret;
+    }
+    
+    public void setSecret(String secret) {
+        this.secret = secret;
+    }
+    
+    public String getAlgorithm() {
+        return algorithm;
+    }
+    
+    public void setAlgorithm(String algorithm) {
+        this.algorithm = algorithm;
+    }
+    
+    public Integer getDigits() {
+        return digits;
+    }
+    
+    public void setDigits(Integer digits) {
+        this.digits = digits;
+    }
+    
+    public Integer getPeriod() {
+        return period;
+    }
+    
+    public void setPeriod(Integer period) {
+        this.period = period;
+    }
+    
+    public String getOtpauthUri() {
+        return otpauthUri;
+    }
+    
+    public void setOtpauthUri(String otpauthUri) {
+        this.otpauthUri = otpauthUri;
+    }
+    
+    public String getQrCode() {
+        return qrCode;
+    }
+    
+    public void setQrCode(String qrCode) {
+        this.qrCode = qrCode;
+    }
+}
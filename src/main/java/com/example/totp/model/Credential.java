@@ -0,0 +1,140 @@
+package com.example.totp.model;
+
+/**
+ * 已注册账户的TOTP凭据
+ * 密钥以解码后的原始字节保存，验证时无需再做Base32解码；对象创建后不可变
+ */
+public final class Credential {
+    
+    // 默认参数：HmacSHA1、6位、30秒（与大多数验证器App兼容）
+    public static final String DEFAULT_ALGORITHM = "HmacSHA1";
+    public static final int DEFAULT_DIGITS = 6;
+    public static final int DEFAULT_PERIOD = 30;
+    
+    // 其余支持的HMAC算法（规范名称）
+    public static final String ALGORITHM_SHA256 = "HmacSHA256";
+    public static final String ALGORITHM_SHA512 = "HmacSHA512";
+    
+    // 凭据编号（由凭据存储分配，从1开始递增）
+    private final long id;
+    
+    // 账户名称（账户标识）
+    private final String accountName;
+    
+    // 发行者（应用名称）
+    private final String issuer;
+    
+    // 原始密钥字节（调用方不得修改）
+    private final byte[] key;
+    
+    // HMAC算法（规范名称，验证时按名称直接查找引擎，不再重新规范化）
+    private final String algorithm;
+    
+    // 验证码位数
+    private final int digits;
+    
+    // 时间步长度（秒）
+    private final int period;
+    
+    /**
+     * 使用默认参数的构造函数
+     * @param id 凭据编号
+     * @param accountName 账户名称
+     * @param issuer 发行者
+     * @param key 原始密钥字节
+     */
+    public Credential(long id, String accountName, String issuer, byte[] key) {
+        this(id, accountName, issuer, key, DEFAULT_ALGORITHM, DEFAULT_DIGITS, DEFAULT_PERIOD);
+    }
+    
+    /**
+     * 构造函数
+     * @param id 凭据编号
+     * @param accountName 账户名称
+     * @param issuer 发行者
+     * @param key 原始密钥字节
+     * @param algorithm HMAC算法规范名称，如HmacSHA256（入口处已规范化，null表示默认算法）
+     * @param digits 验证码位数
+     * @param period 时间步长度（秒）
+     */
+    public Credential(long id, String accountName, String issuer, byte[] key, String algorithm, int digits, int period) {
+        this.id = id;
+        this.accountName = accountName;
+        this.issuer = issuer;
+        this.key = key;
+        this.algorithm = canonical(algorithm);
+        this.digits = digits;
+        this.period = period;
+    }
+    
+    public long getId() {
+        return id;
+    }
+    
+    public String getAccountName() {
+        return accountName;
+    }
+    
+    public String getIssuer() {
+        return issuer;
+    }
+    
+    /**
+     * 获取原始密钥字节
+     * 返回内部数组本身而不是副本，TOTPEngine的MAC实现把已初始化的Mac原型弱引用地挂在这个数组上，随凭据一起回收
+     * @return 原始密钥字节
+     */
+    public byte[] getKey() {
+        return key;
+    }
+    
+    public String getAlgorithm() {
+        return algorithm;
+    }
+    
+    public int getDigits() {
+        return digits;
+    }
+    
+    public int getPeriod() {
+        return period;
+    }
+    
+    /**
+     * 是否使用默认参数（持久化时据此省略参数字段）
+     */
+    public boolean hasDefaultParameters() {
+        return DEFAULT_ALGORITHM.equals(algorithm) && digits == DEFAULT_DIGITS && period == DEFAULT_PERIOD;
+    }
+    
+    /**
+     * 把规范的算法名称替换为共享的常量（从日志恢复的名称是新建的字符串），其他名称原样保留
+     */
+    private static String canonical(String algorithm) {
+        if (algorithm == null) {
+            return DEFAULT_ALGORITHM;
+        }
+        switch (algorithm) {
+            case DEFAULT_ALGORITHM:
+                return DEFAULT_ALGORITHM;
+            case ALGORITHM_SHA256:
+                return ALGORITHM_SHA256;
+            case ALGORITHM_SHA512:
+                return ALGORITHM_SHA512;
+            default:
+                return algorithm;
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return "Credential{" +
+               "id=" + id +
+               ", accountName='" + accountName + '\'' +
+               ", issuer='" + issuer + '\'' +
+               ", algorithm='" + algorithm + '\'' +
+               ", digits=" + digits +
+               ", period=" + period +
+               '}';
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.totp.model;
+
+/**
+ * 获取当前验证码的响应数据
+ */
+public class CurrentCodeResponse {
+    
+    // 当前验证码
+    private String currentCode;
+    
+    // 配置信息
+    private String config;
+    
+    /**
+     * 默认构造函数
+     */
+    public CurrentCodeResponse() {
+    }
+    
+    /**
+     * 带参数的构造函数
+     * @param currentCode 当前验证码
+     * @param config 配置信息
+     */
+    public CurrentCodeResponse(String currentCode, String config) {
+        this.currentCode = currentCode;
+        this.config = config;
+    }
+    
+    // Getter和Setter方法
+    
+    public String getCurrentCode() {
+        return currentCode;
+    }
+    
+    public void setCurrentCode(String currentCode) {
+        this.currentCode = currentCode;
+    }
+    
+    public String getConfig() {
+        return config;
+    }
+    
+    public void setConfig(String config) {
+        this.config = config;
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.totp.model;
+
+/**
+ * 生成TOTP配置的请求数据
+ * 表单或JSON：accountName、issuer，可选algorithm（SHA1/SHA256/SHA512）、digits、period
+ */
+public class GenerateRequest {
+    
+    // 账户名称
+    private String accountName;
+    
+    // 发行者名称
+    private String issuer;
+    
+    // HMAC算法，未填写时使用默认算法
+    private String algorithm;
+    
+    // 验证码位数，未填写时使用默认位数
+    private Integer digits;
+    
+    // 时间步长度（秒），未填写时使用默认长度
+    private Integer period;
+    
+    /**
+     * 默认构造函数
+     */
+    public GenerateRequest() {
+    }
+    
+    // Getter和Setter方法
+    
+    public String getAccountName() {
+        return accountName;
+    }
+    
+    public void setAccountName(String accountName) {
+        this.accountName = accountName;
+    }
+    
+    public String getIssuer() {
+        return issuer;
+    }
+    
+    public void setIssuer(String issuer) {
+        this.issuer = issuer;
+    }
+    
+    public String getAlgorithm() {
+        return algorithm;
+    }
+    
+    public void setAlgorithm(String algorithm) {
+        this.algorithm = algorithm;
+    }
+    
+    public Integer getDigits() {
+        return digits;
+    }
+    
+    public void setDigits(Integer digits) {
+        this.digits = digits;
+    }
+    
+    public Integer getPeriod() {
+        return period;
+    }
+    
+    public void setPeriod(Integer period) {
+        this.period = period;
+    }
+}
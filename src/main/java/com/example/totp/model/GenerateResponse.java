@@ -0,0 +1,92 @@
+package com.example.totp.model;
+
+/**
+ * 生成TOTP配置的响应数据
+ */
+public class GenerateResponse {
+    
+    // Base32编码的密钥
+    private String secretKey;
+    
+    // 账户名称
+    private String accountName;
+    
+    // 发行者名称
+    private String issuer;
+    
+    // 当前验证码
+    private String currentCode;
+    
+    // 二维码图片地址
+    private String qrCodeUrl;
+    
+    // 查看当前验证码的令牌（/api/current-code与/api/current-code/stream使用）
+    private String codeToken;
+    
+    // 配置信息
+    private String configInfo;
+    
+    /**
+     * 默认构造函数
+     */
+    public GenerateResponse() {
+    }
+    
+    // Getter和Setter方法
+    
+    public String getSecretKey() {
+        return secretKey;
+    }
+    
+    public void setSecretKey(String secretKey) {
+        this.secretKey = secretKey;
+    }
+    
+    public String getAccountName() {
+        return accountName;
+    }
+    
+    public void setAccountName(String accountName) {
+        this.accountName = accountName;
+    }
+    
+    public String getIssuer() {
+        return issuer;
+    }
+    
+    public void setIssuer(String issuer) {
+        this.issuer = issuer;
+    }
+    
+    public String getCurrentCode() {
+        return currentCode;
+    }
+    
+    public void setCurrentCode(String currentCode) {
+        this.currentCode = currentCode;
+    }
+    
+    public String getQrCodeUrl() {
+        return qrCodeUrl;
+    }
+    
+    public void setQrCodeUrl(String qrCodeUrl) {
+        this.qrCodeUrl = qrCodeUrl;
+    }
+    
+    public String getCodeToken() {
+        return codeToken;
+    }
+    
+    public void setCodeToken(String codeToken) {
+        this.codeToken = codeToken;
+    }
+    
+    public String getConfigInfo() {
+        return configInfo;
+    }
+    
+    public void setConfigInfo(String configInfo) {
+        this.configInfo = configInfo;
+    }
+}
@@ -21,6 +21,15 @@ public class TOTPConfig {
     // 二维码图片的Base64数据
     private String qrCodeImage;
     
+    // HMAC算法
+    private String algorithm = Credential.DEFAULT_ALGORITHM;
+    
+    // 验证码位数
+    private int digits = Credential.DEFAULT_DIGITS;
+    
+    // 时间步长度（秒）
+    private int period = Credential.DEFAULT_PERIOD;
+    
     /**
      * 默认构造函数
      */
@@ -81,21 +90,59 @@ public class TOTPConfig {
         this.qrCodeImage = qrCodeImage;
     }
     
+    public String getAlgorithm() {
+        return algorithm;
+    }
+    
+    public void setAlgorithm(String algorithm) {
+        this.algorithm = algorithm;
+    }
+    
+    public int getDigits() {
+        return digits;
+    }
+    
+    public void setDigits(int digits) {
+        this.digits = digits;
+    }
+    
+    public int getPeriod() {
+        return period;
+    }
+    
+    public void setPeriod(int period) {
+        this.period = period;
+    }
+    
     /**
-     * 生成配置信息的字符串表示
+     * 生成配置信息的字符串表示（展示给用户，密钥只保留前4位，完整密钥由调用方单独返回）
      * @return 配置信息字符串
      */
     public String getConfigInfo() {
-        return String.format("账户: %s, 发行者: %s, 密钥: %s", accountName, issuer, secretKey);
+        return String.format("账户: %s, 发行者: %s, 密钥: %s, 算法: %s, 位数: %d, 时间窗口: %d秒",
+                accountName, issuer, maskSecret(secretKey), algorithm, digits, period);
     }
     
+    /**
+     * 日志用的字符串表示，密钥只保留前4位
+     */
     @Override
     public String toString() {
         return "TOTPConfig{" +
-               "secretKey='" + secretKey + '\'' +
+               "secretKey='" + maskSecret(secretKey) + '\'' +
                ", accountName='" + accountName + '\'' +
                ", issuer='" + issuer + '\'' +
                ", currentCode='" + currentCode + '\'' +
+               ", algorithm='" + algorithm + '\'' +
+               ", digits=" + digits +
+               ", period=" + period +
                '}';
     }
+    
+    private static String maskSecret(String secret) {
+        if (secret == null || secret.length() <= 4) {
+            return "****";
+        }
+        return secret.substring(0, 4) + "****";
+    }
 }
\ No newline at end of file
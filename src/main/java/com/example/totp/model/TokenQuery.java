@@ -0,0 +1,24 @@
+package com.example.totp.model;
+
+/**
+ * 凭令牌访问凭据的请求参数（查询字符串：token，由/api/generate签发）
+ */
+public class TokenQuery {
+    
+    // 注册时签发的令牌
+    private String token;
+    
+    /**
+     * 默认构造函数
+     */
+    public TokenQuery() {
+    }
+    
+    public String getToken() {
+        return token;
+    }
+    
+    public void setToken(String token) {
+        this.token = token;
+    }
+}
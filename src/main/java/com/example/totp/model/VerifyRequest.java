@@ -0,0 +1,38 @@
+package com.example.totp.model;
+
+/**
+ * 验证TOTP验证码的请求数据
+ * 表单或JSON：accountName、code
+ */
+public class VerifyRequest {
+    
+    // 账户名称
+    private String accountName;
+    
+    // 用户输入的验证码
+    private String code;
+    
+    /**
+     * 默认构造函数
+     */
+    public VerifyRequest() {
+    }
+    
+    // Getter和Setter方法
+    
+    public String getAccountName() {
+        return accountName;
+    }
+    
+    public void setAccountName(String accountName) {
+        this.accountName = accountName;
+    }
+    
+    public String getCode() {
+        return code;
+    }
+    
+    public void setCode(String code) {
+        this.code = code;
+    }
+}
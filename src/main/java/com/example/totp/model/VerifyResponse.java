@@ -0,0 +1,73 @@
+package com.example.totp.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * 验证TOTP验证码的响应数据
+ */
+public class VerifyResponse {
+    
+    // 验证码是否正确
+    private boolean valid;
+    
+    // 验证码是否已被使用
+    private boolean alreadyUsed;
+    
+    // 用户输入的验证码
+    private String userCode;
+    
+    // 命中的时间步偏移，验证失败时为null
+    private Integer driftSteps;
+    
+    // 当前期望的验证码，只在验证成功时返回
+    private String expectedCode;
+    
+    /**
+     * 默认构造函数
+     */
+    public VerifyResponse() {
+    }
+    
+    // Getter和Setter方法
+    
+    @JsonProperty("isValid")
+    public boolean isValid() {
+        return valid;
+    }
+    
+    public void setValid(boolean valid) {
+        this.valid = valid;
+    }
+    
+    public boolean isAlreadyUsed() {
+        return alreadyUsed;
+    }
+    
+    public void setAlreadyUsed(boolean alreadyUsed) {
+        this.alreadyUsed = alreadyUsed;
+    }
+    
+    public String getUserCode() {
+        return userCode;
+    }
+    
+    public void setUserCode(String userCode) {
+        this.userCode = userCode;
+    }
+    
+    public Integer getDriftSteps() {
+        return driftSteps;
+    }
+    
+    public void setDriftSteps(Integer driftSteps) {
+        this.driftSteps = driftSteps;
+    }
+    
+    public String getExpectedCode() {
+        return expectedCode;
+    }
+    
+    public void setExpectedCode(String expectedCode) {
+        this.expectedCode = expectedCode;
+    }
+}
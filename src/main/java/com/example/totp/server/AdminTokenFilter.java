@@ -0,0 +1,67 @@
+package com.example.totp.server;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 管理令牌过滤器
+ * 批量导入/导出等管理接口要求请求携带"Authorization: Bearer 令牌"，令牌不符时返回401，不进入业务处理器。
+ * 比较的是两边令牌的SHA-256摘要（MessageDigest.isEqual），耗时与令牌内容和长度无关。
+ */
+public class AdminTokenFilter extends Filter {
+    
+    // 令牌最短长度
+    public static final int MIN_TOKEN_LENGTH = 16;
+    
+    private static final String BEARER = "Bearer ";
+    
+    private static final byte[] BODY = "Unauthorized".getBytes(StandardCharsets.UTF_8);
+    
+    // 管理令牌的SHA-256摘要
+    private final byte[] expected;
+    
+    /**
+     * @param token 管理令牌
+     * @throws IllegalArgumentException 令牌为空或短于{@link #MIN_TOKEN_LENGTH}
+     */
+    public AdminTokenFilter(String token) {
+        if (token == null || token.length() < MIN_TOKEN_LENGTH) {
+            throw new IllegalArgumentException("管理令牌不能短于" + MIN_TOKEN_LENGTH + "个字符");
+        }
+        this.expected = sha256(token);
+    }
+    
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization != null && authorization.regionMatches(true, 0, BEARER, 0, BEARER.length())
+                && MessageDigest.isEqual(expected, sha256(authorization.substring(BEARER.length()).trim()))) {
+            chain.doFilter(exchange);
+            return;
+        }
+        exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+        exchange.sendResponseHeaders(401, BODY.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(BODY);
+        }
+    }
+    
+    private static byte[] sha256(String value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    @Override
+    public String description() {
+        return "校验管理令牌";
+    }
+}
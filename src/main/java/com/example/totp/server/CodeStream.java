@@ -0,0 +1,496 @@
+package com.example.totp.server;
+
+import com.example.totp.model.ApiResponse;
+import com.example.totp.model.Credential;
+import com.example.totp.model.TokenQuery;
+import com.example.totp.service.TOTPEngine;
+import com.example.totp.service.TOTPService;
+import com.example.totp.store.CredentialStore;
+import com.example.totp.util.JsonUtil;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 当前验证码的Server-Sent Events推送
+ * 客户端凭/api/generate签发的查看令牌订阅GET /api/current-code/stream?token=...，
+ * 连接保持打开，处理线程立即返回；令牌过期或账户被重新注册后连接在下一次触发时关闭。
+ * 单个调度线程在每个时间步边界触发，对每个有订阅者的账户只计算一次验证码，
+ * 编码成同一段事件字节后非阻塞地放入每个订阅者自己的有界队列，由写出线程池把队列写到连接上，
+ * 一个慢客户端不会拖住调度线程和其他订阅者。队列已满（客户端跟不上推送）、写入失败，
+ * 或单次写入超过写入期限（-Dtotp.stream.write-timeout-millis，默认5000）的连接被移除：
+ * 调度线程定期检查进行中的写入，超时的写出线程被中断，中断会关闭底层通道使阻塞的写入立即失败。
+ * 每次触发后按当前时间重新计算到下一个边界的延迟，不会像固定间隔轮询那样逐渐错开。
+ * 账户可以有不同的时间步长度，调度线程总是在所有订阅账户中最早到来的边界触发，
+ * 时间步没有变化的账户在该次触发中直接跳过。
+ */
+public class CodeStream implements HttpHandler {
+
+    // 每个订阅者最多积压的事件数
+    private static final int QUEUE_CAPACITY = Integer.getInteger("totp.stream.queue-capacity", 4);
+
+    // 写出线程数
+    private static final int WRITER_THREADS = Integer.getInteger("totp.stream.writer-threads", 2);
+
+    // 单次写入的期限（毫秒）
+    private static final long WRITE_TIMEOUT_MILLIS = Long.getLong("totp.stream.write-timeout-millis", 5000L);
+
+    private final TOTPService totpService;
+
+    private final CredentialStore credentialStore;
+
+    // 查看令牌
+    private final EnrollmentTokens codeTokens;
+
+    private final RequestDecoder requestDecoder;
+
+    // 最多同时保持的订阅连接数
+    private final int maxSubscribers;
+
+    // 按账户名称分组的订阅者
+    private final ConcurrentHashMap<String, CopyOnWriteArrayList<Subscriber>> topics = new ConcurrentHashMap<>();
+
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+
+    private final ScheduledExecutorService ticker;
+
+    // 把订阅者队列写到连接上的线程池
+    private final ExecutorService writers;
+
+    // 正在写出（含关闭连接）的订阅者，供超时检查
+    private final Set<Subscriber> draining = ConcurrentHashMap.newKeySet();
+
+    // 因跟不上推送或写入超时被移除的连接数
+    private final LongAdder dropped = new LongAdder();
+
+    // 已安排的下一次触发及其时间（毫秒），由this保护
+    private ScheduledFuture<?> nextTick;
+    private long nextTickMillis = Long.MAX_VALUE;
+
+    /**
+     * @param totpService TOTP服务
+     * @param credentialStore 凭据存储
+     * @param codeTokens 注册时签发的查看令牌
+     * @param requestDecoder 查询参数解码器
+     * @param maxSubscribers 最多同时保持的订阅连接数
+     */
+    public CodeStream(TOTPService totpService, CredentialStore credentialStore, EnrollmentTokens codeTokens,
+                      RequestDecoder requestDecoder, int maxSubscribers) {
+        this.totpService = totpService;
+        this.credentialStore = credentialStore;
+        this.codeTokens = codeTokens;
+        this.requestDecoder = requestDecoder;
+        this.maxSubscribers = maxSubscribers;
+        this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "code-stream-ticker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger writerIndex = new AtomicInteger();
+        this.writers = Executors.newFixedThreadPool(WRITER_THREADS, r -> {
+            Thread thread = new Thread(r, "code-stream-writer-" + writerIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        long sweepMillis = Math.max(100L, WRITE_TIMEOUT_MILLIS / 2);
+        ticker.scheduleWithFixedDelay(this::abortStalledWrites, sweepMillis, sweepMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(405, -1);
+            exchange.close();
+            return;
+        }
+
+        EnrollmentTokens.Grant grant;
+        try {
+            grant = codeTokens.lookup(requestDecoder.decodeQuery(exchange, TokenQuery.class).getToken());
+        } catch (RequestException e) {
+            sendError(exchange, e.getStatusCode(), e.getMessage());
+            return;
+        }
+        Credential credential = grant == null ? null : credentialStore.get(grant.getAccountName());
+        if (credential == null || credential.getId() != grant.getCredentialId()) {
+            sendError(exchange, 404, "查看令牌无效或已过期，请重新生成TOTP配置");
+            return;
+        }
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", "30");
+            sendError(exchange, 503, "订阅连接过多，请稍后再试");
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=UTF-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+        // 长度为0表示分块传输，连接在取消订阅前保持打开
+        exchange.sendResponseHeaders(200, 0);
+
+        // 先加入订阅再推送当前验证码，期间调度线程推送的更新时间步不会被旧事件覆盖
+        Subscriber subscriber = new Subscriber(exchange, grant);
+        topics.compute(credential.getAccountName(), (k, subscribers) -> {
+            if (subscribers == null) {
+                subscribers = new CopyOnWriteArrayList<>();
+            }
+            subscribers.add(subscriber);
+            return subscribers;
+        });
+        TOTPEngine engine = totpService.getEngine(credential);
+        long now = System.currentTimeMillis();
+        long step = engine.timeStep(now / 1000);
+        if (!subscriber.offer(step, encodeEvent(credential, engine, step))) {
+            unsubscribe(credential.getAccountName(), subscriber);
+            return;
+        }
+        // 新账户的时间步长度可能比已安排的触发更早到达边界
+        scheduleTick(nextBoundary(engine, now));
+    }
+
+    /**
+     * 当前的订阅连接数
+     */
+    public int getSubscriberCount() {
+        return subscriberCount.get();
+    }
+
+    /**
+     * 因跟不上推送或写入超时被移除的连接数
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * 停止调度并关闭所有订阅连接
+     */
+    public void shutdown() {
+        synchronized (this) {
+            ticker.shutdownNow();
+        }
+        writers.shutdownNow();
+        for (CopyOnWriteArrayList<Subscriber> subscribers : topics.values()) {
+            for (Subscriber subscriber : subscribers) {
+                subscriber.abort();
+            }
+        }
+        topics.clear();
+    }
+
+    /**
+     * 安排在指定时间触发；已安排了不晚于该时间的触发时不做任何事
+     * 触发时使用这里的目标时间计算时间步，调度线程早醒几毫秒也不会重复推送上一个时间步
+     * @param atMillis 目标时间（毫秒），为某个时间步边界
+     */
+    private synchronized void scheduleTick(long atMillis) {
+        if (ticker.isShutdown() || nextTickMillis <= atMillis) {
+            return;
+        }
+        if (nextTick != null) {
+            nextTick.cancel(false);
+        }
+        nextTickMillis = atMillis;
+        nextTick = ticker.schedule(() -> tick(atMillis), Math.max(0, atMillis - System.currentTimeMillis()),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 时间步边界：时间步已变化的账户计算一次验证码并推送给全部订阅者，
+     * 然后安排到所有订阅账户中最早的下一个边界；没有订阅者时不再安排，等待新的订阅
+     */
+    private void tick(long atMillis) {
+        synchronized (this) {
+            nextTick = null;
+            nextTickMillis = Long.MAX_VALUE;
+        }
+        long next = Long.MAX_VALUE;
+        try {
+            for (Map.Entry<String, CopyOnWriteArrayList<Subscriber>> topic : topics.entrySet()) {
+                CopyOnWriteArrayList<Subscriber> subscribers = topic.getValue();
+                Credential credential = credentialStore.get(topic.getKey());
+                // 账户已删除或被重新注册、令牌已过期的订阅者不再推送
+                for (Subscriber subscriber : subscribers) {
+                    if (credential == null || !subscriber.authorizes(credential, atMillis)) {
+                        unsubscribe(topic.getKey(), subscriber);
+                    }
+                }
+                if (credential == null || subscribers.isEmpty()) {
+                    continue;
+                }
+                TOTPEngine engine = totpService.getEngine(credential);
+                next = Math.min(next, nextBoundary(engine, atMillis));
+                long step = engine.timeStep(atMillis / 1000);
+                if (!anyBehind(subscribers, step)) {
+                    continue;
+                }
+                byte[] event = encodeEvent(credential, engine, step);
+                for (Subscriber subscriber : subscribers) {
+                    if (!subscriber.offer(step, event)) {
+                        // 队列已满：客户端跟不上推送
+                        dropped.increment();
+                        unsubscribe(topic.getKey(), subscriber);
+                    }
+                }
+            }
+        } finally {
+            if (next != Long.MAX_VALUE) {
+                scheduleTick(next);
+            }
+        }
+    }
+
+    /**
+     * 中断超过写入期限的写出，并移除对应的订阅者（在调度线程上定期执行）
+     */
+    private void abortStalledWrites() {
+        long deadline = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(WRITE_TIMEOUT_MILLIS);
+        for (Subscriber subscriber : draining) {
+            if (subscriber.abortWriteStartedBefore(deadline)) {
+                dropped.increment();
+                unsubscribe(subscriber.grant.getAccountName(), subscriber);
+            }
+        }
+    }
+
+    /**
+     * 是否有订阅者还没有收到指定时间步的事件
+     */
+    private static boolean anyBehind(CopyOnWriteArrayList<Subscriber> subscribers, long step) {
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.lastStep < step) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 指定时间之后引擎的下一个时间步边界（毫秒）
+     */
+    private static long nextBoundary(TOTPEngine engine, long afterMillis) {
+        long periodMillis = engine.getPeriod() * 1000L;
+        return (afterMillis / periodMillis + 1) * periodMillis;
+    }
+
+    /**
+     * 移除订阅者并关闭连接，账户没有订阅者时删除分组（与新订阅在同一个桶锁内完成）
+     * 关闭连接由写出线程完成，调用方不会被慢连接阻塞
+     */
+    private void unsubscribe(String accountName, Subscriber subscriber) {
+        boolean[] removed = new boolean[1];
+        topics.computeIfPresent(accountName, (k, subscribers) -> {
+            removed[0] = subscribers.remove(subscriber);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+        if (removed[0]) {
+            subscriberCount.decrementAndGet();
+        }
+        subscriber.close();
+    }
+
+    /**
+     * 编码一个code事件：data为{"currentCode":"...","step":...,"expiresAt":毫秒时间戳}
+     */
+    private static byte[] encodeEvent(Credential credential, TOTPEngine engine, long step) {
+        String code = engine.format(engine.generateAtStep(credential.getKey(), step));
+        long expiresAt = (step + 1) * engine.getPeriod() * 1000L;
+        String event = "event: code\ndata: {\"currentCode\":\"" + code + "\",\"step\":" + step
+                + ",\"expiresAt\":" + expiresAt + "}\n\n";
+        return event.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void sendError(HttpExchange exchange, int statusCode, String message) throws IOException {
+        JsonUtil.ResponseBuffer body = JsonUtil.toJsonBuffer(ApiResponse.error(message));
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(statusCode, body.size());
+        try (OutputStream os = exchange.getResponseBody()) {
+            body.writeTo(os);
+        }
+    }
+
+    /**
+     * 一个订阅连接
+     * 调度线程和订阅请求的处理线程只把事件放入有界队列；队列从空变为非空时提交一次写出任务，
+     * 同一时间每个订阅者最多只有一个写出任务在运行，事件按时间步顺序写出。
+     * 关闭连接（写出结束块）同样由写出任务完成，受同一个写入期限约束。
+     */
+    private final class Subscriber implements Runnable {
+
+        private final HttpExchange exchange;
+
+        private final OutputStream out;
+
+        // 订阅时使用的查看令牌
+        private final EnrollmentTokens.Grant grant;
+
+        // 待写出的事件
+        private final ArrayBlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+        // 是否已提交写出任务
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        // 已放入队列的最新时间步（在offer的锁内写入，调度线程无锁读取用于跳过未变化的账户）
+        private volatile long lastStep = Long.MIN_VALUE;
+
+        // 进行中的写入所在的线程及开始时间（纳秒），没有进行中的写入时为null；由this保护
+        private Thread writer;
+        private long writeStartedNanos;
+
+        // 连接是否已被要求关闭
+        private volatile boolean closing;
+
+        Subscriber(HttpExchange exchange, EnrollmentTokens.Grant grant) {
+            this.exchange = exchange;
+            this.out = exchange.getResponseBody();
+            this.grant = grant;
+        }
+
+        /**
+         * 令牌是否仍授权查看该凭据
+         */
+        boolean authorizes(Credential credential, long nowMillis) {
+            return credential.getId() == grant.getCredentialId() && !grant.isExpired(nowMillis);
+        }
+
+        /**
+         * 非阻塞地放入一个事件，不早于已放入时间步的事件直接跳过
+         * @return false-队列已满或连接已关闭
+         */
+        synchronized boolean offer(long step, byte[] event) {
+            if (step <= lastStep) {
+                return true;
+            }
+            if (closing || !queue.offer(event)) {
+                return false;
+            }
+            lastStep = step;
+            schedule();
+            return true;
+        }
+
+        /**
+         * 要求关闭连接，由写出任务写完已排队的事件之前直接关闭
+         */
+        void close() {
+            closing = true;
+            schedule();
+        }
+
+        /**
+         * 停止服务时直接在调用线程上关闭连接
+         */
+        void abort() {
+            closing = true;
+            exchange.close();
+        }
+
+        /**
+         * 写入超时：进行中的写入在deadline之前开始时中断写出线程
+         * 只在写入进行中（持有this并确认writer仍在写）时中断，写入结束时在同一把锁内清除中断标志，
+         * 中断不会波及写出线程之后执行的其他任务
+         * @param deadline 期限（System.nanoTime时间）
+         * @return true-已中断
+         */
+        synchronized boolean abortWriteStartedBefore(long deadline) {
+            if (writer == null || writeStartedNanos - deadline > 0) {
+                return false;
+            }
+            closing = true;
+            writer.interrupt();
+            return true;
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    writers.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // 已停止服务，连接由shutdown关闭
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        /**
+         * 写出任务：写完队列中的事件后退出；连接被要求关闭或写入失败时关闭连接
+         */
+        @Override
+        public void run() {
+            draining.add(this);
+            try {
+                while (!closing) {
+                    byte[] event = queue.poll();
+                    if (event != null) {
+                        write(event);
+                        continue;
+                    }
+                    scheduled.set(false);
+                    // 清除标志之前可能有新的事件或关闭请求到达，此时由本任务继续处理
+                    if ((closing || !queue.isEmpty()) && scheduled.compareAndSet(false, true)) {
+                        continue;
+                    }
+                    return;
+                }
+                closeExchange();
+            } catch (IOException e) {
+                // 连接已断开，或写入超时被中断（通道随之关闭）
+                unsubscribe(grant.getAccountName(), this);
+                closeExchange();
+            } finally {
+                draining.remove(this);
+            }
+        }
+
+        private void write(byte[] event) throws IOException {
+            beginWrite();
+            try {
+                out.write(event);
+                out.flush();
+            } finally {
+                endWrite();
+            }
+        }
+
+        /**
+         * 关闭连接（写出分块传输的结束块），同样受写入期限约束
+         */
+        private void closeExchange() {
+            beginWrite();
+            try {
+                exchange.close();
+            } finally {
+                endWrite();
+            }
+        }
+
+        private synchronized void beginWrite() {
+            writer = Thread.currentThread();
+            writeStartedNanos = System.nanoTime();
+        }
+
+        private synchronized void endWrite() {
+            writer = null;
+            // 清除可能在写入刚结束时到达的中断，不影响写出线程之后执行的任务
+            Thread.interrupted();
+        }
+    }
+}
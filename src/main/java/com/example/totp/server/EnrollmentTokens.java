@@ -0,0 +1,150 @@
+package com.example.totp.server;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * 注册令牌
+ * /api/generate为新凭据签发随机令牌，之后只有持有令牌的调用方能访问该凭据的敏感数据：
+ * 二维码（otpauth URI含有密钥）凭一次性令牌渲染，使用一次即失效（{@link #redeem(String)}）；
+ * 当前验证码及其推送凭查看令牌访问，有效期内可以反复使用（{@link #lookup(String)}）。
+ * 令牌超过有效期后失效，也不对应账户重新注册后的新凭据。
+ * 令牌按签发顺序保存（有效期相同，签发顺序即过期顺序），签发时顺带清理已过期的令牌，
+ * 数量超过上限时丢弃最早签发的令牌。
+ */
+public class EnrollmentTokens {
+
+    // 令牌随机字节数
+    private static final int TOKEN_BYTES = 16;
+
+    private final SecureRandom random = new SecureRandom();
+
+    private final long ttlMillis;
+
+    private final int capacity;
+
+    // 令牌 -> 授权访问的凭据，按签发顺序排列；由this保护
+    private final LinkedHashMap<String, Grant> grants = new LinkedHashMap<>();
+
+    /**
+     * @param ttlMillis 令牌有效期（毫秒）
+     * @param capacity 最多同时保留的令牌数
+     */
+    public EnrollmentTokens(long ttlMillis, int capacity) {
+        if (ttlMillis <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("注册令牌参数必须大于0");
+        }
+        this.ttlMillis = ttlMillis;
+        this.capacity = capacity;
+    }
+
+    /**
+     * 按系统属性创建：-D{prefix}.token-ttl-seconds、-D{prefix}.token-capacity（默认10000）
+     * @param prefix 属性前缀，如totp.qrcode
+     * @param defaultTtlSeconds 默认有效期（秒）
+     */
+    public static EnrollmentTokens fromSystemProperties(String prefix, long defaultTtlSeconds) {
+        return new EnrollmentTokens(Long.getLong(prefix + ".token-ttl-seconds", defaultTtlSeconds) * 1000L,
+                Integer.getInteger(prefix + ".token-capacity", 10000));
+    }
+
+    /**
+     * 为刚注册的凭据签发令牌
+     * @param accountName 账户名称
+     * @param credentialId 凭据ID（账户重新注册后旧令牌不再对应新凭据）
+     * @return URL安全的令牌字符串
+     */
+    public String issue(String accountName, long credentialId) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Iterator<Grant> it = grants.values().iterator();
+            while (it.hasNext()) {
+                Grant oldest = it.next();
+                if (oldest.expiresAt > now && grants.size() < capacity) {
+                    break;
+                }
+                it.remove();
+            }
+            grants.put(token, new Grant(accountName, credentialId, now + ttlMillis));
+        }
+        return token;
+    }
+
+    /**
+     * 取出令牌对应的凭据并使令牌失效（一次性令牌）
+     * @param token 令牌，可为null
+     * @return 授权访问的凭据，令牌不存在、已使用或已过期时返回null
+     */
+    public Grant redeem(String token) {
+        if (token == null) {
+            return null;
+        }
+        Grant grant;
+        synchronized (this) {
+            grant = grants.remove(token);
+        }
+        return grant == null || grant.isExpired(System.currentTimeMillis()) ? null : grant;
+    }
+
+    /**
+     * 查找令牌对应的凭据，令牌在有效期内保持可用
+     * @param token 令牌，可为null
+     * @return 授权访问的凭据，令牌不存在或已过期时返回null
+     */
+    public Grant lookup(String token) {
+        if (token == null) {
+            return null;
+        }
+        Grant grant;
+        synchronized (this) {
+            grant = grants.get(token);
+        }
+        return grant == null || grant.isExpired(System.currentTimeMillis()) ? null : grant;
+    }
+
+    public synchronized int size() {
+        return grants.size();
+    }
+
+    /**
+     * 令牌授权访问的凭据
+     */
+    public static final class Grant {
+
+        private final String accountName;
+
+        private final long credentialId;
+
+        private final long expiresAt;
+
+        Grant(String accountName, long credentialId, long expiresAt) {
+            this.accountName = accountName;
+            this.credentialId = credentialId;
+            this.expiresAt = expiresAt;
+        }
+
+        public String getAccountName() {
+            return accountName;
+        }
+
+        public long getCredentialId() {
+            return credentialId;
+        }
+
+        /**
+         * 令牌失效时间（毫秒时间戳）
+         */
+        public long getExpiresAt() {
+            return expiresAt;
+        }
+
+        public boolean isExpired(long nowMillis) {
+            return expiresAt <= nowMillis;
+        }
+    }
+}
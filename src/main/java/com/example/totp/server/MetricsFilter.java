@@ -0,0 +1,49 @@
+package com.example.totp.server;
+
+import com.example.totp.metrics.Histogram;
+import com.example.totp.metrics.Metrics;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 请求指标过滤器
+ * 按路由记录处理耗时（含写响应）和5xx响应次数
+ */
+public class MetricsFilter extends Filter {
+
+    private final Histogram duration;
+
+    private final LongAdder errors;
+
+    /**
+     * @param path 路由路径，作为handler标签
+     */
+    public MetricsFilter(String path) {
+        String labels = "handler=\"" + path + "\"";
+        this.duration = Metrics.REGISTRY.histogram("totp_http_request_duration_seconds",
+                "HTTP request handling time by handler", labels);
+        this.errors = Metrics.REGISTRY.counter("totp_http_server_errors_total",
+                "HTTP responses with status 5xx by handler", labels);
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(exchange);
+        } finally {
+            duration.recordSince(start);
+            if (exchange.getResponseCode() >= 500) {
+                errors.increment();
+            }
+        }
+    }
+
+    @Override
+    public String description() {
+        return "记录请求耗时";
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.totp.server;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 过载保护过滤器
+ * 请求被{@link RequestExecutor}拒绝时直接返回503，不进入业务处理器
+ */
+public class OverloadFilter extends Filter {
+    
+    private static final byte[] BODY = "Service Unavailable".getBytes(StandardCharsets.UTF_8);
+    
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        if (!RequestExecutor.isShedding()) {
+            chain.doFilter(exchange);
+            return;
+        }
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        exchange.sendResponseHeaders(503, BODY.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(BODY);
+        }
+    }
+    
+    @Override
+    public String description() {
+        return "请求过载时返回503";
+    }
+}
@@ -0,0 +1,254 @@
+package com.example.totp.server;
+
+import com.example.totp.util.JsonUtil;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 请求解码器
+ * 把请求体（JSON或application/x-www-form-urlencoded表单）和查询字符串直接映射为类型化的请求对象：
+ * JSON由Jackson从输入流流式解析；表单在字节上一次扫描完成，每个键值对直接写入TokenBuffer，
+ * 再由与JSON相同的读取器绑定到请求对象，不生成中间的字符串数组和Map。
+ * 请求体超过上限时返回413，格式错误时返回400（通过{@link RequestException}）。
+ */
+public class RequestDecoder {
+
+    // 默认的请求体大小上限（字节）
+    public static final int DEFAULT_MAX_BODY_BYTES = 1024 * 1024;
+
+    private final int maxBodyBytes;
+
+    /**
+     * @param maxBodyBytes 请求体大小上限（字节）
+     */
+    public RequestDecoder(int maxBodyBytes) {
+        if (maxBodyBytes <= 0) {
+            throw new IllegalArgumentException("请求体大小上限必须大于0: " + maxBodyBytes);
+        }
+        this.maxBodyBytes = maxBodyBytes;
+    }
+
+    /**
+     * 按系统属性创建：-Dtotp.request.max-body-bytes（默认1MB）
+     */
+    public static RequestDecoder fromSystemProperties() {
+        return new RequestDecoder(Integer.getInteger("totp.request.max-body-bytes", DEFAULT_MAX_BODY_BYTES));
+    }
+
+    /**
+     * 解码请求体
+     * Content-Type含json时按JSON流式解析；否则读入整个请求体，
+     * 第一个非空白字符为'{'或'['时按JSON解析，其余按表单解析
+     * @param exchange HTTP交换对象
+     * @param type 请求类型
+     * @return 请求对象
+     * @throws RequestException 请求体过大或格式错误
+     */
+    public <T> T decodeBody(HttpExchange exchange, Class<T> type) throws IOException {
+        long declaredLength = contentLength(exchange);
+        if (declaredLength > maxBodyBytes) {
+            throw tooLarge();
+        }
+        InputStream body = new LimitedInputStream(exchange.getRequestBody(), maxBodyBytes);
+        ObjectReader reader = JsonUtil.requestReader(type);
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        try {
+            if (contentType != null && contentType.toLowerCase().contains("json")) {
+                return notNull(reader.readValue(body));
+            }
+            byte[] bytes = readFully(body, declaredLength);
+            // 表单不会以'{'或'['开头，按JSON发送但声明为表单的请求（如curl -d）也能解析
+            if (looksLikeJson(bytes)) {
+                return notNull(reader.readValue(bytes));
+            }
+            return decodeForm(bytes, bytes.length, reader);
+        } catch (JsonProcessingException e) {
+            throw new RequestException(400, "请求体格式错误: " + e.getOriginalMessage(), e);
+        }
+    }
+
+    /**
+     * 把查询字符串解码为请求对象
+     * @param exchange HTTP交换对象
+     * @param type 请求类型
+     * @return 请求对象
+     * @throws RequestException 查询字符串格式错误
+     */
+    public <T> T decodeQuery(HttpExchange exchange, Class<T> type) throws IOException {
+        String query = exchange.getRequestURI().getRawQuery();
+        // 原始查询字符串只含ASCII字符，按字节扫描
+        byte[] bytes = query == null ? new byte[0] : query.getBytes(StandardCharsets.ISO_8859_1);
+        try {
+            return decodeForm(bytes, bytes.length, JsonUtil.requestReader(type));
+        } catch (JsonProcessingException e) {
+            throw new RequestException(400, "查询参数格式错误: " + e.getOriginalMessage(), e);
+        }
+    }
+
+    public int getMaxBodyBytes() {
+        return maxBodyBytes;
+    }
+
+    /**
+     * 一次扫描解析表单：按'&'分段，每段在第一个'='处分为键和值（值中的'='保留），
+     * 解码后的键值对直接写入TokenBuffer
+     */
+    private static <T> T decodeForm(byte[] bytes, int length, ObjectReader reader) throws IOException {
+        TokenBuffer tokens = new TokenBuffer(reader, false);
+        tokens.writeStartObject();
+        // 百分号解码的暂存区，整个请求共用一个
+        byte[] scratch = null;
+        int start = 0;
+        while (start < length) {
+            int end = start;
+            int eq = -1;
+            boolean encoded = false;
+            while (end < length && bytes[end] != '&') {
+                byte b = bytes[end];
+                if (b == '=' && eq < 0) {
+                    eq = end;
+                } else if (b == '%' || b == '+') {
+                    encoded = true;
+                }
+                end++;
+            }
+            if (end > start) {
+                int keyEnd = eq < 0 ? end : eq;
+                if (encoded && scratch == null) {
+                    scratch = new byte[length];
+                }
+                tokens.writeFieldName(decode(bytes, start, keyEnd, encoded, scratch));
+                tokens.writeString(eq < 0 ? "" : decode(bytes, eq + 1, end, encoded, scratch));
+            }
+            start = end + 1;
+        }
+        tokens.writeEndObject();
+        return notNull(reader.readValue(tokens.asParser(reader)));
+    }
+
+    /**
+     * 解码一段application/x-www-form-urlencoded内容（'+'为空格，%XX为一个字节，按UTF-8组成字符串）
+     */
+    private static String decode(byte[] bytes, int from, int to, boolean encoded, byte[] scratch) {
+        if (!encoded) {
+            return new String(bytes, from, to - from, StandardCharsets.UTF_8);
+        }
+        int n = 0;
+        for (int i = from; i < to; i++) {
+            byte b = bytes[i];
+            if (b == '+') {
+                scratch[n++] = ' ';
+            } else if (b == '%') {
+                int hi = i + 2 < to ? Character.digit(bytes[i + 1], 16) : -1;
+                int lo = hi >= 0 ? Character.digit(bytes[i + 2], 16) : -1;
+                if (lo < 0) {
+                    throw new RequestException(400, "无效的百分号编码");
+                }
+                scratch[n++] = (byte) ((hi << 4) | lo);
+                i += 2;
+            } else {
+                scratch[n++] = b;
+            }
+        }
+        return new String(scratch, 0, n, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 读取整个请求体，已知长度时一次分配
+     */
+    private static byte[] readFully(InputStream in, long declaredLength) throws IOException {
+        if (declaredLength >= 0) {
+            byte[] bytes = new byte[(int) declaredLength];
+            int read = 0;
+            while (read < bytes.length) {
+                int n = in.read(bytes, read, bytes.length - read);
+                if (n < 0) {
+                    throw new RequestException(400, "请求体不完整");
+                }
+                read += n;
+            }
+            return bytes;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static boolean looksLikeJson(byte[] bytes) {
+        for (byte b : bytes) {
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                return b == '{' || b == '[';
+            }
+        }
+        return false;
+    }
+
+    private static long contentLength(HttpExchange exchange) {
+        String value = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new RequestException(400, "Content-Length无效");
+        }
+    }
+
+    private static <T> T notNull(T value) {
+        if (value == null) {
+            throw new RequestException(400, "请求体不能为空");
+        }
+        return value;
+    }
+
+    private RequestException tooLarge() {
+        return new RequestException(413, "请求体超过" + maxBodyBytes + "字节");
+    }
+
+    /**
+     * 超过上限时抛出413的输入流（用于未声明长度或声明不实的请求体）
+     */
+    private final class LimitedInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0 && --remaining < 0) {
+                throw tooLarge();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                remaining -= n;
+                if (remaining < 0) {
+                    throw tooLarge();
+                }
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.totp.server;
+
+/**
+ * 请求无法解码时抛出的异常，携带应返回的HTTP状态码
+ */
+public class RequestException extends RuntimeException {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private final int statusCode;
+    
+    public RequestException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+    
+    public RequestException(int statusCode, String message, Throwable cause) {
+        super(message, cause);
+        this.statusCode = statusCode;
+    }
+    
+    /**
+     * 应返回的HTTP状态码（400-格式错误，413-请求体过大）
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
@@ -0,0 +1,327 @@
+package com.example.totp.server;
+
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HTTP请求执行器
+ * 替代HttpServer默认的单线程分发模式，支持两种执行模型：
+ * - POOL ：有界平台线程池 + 有界队列，队列满时拒绝请求
+ * - VIRTUAL ：每个请求一个虚拟线程（需要JDK 21+，否则自动退回POOL），以许可数限制并发量
+ * 被拒绝的请求交给预留的少量拒绝线程以"过载"标记执行，由{@link OverloadFilter}直接返回503，
+ * 不会进入业务处理器，从而避免一个慢请求（如二维码渲染）阻塞后面的所有验证请求。
+ * HttpServer的任务要先读取请求头才进入过滤器链，读取慢客户端的请求头可能阻塞，
+ * 因此拒绝的任务不在分发线程上执行，分发线程始终只负责接受连接；
+ * 只有拒绝线程的队列也已满时才退回调用线程执行（计入shedOverflow）。
+ */
+public class RequestExecutor implements java.util.concurrent.Executor {
+    
+    /**
+     * 执行模型
+     */
+    public enum Mode {
+        // 有界平台线程池
+        POOL,
+        // 每请求一个虚拟线程
+        VIRTUAL
+    }
+    
+    // 当前线程上的任务是否因过载而被拒绝
+    private static final ThreadLocal<Boolean> SHEDDING = new ThreadLocal<>();
+    
+    // 实际生效的执行模型
+    private final Mode mode;
+    
+    // 底层执行器
+    private final ExecutorService delegate;
+    
+    // 线程池（VIRTUAL模式下为null）
+    private final ThreadPoolExecutor pool;
+    
+    // 虚拟线程模式下的并发许可（POOL模式下为null）
+    private final Semaphore permits;
+    
+    // 执行被拒绝任务的预留线程池（只返回503，不进入业务处理器）
+    private final ThreadPoolExecutor shedder;
+    
+    // 并发上限（POOL模式为线程数+队列长度，VIRTUAL模式为许可数）
+    private final int capacity;
+    
+    // 饱和度计数器
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder shedOverflow = new LongAdder();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger peakActive = new AtomicInteger();
+    
+    /**
+     * 创建有界线程池执行器
+     * @param threads 工作线程数
+     * @param queueCapacity 等待队列长度
+     */
+    public static RequestExecutor pool(int threads, int queueCapacity) {
+        return new RequestExecutor(Mode.POOL, threads, queueCapacity, 0);
+    }
+    
+    /**
+     * 创建虚拟线程执行器，当前JDK不支持虚拟线程时退回有界线程池
+     * @param maxConcurrent 最大并发请求数
+     * @param fallbackThreads 退回线程池时的工作线程数
+     * @param fallbackQueue 退回线程池时的等待队列长度
+     */
+    public static RequestExecutor virtual(int maxConcurrent, int fallbackThreads, int fallbackQueue) {
+        return new RequestExecutor(Mode.VIRTUAL, fallbackThreads, fallbackQueue, maxConcurrent);
+    }
+    
+    /**
+     * 根据系统属性创建执行器
+     * -Dtotp.executor=pool|virtual（默认pool）
+     * -Dtotp.executor.threads=工作线程数（默认CPU核数*2）
+     * -Dtotp.executor.queue=等待队列长度（默认1024）
+     * -Dtotp.executor.max-concurrent=虚拟线程模式的最大并发数（默认10000）
+     * -Dtotp.executor.shed-threads=执行被拒绝请求的预留线程数（默认2）
+     * -Dtotp.executor.shed-queue=预留线程的等待队列长度（默认256）
+     */
+    public static RequestExecutor fromSystemProperties() {
+        String mode = System.getProperty("totp.executor", "pool");
+        int threads = Integer.getInteger("totp.executor.threads", Runtime.getRuntime().availableProcessors() * 2);
+        int queue = Integer.getInteger("totp.executor.queue", 1024);
+        if ("virtual".equalsIgnoreCase(mode)) {
+            return virtual(Integer.getInteger("totp.executor.max-concurrent", 10000), threads, queue);
+        }
+        return pool(threads, queue);
+    }
+    
+    private RequestExecutor(Mode requested, int threads, int queueCapacity, int maxConcurrent) {
+        int shedThreads = Integer.getInteger("totp.executor.shed-threads", 2);
+        int shedQueue = Integer.getInteger("totp.executor.shed-queue", 256);
+        if (shedThreads <= 0 || shedQueue <= 0) {
+            throw new IllegalArgumentException("拒绝线程数和队列长度必须大于0");
+        }
+        this.shedder = new ThreadPoolExecutor(shedThreads, shedThreads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(shedQueue), new WorkerThreadFactory("totp-shedder-"),
+                (r, executor) -> {
+                    // 预留线程也已饱和（或已停止），只能在调用线程上返回503
+                    shedOverflow.increment();
+                    r.run();
+                });
+
+        ExecutorService virtualExecutor = requested == Mode.VIRTUAL ? newVirtualThreadExecutor() : null;
+        if (virtualExecutor != null) {
+            this.mode = Mode.VIRTUAL;
+            this.delegate = virtualExecutor;
+            this.pool = null;
+            this.permits = new Semaphore(maxConcurrent);
+            this.capacity = maxConcurrent;
+        } else {
+            if (threads <= 0 || queueCapacity <= 0) {
+                throw new IllegalArgumentException("线程数和队列长度必须大于0");
+            }
+            this.mode = Mode.POOL;
+            this.pool = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity), new WorkerThreadFactory("totp-worker-"), new ShedPolicy());
+            this.delegate = pool;
+            this.permits = null;
+            this.capacity = threads + queueCapacity;
+        }
+    }
+    
+    @Override
+    public void execute(Runnable command) {
+        submitted.increment();
+        if (permits != null && !permits.tryAcquire()) {
+            shed(command);
+            return;
+        }
+        try {
+            delegate.execute(new Tracked(command));
+        } catch (RejectedExecutionException e) {
+            // 虚拟线程执行器已停止：归还许可，同样返回503并关闭连接
+            permits.release();
+            shed(command);
+        }
+    }
+    
+    /**
+     * 在预留的拒绝线程上以过载标记执行被拒绝的任务
+     * HttpServer的任务会先解析请求头再进入过滤器链，过滤器看到标记后直接返回503
+     */
+    private void shed(Runnable command) {
+        rejected.increment();
+        shedder.execute(() -> {
+            SHEDDING.set(Boolean.TRUE);
+            try {
+                command.run();
+            } finally {
+                SHEDDING.remove();
+            }
+        });
+    }
+    
+    private void updatePeak(int running) {
+        int peak;
+        while (running > (peak = peakActive.get())) {
+            if (peakActive.compareAndSet(peak, running)) {
+                return;
+            }
+        }
+    }
+    
+    /**
+     * 当前线程上的请求是否因过载而被拒绝
+     * @return true-应直接返回503
+     */
+    static boolean isShedding() {
+        return SHEDDING.get() != null;
+    }
+    
+    /**
+     * 停止接收新任务并等待已提交的任务完成
+     * @param timeoutMillis 最长等待时间（毫秒）
+     */
+    public void shutdown(long timeoutMillis) throws InterruptedException {
+        delegate.shutdown();
+        delegate.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        shedder.shutdown();
+    }
+    
+    public Mode getMode() {
+        return mode;
+    }
+    
+    public long getSubmittedCount() {
+        return submitted.sum();
+    }
+    
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+    
+    /**
+     * 拒绝线程也已饱和、只能在调用线程上返回503的次数
+     */
+    public long getShedOverflowCount() {
+        return shedOverflow.sum();
+    }
+    
+    public long getCompletedCount() {
+        return completed.sum();
+    }
+    
+    public int getActiveCount() {
+        return active.get();
+    }
+    
+    public int getQueueSize() {
+        return pool != null ? pool.getQueue().size() : 0;
+    }
+    
+    public int getCapacity() {
+        return capacity;
+    }
+    
+    /**
+     * 获取饱和度统计信息
+     * @return 统计项名称 -> 数值
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("mode", mode.name());
+        stats.put("capacity", capacity);
+        stats.put("poolSize", pool != null ? pool.getPoolSize() : 0);
+        stats.put("active", active.get());
+        stats.put("peakActive", peakActive.get());
+        stats.put("queued", getQueueSize());
+        stats.put("submitted", submitted.sum());
+        stats.put("completed", completed.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("shedOverflow", shedOverflow.sum());
+        return stats;
+    }
+    
+    /**
+     * 通过反射创建虚拟线程执行器（项目以Java 8为编译目标）
+     * @return 虚拟线程执行器，当前JDK不支持时返回null
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            // 当前JDK不支持虚拟线程，由调用方退回有界线程池（getStats中的mode反映实际模式）
+            return null;
+        }
+    }
+    
+    /**
+     * 进入业务处理器的任务：维护活跃数、峰值和完成数
+     * 被拒绝时由{@link ShedPolicy}取出原始任务，拒绝的请求不计入这些统计
+     */
+    private final class Tracked implements Runnable {
+        final Runnable command;
+        
+        Tracked(Runnable command) {
+            this.command = command;
+        }
+        
+        @Override
+        public void run() {
+            int running = active.incrementAndGet();
+            updatePeak(running);
+            try {
+                command.run();
+            } finally {
+                active.decrementAndGet();
+                completed.increment();
+                if (permits != null) {
+                    permits.release();
+                }
+            }
+        }
+    }
+    
+    /**
+     * 队列满或线程池已停止时的拒绝策略：计数并交给拒绝线程以过载标记执行
+     * 停止后的任务同样返回503，由过滤器关闭连接，而不是直接丢弃
+     */
+    private class ShedPolicy implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            shed(r instanceof Tracked ? ((Tracked) r).command : r);
+        }
+    }
+    
+    /**
+     * 工作线程工厂
+     */
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger sequence = new AtomicInteger();
+        
+        // 线程名前缀
+        private final String prefix;
+        
+        WorkerThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+        
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
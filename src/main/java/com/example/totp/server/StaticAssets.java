@@ -0,0 +1,297 @@
+package com.example.totp.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 静态资源缓存
+ * 启动时把classpath下/static/中的文件一次性读入内存，同时预先压缩gzip版本并计算强ETag，
+ * 请求时只做查表，不再读取磁盘，也不再重复压缩。
+ * 开发模式下（-Dtotp.static.dev-dir指定源目录）从该目录加载，并用WatchService监听改动，
+ * 有文件变化时整体重新加载，浏览器刷新即可看到新内容。
+ */
+public class StaticAssets {
+
+    // classpath中静态资源所在目录
+    private static final String CLASSPATH_ROOT = "static";
+
+    // 小于该大小的文件不压缩，压缩收益抵不过gzip头和解压开销
+    private static final int MIN_GZIP_SIZE = 256;
+
+    // 当前的资源表（不可变快照，重新加载时整体替换）
+    private volatile Map<String, Asset> assets;
+
+    // 开发模式下的源目录，为null时从classpath加载
+    private final Path devDir;
+
+    /**
+     * 从classpath加载静态资源
+     */
+    public StaticAssets() throws IOException {
+        this(null);
+    }
+
+    /**
+     * @param devDir 开发模式的源目录，非null时从该目录加载并监听改动
+     */
+    public StaticAssets(Path devDir) throws IOException {
+        this.devDir = devDir;
+        if (devDir != null) {
+            this.assets = load(devDir);
+            startWatcher(devDir);
+        } else {
+            this.assets = loadFromClasspath();
+        }
+    }
+
+    /**
+     * 按系统属性创建：设置了-Dtotp.static.dev-dir时使用开发模式
+     */
+    public static StaticAssets fromSystemProperties() throws IOException {
+        String devDir = System.getProperty("totp.static.dev-dir");
+        return new StaticAssets(devDir == null || devDir.isEmpty() ? null : Paths.get(devDir));
+    }
+
+    /**
+     * 查找资源
+     * @param path 请求路径，不带开头的"/"
+     * @return 资源，不存在时返回null
+     */
+    public Asset get(String path) {
+        return assets.get(path);
+    }
+
+    /**
+     * 已加载的资源数量
+     */
+    public int size() {
+        return assets.size();
+    }
+
+    /**
+     * 是否为开发模式
+     */
+    public boolean isDevMode() {
+        return devDir != null;
+    }
+
+    private static Map<String, Asset> loadFromClasspath() throws IOException {
+        URL url = StaticAssets.class.getClassLoader().getResource(CLASSPATH_ROOT);
+        if (url == null) {
+            throw new IOException("classpath中没有静态资源目录: " + CLASSPATH_ROOT);
+        }
+        URI uri;
+        try {
+            uri = url.toURI();
+        } catch (URISyntaxException e) {
+            throw new IOException("静态资源路径无效: " + url, e);
+        }
+        if (!"jar".equals(uri.getScheme())) {
+            return load(Paths.get(uri));
+        }
+        // 打包为jar时通过zip文件系统遍历
+        FileSystem fs;
+        boolean created = false;
+        try {
+            fs = FileSystems.newFileSystem(uri, Collections.<String, Object>emptyMap());
+            created = true;
+        } catch (FileSystemAlreadyExistsException e) {
+            fs = FileSystems.getFileSystem(uri);
+        }
+        try {
+            return load(fs.getPath("/" + CLASSPATH_ROOT));
+        } finally {
+            if (created) {
+                fs.close();
+            }
+        }
+    }
+
+    private static Map<String, Asset> load(Path root) throws IOException {
+        Map<String, Asset> loaded = new HashMap<>();
+        try (Stream<Path> files = Files.walk(root)) {
+            files.filter(Files::isRegularFile).forEach(file -> {
+                String name = root.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+                try {
+                    loaded.put(name, new Asset(Files.readAllBytes(file), contentType(name)));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return Collections.unmodifiableMap(loaded);
+    }
+
+    /**
+     * 开发模式：源目录有变化时重新加载全部资源（文件数量很少，整体加载最简单）
+     */
+    private void startWatcher(Path dir) throws IOException {
+        WatchService watcher = dir.getFileSystem().newWatchService();
+        try (Stream<Path> dirs = Files.walk(dir)) {
+            dirs.filter(Files::isDirectory).forEach(d -> {
+                try {
+                    d.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = watcher.take();
+                    key.pollEvents();
+                    key.reset();
+                    try {
+                        assets = load(dir);
+                    } catch (IOException e) {
+                        // 编辑器保存过程中文件可能暂时不可读，等待下一次事件
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // 退出监听
+            }
+        }, "static-assets-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 根据文件扩展名获取Content-Type
+     */
+    private static String contentType(String filename) {
+        if (filename.endsWith(".html")) return "text/html; charset=UTF-8";
+        if (filename.endsWith(".css")) return "text/css; charset=UTF-8";
+        if (filename.endsWith(".js")) return "application/javascript; charset=UTF-8";
+        if (filename.endsWith(".svg")) return "image/svg+xml";
+        if (filename.endsWith(".png")) return "image/png";
+        if (filename.endsWith(".jpg") || filename.endsWith(".jpeg")) return "image/jpeg";
+        return "text/plain; charset=UTF-8";
+    }
+
+    private static boolean compressible(String contentType) {
+        return contentType.startsWith("text/") || contentType.startsWith("application/javascript")
+                || contentType.startsWith("image/svg+xml");
+    }
+
+    /**
+     * 单个静态资源：原始内容、可选的gzip内容、Content-Type和ETag，创建后不再修改
+     */
+    public static final class Asset {
+
+        private final byte[] identity;
+        private final byte[] gzip;
+        private final String contentType;
+        private final String etag;
+        private final String gzipEtag;
+
+        Asset(byte[] identity, String contentType) throws IOException {
+            this.identity = identity;
+            this.contentType = contentType;
+            String hash = sha256Prefix(identity);
+            // 强ETag按表示区分，压缩版本使用不同的ETag
+            this.etag = "\"" + hash + "\"";
+            this.gzipEtag = "\"" + hash + "-gz\"";
+            byte[] compressed = null;
+            if (identity.length >= MIN_GZIP_SIZE && compressible(contentType)) {
+                compressed = gzip(identity);
+                if (compressed.length >= identity.length) {
+                    compressed = null;
+                }
+            }
+            this.gzip = compressed;
+        }
+
+        /**
+         * 获取响应内容，调用方不得修改返回的数组
+         * @param gzipped 是否取gzip版本
+         */
+        public byte[] body(boolean gzipped) {
+            return gzipped ? gzip : identity;
+        }
+
+        /**
+         * 是否有gzip版本
+         */
+        public boolean hasGzip() {
+            return gzip != null;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * 获取ETag
+         * @param gzipped 是否为gzip版本
+         */
+        public String getEtag(boolean gzipped) {
+            return gzipped ? gzipEtag : etag;
+        }
+
+        /**
+         * If-None-Match是否与当前资源匹配（任意一种表示的ETag都算匹配）
+         * @param ifNoneMatch 请求头的值，可为null
+         */
+        public boolean matches(String ifNoneMatch) {
+            if (ifNoneMatch == null) {
+                return false;
+            }
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(etag) || tag.equals(gzipEtag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static byte[] gzip(byte[] data) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2);
+            try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+                gz.write(data);
+            }
+            return out.toByteArray();
+        }
+
+        private static String sha256Prefix(byte[] data) {
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+                StringBuilder sb = new StringBuilder(32);
+                for (int i = 0; i < 16; i++) {
+                    sb.append(String.format("%02x", digest[i]));
+                }
+                return sb.toString();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256不可用", e);
+            }
+        }
+    }
+}
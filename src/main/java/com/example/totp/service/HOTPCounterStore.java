@@ -0,0 +1,191 @@
+package com.example.totp.service;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * HOTP计数器存储
+ * 所有令牌的计数器保存在按块分配的AtomicLongArray中，每个令牌占用一个槽位，
+ * 读取和更新都是对long的无锁操作，不为每个令牌创建AtomicLong对象。
+ * 计数器只能通过CAS向前推进，并发验证不会让计数器回退，也不会让同一个计数器被接受两次。
+ * 注销令牌后槽位进入空闲列表，之后分配时优先重用，反复注册/注销不会耗尽槽位。
+ *
+ * 每个槽位的long中高16位是代数，低48位是计数器；调用方持有的句柄同时记录槽位编号和分配时的代数。
+ * 槽位每次释放或重新分配给新令牌时代数加一，旧句柄的读取返回{@link #STALE}，CAS也必然失败，
+ * 因此注销后仍在验证中的旧令牌不会改动已分配给其他令牌的计数器。
+ * 代数在65536次重用后回绕，只有旧句柄跨越这么多次重用仍在使用时才可能误判。
+ */
+public final class HOTPCounterStore {
+
+    // 计数器上限（低48位）
+    public static final long MAX_COUNTER = (1L << 48) - 1;
+
+    // 句柄已失效时的返回值
+    public static final long STALE = -1L;
+
+    // 每块的槽位数（2的幂）
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    // 代数在槽位值中的位置
+    private static final int GENERATION_SHIFT = 48;
+    private static final long GENERATION_MASK = 0xFFFFL;
+
+    // 按需创建的计数器块
+    private final AtomicReferenceArray<AtomicLongArray> chunks;
+
+    // 下一个可分配的槽位
+    private final AtomicInteger nextSlot = new AtomicInteger();
+
+    // 已释放、可重用的槽位
+    private final ConcurrentLinkedQueue<Integer> freeSlots = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 创建计数器存储
+     * @param maxTokens 最多容纳的令牌数量
+     */
+    public HOTPCounterStore(int maxTokens) {
+        if (maxTokens <= 0) {
+            throw new IllegalArgumentException("令牌数量必须大于0: " + maxTokens);
+        }
+        this.chunks = new AtomicReferenceArray<>((maxTokens + CHUNK_SIZE - 1) >>> CHUNK_BITS);
+    }
+
+    /**
+     * 分配一个槽位并设置初始计数器，优先重用已释放的槽位
+     * @param initialCounter 初始计数器（下一个期望的计数器值）
+     * @return 句柄（槽位编号和代数）
+     * @throws IllegalStateException 槽位已用完
+     */
+    public long allocate(long initialCounter) {
+        checkCounter(initialCounter);
+        Integer free = freeSlots.poll();
+        int slot;
+        if (free != null) {
+            slot = free;
+        } else {
+            slot = nextSlot.getAndIncrement();
+            if ((slot >>> CHUNK_BITS) >= chunks.length()) {
+                nextSlot.decrementAndGet();
+                throw new IllegalStateException("HOTP计数器已满");
+            }
+        }
+        // 释放时代数已经加一，这里沿用槽位当前的代数
+        AtomicLongArray chunk = chunk(slot);
+        int index = slot & (CHUNK_SIZE - 1);
+        long generation = generation(chunk.get(index));
+        chunk.set(index, pack(generation, initialCounter));
+        return handle(slot, generation);
+    }
+
+    /**
+     * 同一令牌重新注册时换发句柄：代数加一并重置计数器（允许回退），原句柄随即失效
+     * @param handle 当前句柄
+     * @param initialCounter 新的初始计数器
+     * @return 新句柄
+     * @throws IllegalStateException 原句柄已失效
+     */
+    public long renew(long handle, long initialCounter) {
+        checkCounter(initialCounter);
+        int slot = slot(handle);
+        long generation = generation(handle);
+        long next = (generation + 1) & GENERATION_MASK;
+        AtomicLongArray chunk = chunk(slot);
+        int index = slot & (CHUNK_SIZE - 1);
+        while (true) {
+            long value = chunk.get(index);
+            if (generation(value) != generation) {
+                throw new IllegalStateException("HOTP计数器句柄已失效");
+            }
+            if (chunk.compareAndSet(index, value, pack(next, initialCounter))) {
+                return handle(slot, next);
+            }
+        }
+    }
+
+    /**
+     * 释放槽位，之后可被{@link #allocate(long)}重用；代数加一，原句柄随即失效
+     * @param handle 不再使用的句柄，已失效时忽略
+     */
+    public void release(long handle) {
+        int slot = slot(handle);
+        long generation = generation(handle);
+        AtomicLongArray chunk = chunk(slot);
+        int index = slot & (CHUNK_SIZE - 1);
+        while (true) {
+            long value = chunk.get(index);
+            if (generation(value) != generation) {
+                return;
+            }
+            if (chunk.compareAndSet(index, value, pack((generation + 1) & GENERATION_MASK, 0))) {
+                freeSlots.offer(slot);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 读取计数器
+     * @param handle 句柄
+     * @return 下一个期望的计数器值，句柄已失效时返回{@link #STALE}
+     */
+    public long get(long handle) {
+        int slot = slot(handle);
+        long value = chunk(slot).get(slot & (CHUNK_SIZE - 1));
+        return generation(value) == generation(handle) ? value & MAX_COUNTER : STALE;
+    }
+
+    /**
+     * 仅当句柄仍有效且计数器仍为expected时把它更新为next
+     * @return true-更新成功，false-计数器已被其他线程修改或句柄已失效
+     * @throws IllegalArgumentException next超出计数器范围
+     */
+    public boolean compareAndSet(long handle, long expected, long next) {
+        checkCounter(next);
+        int slot = slot(handle);
+        long generation = generation(handle);
+        return chunk(slot).compareAndSet(slot & (CHUNK_SIZE - 1),
+                pack(generation, expected), pack(generation, next));
+    }
+
+    /**
+     * 正在使用的槽位数量
+     */
+    public int size() {
+        return Math.min(nextSlot.get(), chunks.length() << CHUNK_BITS) - freeSlots.size();
+    }
+
+    private static void checkCounter(long counter) {
+        if (counter < 0 || counter > MAX_COUNTER) {
+            throw new IllegalArgumentException("计数器超出范围: " + counter);
+        }
+    }
+
+    private static long pack(long generation, long counter) {
+        return (generation << GENERATION_SHIFT) | counter;
+    }
+
+    private static long generation(long value) {
+        return (value >>> GENERATION_SHIFT) & GENERATION_MASK;
+    }
+
+    private static long handle(int slot, long generation) {
+        return (generation << GENERATION_SHIFT) | (slot & 0xFFFFFFFFL);
+    }
+
+    private static int slot(long handle) {
+        return (int) handle;
+    }
+
+    private AtomicLongArray chunk(int slot) {
+        int index = slot >>> CHUNK_BITS;
+        AtomicLongArray chunk = chunks.get(index);
+        if (chunk == null) {
+            chunks.compareAndSet(index, null, new AtomicLongArray(CHUNK_SIZE));
+            chunk = chunks.get(index);
+        }
+        return chunk;
+    }
+}
@@ -0,0 +1,252 @@
+package com.example.totp.service;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * HOTP服务类（RFC 4226，计数器型一次性密码）
+ * 与TOTPService并列：每个令牌有自己的HMAC算法和验证码位数，计数器保存在{@link HOTPCounterStore}中。
+ * 验证时在[计数器, 计数器+lookAhead]范围内查找匹配值，命中后用CAS把计数器推进到命中值之后；
+ * CAS失败说明有并发验证先推进了计数器，此时重新读取计数器再查找，已被接受过的计数器不会再次命中。
+ * 计数器失步较多时，用连续两个验证码在更大的重新同步窗口内查找（RFC 4226 7.4节）。
+ * 令牌和计数器只保存在内存中，进程重启后丢失；需要跨重启保留时，由调用方保存
+ * {@link #getCounter(String)}的值，重启后重新注册时作为initialCounter传入。
+ */
+public class HOTPService {
+
+    // 未命中时的返回值
+    public static final long NO_MATCH = -1L;
+
+    // 默认向后查找的计数器数量
+    public static final int DEFAULT_LOOK_AHEAD = 10;
+
+    // 默认重新同步窗口
+    public static final int DEFAULT_RESYNC_WINDOW = 100;
+
+    // 按用户ID索引的令牌
+    private final ConcurrentHashMap<String, Token> tokens = new ConcurrentHashMap<>();
+
+    // 按"算法:位数"共享的计算引擎
+    private final ConcurrentHashMap<String, TOTPEngine> engines = new ConcurrentHashMap<>();
+
+    // 所有令牌的计数器
+    private final HOTPCounterStore counters;
+
+    // 验证时向后查找的计数器数量
+    private final int lookAhead;
+
+    // 重新同步时向后查找的计数器数量
+    private final int resyncWindow;
+
+    /**
+     * 使用默认查找窗口创建服务
+     * @param maxTokens 最多容纳的令牌数量
+     */
+    public HOTPService(int maxTokens) {
+        this(maxTokens, DEFAULT_LOOK_AHEAD, DEFAULT_RESYNC_WINDOW);
+    }
+
+    /**
+     * 构造函数
+     * @param maxTokens 最多容纳的令牌数量
+     * @param lookAhead 验证时向后查找的计数器数量
+     * @param resyncWindow 重新同步时向后查找的计数器数量
+     */
+    public HOTPService(int maxTokens, int lookAhead, int resyncWindow) {
+        if (lookAhead < 0 || resyncWindow < lookAhead) {
+            throw new IllegalArgumentException("查找窗口无效: lookAhead=" + lookAhead + ", resyncWindow=" + resyncWindow);
+        }
+        this.counters = new HOTPCounterStore(maxTokens);
+        this.lookAhead = lookAhead;
+        this.resyncWindow = resyncWindow;
+    }
+
+    /**
+     * 注册令牌，同一用户重复注册时替换原有令牌并沿用其计数器槽位（计数器重置为initialCounter），
+     * 槽位换发新句柄，仍持有原令牌的并发验证无法再推进计数器
+     * @param userId 用户ID
+     * @param key 原始密钥字节
+     * @param algorithm HMAC算法名称，如HmacSHA1（也接受SHA1、sha256这类写法），null表示默认算法
+     * @param digits 验证码位数
+     * @param initialCounter 初始计数器
+     * @throws IllegalArgumentException 用户ID为空、密钥无效、算法不受支持或计数器超出范围
+     */
+    public void register(String userId, byte[] key, String algorithm, int digits, long initialCounter) {
+        if (userId == null) {
+            throw new IllegalArgumentException("用户ID不能为空");
+        }
+        if (key == null || key.length == 0) {
+            throw new IllegalArgumentException("密钥无效");
+        }
+        if (initialCounter < 0 || initialCounter > HOTPCounterStore.MAX_COUNTER - resyncWindow - 2) {
+            throw new IllegalArgumentException("计数器超出范围: " + initialCounter);
+        }
+        // 先规范算法名称，同一算法的不同写法共享一个引擎
+        String name = algorithm == null ? TOTPEngine.DEFAULT_ALGORITHM : TOTPEnginePool.normalizeAlgorithm(algorithm);
+        TOTPEngine engine = engines.computeIfAbsent(name + ":" + digits,
+                k -> new TOTPEngine(name, digits, TOTPEngine.DEFAULT_PERIOD));
+        byte[] keyCopy = key.clone();
+        tokens.compute(userId, (id, existing) -> {
+            if (existing == null) {
+                return new Token(keyCopy, engine, counters.allocate(initialCounter));
+            }
+            return new Token(keyCopy, engine, counters.renew(existing.handle, initialCounter));
+        });
+    }
+
+    /**
+     * 注销令牌，释放其计数器槽位（原句柄随即失效，槽位之后可分配给其他令牌）
+     * @param userId 用户ID
+     * @return true-令牌存在并已注销
+     */
+    public boolean unregister(String userId) {
+        Token token = tokens.remove(userId);
+        if (token == null) {
+            return false;
+        }
+        counters.release(token.handle);
+        return true;
+    }
+
+    /**
+     * 用户是否已注册令牌
+     */
+    public boolean isRegistered(String userId) {
+        return userId != null && tokens.containsKey(userId);
+    }
+
+    /**
+     * 验证验证码，成功后计数器推进到命中计数器的下一个
+     * @param userId 用户ID
+     * @param userInput 用户输入的验证码
+     * @return 命中的计数器；未注册、输入无效或未命中返回{@link #NO_MATCH}
+     */
+    public long verify(String userId, String userInput) {
+        Token token = userId == null ? null : tokens.get(userId);
+        if (token == null) {
+            return NO_MATCH;
+        }
+        int code = token.engine.parseCode(userInput);
+        if (code < 0) {
+            return NO_MATCH;
+        }
+        while (true) {
+            long current = counters.get(token.handle);
+            if (current == HOTPCounterStore.STALE || current >= HOTPCounterStore.MAX_COUNTER) {
+                // 令牌已被注销或重新注册，或计数器已用尽
+                return NO_MATCH;
+            }
+            int offset = token.engine.matchCounter(token.key, current, lookAhead, code);
+            if (offset == TOTPEngine.NO_MATCH) {
+                return NO_MATCH;
+            }
+            long matched = current + offset;
+            if (matched >= HOTPCounterStore.MAX_COUNTER) {
+                return NO_MATCH;
+            }
+            if (counters.compareAndSet(token.handle, current, matched + 1)) {
+                return matched;
+            }
+            // 计数器已被并发验证推进（或句柄已失效），按新的计数器重新查找
+        }
+    }
+
+    /**
+     * 重新同步：在重新同步窗口内查找连续两个验证码都匹配的位置，成功后计数器推进到第二个验证码之后
+     * @param userId 用户ID
+     * @param firstInput 第一个验证码
+     * @param secondInput 紧随其后的第二个验证码
+     * @return true-重新同步成功
+     */
+    public boolean resync(String userId, String firstInput, String secondInput) {
+        Token token = userId == null ? null : tokens.get(userId);
+        if (token == null) {
+            return false;
+        }
+        int first = token.engine.parseCode(firstInput);
+        int second = token.engine.parseCode(secondInput);
+        if (first < 0 || second < 0) {
+            return false;
+        }
+        while (true) {
+            long current = counters.get(token.handle);
+            if (current == HOTPCounterStore.STALE || current > HOTPCounterStore.MAX_COUNTER - resyncWindow - 2) {
+                return false;
+            }
+            int offset = token.engine.matchCounterPair(token.key, current, resyncWindow, first, second);
+            if (offset == TOTPEngine.NO_MATCH) {
+                return false;
+            }
+            long next = current + offset + 2;
+            if (counters.compareAndSet(token.handle, current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 生成指定计数器的验证码
+     * @param userId 用户ID
+     * @param counter 计数器
+     * @return 验证码，用户未注册时返回null
+     */
+    public String generate(String userId, long counter) {
+        Token token = userId == null ? null : tokens.get(userId);
+        if (token == null) {
+            return null;
+        }
+        return token.engine.format(token.engine.generateAtStep(token.key, counter));
+    }
+
+    /**
+     * 获取下一个期望的计数器
+     * @param userId 用户ID
+     * @return 计数器，用户未注册时返回{@link #NO_MATCH}
+     */
+    public long getCounter(String userId) {
+        Token token = userId == null ? null : tokens.get(userId);
+        return token == null ? NO_MATCH : counters.get(token.handle);
+    }
+
+    /**
+     * 获取令牌的验证码位数
+     * @param userId 用户ID
+     * @return 验证码位数，用户未注册时返回0
+     */
+    public int getDigits(String userId) {
+        Token token = userId == null ? null : tokens.get(userId);
+        return token == null ? 0 : token.engine.getDigits();
+    }
+
+    /**
+     * 获取令牌的HMAC算法
+     * @param userId 用户ID
+     * @return 算法名称，用户未注册时返回null
+     */
+    public String getAlgorithm(String userId) {
+        Token token = userId == null ? null : tokens.get(userId);
+        return token == null ? null : token.engine.getAlgorithm();
+    }
+
+    public int getLookAhead() {
+        return lookAhead;
+    }
+
+    public int getResyncWindow() {
+        return resyncWindow;
+    }
+
+    /**
+     * 令牌：密钥、计算引擎和计数器句柄
+     */
+    private static final class Token {
+        final byte[] key;
+        final TOTPEngine engine;
+        final long handle;
+
+        Token(byte[] key, TOTPEngine engine, long handle) {
+            this.key = key;
+            this.engine = engine;
+            this.handle = handle;
+        }
+    }
+}
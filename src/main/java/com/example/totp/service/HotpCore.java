@@ -0,0 +1,91 @@
+package com.example.totp.service;
+
+/**
+ * 单个线程内的HOTP计算状态（RFC 4226）
+ * {@link TOTPEngine}为每个线程持有一个实例：先用{@link #init(byte[])}绑定密钥，
+ * 再对任意多个计数器调用{@link #compute(long, int)}。同一密钥重复绑定时实现应直接跳过；
+ * 是否为同一密钥按内容判断（{@link #isBound(byte[])}），调用方可能把新密钥解码进同一个复用数组。
+ * 实例只在所属线程内使用，不需要同步。
+ */
+abstract class HotpCore {
+
+    // 验证码字符缓冲区（供格式化复用）
+    final char[] chars;
+
+    // 最近一次绑定的密钥的副本（复用缓冲区，密钥变长时才扩容）及其长度，-1表示未绑定
+    private byte[] boundKey = new byte[64];
+    private int boundLength = -1;
+
+    HotpCore(int digits) {
+        this.chars = new char[digits];
+    }
+
+    /**
+     * 密钥内容是否与最近一次绑定的密钥相同
+     */
+    final boolean isBound(byte[] key) {
+        if (key == null || key.length != boundLength) {
+            return false;
+        }
+        for (int i = 0; i < boundLength; i++) {
+            if (key[i] != boundKey[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 记下已绑定的密钥内容
+     */
+    final void bound(byte[] key) {
+        if (key.length > boundKey.length) {
+            boundKey = new byte[key.length];
+        }
+        System.arraycopy(key, 0, boundKey, 0, key.length);
+        boundLength = key.length;
+    }
+
+    /**
+     * 清除已绑定的密钥（绑定失败时调用）
+     */
+    final void unbind() {
+        boundLength = -1;
+    }
+
+    /**
+     * 绑定密钥
+     * @param key 原始密钥字节
+     * @throws IllegalArgumentException 密钥无效
+     */
+    abstract void init(byte[] key);
+
+    /**
+     * 计算指定计数器的HOTP值（动态截断后对modulus取模）
+     * @param counter 计数器（TOTP中为时间步）
+     * @param modulus 10的位数次方
+     * @return 验证码数值
+     */
+    abstract int compute(long counter, int modulus);
+
+    /**
+     * 动态截断（RFC 4226 5.3）：以最后一个字节的低4位为偏移取31位整数
+     */
+    static int truncate(byte[] hash, int length) {
+        int offset = hash[length - 1] & 0x0F;
+        return ((hash[offset] & 0x7F) << 24)
+                | ((hash[offset + 1] & 0xFF) << 16)
+                | ((hash[offset + 2] & 0xFF) << 8)
+                | (hash[offset + 3] & 0xFF);
+    }
+
+    /**
+     * 把计数器按8字节大端序写入缓冲区
+     */
+    static void putCounter(byte[] target, long counter) {
+        for (int i = 7; i >= 0; i--) {
+            target[i] = (byte) counter;
+            counter >>>= 8;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.totp.service;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * 基于javax.crypto.Mac的HOTP计算状态（由demo/totp.java中的TotpAlgorithm演变而来）
+ * 与演示代码的区别：
+ * - 每个密钥只初始化一次Mac，作为该密钥的原型保存在引擎共享的{@link Prototypes}中；
+ *   线程切换到某个密钥时克隆它的原型即可得到已初始化的Mac，不再调用Mac.getInstance和init；
+ * - 同一线程连续使用同一密钥（按内容比较）时直接复用已克隆的Mac（doFinal后Mac回到已初始化状态）；
+ * - 计数器写入复用的8字节数组，HMAC结果写入复用的输出数组，不再分配ByteBuffer；
+ * - 取模使用整数的十的幂次，格式化由{@link TOTPEngine}完成，不再使用Math.pow和String.format。
+ */
+final class MacHotpCore extends HotpCore {
+
+    private final Prototypes prototypes;
+
+    // 8字节大端序计数器
+    private final byte[] counter = new byte[8];
+
+    // HMAC输出缓冲区
+    private final byte[] hash;
+
+    // 已用最近一次绑定的密钥初始化、本线程独占的Mac
+    private Mac mac;
+
+    /**
+     * @param prototypes 引擎共享的Mac原型
+     * @param digits 验证码位数
+     */
+    MacHotpCore(Prototypes prototypes, int digits) {
+        super(digits);
+        this.prototypes = prototypes;
+        this.hash = new byte[prototypes.macLength];
+    }
+
+    @Override
+    void init(byte[] key) {
+        if (isBound(key)) {
+            return;
+        }
+        if (key == null || key.length == 0) {
+            unbind();
+            throw new IllegalArgumentException("密钥无效");
+        }
+        mac = prototypes.forKey(key);
+        bound(key);
+    }
+
+    @Override
+    int compute(long step, int modulus) {
+        putCounter(counter, step);
+        mac.update(counter, 0, 8);
+        try {
+            mac.doFinal(hash, 0);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException("HMAC输出缓冲区不足", e);
+        }
+        return truncate(hash, hash.length) % modulus;
+    }
+
+    /**
+     * 一个引擎的Mac原型：未绑定密钥的原型和按密钥数组索引的已初始化原型
+     * 凭据持有的密钥数组与凭据同生共死，已初始化原型以弱引用挂在这个数组上：
+     * 不设数量上限，百万级凭据也不会因为清空而反复Mac.init；凭据被替换或删除后，
+     * 旧密钥数组不再可达，对应的原型随之被回收，不会一直占着被替换的密钥。
+     * 原型同时保存密钥内容的副本，数组被调用方原地改写时按新内容重新初始化。
+     * 已初始化原型创建后不再修改，只被克隆；按数组的identityHashCode分段加锁。
+     */
+    static final class Prototypes {
+
+        // 分段数（2的幂）
+        private static final int STRIPES = 16;
+
+        private final String algorithm;
+
+        // 未绑定密钥的原型
+        private final Mac unkeyed;
+
+        // HMAC输出长度（字节）
+        private final int macLength;
+
+        // 密钥数组（弱引用，byte[]的equals/hashCode按引用比较）-> 已初始化的原型
+        private final Stripe[] keyed;
+
+        /**
+         * @param algorithm HMAC算法名称
+         * @throws IllegalArgumentException 算法不受支持
+         */
+        Prototypes(String algorithm) {
+            try {
+                this.unkeyed = Mac.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalArgumentException("不支持的HMAC算法: " + algorithm, e);
+            }
+            this.algorithm = algorithm;
+            this.macLength = unkeyed.getMacLength();
+            this.keyed = new Stripe[STRIPES];
+            for (int i = 0; i < STRIPES; i++) {
+                keyed[i] = new Stripe();
+            }
+        }
+
+        /**
+         * 获取一个已用密钥初始化、调用方独占的Mac
+         */
+        Mac forKey(byte[] key) {
+            Map<byte[], Keyed> stripe = keyed[System.identityHashCode(key) & (STRIPES - 1)].map;
+            Keyed prototype;
+            synchronized (stripe) {
+                prototype = stripe.get(key);
+            }
+            if (prototype == null || !Arrays.equals(prototype.key, key)) {
+                prototype = new Keyed(key.clone(), newKeyed(key));
+                synchronized (stripe) {
+                    stripe.put(key, prototype);
+                }
+            }
+            try {
+                return (Mac) prototype.mac.clone();
+            } catch (CloneNotSupportedException e) {
+                // 提供者不支持克隆时每次重新初始化
+                return newKeyed(key);
+            }
+        }
+
+        int size() {
+            int size = 0;
+            for (Stripe stripe : keyed) {
+                synchronized (stripe.map) {
+                    size += stripe.map.size();
+                }
+            }
+            return size;
+        }
+
+        private Mac newKeyed(byte[] key) {
+            Mac mac;
+            try {
+                mac = (Mac) unkeyed.clone();
+            } catch (CloneNotSupportedException e) {
+                try {
+                    mac = Mac.getInstance(algorithm);
+                } catch (NoSuchAlgorithmException impossible) {
+                    throw new IllegalStateException(impossible);
+                }
+            }
+            try {
+                mac.init(new SecretKeySpec(key, algorithm));
+            } catch (InvalidKeyException e) {
+                throw new IllegalArgumentException("密钥无效", e);
+            }
+            return mac;
+        }
+
+        /**
+         * 一个分段的原型表（以map本身作为锁）
+         */
+        private static final class Stripe {
+            final Map<byte[], Keyed> map = new WeakHashMap<>();
+        }
+
+        /**
+         * 已初始化的原型及初始化所用密钥内容的副本（SecretKeySpec也只保存副本，原型不会让密钥数组保持可达）
+         */
+        private static final class Keyed {
+            final byte[] key;
+            final Mac mac;
+
+            Keyed(byte[] key, Mac mac) {
+                this.key = key;
+                this.mac = mac;
+            }
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.example.totp.service;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 滑动窗口限流器（防暴力破解）
+ * 每个键（账户名称、客户端地址等）的状态压缩为一个long，保存在固定大小的AtomicLongArray中，
+ * 通过CAS无锁更新：
+ *   [标签 20位][窗口编号 20位][上一窗口计数 12位][当前窗口计数 12位]
+ * 估算值 = 上一窗口计数 × 上一窗口在滑动窗口内的剩余比例 + 当前窗口计数。
+ * 每个键可以落在两个候选槽位之一；两个槽位都被其他键占用时，淘汰估算值较小的一个，
+ * 因此表的大小固定，扫描攻击只会挤掉低频键。估算值已达到阈值的槽位只有在两个候选槽位都处于限流状态时
+ * 才会被淘汰，此时淘汰窗口较旧（计数先到期）的一个：被限流的键要把自己挤出表，需要先让另一个键也达到阈值，
+ * 而扫描攻击填满整张表之后也不会把没有记录的正常用户全部拒之门外。
+ * 散列以进程启动时由SecureRandom生成的种子为起点，外部无法预先构造落在同一对槽位上的键。
+ */
+public class RateLimiter {
+    
+    private static final int TAG_BITS = 20;
+    private static final int WINDOW_BITS = 20;
+    private static final int COUNT_BITS = 12;
+    
+    private static final long TAG_MASK = (1L << TAG_BITS) - 1;
+    private static final long WINDOW_MASK = (1L << WINDOW_BITS) - 1;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+    
+    // 本进程的散列种子
+    private static final long SEED = new SecureRandom().nextLong();
+    
+    // 单个窗口内允许的最大请求数
+    private final int limit;
+    
+    // 窗口长度（毫秒）
+    private final long windowMillis;
+    
+    // 状态表
+    private final AtomicLongArray table;
+    
+    // 槽位下标掩码
+    private final int mask;
+    
+    // 被拒绝的请求数
+    private final LongAdder rejected = new LongAdder();
+    
+    /**
+     * 构造函数
+     * @param limit 滑动窗口内允许的最大请求数（1-4095）
+     * @param windowMillis 窗口长度（毫秒）
+     * @param tableSize 状态表槽位数，向上取整为2的幂
+     */
+    public RateLimiter(int limit, long windowMillis, int tableSize) {
+        if (limit <= 0 || limit > COUNT_MASK) {
+            throw new IllegalArgumentException("限流阈值必须在1到" + COUNT_MASK + "之间: " + limit);
+        }
+        if (windowMillis <= 0 || tableSize <= 1) {
+            throw new IllegalArgumentException("窗口长度和状态表大小必须大于0");
+        }
+        int size = Integer.highestOneBit(tableSize - 1) << 1;
+        this.limit = limit;
+        this.windowMillis = windowMillis;
+        this.table = new AtomicLongArray(size);
+        this.mask = size - 1;
+    }
+    
+    /**
+     * 尝试为键获取一次请求许可
+     * @param key 限流键（如账户名称），为null时视为同一个键
+     * @return true-允许，false-超过限制
+     */
+    public boolean tryAcquire(CharSequence key) {
+        return tryAcquire(key, System.currentTimeMillis());
+    }
+    
+    /**
+     * 尝试为键获取一次请求许可
+     * 直接按字符计算带种子的散列，不经过String.hashCode（其碰撞可以轻易构造）
+     * @param key 限流键（如账户名称），为null时视为同一个键
+     * @param nowMillis 当前时间（毫秒）
+     * @return true-允许，false-超过限制
+     */
+    public boolean tryAcquire(CharSequence key, long nowMillis) {
+        long hash = SEED;
+        if (key != null) {
+            for (int i = 0; i < key.length(); i++) {
+                hash = Long.rotateLeft((hash ^ key.charAt(i)) * 0x9e3779b97f4a7c15L, 31);
+            }
+        }
+        return tryAcquire(hash, nowMillis);
+    }
+    
+    /**
+     * 尝试为键获取一次请求许可
+     * 按字节计算带种子的散列，用于客户端地址等二进制键（InetAddress.hashCode对IPv6只是各32位字之和，碰撞可以轻易构造）
+     * @param key 限流键（如InetAddress.getAddress()），为null时视为同一个键
+     * @param nowMillis 当前时间（毫秒）
+     * @return true-允许，false-超过限制
+     */
+    public boolean tryAcquire(byte[] key, long nowMillis) {
+        long hash = SEED;
+        if (key != null) {
+            for (byte b : key) {
+                hash = Long.rotateLeft((hash ^ (b & 0xff)) * 0x9e3779b97f4a7c15L, 31);
+            }
+        }
+        return tryAcquire(hash, nowMillis);
+    }
+    
+    /**
+     * 尝试为键获取一次请求许可
+     * @param keyHash 限流键的散列值（与种子混合后再选槽位）
+     * @param nowMillis 当前时间（毫秒）
+     * @return true-允许，false-超过限制
+     */
+    public boolean tryAcquire(long keyHash, long nowMillis) {
+        long hash = mix(keyHash ^ SEED);
+        long tag = (hash >>> 44) & TAG_MASK;
+        if (tag == 0) {
+            tag = 1; // 0保留给空槽位
+        }
+        int first = (int) hash & mask;
+        int second = (int) (hash >>> 22) & mask;
+        if (second == first) {
+            second = first ^ 1;
+        }
+        
+        long windowIndex = Math.floorDiv(nowMillis, windowMillis);
+        long window = windowIndex & WINDOW_MASK;
+        // 上一窗口在当前滑动窗口内所占的比例（按千分比计算，避免浮点）
+        long prevWeight = 1000 - (nowMillis - windowIndex * windowMillis) * 1000 / windowMillis;
+        
+        while (true) {
+            long s1 = table.get(first);
+            long s2 = table.get(second);
+            int slot;
+            long state;
+            if (tagOf(s1) == tag) {
+                slot = first;
+                state = s1;
+            } else if (tagOf(s2) == tag) {
+                slot = second;
+                state = s2;
+            } else {
+                // 两个槽位都不属于该键，淘汰估算值较小的一个；两个都已达到阈值时淘汰窗口较旧的一个
+                long e1 = estimate(s1, window, prevWeight);
+                long e2 = estimate(s2, window, prevWeight);
+                boolean evictFirst;
+                if (e1 >= limit && e2 >= limit && age(s1, window) != age(s2, window)) {
+                    evictFirst = age(s1, window) > age(s2, window);
+                } else {
+                    evictFirst = e1 <= e2;
+                }
+                slot = evictFirst ? first : second;
+                state = evictFirst ? s1 : s2;
+            }
+            
+            long current = 0;
+            long previous = 0;
+            if (tagOf(state) == tag) {
+                int age = age(state, window);
+                if (age == SAME_WINDOW) {
+                    current = countOf(state);
+                    previous = prevOf(state);
+                } else if (age == PREVIOUS_WINDOW) {
+                    previous = countOf(state);
+                }
+            }
+            
+            if (previous * prevWeight / 1000 + current >= limit) {
+                rejected.increment();
+                return false;
+            }
+            
+            long next = pack(tag, window, previous, Math.min(current + 1, COUNT_MASK));
+            if (table.compareAndSet(slot, state, next)) {
+                return true;
+            }
+        }
+    }
+    
+    // 状态与当前窗口的关系：同一窗口 / 上一窗口 / 已过期
+    private static final int SAME_WINDOW = 0;
+    private static final int PREVIOUS_WINDOW = 1;
+    private static final int EXPIRED = 2;
+    
+    /**
+     * 判断状态所在窗口与当前窗口的关系
+     */
+    private static int age(long state, long window) {
+        long stateWindow = windowOf(state);
+        if (stateWindow == window) {
+            return SAME_WINDOW;
+        }
+        if (((stateWindow + 1) & WINDOW_MASK) == window) {
+            return PREVIOUS_WINDOW;
+        }
+        return EXPIRED;
+    }
+    
+    /**
+     * 估算槽位当前的请求数，用于淘汰决策（空槽位最优先）
+     */
+    private static long estimate(long state, long window, long prevWeight) {
+        if (state == 0) {
+            return -1;
+        }
+        int age = age(state, window);
+        if (age == SAME_WINDOW) {
+            return prevOf(state) * prevWeight / 1000 + countOf(state);
+        }
+        if (age == PREVIOUS_WINDOW) {
+            return countOf(state) * prevWeight / 1000;
+        }
+        return 0;
+    }
+    
+    private static long pack(long tag, long window, long previous, long current) {
+        return (tag << (WINDOW_BITS + 2 * COUNT_BITS))
+                | (window << (2 * COUNT_BITS))
+                | (previous << COUNT_BITS)
+                | current;
+    }
+    
+    private static long tagOf(long state) {
+        return (state >>> (WINDOW_BITS + 2 * COUNT_BITS)) & TAG_MASK;
+    }
+    
+    private static long windowOf(long state) {
+        return (state >>> (2 * COUNT_BITS)) & WINDOW_MASK;
+    }
+    
+    private static long prevOf(long state) {
+        return (state >>> COUNT_BITS) & COUNT_MASK;
+    }
+    
+    private static long countOf(long state) {
+        return state & COUNT_MASK;
+    }
+    
+    /**
+     * 散列混合（SplitMix64终结函数）
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 33)) * 0xff51afd7ed558ccdL;
+        value = (value ^ (value >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return value ^ (value >>> 33);
+    }
+    
+    public int getLimit() {
+        return limit;
+    }
+    
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+    
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+}
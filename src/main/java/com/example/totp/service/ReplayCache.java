@@ -0,0 +1,208 @@
+package com.example.totp.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 已使用验证码缓存（防重放）
+ * 记录已验证成功的（凭据编号, 时间步）组合，同一账户同一时间步的验证码只能使用一次。
+ * 数据按时间步分桶：每个桶是一个以凭据编号为元素的开放寻址long集合，
+ * 桶按时间步放在环形数组中，窗口滑动时整个旧桶被新桶替换，内存占用固定为
+ * 环长度 × 每桶槽数 × 8字节。插入与替换桶都通过CAS完成，没有全局锁。
+ * 每桶槽数应按预期峰值（每秒验证成功次数 × 时间步长度）的两倍左右设置，使负载因子不超过0.5。
+ * 桶已满时验证码按首次使用放行（该时间步的防重放失效，而不是拒绝所有后来的合法用户），
+ * 同时计入溢出次数（totp_replay_overflow_total，应在大于0时告警并调大-Dtotp.replay.peak-per-second）。
+ */
+public class ReplayCache {
+    
+    // 线性探测的最大步数，超过视为桶已满
+    private static final int MAX_PROBES = 64;
+    
+    // 记录结果：首次记录、已经记录过、时间步已过期、桶已满
+    private static final int RECORDED = 0;
+    private static final int DUPLICATE = 1;
+    private static final int EXPIRED = 2;
+    private static final int FULL = 3;
+    
+    // 每个桶的槽数（2的幂）
+    private final int slotsPerBucket;
+    
+    // 槽下标掩码
+    private final int mask;
+    
+    // 时间步 -> 桶 的环形数组
+    private final AtomicReferenceArray<Bucket> ring;
+    
+    // 桶已满导致无法记录的次数
+    private final LongAdder overflows = new LongAdder();
+    
+    // 拦截的重放次数
+    private final LongAdder replays = new LongAdder();
+    
+    /**
+     * 构造函数
+     * @param liveSteps 同时有效的时间步数量（落后步数 + 超前步数 + 1）
+     * @param slotsPerBucket 每个时间步最多记录的验证成功次数，向上取整为2的幂
+     */
+    public ReplayCache(int liveSteps, int slotsPerBucket) {
+        if (liveSteps <= 0 || slotsPerBucket <= 0) {
+            throw new IllegalArgumentException("时间步数量和桶容量必须大于0");
+        }
+        int slots = Integer.highestOneBit(Math.max(slotsPerBucket, MAX_PROBES) - 1) << 1;
+        this.slotsPerBucket = slots;
+        this.mask = slots - 1;
+        // 多留一个桶，保证窗口内任意两个有效时间步不会落在同一位置
+        this.ring = new AtomicReferenceArray<>(liveSteps + 1);
+    }
+    
+    /**
+     * 标记（凭据编号, 时间步）已使用
+     * @param credentialId 凭据编号（必须大于0）
+     * @param step 验证码所属的时间步
+     * @return true-首次使用（桶已满时也返回true并计入溢出次数），false-已经使用过或该时间步已过期
+     */
+    public boolean markUsed(long credentialId, long step) {
+        switch (record(credentialId, step)) {
+            case DUPLICATE:
+            case EXPIRED:
+                replays.increment();
+                return false;
+            case FULL:
+                // 桶已满：放行并计数，由监控告警后调大容量
+                overflows.increment();
+                return true;
+            default:
+                return true;
+        }
+    }
+    
+    /**
+     * 恢复（凭据编号, 时间步）的已使用标记（启动时重放预写日志使用）
+     * 与{@link #markUsed}不同，已记录或已过期的时间步直接忽略，不计入重放次数
+     * @param credentialId 凭据编号（必须大于0）
+     * @param step 时间步
+     */
+    public void restore(long credentialId, long step) {
+        if (record(credentialId, step) == FULL) {
+            overflows.increment();
+        }
+    }
+    
+    /**
+     * 在时间步对应的桶中记录凭据编号
+     * @return {@link #RECORDED}、{@link #DUPLICATE}、{@link #EXPIRED}或{@link #FULL}
+     */
+    private int record(long credentialId, long step) {
+        if (credentialId <= 0) {
+            throw new IllegalArgumentException("凭据编号必须大于0: " + credentialId);
+        }
+        Bucket bucket = bucketFor(step);
+        if (bucket == null) {
+            return EXPIRED;
+        }
+        
+        AtomicLongArray slots = bucket.slots;
+        int index = mix(credentialId) & mask;
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            long current = slots.get(index);
+            if (current == 0L) {
+                if (slots.compareAndSet(index, 0L, credentialId)) {
+                    return RECORDED;
+                }
+                current = slots.get(index);
+            }
+            if (current == credentialId) {
+                return DUPLICATE;
+            }
+            index = (index + 1) & mask;
+        }
+        return FULL;
+    }
+    
+    /**
+     * 检查（凭据编号, 时间步）是否已使用，不做标记
+     * @param credentialId 凭据编号
+     * @param step 时间步
+     * @return true-已使用
+     */
+    public boolean isUsed(long credentialId, long step) {
+        Bucket bucket = ring.get(slotOf(step));
+        if (bucket == null || bucket.step != step) {
+            return false;
+        }
+        int index = mix(credentialId) & mask;
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            long current = bucket.slots.get(index);
+            if (current == credentialId) {
+                return true;
+            }
+            if (current == 0L) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+    
+    /**
+     * 获取时间步对应的桶，位置上是更旧的时间步时整体替换为新桶
+     * @return 桶对象，时间步已经比环中的桶更旧时返回null
+     */
+    private Bucket bucketFor(long step) {
+        int slot = slotOf(step);
+        while (true) {
+            Bucket bucket = ring.get(slot);
+            if (bucket != null) {
+                if (bucket.step == step) {
+                    return bucket;
+                }
+                if (bucket.step > step) {
+                    return null;
+                }
+            }
+            Bucket fresh = new Bucket(step, slotsPerBucket);
+            if (ring.compareAndSet(slot, bucket, fresh)) {
+                return fresh;
+            }
+        }
+    }
+    
+    private int slotOf(long step) {
+        return (int) Math.floorMod(step, (long) ring.length());
+    }
+    
+    /**
+     * 凭据编号散列（SplitMix64终结函数），避免连续编号聚集在相邻槽位
+     */
+    private static int mix(long value) {
+        value = (value ^ (value >>> 33)) * 0xff51afd7ed558ccdL;
+        value = (value ^ (value >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return (int) (value ^ (value >>> 33));
+    }
+    
+    public long getReplayCount() {
+        return replays.sum();
+    }
+    
+    public long getOverflowCount() {
+        return overflows.sum();
+    }
+    
+    public int getSlotsPerBucket() {
+        return slotsPerBucket;
+    }
+    
+    /**
+     * 单个时间步的桶
+     */
+    private static final class Bucket {
+        final long step;
+        final AtomicLongArray slots;
+        
+        Bucket(long step, int size) {
+            this.step = step;
+            this.slots = new AtomicLongArray(size);
+        }
+    }
+}
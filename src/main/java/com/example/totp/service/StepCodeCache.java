@@ -0,0 +1,229 @@
+package com.example.totp.service;
+
+import com.example.totp.metrics.Metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按时间步预计算的验证码缓存
+ * 为最近活跃的凭据保存T-stepsBehind到T+stepsAhead各时间步的验证码（int数组），
+ * 同一时间步内的验证和取当前验证码都只是整数比较/读取，不再计算HMAC。
+ * 时间步变化后第一次访问时整体前移窗口：与上一窗口重叠的时间步直接复用，通常只需计算一个新的HMAC。
+ * 条目保存在固定大小的槽位表中，按凭据编号散列到两个候选槽位之一（与{@link RateLimiter}相同的两路组相联），
+ * 查找不装箱、不加锁；两个槽位都被其他凭据占用时替换较久未访问的一个，不需要在请求线程上排序淘汰，内存占用有上限。
+ * 凭据编号不会复用（重新注册得到新编号），旧凭据的条目不会再被命中，随后被活跃的凭据替换。
+ * 每个条目记录计算时使用的引擎，不同参数（算法、位数、时间步长度）的凭据可以共用一个缓存。
+ */
+public final class StepCodeCache {
+
+    private final int stepsBehind;
+
+    // 窗口宽度：stepsBehind + 1 + stepsAhead
+    private final int width;
+
+    // 槽位表（大小为容量向上取整的2的幂）
+    private final AtomicReferenceArray<Entry> slots;
+
+    // 槽位下标掩码
+    private final int mask;
+
+    // 已占用的槽位数
+    private final LongAdder occupied = new LongAdder();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param stepsBehind 允许落后的时间步数量
+     * @param stepsAhead 允许超前的时间步数量
+     * @param capacity 最多缓存的凭据数量
+     */
+    public StepCodeCache(int stepsBehind, int stepsAhead, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("缓存容量必须大于0: " + capacity);
+        }
+        this.stepsBehind = stepsBehind;
+        this.width = stepsBehind + 1 + stepsAhead;
+        int size = Math.max(2, Integer.highestOneBit(Math.max(1, capacity - 1)) << 1);
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * 在窗口内查找验证码，检查顺序与{@link TOTPEngine#verifyWindow}相同（T, T-1, T+1, T-2, T+2 ...）
+     * @param credentialId 凭据编号
+     * @param engine 凭据使用的计算引擎
+     * @param key 原始密钥字节
+     * @param step 当前时间步（按该引擎的时间步长度计算）
+     * @param code 用户输入的验证码数值
+     * @return 命中的时间步偏移量，未命中返回{@link TOTPEngine#NO_MATCH}
+     */
+    public int match(long credentialId, TOTPEngine engine, byte[] key, long step, int code) {
+        int[] codes = window(credentialId, engine, key, step);
+        int stepsAhead = width - 1 - stepsBehind;
+        int reach = Math.max(stepsBehind, stepsAhead);
+        for (int distance = 0; distance <= reach; distance++) {
+            if (distance <= stepsBehind && codes[stepsBehind - distance] == code) {
+                return -distance;
+            }
+            if (distance > 0 && distance <= stepsAhead && codes[stepsBehind + distance] == code) {
+                return distance;
+            }
+        }
+        return TOTPEngine.NO_MATCH;
+    }
+
+    /**
+     * 获取当前时间步的验证码
+     * @param credentialId 凭据编号
+     * @param engine 凭据使用的计算引擎
+     * @param key 原始密钥字节
+     * @param step 当前时间步（按该引擎的时间步长度计算）
+     * @return 验证码数值
+     */
+    public int current(long credentialId, TOTPEngine engine, byte[] key, long step) {
+        return window(credentialId, engine, key, step)[stepsBehind];
+    }
+
+    public int size() {
+        return occupied.intValue();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * 取得指定时间步的验证码窗口，必要时计算
+     */
+    private int[] window(long credentialId, TOTPEngine engine, byte[] key, long step) {
+        long hash = mix(credentialId);
+        int first = (int) hash & mask;
+        int second = first ^ 1;
+        long now = System.currentTimeMillis();
+        Entry entry = slots.get(first);
+        if (!matches(entry, credentialId, engine, key)) {
+            entry = slots.get(second);
+            if (!matches(entry, credentialId, engine, key)) {
+                entry = insert(first, second, new Entry(credentialId, engine, key, now));
+            }
+        }
+        entry.lastAccess = now;
+
+        Window current = entry.window;
+        if (current != null && current.step == step) {
+            hits.increment();
+            return current.codes;
+        }
+        misses.increment();
+        Window next = compute(engine, key, step, current);
+        // 并发计算结果相同；只在没有更新的窗口时替换，时钟回拨时不覆盖较新的窗口
+        if (current == null || current.step < step) {
+            entry.window = next;
+        }
+        return next.codes;
+    }
+
+    private static boolean matches(Entry entry, long credentialId, TOTPEngine engine, byte[] key) {
+        return entry != null && entry.credentialId == credentialId && entry.engine == engine
+                && (entry.key == key || Arrays.equals(entry.key, key));
+    }
+
+    /**
+     * 把新条目放入两个候选槽位之一：优先空槽位，否则替换较久未访问的一个
+     * 与其他线程竞争失败时不重试，新条目只用于本次计算
+     */
+    private Entry insert(int first, int second, Entry entry) {
+        Entry a = slots.get(first);
+        Entry b = slots.get(second);
+        int slot;
+        Entry victim;
+        if (a == null || (b != null && a.lastAccess <= b.lastAccess)) {
+            slot = first;
+            victim = a;
+        } else {
+            slot = second;
+            victim = b;
+        }
+        if (slots.compareAndSet(slot, victim, entry)) {
+            if (victim == null) {
+                occupied.increment();
+            } else {
+                evictions.increment();
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * 计算窗口，与上一窗口重叠的时间步直接复制
+     */
+    private Window compute(TOTPEngine engine, byte[] key, long step, Window previous) {
+        long start = System.nanoTime();
+        int[] codes = new int[width];
+        long first = step - stepsBehind;
+        long previousFirst = previous == null ? Long.MIN_VALUE : previous.step - stepsBehind;
+        for (int i = 0; i < width; i++) {
+            long index = first + i - previousFirst;
+            if (previous != null && index >= 0 && index < width) {
+                codes[i] = previous.codes[(int) index];
+            } else {
+                codes[i] = engine.generateAtStep(key, first + i);
+            }
+        }
+        Metrics.HMAC.recordSince(start);
+        return new Window(step, codes);
+    }
+
+    /**
+     * 散列混合（SplitMix64终结函数），连续的凭据编号分散到不同的槽位对
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 33)) * 0xff51afd7ed558ccdL;
+        value = (value ^ (value >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return value ^ (value >>> 33);
+    }
+
+    /**
+     * 单个凭据的缓存条目
+     */
+    private static final class Entry {
+        final long credentialId;
+        final TOTPEngine engine;
+        final byte[] key;
+        volatile Window window;
+        // 创建时即记下访问时间，新条目不会被当作最久未访问的条目立即替换
+        volatile long lastAccess;
+
+        Entry(long credentialId, TOTPEngine engine, byte[] key, long now) {
+            this.credentialId = credentialId;
+            this.engine = engine;
+            this.key = key;
+            this.lastAccess = now;
+        }
+    }
+
+    /**
+     * 某个时间步的验证码窗口，创建后不再修改
+     */
+    private static final class Window {
+        final long step;
+        final int[] codes;
+
+        Window(long step, int[] codes) {
+            this.step = step;
+            this.codes = codes;
+        }
+    }
+}
@@ -0,0 +1,419 @@
+package com.example.totp.service;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+
+/**
+ * TOTP计算引擎（RFC 6238）
+ * 直接基于预解码的密钥字节和Unix秒时间戳计算验证码：
+ * 每个线程复用自己的MessageDigest实例、密钥填充块、计数器缓冲区、哈希输出缓冲区和数字字符缓冲区，
+ * HMAC（RFC 2104）在这些缓冲区上直接计算。javax.crypto.Mac的doFinal即使传入输出数组，
+ * 内部也会为每次计算分配新的结果数组，因此这里不使用Mac；
+ * 同一密钥（按内容比较）连续计算时连填充块也不重新计算，稳态验证路径不产生临时对象。
+ * 也可以选择{@link Implementation#MAC}：基于javax.crypto.Mac，按密钥克隆预先初始化的Mac（见{@link MacHotpCore}），
+ * 适用于Mac由硬件加速或FIPS提供者实现的环境。两种实现的结果完全相同。
+ * 引擎本身是不可变的，可以在多个线程之间共享。
+ */
+public final class TOTPEngine {
+
+    // 默认HMAC算法（RFC 6238默认值，Google Authenticator兼容）
+    public static final String DEFAULT_ALGORITHM = "HmacSHA1";
+
+    // 默认验证码位数
+    public static final int DEFAULT_DIGITS = 6;
+
+    // 默认时间窗口（秒）
+    public static final int DEFAULT_PERIOD = 30;
+
+    // 窗口验证未命中时的返回值
+    public static final int NO_MATCH = Integer.MIN_VALUE;
+
+    /**
+     * HMAC计算实现
+     */
+    public enum Implementation {
+        // 直接在MessageDigest上计算HMAC，线程内复用填充块，稳态不分配对象
+        DIGEST,
+        // 使用javax.crypto.Mac，按密钥克隆预先初始化的Mac
+        MAC;
+
+        /**
+         * 按系统属性选择：-Dtotp.engine.impl=digest|mac（默认digest）
+         * @throws IllegalArgumentException 属性值无效
+         */
+        public static Implementation fromSystemProperties() {
+            String value = System.getProperty("totp.engine.impl", "digest");
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("无效的totp.engine.impl: " + value + "（可选digest、mac）", e);
+            }
+        }
+    }
+
+    // 十的幂次表，用于动态截断后的取模运算，避免Math.pow
+    private static final int[] POWERS_OF_TEN = {
+        1, 10, 100, 1000, 10000, 100000, 1000000, 10000000, 100000000, 1000000000
+    };
+
+    // HMAC算法名称
+    private final String algorithm;
+
+    // 验证码位数
+    private final int digits;
+
+    // 时间窗口（秒）
+    private final int period;
+
+    // HMAC计算实现
+    private final Implementation implementation;
+
+    // 取模除数（10的digits次方）
+    private final int modulus;
+
+    // 每个线程独立的计算状态
+    private final ThreadLocal<HotpCore> state;
+
+    /**
+     * 使用默认参数创建引擎：HmacSHA1，6位验证码，30秒时间窗口
+     */
+    public TOTPEngine() {
+        this(DEFAULT_ALGORITHM, DEFAULT_DIGITS, DEFAULT_PERIOD);
+    }
+
+    /**
+     * 创建引擎，HMAC实现由系统属性-Dtotp.engine.impl决定（默认{@link Implementation#DIGEST}）
+     * @param algorithm HMAC算法名称，如HmacSHA1、HmacSHA256、HmacSHA512
+     * @param digits 验证码位数（1-9）
+     * @param period 时间窗口（秒）
+     */
+    public TOTPEngine(String algorithm, int digits, int period) {
+        this(algorithm, digits, period, Implementation.fromSystemProperties());
+    }
+
+    /**
+     * 创建引擎
+     * - TOTP标准 ：30秒是TOTP协议的标准时间间隔，大多数TOTP应用（如Google Authenticator）都使用这个值
+     * - 兼容性 ：如果修改时间间隔，需要确保所有使用该TOTP的应用都使用相同的时间间隔
+     * @param algorithm HMAC算法名称，如HmacSHA1、HmacSHA256、HmacSHA512
+     * @param digits 验证码位数（1-9）
+     * @param period 时间窗口（秒）
+     * @param implementation HMAC计算实现
+     */
+    public TOTPEngine(String algorithm, int digits, int period, Implementation implementation) {
+        if (digits < 1 || digits >= POWERS_OF_TEN.length) {
+            throw new IllegalArgumentException("验证码位数必须在1到9之间: " + digits);
+        }
+        if (period <= 0) {
+            throw new IllegalArgumentException("时间窗口必须大于0: " + period);
+        }
+        this.algorithm = algorithm;
+        this.digits = digits;
+        this.period = period;
+        this.implementation = implementation;
+        this.modulus = POWERS_OF_TEN[digits];
+        // 提前检查算法是否可用，避免在请求线程上才失败
+        if (implementation == Implementation.MAC) {
+            MacHotpCore.Prototypes prototypes = new MacHotpCore.Prototypes(algorithm);
+            this.state = ThreadLocal.withInitial(() -> new MacHotpCore(prototypes, digits));
+        } else {
+            String digestName = digestAlgorithm(algorithm);
+            newDigest(digestName);
+            this.state = ThreadLocal.withInitial(() -> new DigestCore(newDigest(digestName), digits));
+        }
+    }
+
+    /**
+     * 计算指定时间点所在的时间步
+     * @param epochSeconds Unix时间戳（秒）
+     * @return 时间步计数器
+     */
+    public long timeStep(long epochSeconds) {
+        return Math.floorDiv(epochSeconds, period);
+    }
+
+    /**
+     * 生成指定时间点的验证码
+     * @param key 原始密钥字节
+     * @param epochSeconds Unix时间戳（秒）
+     * @return 验证码数值
+     */
+    public int generate(byte[] key, long epochSeconds) {
+        return generateAtStep(key, timeStep(epochSeconds));
+    }
+
+    /**
+     * 生成指定时间步的验证码
+     * @param key 原始密钥字节
+     * @param step 时间步计数器
+     * @return 验证码数值
+     */
+    public int generateAtStep(byte[] key, long step) {
+        HotpCore s = state.get();
+        s.init(key);
+        return s.compute(step, modulus);
+    }
+
+    /**
+     * 验证验证码，允许前后window个时间步的偏移
+     * @param key 原始密钥字节
+     * @param epochSeconds Unix时间戳（秒）
+     * @param code 用户输入的验证码数值
+     * @param window 允许偏移的时间步数量，0表示只检查当前时间步
+     * @return 验证结果：true-验证成功，false-验证失败
+     */
+    public boolean verify(byte[] key, long epochSeconds, int code, int window) {
+        return verifyWindow(key, epochSeconds, code, window, window) != NO_MATCH;
+    }
+
+    /**
+     * 在时间步T-stepsBehind到T+stepsAhead范围内验证验证码
+     * 密钥填充块只计算一次，之后逐个计数器计算HMAC；按离当前时间步由近到远的顺序检查
+     * （T, T-1, T+1, T-2, T+2 ...），命中即停止
+     * @param key 原始密钥字节
+     * @param epochSeconds Unix时间戳（秒）
+     * @param code 用户输入的验证码数值
+     * @param stepsBehind 允许落后的时间步数量（客户端时钟偏慢）
+     * @param stepsAhead 允许超前的时间步数量（客户端时钟偏快）
+     * @return 命中的时间步偏移量（负数表示客户端落后），未命中返回{@link #NO_MATCH}
+     */
+    public int verifyWindow(byte[] key, long epochSeconds, int code, int stepsBehind, int stepsAhead) {
+        if (code < 0 || code >= modulus) {
+            return NO_MATCH;
+        }
+        HotpCore s = state.get();
+        s.init(key);
+        long step = timeStep(epochSeconds);
+        int reach = Math.max(stepsBehind, stepsAhead);
+        for (int distance = 0; distance <= reach; distance++) {
+            if (distance <= stepsBehind && s.compute(step - distance, modulus) == code) {
+                return -distance;
+            }
+            if (distance > 0 && distance <= stepsAhead && s.compute(step + distance, modulus) == code) {
+                return distance;
+            }
+        }
+        return NO_MATCH;
+    }
+
+    /**
+     * 在计数器from到from+lookAhead范围内查找与验证码匹配的计数器（HOTP，RFC 4226）
+     * 密钥填充块只计算一次，之后逐个计数器计算HMAC，按从小到大的顺序检查，命中即停止
+     * @param key 原始密钥字节
+     * @param from 起始计数器
+     * @param lookAhead 向后查找的计数器数量，0表示只检查from
+     * @param code 用户输入的验证码数值
+     * @return 命中的计数器相对from的偏移量（0到lookAhead），未命中返回{@link #NO_MATCH}
+     */
+    public int matchCounter(byte[] key, long from, int lookAhead, int code) {
+        if (code < 0 || code >= modulus) {
+            return NO_MATCH;
+        }
+        HotpCore s = state.get();
+        s.init(key);
+        for (int i = 0; i <= lookAhead; i++) {
+            if (s.compute(from + i, modulus) == code) {
+                return i;
+            }
+        }
+        return NO_MATCH;
+    }
+
+    /**
+     * 在计数器from到from+lookAhead范围内查找连续两个计数器分别与两个验证码匹配的位置
+     * 用于计数器失步后的重新同步：只有连续两个验证码都匹配才认为令牌可信
+     * @param key 原始密钥字节
+     * @param from 起始计数器
+     * @param lookAhead 向后查找的计数器数量
+     * @param code 第一个验证码数值
+     * @param nextCode 紧随其后的验证码数值
+     * @return 第一个验证码命中的计数器相对from的偏移量，未命中返回{@link #NO_MATCH}
+     */
+    public int matchCounterPair(byte[] key, long from, int lookAhead, int code, int nextCode) {
+        if (code < 0 || code >= modulus || nextCode < 0 || nextCode >= modulus) {
+            return NO_MATCH;
+        }
+        HotpCore s = state.get();
+        s.init(key);
+        // 上一个计数器是否与第一个验证码匹配
+        boolean previousMatched = false;
+        for (int i = 0; i <= lookAhead + 1; i++) {
+            int value = s.compute(from + i, modulus);
+            if (previousMatched && value == nextCode) {
+                return i - 1;
+            }
+            previousMatched = i <= lookAhead && value == code;
+        }
+        return NO_MATCH;
+    }
+
+    /**
+     * 解析用户输入的验证码，不创建中间对象
+     * @param input 用户输入
+     * @return 验证码数值，输入不是1到digits位的纯数字时返回-1
+     */
+    public int parseCode(CharSequence input) {
+        if (input == null) {
+            return -1;
+        }
+        int length = input.length();
+        if (length == 0 || length > digits) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = 0; i < length; i++) {
+            int d = input.charAt(i) - '0';
+            if (d < 0 || d > 9) {
+                return -1;
+            }
+            value = value * 10 + d;
+        }
+        return value;
+    }
+
+    /**
+     * 将验证码格式化为定长数字（前面补零）写入调用方提供的缓冲区
+     * @param code 验证码数值
+     * @param dst 目标缓冲区
+     * @param offset 写入起始位置
+     */
+    public void formatInto(int code, char[] dst, int offset) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            dst[i] = (char) ('0' + code % 10);
+            code /= 10;
+        }
+    }
+
+    /**
+     * 将验证码格式化为定长数字字符串（前面补零）
+     * @param code 验证码数值
+     * @return 验证码字符串
+     */
+    public String format(int code) {
+        char[] buffer = state.get().chars;
+        formatInto(code, buffer, 0);
+        return new String(buffer, 0, digits);
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public int getDigits() {
+        return digits;
+    }
+
+    public int getPeriod() {
+        return period;
+    }
+
+    public Implementation getImplementation() {
+        return implementation;
+    }
+
+    /**
+     * 将HMAC算法名称转换为底层摘要算法名称，如HmacSHA256 -> SHA-256
+     */
+    private static String digestAlgorithm(String hmacAlgorithm) {
+        if (hmacAlgorithm == null || !hmacAlgorithm.regionMatches(true, 0, "Hmac", 0, 4)) {
+            throw new IllegalArgumentException("不支持的HMAC算法: " + hmacAlgorithm);
+        }
+        String name = hmacAlgorithm.substring(4).toUpperCase(Locale.ROOT);
+        if (name.startsWith("SHA") && name.length() > 3 && name.charAt(3) != '-') {
+            name = "SHA-" + name.substring(3);
+        }
+        return name;
+    }
+
+    private static MessageDigest newDigest(String digestAlgorithm) {
+        try {
+            return MessageDigest.getInstance(digestAlgorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("不支持的HMAC算法: Hmac" + digestAlgorithm, e);
+        }
+    }
+
+    /**
+     * 基于MessageDigest的线程内计算状态
+     */
+    private static final class DigestCore extends HotpCore {
+
+        private final MessageDigest digest;
+
+        // 摘要算法的分组长度（SHA-384/SHA-512为128字节，其余为64字节）
+        private final int blockSize;
+
+        // 密钥与0x36/0x5c异或后的填充块
+        private final byte[] innerPad;
+        private final byte[] outerPad;
+
+        // 8字节大端序计数器
+        private final byte[] counter = new byte[8];
+
+        // 内层哈希缓冲区
+        private final byte[] inner;
+
+        // HMAC输出缓冲区
+        private final byte[] hash;
+
+        DigestCore(MessageDigest digest, int digits) {
+            super(digits);
+            this.digest = digest;
+            this.blockSize = digest.getAlgorithm().startsWith("SHA-384")
+                    || digest.getAlgorithm().startsWith("SHA-512") ? 128 : 64;
+            this.innerPad = new byte[blockSize];
+            this.outerPad = new byte[blockSize];
+            this.inner = new byte[digest.getDigestLength()];
+            this.hash = new byte[digest.getDigestLength()];
+        }
+
+        /**
+         * 用密钥计算填充块，与上次绑定的密钥内容相同时跳过
+         */
+        @Override
+        void init(byte[] key) {
+            if (isBound(key)) {
+                return;
+            }
+            if (key == null || key.length == 0) {
+                unbind();
+                throw new IllegalArgumentException("密钥无效");
+            }
+            byte[] k = key;
+            if (k.length > blockSize) {
+                // 超过分组长度的密钥先做一次摘要（RFC 2104）
+                digest.reset();
+                k = digest.digest(key);
+            }
+            for (int i = 0; i < blockSize; i++) {
+                byte b = i < k.length ? k[i] : 0;
+                innerPad[i] = (byte) (b ^ 0x36);
+                outerPad[i] = (byte) (b ^ 0x5c);
+            }
+            bound(key);
+        }
+
+        /**
+         * 计算指定计数器的HOTP值（RFC 4226动态截断）
+         */
+        @Override
+        int compute(long step, int modulus) {
+            putCounter(counter, step);
+            try {
+                digest.reset();
+                digest.update(innerPad, 0, blockSize);
+                digest.update(counter, 0, 8);
+                digest.digest(inner, 0, inner.length);
+                digest.update(outerPad, 0, blockSize);
+                digest.update(inner, 0, inner.length);
+                digest.digest(hash, 0, hash.length);
+            } catch (DigestException e) {
+                throw new IllegalStateException("HMAC输出缓冲区不足", e);
+            }
+
+            return truncate(hash, hash.length) % modulus;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.totp.service;
+
+import com.example.totp.model.Credential;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * TOTP计算引擎池
+ * 按（算法, 位数, 周期）缓存预先构建的{@link TOTPEngine}，同一参数组合的凭据共享一个引擎
+ * （引擎内部按线程缓存摘要对象和填充块），不同参数的凭据混合验证时不需要每次创建新引擎。
+ * 池中的引擎使用与默认引擎相同的HMAC实现。
+ * 凭据上保存的是规范算法名称，按凭据查找引擎时不再规范化，直接按（算法序号, 位数, 周期）
+ * 索引预先分配的数组，验证路径上不创建字符串。
+ */
+public final class TOTPEnginePool {
+
+    // 支持的验证码位数范围
+    public static final int MIN_DIGITS = 6;
+    public static final int MAX_DIGITS = 8;
+
+    // 支持的时间步长度范围（秒）
+    public static final int MIN_PERIOD = 10;
+    public static final int MAX_PERIOD = 300;
+
+    // 默认参数的引擎，绝大多数凭据直接命中，不需要查表
+    private final TOTPEngine defaultEngine;
+
+    // 按"算法:位数:周期"索引的引擎
+    private final ConcurrentHashMap<String, TOTPEngine> engines = new ConcurrentHashMap<>();
+
+    // 按（算法序号, 位数, 周期）索引的引擎，首次按凭据查找时从engines填入
+    private final AtomicReferenceArray<TOTPEngine> byParameters = new AtomicReferenceArray<>(
+            3 * (MAX_DIGITS - MIN_DIGITS + 1) * (MAX_PERIOD - MIN_PERIOD + 1));
+
+    /**
+     * @param defaultEngine 默认参数的引擎
+     */
+    public TOTPEnginePool(TOTPEngine defaultEngine) {
+        this.defaultEngine = defaultEngine;
+        engines.put(key(defaultEngine.getAlgorithm(), defaultEngine.getDigits(), defaultEngine.getPeriod()), defaultEngine);
+    }
+
+    /**
+     * 获取指定参数的引擎，不存在时创建
+     * @param algorithm HMAC算法，如HmacSHA256（也接受SHA256这类otpauth写法），null表示默认算法
+     * @param digits 验证码位数
+     * @param period 时间步长度（秒）
+     * @return 共享的引擎
+     * @throws IllegalArgumentException 参数不受支持
+     */
+    public TOTPEngine get(String algorithm, int digits, int period) {
+        String name = algorithm == null ? defaultEngine.getAlgorithm() : normalizeAlgorithm(algorithm);
+        if (digits == defaultEngine.getDigits() && period == defaultEngine.getPeriod()
+                && name.equals(defaultEngine.getAlgorithm())) {
+            return defaultEngine;
+        }
+        if (digits < MIN_DIGITS || digits > MAX_DIGITS) {
+            throw new IllegalArgumentException("验证码位数必须在" + MIN_DIGITS + "到" + MAX_DIGITS + "之间: " + digits);
+        }
+        if (period < MIN_PERIOD || period > MAX_PERIOD) {
+            throw new IllegalArgumentException("时间步长度必须在" + MIN_PERIOD + "到" + MAX_PERIOD + "秒之间: " + period);
+        }
+        return engines.computeIfAbsent(key(name, digits, period), k -> new TOTPEngine(name, digits, period, defaultEngine.getImplementation()));
+    }
+
+    /**
+     * 获取凭据对应的引擎：凭据的算法名称已是规范名称，不再规范化，命中后不分配对象
+     * @param credential 凭据对象
+     * @return 共享的引擎
+     * @throws IllegalArgumentException 参数不受支持
+     */
+    public TOTPEngine get(Credential credential) {
+        String algorithm = credential.getAlgorithm();
+        int digits = credential.getDigits();
+        int period = credential.getPeriod();
+        if (digits == defaultEngine.getDigits() && period == defaultEngine.getPeriod()
+                && algorithm.equals(defaultEngine.getAlgorithm())) {
+            return defaultEngine;
+        }
+        int index = parameterIndex(algorithm, digits, period);
+        if (index < 0) {
+            // 不受支持的参数，由get抛出异常
+            return get(algorithm, digits, period);
+        }
+        TOTPEngine engine = byParameters.get(index);
+        if (engine == null) {
+            engine = get(algorithm, digits, period);
+            byParameters.set(index, engine);
+        }
+        return engine;
+    }
+
+    /**
+     * 规范参数在byParameters中的下标
+     * @return 下标，参数不受支持时返回-1
+     */
+    private static int parameterIndex(String algorithm, int digits, int period) {
+        int algorithmIndex;
+        switch (algorithm) {
+            case Credential.DEFAULT_ALGORITHM:
+                algorithmIndex = 0;
+                break;
+            case Credential.ALGORITHM_SHA256:
+                algorithmIndex = 1;
+                break;
+            case Credential.ALGORITHM_SHA512:
+                algorithmIndex = 2;
+                break;
+            default:
+                return -1;
+        }
+        if (digits < MIN_DIGITS || digits > MAX_DIGITS || period < MIN_PERIOD || period > MAX_PERIOD) {
+            return -1;
+        }
+        return (algorithmIndex * (MAX_DIGITS - MIN_DIGITS + 1) + digits - MIN_DIGITS)
+                * (MAX_PERIOD - MIN_PERIOD + 1) + period - MIN_PERIOD;
+    }
+
+    public TOTPEngine getDefault() {
+        return defaultEngine;
+    }
+
+    /**
+     * 已创建的引擎数量
+     */
+    public int size() {
+        return engines.size();
+    }
+
+    /**
+     * 把算法名称规范为HmacSHA1/HmacSHA256/HmacSHA512（只在请求、导入等输入边界调用）
+     * @throws IllegalArgumentException 不支持的算法
+     */
+    public static String normalizeAlgorithm(String algorithm) {
+        String name = algorithm.trim().toUpperCase(Locale.ROOT).replace("-", "");
+        if (name.startsWith("HMAC")) {
+            name = name.substring(4);
+        }
+        switch (name) {
+            case "SHA1":
+                return "HmacSHA1";
+            case "SHA256":
+                return "HmacSHA256";
+            case "SHA512":
+                return "HmacSHA512";
+            default:
+                throw new IllegalArgumentException("不支持的HMAC算法: " + algorithm);
+        }
+    }
+
+    /**
+     * otpauth URI中的算法名称（HmacSHA256 -> SHA256）
+     */
+    public static String uriAlgorithm(String algorithm) {
+        return normalizeAlgorithm(algorithm).substring(4);
+    }
+
+    private static String key(String algorithm, int digits, int period) {
+        return algorithm + ":" + digits + ":" + period;
+    }
+}
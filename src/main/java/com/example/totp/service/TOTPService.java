@@ -1,44 +1,255 @@
 package com.example.totp.service;
 
-import com.eatthepath.otp.TimeBasedOneTimePasswordGenerator;
+import com.example.totp.metrics.Metrics;
+import com.example.totp.model.Credential;
+import com.example.totp.util.Base32;
+
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
-import java.security.InvalidKeyException;
+import java.io.IOException;
 import java.security.Key;
 import java.security.NoSuchAlgorithmException;
-import java.util.Calendar;
-import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * TOTP服务类
  * 负责生成密钥、生成TOTP验证码、验证TOTP验证码
+ * 验证码计算委托给{@link TOTPEngine}，本类的字符串接口只是对其的薄封装
+ * 凭据可以有各自的算法、位数和时间步长度，对应的引擎从{@link TOTPEnginePool}中获取，
+ * 不带引擎参数的方法使用默认引擎（HmacSHA1、6位、30秒）
  */
 public class TOTPService {
     
-    // TOTP生成器实例，使用HmacSHA1算法，6位验证码，30秒时间窗口
-    private final TimeBasedOneTimePasswordGenerator totpGenerator;
+    // 窗口验证未命中时的返回值
+    public static final int NO_MATCH = TOTPEngine.NO_MATCH;
+    
+    // 验证码正确但已经使用过时的返回值
+    public static final int ALREADY_USED = Integer.MIN_VALUE + 1;
+    
+    // 批量验证结果：验证失败 / 验证成功 / 已使用 / 账户不存在 / 被限流
+    public static final byte BATCH_INVALID = 0;
+    public static final byte BATCH_VALID = 1;
+    public static final byte BATCH_ALREADY_USED = 2;
+    public static final byte BATCH_UNKNOWN_ACCOUNT = 3;
+    public static final byte BATCH_RATE_LIMITED = 4;
+    
+    // 批量验证时单个子任务处理的最大条数，低于该值不再拆分
+    private static final int BATCH_SPLIT_THRESHOLD = 256;
+    
+    // 每个时间步记录容量的上限（每桶128MB）
+    private static final long MAX_REPLAY_SLOTS_PER_STEP = 1L << 24;
+    
+    // 默认的TOTP计算引擎，使用HmacSHA1算法，6位验证码，30秒时间窗口
+    private final TOTPEngine engine;
+    
+    // 按（算法, 位数, 时间步长度）共享的引擎
+    private final TOTPEnginePool enginePool;
+    
+    // 验证时允许客户端时钟落后的时间步数量
+    private final int stepsBehind;
+    
+    // 验证时允许客户端时钟超前的时间步数量
+    private final int stepsAhead;
+    
+    // 按时间步长度分开的已使用验证码缓存（不同长度的时间步编号不可比较），空表示未启用"用过即失效"
+    private final ConcurrentHashMap<Integer, ReplayCache> replayCaches = new ConcurrentHashMap<>();
+    
+    // 预期的每秒验证成功峰值，用于确定每个时间步的记录容量；0表示未启用"用过即失效"
+    private volatile int replayPeakPerSecond;
+    
+    // 已使用标记的持久化回调，为null时只保存在内存中
+    private volatile ReplayJournal replayJournal;
+    
+    // 按时间步预计算的验证码缓存，为null时每次都计算HMAC
+    private volatile StepCodeCache codeCache;
+    
+    /**
+     * "验证码已使用"标记的持久化回调（如写入预写日志）
+     */
+    public interface ReplayJournal {
+        
+        /**
+         * 记录凭据在指定时间步的验证码已被使用
+         * @param credentialId 凭据编号
+         * @param step 时间步
+         * @param period 时间步长度（秒）
+         */
+        void recordUsed(long credentialId, long step, int period) throws IOException;
+    }
     
     /**
-     * 构造函数，初始化TOTP生成器
+     * 构造函数，初始化TOTP计算引擎，允许前后各一个时间窗口的偏移
      */
     public TOTPService() {
-        try {
-            // 创建TOTP生成器，使用HmacSHA1算法，生成6位验证码，时间窗口为30秒
-            /*
-            // 当前默认30秒
-            this.totpGenerator = new TimeBasedOneTimePasswordGenerator();
-
-            // 修改为60秒（或其他值）
-            this.totpGenerator = new TimeBasedOneTimePasswordGenerator(Duration.ofSeconds(60));
-            - TOTP标准 ：30秒是TOTP协议的标准时间间隔，大多数TOTP应用（如Google Authenticator）都使用这个值
-            - 兼容性 ：如果修改时间间隔，需要确保所有使用该TOTP的应用都使用相同的时间间隔
-            - 安全性 ：较短的时间间隔（如15秒）会增加安全性但用户体验较差；较长的时间间隔（如60秒）会降低安全性
-
-             */
-            this.totpGenerator = new TimeBasedOneTimePasswordGenerator();
-        } catch (Exception e) {
-            throw new RuntimeException("初始化TOTP生成器失败", e);
+        this(new TOTPEngine());
+    }
+    
+    /**
+     * 构造函数，允许前后各一个时间窗口的偏移
+     * @param engine TOTP计算引擎
+     */
+    public TOTPService(TOTPEngine engine) {
+        this(engine, 1, 1);
+    }
+    
+    /**
+     * 构造函数
+     * @param engine TOTP计算引擎
+     * @param stepsBehind 允许客户端时钟落后的时间步数量
+     * @param stepsAhead 允许客户端时钟超前的时间步数量
+     */
+    public TOTPService(TOTPEngine engine, int stepsBehind, int stepsAhead) {
+        if (stepsBehind < 0 || stepsAhead < 0) {
+            throw new IllegalArgumentException("时间窗口偏移量不能为负数");
         }
+        this.engine = engine;
+        this.enginePool = new TOTPEnginePool(engine);
+        this.stepsBehind = stepsBehind;
+        this.stepsAhead = stepsAhead;
+    }
+    
+    /**
+     * 启用"用过即失效"模式
+     * 每个时间步长度各有一个缓存：桶数由时间窗口偏移量决定，每桶容量为峰值 × 时间步长度 × 2（负载因子0.5）
+     * @param peakPerSecond 预期的每秒验证成功峰值
+     */
+    public void enableReplayProtection(int peakPerSecond) {
+        if (peakPerSecond <= 0) {
+            throw new IllegalArgumentException("每秒验证成功峰值必须大于0: " + peakPerSecond);
+        }
+        replayCaches.clear();
+        this.replayPeakPerSecond = peakPerSecond;
+        replayCache(engine.getPeriod());
+    }
+    
+    /**
+     * 获取默认时间步长度的已使用验证码缓存
+     * @return 已使用验证码缓存，未启用时返回null
+     */
+    public ReplayCache getReplayCache() {
+        return replayCache(engine.getPeriod());
+    }
+    
+    /**
+     * 是否启用了"用过即失效"模式
+     */
+    public boolean isReplayProtectionEnabled() {
+        return replayPeakPerSecond > 0;
+    }
+    
+    /**
+     * 因验证码已使用而被拒绝的总次数（所有时间步长度合计）
+     */
+    public long getReplayCount() {
+        long count = 0;
+        for (ReplayCache cache : replayCaches.values()) {
+            count += cache.getReplayCount();
+        }
+        return count;
+    }
+    
+    /**
+     * 因缓存已满而丢弃的已使用标记总数（所有时间步长度合计）
+     */
+    public long getReplayOverflowCount() {
+        long count = 0;
+        for (ReplayCache cache : replayCaches.values()) {
+            count += cache.getOverflowCount();
+        }
+        return count;
+    }
+    
+    /**
+     * 恢复一条已使用标记（如从预写日志回放），未启用"用过即失效"时忽略
+     * @param credentialId 凭据编号
+     * @param step 时间步
+     * @param period 时间步长度（秒）
+     */
+    public void restoreReplayMark(long credentialId, long step, int period) {
+        ReplayCache cache = replayCache(period);
+        if (cache != null) {
+            // 已过期或已恢复的时间步会被缓存直接忽略，不计入重放次数
+            cache.restore(credentialId, step);
+        }
+    }
+    
+    /**
+     * 获取指定时间步长度的已使用验证码缓存，首次使用时创建
+     * @return 已使用验证码缓存，未启用时返回null
+     */
+    private ReplayCache replayCache(int period) {
+        int peak = replayPeakPerSecond;
+        if (peak <= 0) {
+            return null;
+        }
+        ReplayCache cache = replayCaches.get(period);
+        if (cache == null) {
+            int slots = (int) Math.min((long) peak * period * 2, MAX_REPLAY_SLOTS_PER_STEP);
+            cache = replayCaches.computeIfAbsent(period, p -> new ReplayCache(stepsBehind + stepsAhead + 1, slots));
+        }
+        return cache;
+    }
+    
+    /**
+     * 启用按时间步预计算的验证码缓存
+     * @param capacity 最多缓存的凭据数量
+     */
+    public void enableCodeCache(int capacity) {
+        this.codeCache = new StepCodeCache(stepsBehind, stepsAhead, capacity);
+    }
+    
+    /**
+     * 获取验证码缓存
+     * @return 验证码缓存，未启用时返回null
+     */
+    public StepCodeCache getCodeCache() {
+        return codeCache;
+    }
+    
+    /**
+     * 设置已使用标记的持久化回调
+     * @param replayJournal 持久化回调，null表示不持久化
+     */
+    public void setReplayJournal(ReplayJournal replayJournal) {
+        this.replayJournal = replayJournal;
+    }
+    
+    /**
+     * 获取TOTP计算引擎
+     * @return TOTP计算引擎
+     */
+    public TOTPEngine getEngine() {
+        return engine;
+    }
+    
+    /**
+     * 获取指定参数的TOTP计算引擎（同一参数组合共享一个引擎）
+     * @param algorithm HMAC算法，null表示默认算法
+     * @param digits 验证码位数
+     * @param period 时间步长度（秒）
+     * @return TOTP计算引擎
+     * @throws IllegalArgumentException 参数不受支持
+     */
+    public TOTPEngine getEngine(String algorithm, int digits, int period) {
+        return enginePool.get(algorithm, digits, period);
+    }
+    
+    /**
+     * 获取凭据对应的TOTP计算引擎
+     * @param credential 凭据对象
+     * @return TOTP计算引擎
+     */
+    public TOTPEngine getEngine(Credential credential) {
+        return enginePool.get(credential);
+    }
+    
+    /**
+     * 获取引擎池
+     */
+    public TOTPEnginePool getEnginePool() {
+        return enginePool;
     }
     
     /**
@@ -46,50 +257,92 @@ public class TOTPService {
      * @return Base32编码的密钥字符串
      */
     public String generateSecretKey() {
+        return generateSecretKey(engine.getAlgorithm());
+    }
+    
+    /**
+     * 按指定算法生成新的TOTP密钥，密钥长度与摘要长度相同（SHA1 160位，SHA256 256位，SHA512 512位）
+     * @param algorithm HMAC算法
+     * @return Base32编码的密钥字符串
+     */
+    public String generateSecretKey(String algorithm) {
+        // 将密钥转换为Base32编码的字符串（不带填充字符）
+        return Base32.encode(generateKey(algorithm));
+    }
+    
+    /**
+     * 按指定算法生成新的原始密钥字节，长度规则同{@link #generateSecretKey(String)}
+     * @param algorithm HMAC算法
+     * @return 原始密钥字节
+     */
+    public byte[] generateKey(String algorithm) {
+        String name = TOTPEnginePool.normalizeAlgorithm(algorithm);
         try {
-            // 创建密钥生成器，使用HmacSHA1算法
-            KeyGenerator keyGenerator = KeyGenerator.getInstance(totpGenerator.getAlgorithm());
+            // 创建密钥生成器
+            KeyGenerator keyGenerator = KeyGenerator.getInstance(name);
             
-            // 设置密钥长度（对于HmacSHA1，推荐使用160位）
-            keyGenerator.init(160);
+            // 设置密钥长度（RFC 4226推荐与HMAC输出等长）
+            keyGenerator.init(keyBits(name));
             
             // 生成密钥
             SecretKey secretKey = keyGenerator.generateKey();
-            
-            // 将密钥转换为Base32编码的字符串
-            return Base32.encode(secretKey.getEncoded()).replace("=", ""); // 移除填充字符
+            return secretKey.getEncoded();
             
         } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException("生成密钥失败", e);
         }
     }
     
+    private static int keyBits(String algorithm) {
+        switch (algorithm) {
+            case "HmacSHA256":
+                return 256;
+            case "HmacSHA512":
+                return 512;
+            default:
+                return 160;
+        }
+    }
+    
     /**
-     * 从Base32字符串恢复密钥对象
+     * 将原始密钥字节编码为Base32字符串（不带填充字符）
+     * @param key 原始密钥字节
+     * @return Base32编码的密钥字符串
+     */
+    public String encodeSecretKey(byte[] key) {
+        return Base32.encode(key);
+    }
+    
+    /**
+     * 解码Base32密钥字符串为原始密钥字节
      * @param base32Key Base32编码的密钥字符串
-     * @return 密钥对象
+     * @return 原始密钥字节
      */
-    public Key getKeyFromBase32(String base32Key) {
+    public byte[] decodeSecretKey(String base32Key) {
+        long start = System.nanoTime();
         try {
-            // 解码Base32字符串
-            byte[] keyBytes = Base32.decode(base32Key);
-            
-            // 创建密钥对象
-            // 创建密钥对象
-            return new javax.crypto.spec.SecretKeySpec(keyBytes, totpGenerator.getAlgorithm());
-            
+            byte[] key = Base32.decode(base32Key);
+            Metrics.BASE32_DECODE.recordSince(start);
+            return key;
         } catch (Exception e) {
             throw new RuntimeException("恢复密钥失败", e);
         }
     }
     
     /**
-     * 将Date转换为Instant（Java 8兼容方法）
-     * @param date 要转换的Date对象
-     * @return 对应的Instant对象
+     * 从Base32字符串恢复密钥对象
+     * @param base32Key Base32编码的密钥字符串
+     * @return 密钥对象
+     */
+    public Key getKeyFromBase32(String base32Key) {
+        return new javax.crypto.spec.SecretKeySpec(decodeSecretKey(base32Key), engine.getAlgorithm());
+    }
+    
+    /**
+     * 当前Unix时间戳（秒）
      */
-    private java.time.Instant toInstant(Date date) {
-        return java.time.Instant.ofEpochMilli(date.getTime());
+    private static long nowSeconds() {
+        return System.currentTimeMillis() / 1000L;
     }
     
     /**
@@ -98,21 +351,60 @@ public class TOTPService {
      * @return 6位TOTP验证码
      */
     public String generateTOTP(String base32Key) {
+        return generateTOTP(decodeSecretKey(base32Key));
+    }
+    
+    /**
+     * 使用预解码的密钥生成当前时间点的TOTP验证码
+     * @param key 原始密钥字节
+     * @return 6位TOTP验证码
+     */
+    public String generateTOTP(byte[] key) {
+        return generateTOTP(engine, key);
+    }
+    
+    /**
+     * 使用指定引擎生成当前时间点的TOTP验证码
+     * @param engine TOTP计算引擎
+     * @param key 原始密钥字节
+     * @return TOTP验证码
+     */
+    public String generateTOTP(TOTPEngine engine, byte[] key) {
+        long start = System.nanoTime();
         try {
-            // 从Base32字符串恢复密钥
-            Key key = getKeyFromBase32(base32Key);
-            
-            // 获取当前时间并转换为Instant
-            Date now = new Date();
-            java.time.Instant instant = toInstant(now);
-            
-            // 生成TOTP验证码
-            int otp = totpGenerator.generateOneTimePassword(key, instant);
-            
-            // 格式化为6位数字（前面补零）
-            return String.format("%06d", otp);
-            
-        } catch (InvalidKeyException e) {
+            int code = engine.generate(key, nowSeconds());
+            Metrics.HMAC.recordSince(start);
+            return engine.format(code);
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("生成TOTP验证码失败，密钥无效", e);
+        }
+    }
+    
+    /**
+     * 生成已注册凭据当前时间点的验证码，启用缓存时直接读取预计算结果
+     * @param credentialId 凭据编号
+     * @param key 原始密钥字节
+     * @return 6位TOTP验证码
+     */
+    public String generateTOTP(long credentialId, byte[] key) {
+        return generateTOTP(engine, credentialId, key);
+    }
+    
+    /**
+     * 使用指定引擎生成已注册凭据当前时间点的验证码，启用缓存时直接读取预计算结果
+     * @param engine 凭据使用的计算引擎
+     * @param credentialId 凭据编号
+     * @param key 原始密钥字节
+     * @return TOTP验证码
+     */
+    public String generateTOTP(TOTPEngine engine, long credentialId, byte[] key) {
+        StepCodeCache cache = codeCache;
+        if (cache == null) {
+            return generateTOTP(engine, key);
+        }
+        try {
+            return engine.format(cache.current(credentialId, engine, key, engine.timeStep(nowSeconds())));
+        } catch (IllegalArgumentException e) {
             throw new RuntimeException("生成TOTP验证码失败，密钥无效", e);
         }
     }
@@ -124,160 +416,220 @@ public class TOTPService {
      * @return 验证结果：true-验证成功，false-验证失败
      */
     public boolean verifyTOTP(String base32Key, String userInput) {
-        try {
-            // 从Base32字符串恢复密钥
-            Key key = getKeyFromBase32(base32Key);
-            
-            // 获取当前时间并转换为Instant
-            Date now = new Date();
-            java.time.Instant instant = toInstant(now);
-            
-            // 生成当前时间点的TOTP验证码
-            int expectedOtp = totpGenerator.generateOneTimePassword(key, instant);
-            
-            // 将用户输入转换为整数
-            int userOtp;
-            try {
-                userOtp = Integer.parseInt(userInput);
-            } catch (NumberFormatException e) {
-                return false; // 输入不是有效数字
-            }
-            
-            // 比较验证码
-            return userOtp == expectedOtp;
-            
-        } catch (InvalidKeyException e) {
-            throw new RuntimeException("验证TOTP验证码失败，密钥无效", e);
-        }
+        return verify(decodeSecretKey(base32Key), userInput, 0, 0) != NO_MATCH;
     }
     
     /**
-     * 验证用户输入的TOTP验证码，允许时间窗口偏移（前后一个时间窗口）
+     * 验证用户输入的TOTP验证码，允许配置的时间窗口偏移（默认前后一个时间窗口）
      * @param base32Key Base32编码的密钥字符串
      * @param userInput 用户输入的验证码
      * @return 验证结果：true-验证成功，false-验证失败
      */
     public boolean verifyTOTPWithWindow(String base32Key, String userInput) {
+        return verifyTOTPWithOffset(decodeSecretKey(base32Key), userInput) != NO_MATCH;
+    }
+    
+    /**
+     * 在配置的时间窗口内验证用户输入的验证码，并返回命中的时间步偏移
+     * 调用方可以据此记录客户端时钟漂移
+     * @param key 原始密钥字节
+     * @param userInput 用户输入的验证码
+     * @return 命中的时间步偏移量（负数表示客户端落后），未命中返回{@link #NO_MATCH}
+     */
+    public int verifyTOTPWithOffset(byte[] key, String userInput) {
+        return verify(key, userInput, stepsBehind, stepsAhead);
+    }
+    
+    /**
+     * 验证用户输入的验证码，启用"用过即失效"模式时同一账户同一时间步的验证码只接受一次
+     * 设置了{@link ReplayJournal}时，验证成功的时间步同时交给它持久化
+     * @param credentialId 凭据编号
+     * @param key 原始密钥字节
+     * @param userInput 用户输入的验证码
+     * @return 命中的时间步偏移量；未命中返回{@link #NO_MATCH}；已使用过返回{@link #ALREADY_USED}
+     */
+    public int verifyTOTPOnce(long credentialId, byte[] key, String userInput) {
+        return verifyTOTPOnce(engine, credentialId, key, userInput);
+    }
+    
+    /**
+     * 使用指定引擎验证用户输入的验证码，语义同{@link #verifyTOTPOnce(long, byte[], String)}
+     * 已使用标记按引擎的时间步长度分开记录
+     * @param engine 凭据使用的计算引擎
+     * @param credentialId 凭据编号
+     * @param key 原始密钥字节
+     * @param userInput 用户输入的验证码
+     * @return 命中的时间步偏移量；未命中返回{@link #NO_MATCH}；已使用过返回{@link #ALREADY_USED}
+     */
+    public int verifyTOTPOnce(TOTPEngine engine, long credentialId, byte[] key, String userInput) {
+        int userOtp = engine.parseCode(userInput);
+        if (userOtp < 0) {
+            return NO_MATCH; // 输入不是有效数字
+        }
+        
+        long now = nowSeconds();
+        StepCodeCache codes = codeCache;
+        int offset;
         try {
-            // 从Base32字符串恢复密钥
-            Key key = getKeyFromBase32(base32Key);
-            
-            // 获取当前时间并转换为Instant
-            Date now = new Date();
-            java.time.Instant instant = toInstant(now);
-            
-            // 检查当前时间窗口
-            int currentOtp = totpGenerator.generateOneTimePassword(key, instant); //当前时间生成出的验证码
-            
-            // 检查前一个时间窗口（30秒前）
-            Calendar calendar = Calendar.getInstance();
-            calendar.setTime(now);
-            calendar.add(Calendar.SECOND, -30);//当前时间前30秒生成出的验证码
-            Date previousWindow = calendar.getTime();
-            java.time.Instant previousInstant = toInstant(previousWindow);
-            int previousOtp = totpGenerator.generateOneTimePassword(key, previousInstant);
-            
-            // 检查后一个时间窗口（30秒后）
-            calendar.setTime(now);
-            calendar.add(Calendar.SECOND, 30);//当前时间后30秒生成出的验证码
-            Date nextWindow = calendar.getTime();
-            java.time.Instant nextInstant = toInstant(nextWindow);
-            int nextOtp = totpGenerator.generateOneTimePassword(key, nextInstant);
-            
-            // 将用户输入转换为整数
-            int userOtp;
-            try {
-                userOtp = Integer.parseInt(userInput);
-            } catch (NumberFormatException e) {
-                return false; // 输入不是有效数字
+            if (codes != null) {
+                // 同一时间步内只做整数比较
+                offset = codes.match(credentialId, engine, key, engine.timeStep(now), userOtp);
+            } else {
+                long start = System.nanoTime();
+                offset = engine.verifyWindow(key, now, userOtp, stepsBehind, stepsAhead);
+                Metrics.HMAC.recordSince(start);
             }
-            
-            // 比较验证码（允许前后一个时间窗口的偏差）
-            return userOtp == currentOtp || userOtp == previousOtp || userOtp == nextOtp; //三个验证码任意一个符合即可
-            
-        } catch (InvalidKeyException e) {
+        } catch (IllegalArgumentException e) {
             throw new RuntimeException("验证TOTP验证码失败，密钥无效", e);
         }
+        
+        if (offset == NO_MATCH) {
+            return offset;
+        }
+        ReplayCache cache = replayCache(engine.getPeriod());
+        if (cache == null) {
+            return offset;
+        }
+        long step = engine.timeStep(now) + offset;
+        if (!cache.markUsed(credentialId, step)) {
+            return ALREADY_USED;
+        }
+        ReplayJournal journal = replayJournal;
+        if (journal != null) {
+            try {
+                journal.recordUsed(credentialId, step, engine.getPeriod());
+            } catch (IOException e) {
+                throw new RuntimeException("记录已使用的验证码失败", e);
+            }
+        }
+        return offset;
     }
     
     /**
-     * 获取TOTP配置信息
-     * @return 包含算法、位数、时间窗口的配置信息
+     * 批量验证验证码，在ForkJoin公共线程池上并行执行，结果与输入顺序一一对应
+     * keys[i]为null的条目会被跳过，其结果保持调用方预先填入的值（如账户不存在、被限流）
+     * @param credentialIds 凭据编号
+     * @param keys 原始密钥字节
+     * @param codes 用户输入的验证码
+     * @param results 验证结果（BATCH_*常量），长度与输入相同
      */
-    public String getTOTPInfo() {
-        return String.format("算法: %s, 位数: %d, 时间窗口: %d秒", 
-                           totpGenerator.getAlgorithm(), 
-                           totpGenerator.getPasswordLength(), 
-                           totpGenerator.getTimeStep().getSeconds());
+    public void verifyBatch(long[] credentialIds, byte[][] keys, String[] codes, byte[] results) {
+        verifyBatch(credentialIds, null, keys, codes, results);
     }
     
     /**
-     * 简单的Base32编码实现（用于Google Authenticator兼容）
+     * 批量验证各自参数的凭据，语义同{@link #verifyBatch(long[], byte[][], String[], byte[])}
+     * @param credentialIds 凭据编号
+     * @param engines 每条对应的计算引擎，null（整个数组或单个元素）表示默认引擎
+     * @param keys 原始密钥字节
+     * @param codes 用户输入的验证码
+     * @param results 验证结果（BATCH_*常量），长度与输入相同
      */
-    private static class Base32 {
-        private static final String BASE32_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567";
-        
-        public static String encode(byte[] data) {
-            StringBuilder result = new StringBuilder();
-            int buffer = 0;
-            int bitsLeft = 0;
-            
-            for (byte b : data) {
-                buffer = (buffer << 8) | (b & 0xFF);
-                bitsLeft += 8;
-                
-                while (bitsLeft >= 5) {
-                    int index = (buffer >> (bitsLeft - 5)) & 0x1F;
-                    result.append(BASE32_CHARS.charAt(index));
-                    bitsLeft -= 5;
-                }
-            }
-            
-            if (bitsLeft > 0) {
-                int index = (buffer << (5 - bitsLeft)) & 0x1F;
-                result.append(BASE32_CHARS.charAt(index));
+    public void verifyBatch(long[] credentialIds, TOTPEngine[] engines, byte[][] keys, String[] codes, byte[] results) {
+        int size = results.length;
+        if (credentialIds.length != size || keys.length != size || codes.length != size
+                || (engines != null && engines.length != size)) {
+            throw new IllegalArgumentException("批量验证参数长度不一致");
+        }
+        if (size <= BATCH_SPLIT_THRESHOLD) {
+            verifyRange(credentialIds, engines, keys, codes, results, 0, size);
+        } else {
+            ForkJoinPool.commonPool().invoke(new BatchTask(credentialIds, engines, keys, codes, results, 0, size));
+        }
+    }
+    
+    /**
+     * 顺序验证[from, to)范围内的条目
+     */
+    private void verifyRange(long[] credentialIds, TOTPEngine[] engines, byte[][] keys, String[] codes, byte[] results,
+                             int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (keys[i] == null) {
+                continue;
             }
-            
-            // 添加填充字符
-            while (result.length() % 8 != 0) {
-                result.append('=');
+            TOTPEngine itemEngine = engines == null || engines[i] == null ? engine : engines[i];
+            int offset = verifyTOTPOnce(itemEngine, credentialIds[i], keys[i], codes[i]);
+            if (offset == ALREADY_USED) {
+                results[i] = BATCH_ALREADY_USED;
+            } else {
+                results[i] = offset == NO_MATCH ? BATCH_INVALID : BATCH_VALID;
             }
-            
-            return result.toString();
         }
+    }
+    
+    /**
+     * 批量验证的ForkJoin子任务，按范围二分拆分
+     */
+    private class BatchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
         
-        public static byte[] decode(String base32) {
-            // 移除填充字符和空格
-            String cleanBase32 = base32.replace("=", "").replace(" ", "").toUpperCase();
-            
-            if (cleanBase32.isEmpty()) {
-                return new byte[0];
-            }
-            
-            int buffer = 0;
-            int bitsLeft = 0;
-            int byteCount = (cleanBase32.length() * 5 + 7) / 8;
-            byte[] result = new byte[byteCount];
-            int byteIndex = 0;
-            
-            for (int i = 0; i < cleanBase32.length(); i++) {
-                char c = cleanBase32.charAt(i);
-                int value = BASE32_CHARS.indexOf(c);
-                
-                if (value == -1) {
-                    throw new IllegalArgumentException("无效的Base32字符: " + c);
-                }
-                
-                buffer = (buffer << 5) | value;
-                bitsLeft += 5;
-                
-                if (bitsLeft >= 8) {
-                    result[byteIndex++] = (byte) (buffer >> (bitsLeft - 8));
-                    bitsLeft -= 8;
-                }
+        private final long[] credentialIds;
+        private final TOTPEngine[] engines;
+        private final byte[][] keys;
+        private final String[] codes;
+        private final byte[] results;
+        private final int from;
+        private final int to;
+        
+        BatchTask(long[] credentialIds, TOTPEngine[] engines, byte[][] keys, String[] codes, byte[] results,
+                  int from, int to) {
+            this.credentialIds = credentialIds;
+            this.engines = engines;
+            this.keys = keys;
+            this.codes = codes;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected void compute() {
+            if (to - from <= BATCH_SPLIT_THRESHOLD) {
+                verifyRange(credentialIds, engines, keys, codes, results, from, to);
+                return;
             }
-            
-            return result;
+            int middle = (from + to) >>> 1;
+            invokeAll(new BatchTask(credentialIds, engines, keys, codes, results, from, middle),
+                      new BatchTask(credentialIds, engines, keys, codes, results, middle, to));
         }
     }
+    
+    /**
+     * 使用预解码的密钥验证用户输入的验证码
+     * @param key 原始密钥字节
+     * @param userInput 用户输入的验证码
+     * @param behind 允许落后的时间步数量
+     * @param ahead 允许超前的时间步数量
+     * @return 命中的时间步偏移量，未命中返回{@link #NO_MATCH}
+     */
+    private int verify(byte[] key, String userInput, int behind, int ahead) {
+        // 将用户输入转换为整数
+        int userOtp = engine.parseCode(userInput);
+        if (userOtp < 0) {
+            return NO_MATCH; // 输入不是有效数字
+        }
+        
+        long start = System.nanoTime();
+        try {
+            int offset = engine.verifyWindow(key, nowSeconds(), userOtp, behind, ahead);
+            Metrics.HMAC.recordSince(start);
+            return offset;
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("验证TOTP验证码失败，密钥无效", e);
+        }
+    }
+    
+    /**
+     * 获取TOTP配置信息
+     * @return 包含算法、位数、时间窗口、允许偏移和HMAC实现的配置信息
+     */
+    public String getTOTPInfo() {
+        return String.format("算法: %s, 位数: %d, 时间窗口: %d秒, 允许偏移: -%d/+%d步, HMAC实现: %s", 
+                           engine.getAlgorithm(), 
+                           engine.getDigits(), 
+                           engine.getPeriod(),
+                           stepsBehind,
+                           stepsAhead,
+                           engine.getImplementation());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,751 @@
+package com.example.totp.store;
+
+import com.example.totp.audit.AuditLog;
+import com.example.totp.model.Credential;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * 凭据持久化日志
+ * 已注册的凭据以追加方式写入内存映射的段文件（credentials-000001.seg ...），写入只是内存拷贝，
+ * 由后台线程按固定间隔统一刷盘，注册请求不需要每次fsync。
+ * 启动时按段号顺序扫描映射后的段文件直接重建内存索引，不经过JSON解析。
+ * 被覆盖的记录累积到一定比例后，后台线程把存活的凭据重写到新段并删除旧段（压缩）。
+ * 压缩在锁外写新段，注册只在开始取快照和最后切换段时短暂等待。
+ *
+ * 记录格式（大端序）：
+ *   [int 数据长度][int CRC32][byte 类型][long 凭据编号]
+ *   [short 账户名长度][账户名UTF-8][short 发行者长度][发行者UTF-8][byte 密钥长度][密钥]
+ *   [byte 算法名长度][算法名ASCII][byte 位数][int 时间步长度]（可选，使用默认参数的凭据省略）
+ * 数据长度为0表示段内已无后续记录（段文件预先分配并以0填充）。
+ */
+public class CredentialLog implements Closeable, Flushable {
+
+    // 段文件名前缀与后缀
+    private static final String SEGMENT_PREFIX = "credentials-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    // 压缩过程中新段的临时后缀，切换时改名为正式段文件；启动时清理残留的临时段
+    private static final String COMPACT_SUFFIX = ".seg.compact";
+
+    // 记录类型：写入凭据
+    private static final byte TYPE_PUT = 1;
+
+    // 记录头长度（数据长度 + CRC32）
+    private static final int HEADER_SIZE = 8;
+
+    // 触发压缩的最少无效记录数
+    private static final long MIN_DEAD_RECORDS_FOR_COMPACTION = 10000;
+
+    // 段文件所在目录
+    private final Path directory;
+
+    // 单个段文件大小（字节）
+    private final int segmentSize;
+
+    // 绑定的内存凭据存储
+    private final CredentialStore store;
+
+    // 所有段，按段号升序
+    private final List<Segment> segments = new ArrayList<>();
+
+    // 当前追加写入的段
+    private Segment active;
+
+    // 日志中的记录总数（含已被覆盖的记录）
+    private long totalRecords;
+
+    // 是否正在压缩
+    private boolean compacting;
+
+    // 已写入预写日志、正在等待落盘的新账户及其LSN（发布到存储之前占住账户名称）
+    private final Map<String, Long> pending = new HashMap<>();
+
+    // 自上次刷盘后是否有新的写入
+    private volatile boolean dirty;
+
+    // 后台刷盘与压缩线程
+    private final ScheduledExecutorService flusher;
+
+    // 记录截断和刷盘失败等诊断事件
+    private final AuditLog auditLog;
+
+    /**
+     * 打开凭据日志：扫描已有段文件恢复凭据到存储中，并启动后台刷盘线程
+     * @param directory 段文件目录（不存在时自动创建）
+     * @param store 内存凭据存储
+     * @param segmentSize 单个段文件大小（字节）
+     * @param flushIntervalMillis 刷盘间隔（毫秒）
+     * @param auditLog 审计日志，记录截断和刷盘失败
+     * @return 凭据日志
+     */
+    public static CredentialLog open(Path directory, CredentialStore store, int segmentSize,
+                                     long flushIntervalMillis, AuditLog auditLog) throws IOException {
+        CredentialLog log = new CredentialLog(directory, store, segmentSize, auditLog);
+        log.recover();
+        log.startFlusher(flushIntervalMillis);
+        return log;
+    }
+
+    private CredentialLog(Path directory, CredentialStore store, int segmentSize, AuditLog auditLog) {
+        if (segmentSize < 4096) {
+            throw new IllegalArgumentException("段文件大小不能小于4096字节: " + segmentSize);
+        }
+        this.directory = directory;
+        this.store = store;
+        this.segmentSize = segmentSize;
+        this.auditLog = auditLog;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "credential-log-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 注册（或重新注册）账户凭据：先检查凭据能否持久化，再写入内存存储并追加记录
+     * 两步在日志锁内完成，同一账户并发注册时存储中保留的凭据与日志中最后一条记录一致；
+     * 追加失败时恢复存储中原来的凭据，不会出现已经可以验证、重启后却消失的账户。
+     * @param accountName 账户名称
+     * @param issuer 发行者
+     * @param key 原始密钥字节
+     * @param algorithm HMAC算法
+     * @param digits 验证码位数
+     * @param period 时间步长度（秒）
+     * @return 新的凭据对象
+     * @throws IllegalArgumentException 字段为空或过长，无法持久化（此时存储不变）
+     */
+    public synchronized Credential enroll(String accountName, String issuer, byte[] key,
+                                          String algorithm, int digits, int period) throws IOException {
+        return enroll(accountName, issuer, key, algorithm, digits, period, true);
+    }
+
+    /**
+     * 仅当账户尚不存在时注册凭据，已有账户的密钥不会被替换
+     * 检查与写入在同一把日志锁内完成，同名的并发注册只有一个能成功
+     * @param accountName 账户名称
+     * @param issuer 发行者
+     * @param key 原始密钥字节
+     * @param algorithm HMAC算法
+     * @param digits 验证码位数
+     * @param period 时间步长度（秒）
+     * @return 新的凭据对象，账户已存在时返回null（此时存储和日志都不变）
+     * @throws IllegalArgumentException 字段为空或过长，无法持久化（此时存储不变）
+     */
+    public synchronized Credential enrollIfAbsent(String accountName, String issuer, byte[] key,
+                                                  String algorithm, int digits, int period) throws IOException {
+        return enroll(accountName, issuer, key, algorithm, digits, period, false);
+    }
+
+    /**
+     * 仅当账户尚不存在时注册凭据，注册记录先写入预写日志并落盘，之后才发布到存储并追加到段文件
+     * 等待落盘期间账户名称被占住，同名的并发注册返回null；预写日志写入失败或等待被中断时
+     * 存储和段文件都不变，账户不会被一个没有任何人拿到的密钥占住，重试可以再次注册。
+     * 落盘等待在日志锁外进行，并发的注册仍然共享同一次组提交。
+     * @param accountName 账户名称
+     * @param issuer 发行者
+     * @param key 原始密钥字节
+     * @param algorithm HMAC算法
+     * @param digits 验证码位数
+     * @param period 时间步长度（秒）
+     * @param writeAheadLog 预写日志，为null时等同于{@link #enrollIfAbsent(String, String, byte[], String, int, int)}
+     * @return 新的凭据对象，账户已存在或正在注册时返回null
+     * @throws IllegalArgumentException 字段为空或过长，无法持久化（此时存储不变）
+     */
+    public Credential enrollIfAbsent(String accountName, String issuer, byte[] key, String algorithm,
+                                     int digits, int period, WriteAheadLog writeAheadLog) throws IOException {
+        if (writeAheadLog == null) {
+            return enrollIfAbsent(accountName, issuer, key, algorithm, digits, period);
+        }
+        Credential credential;
+        long lsn;
+        synchronized (this) {
+            checkEnroll(accountName, issuer, key, algorithm);
+            if (store.get(accountName) != null || pending.containsKey(accountName)) {
+                return null;
+            }
+            credential = store.create(accountName, issuer, key, algorithm, digits, period);
+            lsn = writeAheadLog.logEnroll(credential);
+            pending.put(accountName, lsn);
+        }
+        try {
+            writeAheadLog.awaitDurable(lsn);
+            synchronized (this) {
+                store.restore(credential);
+                try {
+                    append(credential);
+                } catch (IOException | RuntimeException e) {
+                    store.remove(accountName);
+                    throw e;
+                }
+            }
+        } finally {
+            synchronized (this) {
+                pending.remove(accountName);
+            }
+        }
+        return credential;
+    }
+
+    private Credential enroll(String accountName, String issuer, byte[] key,
+                              String algorithm, int digits, int period, boolean replace) throws IOException {
+        checkEnroll(accountName, issuer, key, algorithm);
+
+        Credential previous = store.get(accountName);
+        if (!replace && (previous != null || pending.containsKey(accountName))) {
+            return null;
+        }
+        Credential credential = store.enroll(accountName, issuer, key, algorithm, digits, period);
+        try {
+            append(credential);
+        } catch (IOException | RuntimeException e) {
+            if (previous != null) {
+                store.restore(previous);
+            } else {
+                store.remove(accountName);
+            }
+            throw e;
+        }
+        return credential;
+    }
+
+    /**
+     * 检查注册参数能否持久化
+     * @throws IllegalArgumentException 账户名称为空或字段过长
+     */
+    private void checkEnroll(String accountName, String issuer, byte[] key, String algorithm) {
+        if (accountName == null || accountName.isEmpty()) {
+            throw new IllegalArgumentException("账户名称不能为空");
+        }
+        checkRecord(accountName.getBytes(StandardCharsets.UTF_8),
+                issuer == null ? new byte[0] : issuer.getBytes(StandardCharsets.UTF_8), key,
+                algorithm == null ? null : algorithm.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * 追加一条凭据记录（注册或重新注册）
+     * @param credential 凭据对象
+     */
+    public synchronized void append(Credential credential) throws IOException {
+        write(encode(credential));
+    }
+
+    /**
+     * 把凭据编码为记录数据（不含记录头）
+     */
+    private byte[] encode(Credential credential) {
+        byte[] account = credential.getAccountName().getBytes(StandardCharsets.UTF_8);
+        byte[] issuer = credential.getIssuer() == null ? new byte[0]
+                : credential.getIssuer().getBytes(StandardCharsets.UTF_8);
+        byte[] key = credential.getKey();
+        byte[] algorithm = credential.hasDefaultParameters() ? null
+                : credential.getAlgorithm().getBytes(StandardCharsets.US_ASCII);
+        int payloadSize = checkRecord(account, issuer, key, algorithm);
+
+        byte[] payload = new byte[payloadSize];
+        int position = 0;
+        payload[position++] = TYPE_PUT;
+        position = putLong(payload, position, credential.getId());
+        position = putBytes(payload, position, account, 2);
+        position = putBytes(payload, position, issuer, 2);
+        position = putBytes(payload, position, key, 1);
+        if (algorithm != null) {
+            position = putBytes(payload, position, algorithm, 1);
+            payload[position++] = (byte) credential.getDigits();
+            putInt(payload, position, credential.getPeriod());
+        }
+        return payload;
+    }
+
+    /**
+     * 检查字段长度和记录大小是否符合记录格式
+     * @param algorithm 算法名，使用默认参数时为null
+     * @return 记录数据长度（不含记录头）
+     * @throws IllegalArgumentException 字段过长或记录超过段文件大小
+     */
+    private int checkRecord(byte[] account, byte[] issuer, byte[] key, byte[] algorithm) {
+        if (key == null || account.length > 0xFFFF || issuer.length > 0xFFFF || key.length > 0xFF
+                || (algorithm != null && algorithm.length > 0xFF)) {
+            throw new IllegalArgumentException("凭据字段过长，无法持久化");
+        }
+        int parametersLength = algorithm == null ? 0 : 1 + algorithm.length + 1 + 4;
+        int payloadSize = 1 + 8 + 2 + account.length + 2 + issuer.length + 1 + key.length + parametersLength;
+        // 每个段末尾至少保留4字节的0作为结束标记
+        if (HEADER_SIZE + payloadSize + 4 > segmentSize) {
+            throw new IllegalArgumentException("凭据记录超过段文件大小: " + (HEADER_SIZE + payloadSize));
+        }
+        return payloadSize;
+    }
+
+    /**
+     * 将记录写入当前段，空间不足时切换到新段
+     * 先写CRC和数据，最后写数据长度，长度非0即表示记录完整
+     */
+    private void write(byte[] payload) throws IOException {
+        int recordSize = HEADER_SIZE + payload.length;
+        // 每个段末尾至少保留4字节的0作为结束标记
+        if (recordSize + 4 > segmentSize) {
+            throw new IllegalArgumentException("记录超过段文件大小: " + recordSize);
+        }
+        if (!fits(active, payload)) {
+            roll();
+        }
+        writeRecord(active, payload);
+        totalRecords++;
+        dirty = true;
+    }
+
+    /**
+     * 段内剩余空间能否容纳记录（末尾保留4字节的0作为结束标记）
+     */
+    private boolean fits(Segment segment, byte[] payload) {
+        return segment.writeOffset + HEADER_SIZE + payload.length + 4 <= segmentSize;
+    }
+
+    /**
+     * 在段的追加位置写入一条记录
+     */
+    private static void writeRecord(Segment segment, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+
+        MappedByteBuffer buffer = segment.buffer;
+        int offset = segment.writeOffset;
+        buffer.putInt(offset + 4, (int) crc.getValue());
+        for (int i = 0; i < payload.length; i++) {
+            buffer.put(offset + HEADER_SIZE + i, payload[i]);
+        }
+        buffer.putInt(offset, payload.length);
+        segment.writeOffset += HEADER_SIZE + payload.length;
+    }
+
+    /**
+     * 将所有段的修改刷到磁盘
+     */
+    public synchronized void flush() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        for (Segment segment : segments) {
+            if (segment.unflushed) {
+                segment.buffer.force();
+                segment.unflushed = segment == active;
+            }
+        }
+    }
+
+    /**
+     * 无效记录（被覆盖的旧记录）多于存活凭据时，把存活凭据重写到新段并删除旧段
+     * @return true-执行了压缩
+     */
+    public boolean compactIfNeeded() throws IOException {
+        synchronized (this) {
+            long live = store.size();
+            long dead = totalRecords - live;
+            if (dead < MIN_DEAD_RECORDS_FOR_COMPACTION || dead < live) {
+                return false;
+            }
+        }
+        return compact();
+    }
+
+    /**
+     * 压缩：把存活的凭据写入新段，新段刷盘后再删除旧段
+     * 锁内只取存储的快照；快照写入临时段文件在锁外进行，期间的注册照常追加到旧段。
+     * 最后在锁内把快照之后变化的凭据补写到临时段，刷盘后按段号从大到小改名为旧段之后的正式段，
+     * 再删除旧段。中途崩溃时，已改名的新段总是压缩结果的后缀（补写的记录在最后），
+     * 按段号顺序重放的结果与压缩前一致；未改名的临时段在下次启动时删除。
+     * @return true-执行了压缩，false-已有压缩在进行
+     */
+    public boolean compact() throws IOException {
+        List<Credential> snapshot = new ArrayList<>();
+        synchronized (this) {
+            if (compacting) {
+                return false;
+            }
+            compacting = true;
+            store.forEach(snapshot::add);
+        }
+
+        List<Segment> compacted = new ArrayList<>();
+        try {
+            Map<String, Long> snapshotIds = new HashMap<>(snapshot.size() * 2);
+            long records = 0;
+            for (Credential credential : snapshot) {
+                writeCompacted(compacted, encode(credential));
+                snapshotIds.put(credential.getAccountName(), credential.getId());
+                records++;
+            }
+            snapshot = null;
+            for (Segment segment : compacted) {
+                segment.buffer.force();
+            }
+
+            synchronized (this) {
+                List<Credential> changed = new ArrayList<>();
+                store.forEach(credential -> {
+                    Long id = snapshotIds.get(credential.getAccountName());
+                    if (id == null || id != credential.getId()) {
+                        changed.add(credential);
+                    }
+                });
+                int firstChanged = Math.max(compacted.size() - 1, 0);
+                for (Credential credential : changed) {
+                    writeCompacted(compacted, encode(credential));
+                    records++;
+                }
+                if (compacted.isEmpty()) {
+                    compacted.add(mapSegment(0, compactPath(0)));
+                }
+                for (int i = firstChanged; i < compacted.size(); i++) {
+                    compacted.get(i).buffer.force();
+                }
+                swap(compacted, records);
+                compacted.clear();
+            }
+        } finally {
+            for (Segment segment : compacted) {
+                Files.deleteIfExists(segment.path);
+            }
+            synchronized (this) {
+                compacting = false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 把记录写入压缩中的临时段，空间不足时新建临时段
+     */
+    private void writeCompacted(List<Segment> compacted, byte[] payload) throws IOException {
+        Segment segment = compacted.isEmpty() ? null : compacted.get(compacted.size() - 1);
+        if (segment == null || !fits(segment, payload)) {
+            segment = mapSegment(compacted.size(), compactPath(compacted.size()));
+            compacted.add(segment);
+        }
+        writeRecord(segment, payload);
+    }
+
+    /**
+     * 用已刷盘的临时段替换全部旧段（调用方持有日志锁）
+     * 改名失败时删除已改名的新段，日志继续使用旧段
+     */
+    private void swap(List<Segment> compacted, long records) throws IOException {
+        int base = active.number + 1;
+        List<Segment> renamed = new ArrayList<>();
+        try {
+            for (int i = compacted.size() - 1; i >= 0; i--) {
+                Segment source = compacted.get(i);
+                Path target = segmentPath(base + i);
+                Files.move(source.path, target, StandardCopyOption.ATOMIC_MOVE);
+                Segment segment = new Segment(base + i, target, source.buffer);
+                segment.writeOffset = source.writeOffset;
+                // 之后的注册追加到最后一个新段，由刷盘线程继续刷盘
+                segment.unflushed = i == compacted.size() - 1;
+                renamed.add(0, segment);
+            }
+        } catch (IOException e) {
+            for (Segment segment : renamed) {
+                Files.deleteIfExists(segment.path);
+            }
+            throw e;
+        }
+
+        List<Segment> oldSegments = new ArrayList<>(segments);
+        segments.clear();
+        segments.addAll(renamed);
+        active = renamed.get(renamed.size() - 1);
+        totalRecords = records;
+        for (Segment segment : oldSegments) {
+            Files.deleteIfExists(segment.path);
+        }
+    }
+
+    /**
+     * 扫描所有段文件，恢复凭据并定位追加位置
+     */
+    private void recover() throws IOException {
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + COMPACT_SUFFIX)) {
+            for (Path path : stream) {
+                Files.delete(path);
+            }
+        }
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                paths.add(path);
+            }
+        }
+        paths.sort((a, b) -> Integer.compare(segmentNumber(a), segmentNumber(b)));
+
+        for (Path path : paths) {
+            Segment segment = mapSegment(segmentNumber(path), path);
+            segments.add(segment);
+            scan(segment);
+        }
+
+        if (segments.isEmpty()) {
+            active = createSegment(1);
+        } else {
+            active = segments.get(segments.size() - 1);
+        }
+    }
+
+    /**
+     * 顺序读取段内记录并应用到存储
+     * 遇到长度为0的位置即为段尾；遇到校验失败的记录（崩溃时未完整落盘）则截断该位置之后的内容
+     */
+    private void scan(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int offset = 0;
+        CRC32 crc = new CRC32();
+        while (offset + HEADER_SIZE <= segmentSize) {
+            int length = buffer.getInt(offset);
+            if (length == 0) {
+                break;
+            }
+            if (length < 0 || offset + HEADER_SIZE + length > segmentSize) {
+                truncate(segment, offset);
+                break;
+            }
+            byte[] payload = new byte[length];
+            for (int i = 0; i < length; i++) {
+                payload[i] = buffer.get(offset + HEADER_SIZE + i);
+            }
+            crc.reset();
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                truncate(segment, offset);
+                break;
+            }
+            apply(payload);
+            totalRecords++;
+            offset += HEADER_SIZE + length;
+        }
+        segment.writeOffset = offset;
+    }
+
+    /**
+     * 应用一条记录到内存存储
+     */
+    private void apply(byte[] payload) {
+        int position = 0;
+        byte type = payload[position++];
+        long id = getLong(payload, position);
+        position += 8;
+        int accountLength = ((payload[position] & 0xFF) << 8) | (payload[position + 1] & 0xFF);
+        position += 2;
+        String accountName = new String(payload, position, accountLength, StandardCharsets.UTF_8);
+        position += accountLength;
+
+        if (type != TYPE_PUT) {
+            throw new IllegalStateException("未知的凭据记录类型: " + type);
+        }
+        int issuerLength = ((payload[position] & 0xFF) << 8) | (payload[position + 1] & 0xFF);
+        position += 2;
+        String issuer = new String(payload, position, issuerLength, StandardCharsets.UTF_8);
+        position += issuerLength;
+        int keyLength = payload[position++] & 0xFF;
+        byte[] key = new byte[keyLength];
+        System.arraycopy(payload, position, key, 0, keyLength);
+        position += keyLength;
+        if (position == payload.length) {
+            // 旧格式或默认参数的凭据
+            store.restore(new Credential(id, accountName, issuer, key));
+            return;
+        }
+        int algorithmLength = payload[position++] & 0xFF;
+        String algorithm = new String(payload, position, algorithmLength, StandardCharsets.US_ASCII);
+        position += algorithmLength;
+        int digits = payload[position++] & 0xFF;
+        int period = getInt(payload, position);
+        store.restore(new Credential(id, accountName, issuer, key, algorithm, digits, period));
+    }
+
+    /**
+     * 把段内offset之后的内容清零，避免残留数据在下次启动时被误读
+     */
+    private void truncate(Segment segment, int offset) {
+        auditLog.info("credential_log", null, "truncated",
+                segment.path.getFileName() + " 在偏移 " + offset + " 处存在不完整记录，已截断");
+        for (int i = offset; i < segmentSize; i++) {
+            segment.buffer.put(i, (byte) 0);
+        }
+        segment.unflushed = true;
+        dirty = true;
+    }
+
+    /**
+     * 切换到新段
+     */
+    private void roll() throws IOException {
+        active = createSegment(active.number + 1);
+    }
+
+    /**
+     * 创建并映射新的段文件
+     */
+    private Segment createSegment(int number) throws IOException {
+        Segment segment = mapSegment(number, segmentPath(number));
+        segments.add(segment);
+        return segment;
+    }
+
+    private Path segmentPath(int number) {
+        return directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    private Path compactPath(int index) {
+        return directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, index, COMPACT_SUFFIX));
+    }
+
+    private Segment mapSegment(int number, Path path) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            if (file.length() < segmentSize) {
+                file.setLength(segmentSize);
+            }
+            FileChannel channel = file.getChannel();
+            // 映射在通道关闭后仍然有效
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            return new Segment(number, path, buffer);
+        }
+    }
+
+    private static int segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * 启动后台刷盘线程，每次刷盘后检查是否需要压缩
+     */
+    private void startFlusher(long intervalMillis) {
+        flusher.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+                compactIfNeeded();
+            } catch (Exception e) {
+                auditLog.error("credential_log", null, "凭据日志刷盘失败", e);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 刷盘并停止后台线程
+     */
+    @Override
+    public void close() throws IOException {
+        flusher.shutdown();
+        synchronized (this) {
+            dirty = true;
+            flush();
+        }
+    }
+
+    /**
+     * 已写入预写日志但尚未发布到段文件的注册中最小的LSN，没有时返回Long.MAX_VALUE
+     * 检查点不能越过这些记录，否则它们所在的日志文件可能在写入段文件之前被删除
+     */
+    synchronized long getOldestPendingLsn() {
+        long oldest = Long.MAX_VALUE;
+        for (long lsn : pending.values()) {
+            oldest = Math.min(oldest, lsn);
+        }
+        return oldest;
+    }
+
+    /**
+     * 日志中的记录总数（含已被覆盖的记录）
+     */
+    public synchronized long getTotalRecords() {
+        return totalRecords;
+    }
+
+    /**
+     * 段文件数量
+     */
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    private static int putLong(byte[] target, int position, long value) {
+        for (int i = 7; i >= 0; i--) {
+            target[position + i] = (byte) value;
+            value >>>= 8;
+        }
+        return position + 8;
+    }
+
+    private static long getLong(byte[] source, int position) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (source[position + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static int putInt(byte[] target, int position, int value) {
+        for (int i = 3; i >= 0; i--) {
+            target[position + i] = (byte) value;
+            value >>>= 8;
+        }
+        return position + 4;
+    }
+
+    private static int getInt(byte[] source, int position) {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = (value << 8) | (source[position + i] & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * 写入带长度前缀（1或2字节）的字节数组
+     */
+    private static int putBytes(byte[] target, int position, byte[] value, int lengthBytes) {
+        if (lengthBytes == 2) {
+            target[position++] = (byte) (value.length >>> 8);
+        }
+        target[position++] = (byte) value.length;
+        System.arraycopy(value, 0, target, position, value.length);
+        return position + value.length;
+    }
+
+    /**
+     * 段文件
+     */
+    private static final class Segment {
+        final int number;
+        final Path path;
+        final MappedByteBuffer buffer;
+        int writeOffset;
+        boolean unflushed = true;
+
+        Segment(int number, Path path, MappedByteBuffer buffer) {
+            this.number = number;
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+}
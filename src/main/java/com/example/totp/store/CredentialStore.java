@@ -0,0 +1,132 @@
+package com.example.totp.store;
+
+import com.example.totp.model.Credential;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 内存凭据存储
+ * 以账户名称为键保存已注册的凭据，支持多账户并发访问：
+ * 读操作（验证路径）基于ConcurrentHashMap无锁完成，按账户查找为O(1)；
+ * 写操作只锁定对应的哈希桶，不影响其他账户的读取。
+ */
+public class CredentialStore {
+    
+    // 默认初始容量，避免注册量增长时频繁扩容
+    private static final int DEFAULT_INITIAL_CAPACITY = 1 << 16;
+    
+    // 账户名称 -> 凭据
+    private final ConcurrentHashMap<String, Credential> credentials;
+    
+    // 凭据编号序列
+    private final AtomicLong idSequence = new AtomicLong();
+    
+    /**
+     * 构造函数，使用默认初始容量
+     */
+    public CredentialStore() {
+        this(DEFAULT_INITIAL_CAPACITY);
+    }
+    
+    /**
+     * 构造函数
+     * @param initialCapacity 预计的账户数量
+     */
+    public CredentialStore(int initialCapacity) {
+        this.credentials = new ConcurrentHashMap<>(initialCapacity);
+    }
+    
+    /**
+     * 注册（或重新注册）账户凭据，已存在的账户会被新密钥覆盖
+     * @param accountName 账户名称
+     * @param issuer 发行者
+     * @param key 原始密钥字节
+     * @return 新的凭据对象
+     */
+    public Credential enroll(String accountName, String issuer, byte[] key) {
+        return enroll(accountName, issuer, key, Credential.DEFAULT_ALGORITHM, Credential.DEFAULT_DIGITS,
+                Credential.DEFAULT_PERIOD);
+    }
+    
+    /**
+     * 按指定的算法、位数和时间步长度注册（或重新注册）账户凭据
+     * 只修改内存；需要持久化时通过{@link CredentialLog#enroll}注册，保证存储与日志的顺序一致
+     * @param accountName 账户名称
+     * @param issuer 发行者
+     * @param key 原始密钥字节
+     * @param algorithm HMAC算法
+     * @param digits 验证码位数
+     * @param period 时间步长度（秒）
+     * @return 新的凭据对象
+     */
+    public Credential enroll(String accountName, String issuer, byte[] key, String algorithm, int digits, int period) {
+        Credential credential = create(accountName, issuer, key, algorithm, digits, period);
+        credentials.put(accountName, credential);
+        return credential;
+    }
+    
+    /**
+     * 分配凭据编号并创建凭据对象，但不放入存储（先写预写日志、落盘后再通过{@link #restore}发布）
+     * @param accountName 账户名称
+     * @param issuer 发行者
+     * @param key 原始密钥字节
+     * @param algorithm HMAC算法
+     * @param digits 验证码位数
+     * @param period 时间步长度（秒）
+     * @return 新的凭据对象
+     */
+    public Credential create(String accountName, String issuer, byte[] key, String algorithm, int digits, int period) {
+        if (accountName == null || accountName.isEmpty()) {
+            throw new IllegalArgumentException("账户名称不能为空");
+        }
+        return new Credential(idSequence.incrementAndGet(), accountName, issuer, key, algorithm, digits, period);
+    }
+    
+    /**
+     * 恢复已持久化的凭据（启动加载时使用），保留原有的凭据编号
+     * @param credential 凭据对象
+     */
+    public void restore(Credential credential) {
+        credentials.put(credential.getAccountName(), credential);
+        idSequence.accumulateAndGet(credential.getId(), Math::max);
+    }
+    
+    /**
+     * 按账户名称查找凭据
+     * @param accountName 账户名称
+     * @return 凭据对象，账户不存在时返回null
+     */
+    public Credential get(String accountName) {
+        if (accountName == null) {
+            return null;
+        }
+        return credentials.get(accountName);
+    }
+    
+    /**
+     * 删除账户凭据
+     * @param accountName 账户名称
+     * @return 被删除的凭据，账户不存在时返回null
+     */
+    public Credential remove(String accountName) {
+        return credentials.remove(accountName);
+    }
+    
+    /**
+     * 遍历所有凭据（弱一致性，遍历期间的并发修改可能可见也可能不可见）
+     * @param action 对每个凭据执行的操作
+     */
+    public void forEach(Consumer<Credential> action) {
+        credentials.values().forEach(action);
+    }
+    
+    /**
+     * 获取已注册账户数量
+     * @return 账户数量
+     */
+    public int size() {
+        return credentials.size();
+    }
+}
@@ -0,0 +1,646 @@
+package com.example.totp.store;
+
+import com.example.totp.audit.AuditLog;
+import com.example.totp.model.Credential;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * 预写日志（组提交）
+ * 注册凭据、标记验证码已使用等状态变更先写入预写日志，落盘后才向客户端返回。
+ * 写入方只把记录编码进共享的直接内存缓冲区并拿到日志序号（LSN），由唯一的刷盘线程把一段时间内
+ * 所有并发写入方的记录一次写入文件并force，即一次fsync确认一批写入（组提交）。
+ * 刷盘线程发现新记录后最多再等待"延迟预算"指定的时间以收集更多记录，缓冲区过半时立即提交。
+ *
+ * 检查点：凭据段文件（{@link CredentialLog}）刷盘后，之前的日志记录就不再需要；
+ * 日志按文件轮换，已被检查点覆盖且超过保留时间的旧文件被删除。
+ * 保留时间用于让"已使用"标记在验证窗口内一直可以恢复。
+ *
+ * 记录格式（大端序）：
+ *   [int 数据长度][int CRC32][long LSN][byte 类型][数据]
+ * CRC32覆盖LSN、类型和数据。
+ * 注册记录的数据末尾可选附加[byte 算法名长度][算法名][byte 位数][int 时间步长度]，
+ * "验证码已使用"记录末尾可选附加[int 时间步长度]；没有附加部分的记录按默认参数恢复。
+ */
+public class WriteAheadLog implements Closeable {
+
+    // 日志文件名前缀与后缀
+    private static final String FILE_PREFIX = "wal-";
+    private static final String FILE_SUFFIX = ".log";
+
+    // 记录类型：注册凭据 / 验证码已使用
+    public static final byte TYPE_ENROLL = 1;
+    public static final byte TYPE_REPLAY_MARK = 2;
+
+    // 记录头长度（数据长度 + CRC32）
+    private static final int HEADER_SIZE = 8;
+
+    // LSN + 类型
+    private static final int PREFIX_SIZE = 9;
+
+    /**
+     * 恢复时的记录回调
+     */
+    public interface Listener {
+
+        /**
+         * 恢复一条注册记录
+         */
+        default void onEnroll(Credential credential) {
+        }
+
+        /**
+         * 恢复一条"验证码已使用"记录
+         * @param period 时间步长度（秒）
+         */
+        default void onReplayMark(long credentialId, long step, int period) {
+        }
+    }
+
+    // 日志文件目录
+    private final Path directory;
+
+    // 组提交延迟预算（纳秒）
+    private final long groupCommitNanos;
+
+    // 旧日志文件在被检查点覆盖后的最短保留时间（毫秒）
+    private final long retentionMillis;
+
+    // 缓冲区容量
+    private final int bufferCapacity;
+
+    // 保护缓冲区和LSN
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // 有新记录等待刷盘
+    private final Condition dataAvailable = lock.newCondition();
+
+    // 刷盘完成（durableLsn前移）
+    private final Condition durableAdvanced = lock.newCondition();
+
+    // 缓冲区已交换，写入方可以继续写
+    private final Condition spaceAvailable = lock.newCondition();
+
+    // 写入方正在写入的缓冲区，以及刷盘线程正在写文件的缓冲区（双缓冲）
+    private ByteBuffer staging;
+    private ByteBuffer spare;
+
+    // 计算记录校验和（持有锁时使用）
+    private final CRC32 crc = new CRC32();
+
+    // 最近分配的LSN
+    private long appendedLsn;
+
+    // 已落盘的最大LSN
+    private volatile long durableLsn;
+
+    // 刷盘失败的原因，失败后日志不再接受写入
+    private IOException failure;
+
+    private volatile boolean closed;
+
+    // 以下字段只由刷盘线程访问
+    private FileChannel channel;
+    private Path currentPath;
+    private int currentNumber;
+    private long currentBytes;
+    private final List<RetiredFile> retired = new ArrayList<>();
+
+    // 检查点覆盖到的LSN，以及是否需要轮换日志文件
+    private volatile long checkpointLsn;
+    private volatile boolean rotateRequested;
+
+    // 统计信息
+    private volatile long commitCount;
+    private long recordCount;
+
+    // 刷盘线程
+    private final Thread flusher;
+
+    // 检查点线程
+    private final ScheduledExecutorService checkpointer;
+
+    // 记录刷盘失败、回放时忽略的记录等诊断事件
+    private final AuditLog auditLog;
+
+    /**
+     * 打开预写日志：按顺序回放已有日志文件中的记录，然后启动刷盘线程
+     * @param directory 日志目录（不存在时自动创建）
+     * @param bufferCapacity 缓冲区容量（字节），单条记录不能超过该值
+     * @param groupCommitMicros 组提交延迟预算（微秒），0表示有记录就立即刷盘
+     * @param retentionMillis 旧日志文件被检查点覆盖后的最短保留时间（毫秒）
+     * @param listener 回放记录的回调
+     * @param auditLog 审计日志，记录刷盘失败和回放时忽略的记录
+     * @return 预写日志
+     */
+    public static WriteAheadLog open(Path directory, int bufferCapacity, long groupCommitMicros,
+                                     long retentionMillis, Listener listener, AuditLog auditLog) throws IOException {
+        WriteAheadLog log = new WriteAheadLog(directory, bufferCapacity, groupCommitMicros, retentionMillis, auditLog);
+        log.recover(listener);
+        log.flusher.start();
+        return log;
+    }
+
+    private WriteAheadLog(Path directory, int bufferCapacity, long groupCommitMicros, long retentionMillis,
+                          AuditLog auditLog) {
+        if (bufferCapacity < 4096) {
+            throw new IllegalArgumentException("预写日志缓冲区不能小于4096字节: " + bufferCapacity);
+        }
+        this.directory = directory;
+        this.bufferCapacity = bufferCapacity;
+        this.groupCommitNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0, groupCommitMicros));
+        this.retentionMillis = retentionMillis;
+        this.auditLog = auditLog;
+        this.staging = ByteBuffer.allocateDirect(bufferCapacity);
+        this.spare = ByteBuffer.allocateDirect(bufferCapacity);
+        this.flusher = new Thread(this::flushLoop, "wal-flusher");
+        this.flusher.setDaemon(true);
+        this.checkpointer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "wal-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 写入注册记录
+     * @param credential 凭据对象
+     * @return 记录的LSN，传给{@link #awaitDurable(long)}等待落盘
+     */
+    public long logEnroll(Credential credential) throws IOException {
+        byte[] account = credential.getAccountName().getBytes(StandardCharsets.UTF_8);
+        byte[] issuer = credential.getIssuer() == null ? new byte[0]
+                : credential.getIssuer().getBytes(StandardCharsets.UTF_8);
+        byte[] key = credential.getKey();
+        byte[] algorithm = credential.hasDefaultParameters() ? null
+                : credential.getAlgorithm().getBytes(StandardCharsets.US_ASCII);
+        if (account.length > 0xFFFF || issuer.length > 0xFFFF || key.length > 0xFF
+                || (algorithm != null && algorithm.length > 0xFF)) {
+            throw new IllegalArgumentException("凭据字段过长，无法写入预写日志");
+        }
+        int size = 8 + 2 + account.length + 2 + issuer.length + 1 + key.length
+                + (algorithm == null ? 0 : 1 + algorithm.length + 1 + 4);
+
+        lock.lock();
+        try {
+            int start = reserve(TYPE_ENROLL, size);
+            staging.putLong(credential.getId());
+            staging.putShort((short) account.length).put(account);
+            staging.putShort((short) issuer.length).put(issuer);
+            staging.put((byte) key.length).put(key);
+            if (algorithm != null) {
+                staging.put((byte) algorithm.length).put(algorithm);
+                staging.put((byte) credential.getDigits()).putInt(credential.getPeriod());
+            }
+            return finish(start);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 写入"验证码已使用"记录
+     * @param credentialId 凭据编号
+     * @param step 被使用的时间步
+     * @param period 时间步长度（秒）
+     * @return 记录的LSN
+     */
+    public long logReplayMark(long credentialId, long step, int period) throws IOException {
+        lock.lock();
+        try {
+            int start = reserve(TYPE_REPLAY_MARK, 20);
+            staging.putLong(credentialId).putLong(step).putInt(period);
+            return finish(start);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 为一条记录预留缓冲区空间并写入记录头前缀，缓冲区不足时等待刷盘线程交换缓冲区
+     * @return 记录起始位置
+     */
+    private int reserve(byte type, int payloadSize) throws IOException {
+        int recordSize = HEADER_SIZE + PREFIX_SIZE + payloadSize;
+        if (recordSize > bufferCapacity) {
+            throw new IllegalArgumentException("记录超过预写日志缓冲区大小: " + recordSize);
+        }
+        while (staging.remaining() < recordSize) {
+            checkWritable();
+            dataAvailable.signal();
+            try {
+                spaceAvailable.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("等待预写日志缓冲区时被中断");
+            }
+        }
+        checkWritable();
+        int start = staging.position();
+        staging.position(start + HEADER_SIZE);
+        staging.putLong(appendedLsn + 1);
+        staging.put(type);
+        return start;
+    }
+
+    /**
+     * 补全记录头（长度和校验和），分配LSN并唤醒刷盘线程
+     */
+    private long finish(int start) {
+        int end = staging.position();
+        ByteBuffer body = staging.duplicate();
+        body.position(start + HEADER_SIZE).limit(end);
+        crc.reset();
+        crc.update(body);
+        staging.putInt(start, end - start - HEADER_SIZE);
+        staging.putInt(start + 4, (int) crc.getValue());
+        appendedLsn++;
+        recordCount++;
+        // 缓冲区由空变为非空，或超过一半时唤醒刷盘线程
+        if (start == 0 || (start < bufferCapacity / 2 && end >= bufferCapacity / 2)) {
+            dataAvailable.signal();
+        }
+        return appendedLsn;
+    }
+
+    private void checkWritable() throws IOException {
+        if (failure != null) {
+            throw new IOException("预写日志写入失败: " + failure.getMessage(), failure);
+        }
+        if (closed) {
+            throw new IOException("预写日志已关闭");
+        }
+    }
+
+    /**
+     * 等待指定LSN及之前的记录落盘
+     * @param lsn 日志序号
+     */
+    public void awaitDurable(long lsn) throws IOException {
+        if (durableLsn >= lsn) {
+            return;
+        }
+        lock.lock();
+        try {
+            while (durableLsn < lsn) {
+                if (failure != null) {
+                    throw new IOException("预写日志写入失败: " + failure.getMessage(), failure);
+                }
+                if (closed && !flusher.isAlive()) {
+                    throw new IOException("预写日志已关闭");
+                }
+                durableAdvanced.await(100, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待预写日志落盘时被中断");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 等待目前为止写入的所有记录落盘（批量写入多条记录后调用一次）
+     */
+    public void sync() throws IOException {
+        long lsn;
+        lock.lock();
+        try {
+            lsn = appendedLsn;
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(lsn);
+    }
+
+    /**
+     * 刷盘线程主循环：取走缓冲区，写入文件并force，然后唤醒等待的写入方
+     */
+    private void flushLoop() {
+        while (true) {
+            ByteBuffer batch;
+            long batchLsn;
+            lock.lock();
+            try {
+                while (staging.position() == 0 && !closed && !rotateRequested) {
+                    dataAvailable.await(1, TimeUnit.SECONDS);
+                    if (staging.position() == 0 && !closed) {
+                        break;
+                    }
+                }
+                if (closed && staging.position() == 0) {
+                    break;
+                }
+                // 延迟预算内继续收集其他写入方的记录
+                long remaining = groupCommitNanos;
+                while (remaining > 0 && staging.position() > 0
+                        && staging.position() < bufferCapacity / 2 && !closed) {
+                    remaining = dataAvailable.awaitNanos(remaining);
+                }
+                batch = staging;
+                staging = spare;
+                spare = batch;
+                batchLsn = appendedLsn;
+                spaceAvailable.signalAll();
+            } catch (InterruptedException e) {
+                break;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                if (batch.position() > 0) {
+                    batch.flip();
+                    currentBytes += batch.remaining();
+                    while (batch.hasRemaining()) {
+                        channel.write(batch);
+                    }
+                    channel.force(false);
+                    commitCount++;
+                }
+                batch.clear();
+                durableLsn = batchLsn;
+                signalDurable(null);
+                housekeeping();
+            } catch (IOException e) {
+                auditLog.error("wal", null, "预写日志刷盘失败", e);
+                signalDurable(e);
+                break;
+            }
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            auditLog.error("wal", null, "关闭预写日志失败", e);
+        }
+    }
+
+    private void signalDurable(IOException error) {
+        lock.lock();
+        try {
+            if (error != null) {
+                failure = error;
+            }
+            durableAdvanced.signalAll();
+            spaceAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 检查点：记下当前LSN，把目标（凭据段文件）刷盘，之后这些记录就可以随旧日志文件删除
+     * 已写入日志、尚在等待落盘后才发布到段文件的注册不在检查点范围内（先读取它们的LSN，再刷盘）
+     * @param target 需要刷盘的凭据日志
+     */
+    public void checkpoint(CredentialLog target) throws IOException {
+        long lsn;
+        lock.lock();
+        try {
+            lsn = appendedLsn;
+        } finally {
+            lock.unlock();
+        }
+        long oldestPending = target.getOldestPendingLsn();
+        target.flush();
+        checkpointLsn = Math.min(lsn, oldestPending - 1);
+        rotateRequested = true;
+        lock.lock();
+        try {
+            dataAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 按固定间隔执行检查点
+     * @param target 需要刷盘的凭据日志
+     * @param intervalMillis 间隔（毫秒）
+     */
+    public void scheduleCheckpoint(CredentialLog target, long intervalMillis) {
+        checkpointer.scheduleWithFixedDelay(() -> {
+            try {
+                checkpoint(target);
+            } catch (Exception e) {
+                auditLog.error("wal", null, "预写日志检查点失败", e);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 刷盘线程在每次提交后执行：按需轮换日志文件，删除已被检查点覆盖且超过保留时间的旧文件
+     */
+    private void housekeeping() throws IOException {
+        if (rotateRequested) {
+            rotateRequested = false;
+            if (currentBytes > 0) {
+                channel.close();
+                retired.add(new RetiredFile(currentPath, durableLsn, System.currentTimeMillis()));
+                openFile(currentNumber + 1);
+            }
+        }
+        long now = System.currentTimeMillis();
+        long covered = checkpointLsn;
+        Iterator<RetiredFile> iterator = retired.iterator();
+        while (iterator.hasNext()) {
+            RetiredFile file = iterator.next();
+            if (file.maxLsn <= covered && file.retiredAt + retentionMillis <= now) {
+                Files.deleteIfExists(file.path);
+                iterator.remove();
+            }
+        }
+    }
+
+    private void openFile(int number) throws IOException {
+        currentNumber = number;
+        currentPath = directory.resolve(String.format("%s%06d%s", FILE_PREFIX, number, FILE_SUFFIX));
+        channel = FileChannel.open(currentPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        currentBytes = 0;
+    }
+
+    /**
+     * 按文件编号顺序回放所有日志记录，遇到不完整或校验失败的记录即停止该文件的回放
+     * 旧文件不再追加写入，新记录写入编号更大的新文件
+     */
+    private void recover(Listener listener) throws IOException {
+        Files.createDirectories(directory);
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path path : stream) {
+                paths.add(path);
+            }
+        }
+        paths.sort((a, b) -> Integer.compare(fileNumber(a), fileNumber(b)));
+
+        long maxLsn = 0;
+        int maxNumber = 0;
+        for (Path path : paths) {
+            long fileMaxLsn = replay(path, listener, maxLsn);
+            maxLsn = Math.max(maxLsn, fileMaxLsn);
+            maxNumber = Math.max(maxNumber, fileNumber(path));
+            retired.add(new RetiredFile(path, fileMaxLsn, Files.getLastModifiedTime(path).toMillis()));
+        }
+        appendedLsn = maxLsn;
+        durableLsn = maxLsn;
+        openFile(maxNumber + 1);
+    }
+
+    private long replay(Path path, Listener listener, long previousLsn) throws IOException {
+        long maxLsn = previousLsn;
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (file.size() == 0) {
+                return maxLsn;
+            }
+            MappedByteBuffer buffer = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+            CRC32 check = new CRC32();
+            while (buffer.remaining() >= HEADER_SIZE) {
+                int start = buffer.position();
+                int length = buffer.getInt();
+                int expected = buffer.getInt();
+                if (length < PREFIX_SIZE || length > buffer.remaining()) {
+                    break;
+                }
+                ByteBuffer body = buffer.duplicate();
+                body.limit(start + HEADER_SIZE + length);
+                check.reset();
+                check.update(body);
+                if ((int) check.getValue() != expected) {
+                    auditLog.info("wal", null, "truncated",
+                            path.getFileName() + " 在偏移 " + start + " 处存在不完整记录，忽略其后的内容");
+                    break;
+                }
+                long lsn = buffer.getLong();
+                byte type = buffer.get();
+                // 限定在本条记录内，apply据剩余字节判断是否有附加部分
+                ByteBuffer record = buffer.duplicate();
+                record.limit(start + HEADER_SIZE + length);
+                apply(type, record, listener);
+                buffer.position(start + HEADER_SIZE + length);
+                maxLsn = Math.max(maxLsn, lsn);
+            }
+        }
+        return maxLsn;
+    }
+
+    private void apply(byte type, ByteBuffer buffer, Listener listener) {
+        switch (type) {
+            case TYPE_ENROLL: {
+                long id = buffer.getLong();
+                String accountName = getString(buffer, buffer.getShort() & 0xFFFF);
+                String issuer = getString(buffer, buffer.getShort() & 0xFFFF);
+                byte[] key = new byte[buffer.get() & 0xFF];
+                buffer.get(key);
+                if (!buffer.hasRemaining()) {
+                    listener.onEnroll(new Credential(id, accountName, issuer, key));
+                    break;
+                }
+                byte[] algorithm = new byte[buffer.get() & 0xFF];
+                buffer.get(algorithm);
+                int digits = buffer.get() & 0xFF;
+                int period = buffer.getInt();
+                listener.onEnroll(new Credential(id, accountName, issuer, key,
+                        new String(algorithm, StandardCharsets.US_ASCII), digits, period));
+                break;
+            }
+            case TYPE_REPLAY_MARK: {
+                long credentialId = buffer.getLong();
+                long step = buffer.getLong();
+                int period = buffer.remaining() >= 4 ? buffer.getInt() : Credential.DEFAULT_PERIOD;
+                listener.onReplayMark(credentialId, step, period);
+                break;
+            }
+            default:
+                auditLog.info("wal", null, "skipped", "忽略未知类型的预写日志记录: " + type);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int fileNumber(Path path) {
+        String name = path.getFileName().toString();
+        return Integer.parseInt(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+    }
+
+    /**
+     * 刷完缓冲区中的记录后停止刷盘线程
+     */
+    @Override
+    public void close() throws IOException {
+        checkpointer.shutdown();
+        lock.lock();
+        try {
+            closed = true;
+            dataAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 已落盘的最大LSN
+     */
+    public long getDurableLsn() {
+        return durableLsn;
+    }
+
+    /**
+     * 统计信息：记录数、组提交次数（fsync次数）
+     */
+    public long getRecordCount() {
+        lock.lock();
+        try {
+            return recordCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getCommitCount() {
+        return commitCount;
+    }
+
+    /**
+     * 已轮换、等待删除的旧日志文件
+     */
+    private static final class RetiredFile {
+        final Path path;
+        final long maxLsn;
+        final long retiredAt;
+
+        RetiredFile(Path path, long maxLsn, long retiredAt) {
+            this.path = path;
+            this.maxLsn = maxLsn;
+            this.retiredAt = retiredAt;
+        }
+    }
+}
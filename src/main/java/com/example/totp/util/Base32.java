@@ -0,0 +1,267 @@
+package com.example.totp.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Base32编解码工具类（RFC 4648，Google Authenticator兼容）
+ * 解码使用256项查找表，一次遍历同时完成输入清理（忽略填充字符'='、空格和连字符，兼容小写字母）
+ * 和解码；最后一组有效字符数不对应整数个字节（1、3、6个）时拒绝，不会悄悄丢掉尾部。编码默认不输出填充字符。除返回新数组/字符串的便捷方法外，
+ * 所有方法都可以直接读写调用方提供的数组或ByteBuffer，不产生中间对象。
+ */
+public final class Base32 {
+
+    // Base32字母表
+    private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567".toCharArray();
+
+    // 查找表中的特殊值：非法字符 / 需要忽略的字符
+    private static final byte INVALID = -1;
+    private static final byte SKIP = -2;
+
+    // 解码查找表：字符 -> 5位数值
+    private static final byte[] DECODE_TABLE = new byte[256];
+
+    static {
+        Arrays.fill(DECODE_TABLE, INVALID);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            DECODE_TABLE[ALPHABET[i]] = (byte) i;
+            DECODE_TABLE[Character.toLowerCase(ALPHABET[i])] = (byte) i;
+        }
+        DECODE_TABLE['='] = SKIP;
+        DECODE_TABLE[' '] = SKIP;
+        DECODE_TABLE['-'] = SKIP;
+    }
+
+    private Base32() {
+    }
+
+    /**
+     * 计算编码后的字符数（不含填充字符）
+     * @param byteCount 原始字节数
+     * @return 编码后的字符数
+     */
+    public static int encodedLength(int byteCount) {
+        return (byteCount * 8 + 4) / 5;
+    }
+
+    /**
+     * 将字节数组编码为Base32字符串（不含填充字符）
+     * @param data 原始字节
+     * @return Base32字符串
+     */
+    public static String encode(byte[] data) {
+        char[] chars = new char[encodedLength(data.length)];
+        encode(data, 0, data.length, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * 将字节数组编码为Base32字符串
+     * @param data 原始字节
+     * @param padding 是否补齐填充字符使长度为8的倍数
+     * @return Base32字符串
+     */
+    public static String encode(byte[] data, boolean padding) {
+        int length = encodedLength(data.length);
+        int padded = padding ? (length + 7) / 8 * 8 : length;
+        char[] chars = new char[padded];
+        encode(data, 0, data.length, chars, 0);
+        Arrays.fill(chars, length, padded, '=');
+        return new String(chars);
+    }
+
+    /**
+     * 将字节编码到调用方提供的字符数组（不含填充字符）
+     * @param src 原始字节
+     * @param srcOffset 起始位置
+     * @param length 字节数
+     * @param dst 目标字符数组，剩余空间至少为encodedLength(length)
+     * @param dstOffset 写入起始位置
+     * @return 写入的字符数
+     */
+    public static int encode(byte[] src, int srcOffset, int length, char[] dst, int dstOffset) {
+        int buffer = 0;
+        int bitsLeft = 0;
+        int position = dstOffset;
+        int end = srcOffset + length;
+        for (int i = srcOffset; i < end; i++) {
+            buffer = (buffer << 8) | (src[i] & 0xFF);
+            bitsLeft += 8;
+            while (bitsLeft >= 5) {
+                dst[position++] = ALPHABET[(buffer >> (bitsLeft - 5)) & 0x1F];
+                bitsLeft -= 5;
+            }
+        }
+        if (bitsLeft > 0) {
+            dst[position++] = ALPHABET[(buffer << (5 - bitsLeft)) & 0x1F];
+        }
+        return position - dstOffset;
+    }
+
+    /**
+     * 将src中剩余的字节编码为ASCII字符写入dst（不含填充字符）
+     * @param src 原始字节，读取后position移动到limit
+     * @param dst 目标缓冲区，剩余空间至少为encodedLength(src.remaining())
+     * @return 写入的字节数
+     */
+    public static int encode(ByteBuffer src, ByteBuffer dst) {
+        int buffer = 0;
+        int bitsLeft = 0;
+        int start = dst.position();
+        while (src.hasRemaining()) {
+            buffer = (buffer << 8) | (src.get() & 0xFF);
+            bitsLeft += 8;
+            while (bitsLeft >= 5) {
+                dst.put((byte) ALPHABET[(buffer >> (bitsLeft - 5)) & 0x1F]);
+                bitsLeft -= 5;
+            }
+        }
+        if (bitsLeft > 0) {
+            dst.put((byte) ALPHABET[(buffer << (5 - bitsLeft)) & 0x1F]);
+        }
+        return dst.position() - start;
+    }
+
+    /**
+     * 计算解码后的字节数（忽略填充字符、空格和连字符）
+     * @param base32 Base32字符串
+     * @return 解码后的字节数
+     * @throws IllegalArgumentException 包含非法字符
+     */
+    public static int decodedLength(CharSequence base32) {
+        int symbols = 0;
+        for (int i = 0, n = base32.length(); i < n; i++) {
+            if (lookup(base32.charAt(i)) >= 0) {
+                symbols++;
+            }
+        }
+        return symbols * 5 / 8;
+    }
+
+    /**
+     * 解码Base32字符串
+     * @param base32 Base32字符串（大小写均可，可带填充字符、空格和连字符）
+     * @return 原始字节
+     * @throws IllegalArgumentException 包含非法字符，或尾部不足一个字节
+     */
+    public static byte[] decode(CharSequence base32) {
+        byte[] result = new byte[decodedLength(base32)];
+        decode(base32, result, 0);
+        return result;
+    }
+
+    /**
+     * 解码Base32字符串到调用方提供的数组
+     * @param base32 Base32字符串
+     * @param dst 目标数组，剩余空间至少为decodedLength(base32)
+     * @param dstOffset 写入起始位置
+     * @return 写入的字节数
+     * @throws IllegalArgumentException 包含非法字符，或尾部不足一个字节
+     */
+    public static int decode(CharSequence base32, byte[] dst, int dstOffset) {
+        int buffer = 0;
+        int bitsLeft = 0;
+        int symbols = 0;
+        int position = dstOffset;
+        for (int i = 0, n = base32.length(); i < n; i++) {
+            int value = lookup(base32.charAt(i));
+            if (value == SKIP) {
+                continue;
+            }
+            buffer = (buffer << 5) | value;
+            bitsLeft += 5;
+            symbols++;
+            if (bitsLeft >= 8) {
+                dst[position++] = (byte) (buffer >> (bitsLeft - 8));
+                bitsLeft -= 8;
+            }
+        }
+        checkTail(symbols);
+        return position - dstOffset;
+    }
+
+    /**
+     * 将src中剩余的ASCII字符解码后写入dst
+     * @param src Base32字符（ASCII），读取后position移动到limit
+     * @param dst 目标缓冲区
+     * @return 写入的字节数
+     * @throws IllegalArgumentException 包含非法字符，或尾部不足一个字节（此时dst中已写入前面的字节）
+     */
+    public static int decode(ByteBuffer src, ByteBuffer dst) {
+        int buffer = 0;
+        int bitsLeft = 0;
+        int symbols = 0;
+        int start = dst.position();
+        while (src.hasRemaining()) {
+            int value = lookup((char) (src.get() & 0xFF));
+            if (value == SKIP) {
+                continue;
+            }
+            buffer = (buffer << 5) | value;
+            bitsLeft += 5;
+            symbols++;
+            if (bitsLeft >= 8) {
+                dst.put((byte) (buffer >> (bitsLeft - 8)));
+                bitsLeft -= 8;
+            }
+        }
+        checkTail(symbols);
+        return dst.position() - start;
+    }
+
+    /**
+     * 检查字符串是否为合法的Base32编码
+     * 每8个字符编码5个字节，最后一组只能有2、4、5、7个有效字符（对应1到4个字节），
+     * 其余长度的尾部（如单个字符"A"）不足一个字节，视为非法（解码时抛出IllegalArgumentException）
+     * @param base32 待检查的字符串
+     * @return true-合法且至少能解码出一个字节
+     */
+    public static boolean isValid(CharSequence base32) {
+        if (base32 == null) {
+            return false;
+        }
+        int symbols = 0;
+        for (int i = 0, n = base32.length(); i < n; i++) {
+            char c = base32.charAt(i);
+            byte value = c < 256 ? DECODE_TABLE[c] : INVALID;
+            if (value == INVALID) {
+                return false;
+            }
+            if (value >= 0) {
+                symbols++;
+            }
+        }
+        return symbols * 5 / 8 > 0 && isValidTail(symbols & 7);
+    }
+
+    /**
+     * 最后一组有效字符数不对应整数个字节时拒绝
+     * @param symbols 有效字符总数
+     * @throws IllegalArgumentException 尾部不足一个字节
+     */
+    private static void checkTail(int symbols) {
+        if (!isValidTail(symbols & 7)) {
+            throw new IllegalArgumentException("Base32长度无效: 最后一组有" + (symbols & 7) + "个字符，不足一个字节");
+        }
+    }
+
+    /**
+     * 最后一组有效字符数是否对应整数个字节
+     */
+    private static boolean isValidTail(int tailSymbols) {
+        return tailSymbols == 0 || tailSymbols == 2 || tailSymbols == 4 || tailSymbols == 5 || tailSymbols == 7;
+    }
+
+    /**
+     * 查表获取字符对应的5位数值
+     * @return 0-31，或SKIP
+     * @throws IllegalArgumentException 非法字符
+     */
+    private static int lookup(char c) {
+        byte value = c < 256 ? DECODE_TABLE[c] : INVALID;
+        if (value == INVALID) {
+            throw new IllegalArgumentException("无效的Base32字符: " + c);
+        }
+        return value;
+    }
+}
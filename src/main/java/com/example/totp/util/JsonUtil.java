@@ -1,8 +1,19 @@
 package com.example.totp.util;
 
+import com.example.totp.model.ApiResponse;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.core.JsonProcessingException;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * JSON工具类
  * 负责对象与JSON字符串之间的转换
@@ -12,6 +23,85 @@ public class JsonUtil {
     // Jackson对象映射器（线程安全）
     private static final ObjectMapper objectMapper = new ObjectMapper();
     
+    // 预先构建的ApiResponse写入器，省去每次按类型查找序列化器
+    private static final ObjectWriter apiResponseWriter = objectMapper.writerFor(ApiResponse.class);
+    
+    // 按请求类型缓存的读取器，忽略未知字段（表单中可能带有多余参数）
+    private static final ConcurrentHashMap<Class<?>, ObjectReader> requestReaders = new ConcurrentHashMap<>();
+    
+    // 每个线程复用的响应缓冲区，超过该大小的缓冲区用完后不再保留
+    private static final int MAX_POOLED_BUFFER_SIZE = 64 * 1024;
+    private static final ThreadLocal<ResponseBuffer> responseBuffers =
+            ThreadLocal.withInitial(() -> new ResponseBuffer(4096));
+    
+    /**
+     * 可复用的响应缓冲区
+     */
+    public static final class ResponseBuffer extends ByteArrayOutputStream {
+        
+        ResponseBuffer(int size) {
+            super(size);
+        }
+        
+        int capacity() {
+            return buf.length;
+        }
+    }
+    
+    /**
+     * 获取请求对象的读取器，可直接从输入流或TokenBuffer读取
+     * @param type 请求类型
+     * @return 预先构建的读取器
+     */
+    public static ObjectReader requestReader(Class<?> type) {
+        return requestReaders.computeIfAbsent(type, t -> objectMapper.readerFor(t)
+                .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES));
+    }
+    
+    /**
+     * 获取向流中连续写入多个对象的写入器：每个对象写完后不刷新，由调用方按缓冲区批量刷新
+     * 配合{@link #createGenerator(OutputStream)}使用
+     * @param type 对象类型
+     * @return 写入器
+     */
+    public static ObjectWriter streamWriter(Class<?> type) {
+        return objectMapper.writerFor(type).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+    
+    /**
+     * 创建直接写入输出流的JSON生成器，关闭生成器时不关闭输出流，顶层值之间不插入分隔符
+     * @param out 输出流
+     * @return JSON生成器
+     */
+    public static JsonGenerator createGenerator(OutputStream out) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.setRootValueSeparator(null);
+        return generator;
+    }
+    
+    /**
+     * 把ApiResponse直接序列化为UTF-8字节，写入当前线程复用的缓冲区
+     * 不经过中间String，只编码一次；返回的缓冲区在当前线程下一次调用前有效
+     * @param response 响应对象
+     * @return 包含JSON字节的缓冲区，用size()取长度、writeTo()写出
+     */
+    public static ResponseBuffer toJsonBuffer(ApiResponse response) {
+        ResponseBuffer buffer = responseBuffers.get();
+        if (buffer.capacity() > MAX_POOLED_BUFFER_SIZE) {
+            // 上一次的大响应把缓冲区撑大了，换回小缓冲区
+            buffer = new ResponseBuffer(4096);
+            responseBuffers.set(buffer);
+        }
+        buffer.reset();
+        try {
+            apiResponseWriter.writeValue(buffer, response);
+        } catch (IOException e) {
+            throw new RuntimeException("对象转换为JSON失败", e);
+        }
+        return buffer;
+    }
+    
     /**
      * 将对象转换为JSON字符串
      * @param obj 要转换的对象
@@ -0,0 +1,128 @@
+package com.example.totp.util;
+
+import com.google.zxing.common.BitMatrix;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * BitMatrix到PNG的直接编码器
+ * 二维码只有黑白两色，这里直接输出1位灰度PNG：每行一个过滤字节加按位打包的像素，
+ * 不经过BufferedImage和ImageIO，输出体积和编码耗时都远小于通用的RGB编码。
+ * 每个线程复用自己的Deflater和行缓冲区。
+ */
+public final class PngEncoder {
+    
+    // PNG文件签名
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    
+    // 每个线程复用的压缩器
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+    
+    private PngEncoder() {
+    }
+    
+    /**
+     * 将BitMatrix编码为PNG字节（true为黑色像素）
+     * @param matrix 二维码矩阵
+     * @return PNG字节
+     */
+    public static byte[] encode(BitMatrix matrix) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+        try {
+            write(matrix, out);
+        } catch (IOException e) {
+            // ByteArrayOutputStream不会抛出IO异常
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+    
+    /**
+     * 将BitMatrix编码为PNG写入输出流（true为黑色像素）
+     * @param matrix 二维码矩阵
+     * @param out 输出流
+     */
+    public static void write(BitMatrix matrix, OutputStream out) throws IOException {
+        int width = matrix.getWidth();
+        int height = matrix.getHeight();
+        int rowBytes = (width + 7) / 8;
+        
+        // 原始扫描线：每行一个过滤字节（0=None）+ 打包后的像素（1=白，0=黑）
+        byte[] raw = new byte[(rowBytes + 1) * height];
+        int position = 0;
+        for (int y = 0; y < height; y++) {
+            raw[position++] = 0;
+            for (int byteIndex = 0; byteIndex < rowBytes; byteIndex++) {
+                int packed = 0;
+                for (int bit = 0; bit < 8; bit++) {
+                    int x = byteIndex * 8 + bit;
+                    // 行尾不足8位的部分填充为白色
+                    boolean white = x >= width || !matrix.get(x, y);
+                    packed = (packed << 1) | (white ? 1 : 0);
+                }
+                raw[position++] = (byte) packed;
+            }
+        }
+        
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        byte[] compressed = new byte[raw.length / 2 + 64];
+        int compressedLength = 0;
+        while (!deflater.finished()) {
+            if (compressedLength == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+            compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+        }
+        
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 1;   // 位深度
+        header[9] = 0;   // 颜色类型：灰度
+        header[10] = 0;  // 压缩方法
+        header[11] = 0;  // 过滤方法
+        header[12] = 0;  // 不隔行扫描
+        
+        CRC32 crc = new CRC32();
+        out.write(SIGNATURE);
+        writeChunk(out, crc, "IHDR", header, header.length);
+        writeChunk(out, crc, "IDAT", compressed, compressedLength);
+        writeChunk(out, crc, "IEND", header, 0);
+    }
+    
+    /**
+     * 写入一个PNG数据块：长度 + 类型 + 数据 + CRC
+     */
+    private static void writeChunk(OutputStream out, CRC32 crc, String type, byte[] data, int length) throws IOException {
+        byte[] prefix = new byte[8];
+        putInt(prefix, 0, length);
+        for (int i = 0; i < 4; i++) {
+            prefix[4 + i] = (byte) type.charAt(i);
+        }
+        crc.reset();
+        crc.update(prefix, 4, 4);
+        crc.update(data, 0, length);
+        
+        byte[] suffix = new byte[4];
+        putInt(suffix, 0, (int) crc.getValue());
+        
+        out.write(prefix);
+        out.write(data, 0, length);
+        out.write(suffix);
+    }
+    
+    private static void putInt(byte[] target, int offset, int value) {
+        target[offset] = (byte) (value >>> 24);
+        target[offset + 1] = (byte) (value >>> 16);
+        target[offset + 2] = (byte) (value >>> 8);
+        target[offset + 3] = (byte) value;
+    }
+}
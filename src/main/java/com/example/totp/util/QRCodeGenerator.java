@@ -1,23 +1,46 @@
 package com.example.totp.util;
 
+import com.example.totp.metrics.Metrics;
+import com.example.totp.model.Credential;
+import com.example.totp.service.TOTPEnginePool;
 import com.google.zxing.BarcodeFormat;
 import com.google.zxing.WriterException;
-import com.google.zxing.client.j2se.MatrixToImageWriter;
 import com.google.zxing.common.BitMatrix;
 import com.google.zxing.qrcode.QRCodeWriter;
 
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
 import java.util.Base64;
-import javax.imageio.ImageIO;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * 二维码生成器工具类
  * 负责生成TOTP配置的二维码图片
+ * 二维码矩阵直接编码为1位灰度PNG（见{@link PngEncoder}），渲染结果按TOTP URI缓存，
+ * 同一配置重复展示时不再重新编码。
  */
 public class QRCodeGenerator {
     
+    // 二维码图片尺寸（像素）
+    private static final int SIZE = 200;
+    
+    // 缓存的最大条目数（可通过-Dtotp.qr.cache-size调整）
+    private static final int CACHE_SIZE = Integer.getInteger("totp.qr.cache-size", 1024);
+    
+    // QRCodeWriter没有内部状态，可以共享
+    private static final QRCodeWriter WRITER = new QRCodeWriter();
+    
+    // TOTP URI -> PNG字节 的LRU缓存
+    private static final Map<String, byte[]> CACHE = new LinkedHashMap<String, byte[]>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+    
     /**
      * 生成TOTP配置的二维码图片
      * @param secretKey Base32编码的密钥
@@ -26,25 +49,100 @@ public class QRCodeGenerator {
      * @return Base64编码的二维码图片数据
      */
     public static String generateTOTPQRCode(String secretKey, String accountName, String issuer) {
+        return Base64.getEncoder().encodeToString(generateTOTPQRCodePng(secretKey, accountName, issuer));
+    }
+    
+    /**
+     * 生成指定参数的TOTP配置二维码图片
+     * @param secretKey Base32编码的密钥
+     * @param accountName 账户名称
+     * @param issuer 发行者
+     * @param algorithm HMAC算法，如HmacSHA256
+     * @param digits 验证码位数
+     * @param period 时间步长度（秒）
+     * @return Base64编码的二维码图片数据
+     */
+    public static String generateTOTPQRCode(String secretKey, String accountName, String issuer,
+                                            String algorithm, int digits, int period) {
+        return Base64.getEncoder().encodeToString(
+                generateTOTPQRCodePng(secretKey, accountName, issuer, algorithm, digits, period));
+    }
+    
+    /**
+     * 生成TOTP配置的二维码PNG图片（优先从缓存读取）
+     * @param secretKey Base32编码的密钥
+     * @param accountName 账户名称
+     * @param issuer 发行者
+     * @return PNG字节，调用方不得修改
+     */
+    public static byte[] generateTOTPQRCodePng(String secretKey, String accountName, String issuer) {
+        return generateTOTPQRCodePng(secretKey, accountName, issuer,
+                Credential.DEFAULT_ALGORITHM, Credential.DEFAULT_DIGITS, Credential.DEFAULT_PERIOD);
+    }
+    
+    /**
+     * 生成指定参数的TOTP配置二维码PNG图片（优先从缓存读取，缓存键为包含参数的TOTP URI）
+     * @param secretKey Base32编码的密钥
+     * @param accountName 账户名称
+     * @param issuer 发行者
+     * @param algorithm HMAC算法，如HmacSHA256
+     * @param digits 验证码位数
+     * @param period 时间步长度（秒）
+     * @return PNG字节，调用方不得修改
+     */
+    public static byte[] generateTOTPQRCodePng(String secretKey, String accountName, String issuer,
+                                               String algorithm, int digits, int period) {
+        // 构建TOTP URI（Google Authenticator格式）
+        String totpUri = generateTOTPUri(secretKey, accountName, issuer, algorithm, digits, period);
+        
+        synchronized (CACHE) {
+            byte[] cached = CACHE.get(totpUri);
+            if (cached != null) {
+                Metrics.QR_CACHE_HITS.increment();
+                return cached;
+            }
+        }
+        Metrics.QR_CACHE_MISSES.increment();
+        
+        // 在锁外渲染，避免一次渲染阻塞其他账户的缓存读取
+        byte[] png = renderPng(totpUri);
+        synchronized (CACHE) {
+            CACHE.put(totpUri, png);
+        }
+        return png;
+    }
+    
+    /**
+     * 渲染TOTP URI的二维码PNG图片，不读写缓存
+     * 用于批量导出这类每个URI只用一次的场景，避免大量一次性条目把常用条目挤出缓存
+     * @param totpUri TOTP URI（见{@link #generateTOTPUri}）
+     * @return PNG字节
+     */
+    public static byte[] renderPng(String totpUri) {
+        long start = System.nanoTime();
+        byte[] png = PngEncoder.encode(encode(totpUri));
+        Metrics.QR_RENDER.recordSince(start);
+        return png;
+    }
+    
+    /**
+     * 将TOTP配置的二维码PNG图片写入输出流
+     * @param secretKey Base32编码的密钥
+     * @param accountName 账户名称
+     * @param issuer 发行者
+     * @param out 输出流
+     */
+    public static void writeTOTPQRCode(String secretKey, String accountName, String issuer, OutputStream out) throws IOException {
+        out.write(generateTOTPQRCodePng(secretKey, accountName, issuer));
+    }
+    
+    /**
+     * 生成二维码矩阵
+     */
+    private static BitMatrix encode(String content) {
         try {
-            // 构建TOTP URI（Google Authenticator格式）
-            String totpUri = generateTOTPUri(secretKey, accountName, issuer);
-            
-            // 生成二维码
-            QRCodeWriter qrCodeWriter = new QRCodeWriter();
-            BitMatrix bitMatrix = qrCodeWriter.encode(totpUri, BarcodeFormat.QR_CODE, 200, 200);
-            
-            // 转换为BufferedImage
-            BufferedImage qrImage = MatrixToImageWriter.toBufferedImage(bitMatrix);
-            
-            // 转换为Base64编码的字符串
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            ImageIO.write(qrImage, "PNG", baos);
-            byte[] imageBytes = baos.toByteArray();
-            
-            return Base64.getEncoder().encodeToString(imageBytes);
-            
-        } catch (WriterException | IOException e) {
+            return WRITER.encode(content, BarcodeFormat.QR_CODE, SIZE, SIZE);
+        } catch (WriterException e) {
             throw new RuntimeException("生成二维码失败", e);
         }
     }
@@ -54,11 +152,37 @@ public class QRCodeGenerator {
      * @param secretKey Base32编码的密钥
      * @param accountName 账户名称
      * @param issuer 发行者
-     * @return TOTP URI字符串
+     * @param algorithm HMAC算法，如HmacSHA256
+     * @param digits 验证码位数
+     * @param period 时间步长度（秒）
+     * @return TOTP URI字符串（标签中的发行者、账户名称和issuer参数经过百分号编码）
      */
-    private static String generateTOTPUri(String secretKey, String accountName, String issuer) {
+    public static String generateTOTPUri(String secretKey, String accountName, String issuer,
+                                         String algorithm, int digits, int period) {
         // TOTP URI格式：otpauth://totp/{issuer}:{accountName}?secret={secret}&issuer={issuer}&algorithm=SHA1&digits=6&period=30
-        return String.format("otpauth://totp/%s:%s?secret=%s&issuer=%s&algorithm=SHA1&digits=6&period=30",
-                           issuer, accountName, secretKey, issuer);
+        // 标签内的冒号是发行者与账户名称的分隔符，名称本身含有的冒号、空格、&、?、#等字符都要编码
+        StringBuilder uri = new StringBuilder("otpauth://totp/");
+        if (issuer != null && !issuer.isEmpty()) {
+            uri.append(encodeComponent(issuer)).append(':');
+        }
+        uri.append(encodeComponent(accountName)).append("?secret=").append(secretKey);
+        if (issuer != null && !issuer.isEmpty()) {
+            uri.append("&issuer=").append(encodeComponent(issuer));
+        }
+        uri.append("&algorithm=").append(TOTPEnginePool.uriAlgorithm(algorithm))
+                .append("&digits=").append(digits)
+                .append("&period=").append(period);
+        return uri.toString();
+    }
+    
+    /**
+     * URI组件的百分号编码（UTF-8），空格编码为%20而不是表单编码的+
+     */
+    private static String encodeComponent(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8").replace("+", "%20");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
     }
-}
\ No newline at end of file
+}
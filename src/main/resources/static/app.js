@@ -47,8 +47,8 @@ async function generateTOTP() {
             updateConfigDisplay(result.data);
             showElement('configResult');
             
-            // 自动刷新验证码
-            refreshCode();
+            // 订阅验证码推送（连接建立后立即收到当前验证码）
+            startCodeStream();
             
             console.log('TOTP配置生成成功:', result.data);
         } else {
@@ -74,8 +74,8 @@ async function verifyTOTP() {
         return;
     }
     
-    if (!/^\d{6}$/.test(verifyCode)) {
-        alert('请输入6位数字验证码');
+    if (!/^\d{6,8}$/.test(verifyCode)) {
+        alert('请输入6到8位数字验证码');
         return;
     }
     
@@ -93,6 +93,7 @@ async function verifyTOTP() {
         const response = await fetch('/api/verify', {
             method: 'POST',
             body: new URLSearchParams({
+                accountName: currentConfig.accountName,
                 code: verifyCode
             })
         });
@@ -123,7 +124,7 @@ async function refreshCode() {
     }
     
     try {
-        const response = await fetch('/api/current-code');
+        const response = await fetch('/api/current-code?token=' + encodeURIComponent(currentConfig.codeToken));
         const result = await response.json();
         
         if (result.success) {
@@ -154,7 +155,7 @@ function updateConfigDisplay(configData) {
     document.getElementById('configInfo').textContent = configData.configInfo;
     
     // 显示二维码
-    document.getElementById('qrCodeImage').src = configData.qrCodeImage;
+    document.getElementById('qrCodeImage').src = configData.qrCodeUrl;
     
     // 显示当前验证码
     document.getElementById('currentCode').textContent = configData.currentCode;
@@ -178,13 +179,19 @@ function updateVerifyResult(result) {
                 您输入的验证码 <strong>${result.data.userCode}</strong> 是正确的。<br>
                 <small>当前验证码: ${result.data.expectedCode}</small>
             `;
+        } else if (result.data.alreadyUsed) {
+            // 验证码已被使用
+            resultBox.className += ' result-error';
+            resultBox.innerHTML = `
+                ❌ <strong>验证失败！</strong><br>
+                验证码 <strong>${result.data.userCode}</strong> 已被使用，请等待下一个验证码。
+            `;
         } else {
             // 验证失败
             resultBox.className += ' result-error';
             resultBox.innerHTML = `
                 ❌ <strong>验证失败！</strong><br>
-                您输入的验证码 <strong>${result.data.userCode}</strong> 不正确。<br>
-                <small>当前验证码: ${result.data.expectedCode}</small>
+                您输入的验证码 <strong>${result.data.userCode}</strong> 不正确。
             `;
         }
     } else {
@@ -225,13 +232,29 @@ function hideElement(elementId) {
     document.getElementById(elementId).classList.add('hidden');
 }
 
+// 当前的验证码推送连接
+let codeStream = null;
+
 /**
- * 自动刷新验证码（每25秒刷新一次）
+ * 订阅当前账户的验证码推送（SSE），服务器在每个时间步边界推送新验证码，
+ * 连接断开后由浏览器自动重连
  */
-function startAutoRefresh() {
-    if (currentConfig) {
-        setInterval(refreshCode, 25000); // 25秒刷新一次
+function startCodeStream() {
+    if (codeStream) {
+        codeStream.close();
+        codeStream = null;
+    }
+    if (!currentConfig || typeof EventSource === 'undefined') {
+        return;
     }
+    
+    codeStream = new EventSource('/api/current-code/stream?token=' + encodeURIComponent(currentConfig.codeToken));
+    codeStream.addEventListener('code', function(e) {
+        const data = JSON.parse(e.data);
+        document.getElementById('currentCode').textContent = data.currentCode;
+        currentConfig.currentCode = data.currentCode;
+        console.log('收到验证码推送:', data.currentCode);
+    });
 }
 
 /**
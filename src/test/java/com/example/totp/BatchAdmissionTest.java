@@ -0,0 +1,72 @@
+package com.example.totp;
+
+import com.example.totp.model.BatchVerifyRequest;
+import com.example.totp.service.RateLimiter;
+import com.example.totp.service.TOTPService;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 批量验证限流测试：地址按请求计数，账户按条目计数
+ */
+class BatchAdmissionTest {
+
+    private static final long NOW = 1_000_000L;
+    private static final byte[] ADDRESS = {10, 0, 0, 1};
+
+    @Test
+    void largeBatchFromOneAddressIsNotRateLimited() {
+        RateLimiter batchLimiter = new RateLimiter(10, 60_000L, 1 << 16);
+        RateLimiter accountLimiter = new RateLimiter(10, 60_000L, 1 << 16);
+        List<BatchVerifyRequest.Item> items = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            items.add(new BatchVerifyRequest.Item("user-" + i, "123456"));
+        }
+        byte[] results = new byte[items.size()];
+
+        assertTrue(TOTPServer.admitBatch(batchLimiter, accountLimiter, ADDRESS, items, NOW, results));
+        assertEquals(0, countLimited(results));
+    }
+
+    @Test
+    void accountsAreStillChargedPerItem() {
+        RateLimiter batchLimiter = new RateLimiter(10, 60_000L, 1 << 16);
+        RateLimiter accountLimiter = new RateLimiter(10, 60_000L, 1 << 16);
+        List<BatchVerifyRequest.Item> items = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            items.add(new BatchVerifyRequest.Item("victim", String.format("%06d", i)));
+        }
+        byte[] results = new byte[items.size()];
+
+        assertTrue(TOTPServer.admitBatch(batchLimiter, accountLimiter, ADDRESS, items, NOW, results));
+        assertEquals(990, countLimited(results));
+    }
+
+    @Test
+    void addressIsChargedOncePerRequest() {
+        RateLimiter batchLimiter = new RateLimiter(3, 60_000L, 1 << 16);
+        RateLimiter accountLimiter = new RateLimiter(10, 60_000L, 1 << 16);
+        List<BatchVerifyRequest.Item> items = new ArrayList<>();
+        items.add(new BatchVerifyRequest.Item("alice", "123456"));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(TOTPServer.admitBatch(batchLimiter, accountLimiter, ADDRESS, items, NOW, new byte[1]));
+        }
+        assertFalse(TOTPServer.admitBatch(batchLimiter, accountLimiter, ADDRESS, items, NOW, new byte[1]));
+    }
+
+    private static int countLimited(byte[] results) {
+        int limited = 0;
+        for (byte result : results) {
+            if (result == TOTPService.BATCH_RATE_LIMITED) {
+                limited++;
+            }
+        }
+        return limited;
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.totp.audit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * AuditLog测试：缓冲区满时的丢弃计数、关闭后的发布、JSON转义和文件滚动
+ */
+class AuditLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void everyEventIsEitherWrittenOrCountedAsDropped() throws IOException {
+        Path file = directory.resolve("audit.log");
+        AuditLog log = new AuditLog(file, 2, 64L * 1024 * 1024, 0);
+        int total = 100_000;
+        int accepted = 0;
+        for (int i = 0; i < total; i++) {
+            if (log.info("verify", "user-" + i, "valid", null)) {
+                accepted++;
+            }
+        }
+        log.close();
+        // 关闭之后的事件直接丢弃
+        assertFalse(log.info("verify", "late", "valid", null));
+
+        assertEquals(accepted, log.getPublishedCount());
+        assertEquals(total + 1 - accepted, log.getDroppedCount());
+        assertTrue(log.getDroppedCount() > 1, "容量为2的缓冲区应当丢弃事件");
+        assertEquals(accepted, log.getWrittenCount());
+        assertEquals(accepted, Files.readAllLines(file, StandardCharsets.UTF_8).size());
+    }
+
+    @Test
+    void fieldsAreEscapedAsJson() throws IOException {
+        Path file = directory.resolve("audit.log");
+        String detail = "quote\" backslash\\ newline\n tab\t control\u0001 中文";
+        AuditLog log = new AuditLog(file, 16, 1024 * 1024, 0);
+        assertTrue(log.info("enroll", "a\"b", "created", detail));
+        assertTrue(log.error("verify", null, "失败", new IllegalStateException("boom\nline")));
+        log.close();
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode info = mapper.readTree(lines.get(0));
+        assertEquals("INFO", info.get("level").asText());
+        assertEquals("a\"b", info.get("account").asText());
+        assertEquals(detail, info.get("detail").asText());
+        assertFalse(info.has("error"));
+        JsonNode error = mapper.readTree(lines.get(1));
+        assertEquals("ERROR", error.get("level").asText());
+        assertFalse(error.has("account"));
+        assertTrue(error.get("error").asText().startsWith("java.lang.IllegalStateException: boom\nline"));
+    }
+
+    @Test
+    void filesRollOverAndOldestIsDeleted() throws IOException {
+        Path file = directory.resolve("audit.log");
+        AuditLog log = new AuditLog(file, 64, 300, 2);
+        for (int i = 0; i < 30; i++) {
+            assertTrue(log.info("verify", "user-" + i, "valid", "rollover"));
+            // 让后台线程逐条写入，滚动点与事件大小相关而不是批次
+            while (log.getWrittenCount() <= i) {
+                Thread.yield();
+            }
+        }
+        log.close();
+
+        assertTrue(Files.exists(file));
+        assertTrue(Files.exists(directory.resolve("audit.log.1")));
+        assertTrue(Files.exists(directory.resolve("audit.log.2")));
+        assertFalse(Files.exists(directory.resolve("audit.log.3")));
+        for (String name : new String[] {"audit.log", "audit.log.1", "audit.log.2"}) {
+            assertTrue(Files.size(directory.resolve(name)) <= 300, name);
+        }
+        // 最新的事件在当前文件末尾
+        List<String> current = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertTrue(current.get(current.size() - 1).contains("\"account\":\"user-29\""));
+        assertEquals(30, log.getWrittenCount());
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.totp.bulk;
+
+import com.example.totp.model.BulkRecord;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * BulkFormat的CSV解析测试：引号、转义、换行和表头识别
+ */
+class BulkFormatTest {
+
+    @Test
+    void parsesPlainFields() {
+        BulkRecord record = BulkFormat.parseCsv("alice, Acme ,JBSWY3DPEHPK3PXP,HmacSHA256,8,60");
+        assertEquals("alice", record.getAccountName());
+        assertEquals("Acme", record.getIssuer());
+        assertEquals("JBSWY3DPEHPK3PXP", record.getSecret());
+        assertEquals("HmacSHA256", record.getAlgorithm());
+        assertEquals(8, record.getDigits());
+        assertEquals(60, record.getPeriod());
+    }
+
+    @Test
+    void missingTrailingFieldsAreNull() {
+        BulkRecord record = BulkFormat.parseCsv("alice");
+        assertEquals("alice", record.getAccountName());
+        assertNull(record.getIssuer());
+        assertNull(record.getSecret());
+        assertNull(record.getDigits());
+    }
+
+    @Test
+    void quotedFieldMayContainCommasAndNewlines() {
+        BulkRecord record = BulkFormat.parseCsv("\"smith, john\",\"Acme\nLabs\",JBSWY3DPEHPK3PXP");
+        assertEquals("smith, john", record.getAccountName());
+        assertEquals("Acme\nLabs", record.getIssuer());
+        assertEquals("JBSWY3DPEHPK3PXP", record.getSecret());
+    }
+
+    @Test
+    void doubledQuoteIsEscapedQuote() {
+        BulkRecord record = BulkFormat.parseCsv("\"say \"\"hi\"\"\",\"\"\"\"");
+        assertEquals("say \"hi\"", record.getAccountName());
+        assertEquals("\"", record.getIssuer());
+    }
+
+    @Test
+    void quoteInsideUnquotedFieldIsLiteral() {
+        BulkRecord record = BulkFormat.parseCsv("o\"brien,Acme");
+        assertEquals("o\"brien", record.getAccountName());
+        assertEquals("Acme", record.getIssuer());
+    }
+
+    @Test
+    void unterminatedQuoteIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> BulkFormat.parseCsv("\"alice,Acme"));
+        assertThrows(IllegalArgumentException.class, () -> BulkFormat.parseCsv("\"alice\"x,Acme"));
+    }
+
+    @Test
+    void nonNumericDigitsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> BulkFormat.parseCsv("alice,Acme,,HmacSHA1,six,30"));
+    }
+
+    @Test
+    void recognizesHeaderOnlyWhenAllColumnsMatch() {
+        assertTrue(BulkFormat.isCsvHeader(BulkFormat.CSV_HEADER));
+        assertTrue(BulkFormat.isCsvHeader(BulkFormat.CSV_HEADER + BulkFormat.CSV_QR_COLUMNS));
+        assertTrue(BulkFormat.isCsvHeader("\"AccountName\",\"Issuer\",\"Secret\",algorithm,digits,period"));
+        assertFalse(BulkFormat.isCsvHeader("accountName,Acme,JBSWY3DPEHPK3PXP"));
+        assertFalse(BulkFormat.isCsvHeader("accountNameAlice,Acme,JBSWY3DPEHPK3PXP"));
+        assertFalse(BulkFormat.isCsvHeader("\"accountName"));
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.totp.bulk;
+
+import com.example.totp.model.BulkImportResponse;
+import com.example.totp.service.TOTPEngine;
+import com.example.totp.service.TOTPService;
+import com.example.totp.util.Base32;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * ImportPipeline测试：CSV跨行引号、表头、错误行号，以及多批次并行处理后按文件顺序存储
+ */
+class ImportPipelineTest {
+
+    private static final String SECRET = "JBSWY3DPEHPK3PXPJBSWY3DPEHPK3PXP";
+
+    private final TOTPService totpService = new TOTPService(new TOTPEngine(), 1, 1);
+
+    @Test
+    void quotedNewlineStaysInOneRecord() throws IOException {
+        String csv = BulkFormat.CSV_HEADER + "\n"
+                + "alice,\"Acme\nLabs\"," + SECRET + "\n"
+                + "\"bob \"\"b\"\"\",Acme," + SECRET + "\n"
+                + "carol,Acme," + SECRET + "\n";
+        Recorder sink = new Recorder();
+        BulkImportResponse result = pipeline(2).run(input(csv), BulkFormat.CSV, sink);
+
+        assertEquals(3, result.getTotal());
+        assertEquals(3, result.getImported());
+        assertEquals("Acme\nLabs", sink.issuers.get("alice"));
+        assertEquals("Acme", sink.issuers.get("bob \"b\""));
+        assertEquals("Acme", sink.issuers.get("carol"));
+        assertArrayEquals(Base32.decode(SECRET), sink.keys.get("carol"));
+    }
+
+    @Test
+    void unterminatedQuoteFailsOnlyItsRecord() throws IOException {
+        String csv = "alice,Acme," + SECRET + "\n"
+                + "\"bob,Acme," + SECRET + "\n"
+                + "carol,Acme," + SECRET + "\n";
+        Recorder sink = new Recorder();
+        BulkImportResponse result = pipeline(2).run(input(csv), BulkFormat.CSV, sink);
+
+        // 引号一直没有闭合，第二行起到文件末尾都属于同一条记录
+        assertEquals(2, result.getTotal());
+        assertEquals(1, result.getImported());
+        assertEquals(1, result.getFailed());
+        assertEquals(2, result.getErrors().get(0).getLine());
+        assertEquals(1, sink.order.size());
+    }
+
+    @Test
+    void accountNamedLikeHeaderOnFirstLineIsImported() throws IOException {
+        String csv = "accountNameAlice,Acme," + SECRET + "\n"
+                + "bob,Acme," + SECRET + "\n";
+        Recorder sink = new Recorder();
+        BulkImportResponse result = pipeline(2).run(input(csv), BulkFormat.CSV, sink);
+
+        assertEquals(2, result.getImported());
+        assertEquals("Acme", sink.issuers.get("accountNameAlice"));
+    }
+
+    @Test
+    void laterLineWinsAcrossBatches() throws IOException {
+        StringBuilder ndjson = new StringBuilder();
+        int lines = 2000;
+        for (int i = 0; i < lines; i++) {
+            ndjson.append("{\"accountName\":\"user-").append(i % 7)
+                    .append("\",\"issuer\":\"line-").append(i).append("\"}\n");
+        }
+        Recorder sink = new Recorder();
+        BulkImportResponse result = new ImportPipeline(totpService, 4, 3, 2, 1024)
+                .run(input(ndjson.toString()), BulkFormat.NDJSON, sink);
+
+        assertEquals(lines, result.getImported());
+        for (int account = 0; account < 7; account++) {
+            int last = lines - 1 - ((lines - 1 - account) % 7);
+            assertEquals("line-" + last, sink.issuers.get("user-" + account));
+        }
+        for (int i = 0; i < lines; i++) {
+            assertEquals(i + 1, (long) sink.order.get(i));
+        }
+    }
+
+    private ImportPipeline pipeline(int batchSize) {
+        return new ImportPipeline(totpService, 2, batchSize, 4, 1024);
+    }
+
+    private static ByteArrayInputStream input(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 按存储顺序记录导入结果，同一账户后写入的覆盖先写入的
+     */
+    private static final class Recorder implements ImportPipeline.Sink {
+        final Map<String, String> issuers = new HashMap<>();
+        final Map<String, byte[]> keys = new HashMap<>();
+        final List<Long> order = new ArrayList<>();
+
+        @Override
+        public void accept(ImportPipeline.Item item) {
+            issuers.put(item.getAccountName(), item.getIssuer());
+            keys.put(item.getAccountName(), item.getKey());
+            order.add(item.getLine());
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.totp.server;
+
+import com.example.totp.model.GenerateRequest;
+import com.example.totp.model.VerifyRequest;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * RequestDecoder测试：值中的'='、'+'和%XX解码、格式错误返回400、请求体过大返回413、按内容识别JSON
+ */
+class RequestDecoderTest {
+
+    private static final String FORM = "application/x-www-form-urlencoded";
+
+    private final RequestDecoder decoder = new RequestDecoder(64);
+
+    @Test
+    void valueContainingEqualsSignIsKept() throws Exception {
+        VerifyRequest request = decoder.decodeBody(exchange(FORM, "accountName=alice&code=AB==", true),
+                VerifyRequest.class);
+        assertEquals("alice", request.getAccountName());
+        assertEquals("AB==", request.getCode());
+    }
+
+    @Test
+    void plusAndPercentEscapesAreDecoded() throws Exception {
+        VerifyRequest request = decoder.decodeBody(exchange(FORM, "accountName=Alice+B%40example.com%E4%B8%AD&code=1",
+                true), VerifyRequest.class);
+        assertEquals("Alice B@example.com中", request.getAccountName());
+
+        VerifyRequest query = decoder.decodeQuery(get("/api/verify?accountName=a%2Bb+c&code=12%3D"),
+                VerifyRequest.class);
+        assertEquals("a+b c", query.getAccountName());
+        assertEquals("12=", query.getCode());
+    }
+
+    @Test
+    void malformedPercentEscapeIsBadRequest() {
+        RequestException e = assertThrows(RequestException.class,
+                () -> decoder.decodeBody(exchange(FORM, "accountName=%4", true), VerifyRequest.class));
+        assertEquals(400, e.getStatusCode());
+        e = assertThrows(RequestException.class,
+                () -> decoder.decodeBody(exchange(FORM, "accountName=%ZZ", true), VerifyRequest.class));
+        assertEquals(400, e.getStatusCode());
+    }
+
+    @Test
+    void oversizedBodyIsRejectedWhetherDeclaredOrNot() {
+        String body = "accountName=" + repeat('a', 100);
+        RequestException declared = assertThrows(RequestException.class,
+                () -> decoder.decodeBody(exchange(FORM, body, true), VerifyRequest.class));
+        assertEquals(413, declared.getStatusCode());
+
+        // 分块传输或未声明长度：读取超过上限时拒绝
+        RequestException undeclared = assertThrows(RequestException.class,
+                () -> decoder.decodeBody(exchange(FORM, body, false), VerifyRequest.class));
+        assertEquals(413, undeclared.getStatusCode());
+        RequestException json = assertThrows(RequestException.class,
+                () -> decoder.decodeBody(exchange("application/json", "{\"accountName\":\"" + repeat('a', 100) + "\"}",
+                        false), VerifyRequest.class));
+        assertEquals(413, json.getStatusCode());
+    }
+
+    @Test
+    void jsonSentAsFormIsDetected() throws Exception {
+        GenerateRequest request = decoder.decodeBody(exchange(FORM, " {\"accountName\":\"bob\",\"digits\":8}", true),
+                GenerateRequest.class);
+        assertEquals("bob", request.getAccountName());
+        assertEquals(Integer.valueOf(8), request.getDigits());
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    private static HttpExchange exchange(String contentType, String body, boolean declareLength) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        Headers headers = new Headers();
+        headers.set("Content-Type", contentType);
+        if (declareLength) {
+            headers.set("Content-Length", Integer.toString(bytes.length));
+        }
+        return new StubExchange("POST", URI.create("/api/verify"), headers, bytes);
+    }
+
+    private static HttpExchange get(String uri) {
+        return new StubExchange("GET", URI.create(uri), new Headers(), new byte[0]);
+    }
+
+    /**
+     * 只提供请求方法、URI、请求头和请求体的HttpExchange
+     */
+    private static final class StubExchange extends HttpExchange {
+        private final String method;
+        private final URI uri;
+        private final Headers requestHeaders;
+        private final InputStream body;
+
+        StubExchange(String method, URI uri, Headers requestHeaders, byte[] body) {
+            this.method = method;
+            this.uri = uri;
+            this.requestHeaders = requestHeaders;
+            this.body = new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public Headers getRequestHeaders() {
+            return requestHeaders;
+        }
+
+        @Override
+        public Headers getResponseHeaders() {
+            return new Headers();
+        }
+
+        @Override
+        public URI getRequestURI() {
+            return uri;
+        }
+
+        @Override
+        public String getRequestMethod() {
+            return method;
+        }
+
+        @Override
+        public HttpContext getHttpContext() {
+            return null;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public InputStream getRequestBody() {
+            return body;
+        }
+
+        @Override
+        public OutputStream getResponseBody() {
+            return new ByteArrayOutputStream();
+        }
+
+        @Override
+        public void sendResponseHeaders(int rCode, long responseLength) {
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            return InetSocketAddress.createUnresolved("127.0.0.1", 0);
+        }
+
+        @Override
+        public int getResponseCode() {
+            return -1;
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return InetSocketAddress.createUnresolved("127.0.0.1", 0);
+        }
+
+        @Override
+        public String getProtocol() {
+            return "HTTP/1.1";
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            return null;
+        }
+
+        @Override
+        public void setAttribute(String name, Object value) {
+        }
+
+        @Override
+        public void setStreams(InputStream i, OutputStream o) {
+        }
+
+        @Override
+        public HttpPrincipal getPrincipal() {
+            return null;
+        }
+    }
+}
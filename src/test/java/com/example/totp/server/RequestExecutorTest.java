@@ -0,0 +1,69 @@
+package com.example.totp.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * RequestExecutor测试：被拒绝的请求只计入拒绝数，不计入活跃数和完成数
+ */
+class RequestExecutorTest {
+
+    @Test
+    void shedRequestsDoNotCountAsActiveOrCompleted() throws InterruptedException {
+        RequestExecutor executor = RequestExecutor.pool(1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(3);
+        CountDownLatch shedDone = new CountDownLatch(1);
+        AtomicBoolean shedFlag = new AtomicBoolean();
+        try {
+            executor.execute(() -> {
+                awaitQuietly(release);
+                done.countDown();
+            });
+            executor.execute(done::countDown);
+            // 线程和队列都已占满，第三个请求以过载标记在拒绝线程上执行
+            executor.execute(() -> {
+                shedFlag.set(RequestExecutor.isShedding());
+                shedDone.countDown();
+                done.countDown();
+            });
+            assertTrue(shedDone.await(5, TimeUnit.SECONDS));
+            assertTrue(shedFlag.get());
+            release.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown(5000);
+        }
+        assertEquals(3, executor.getSubmittedCount());
+        assertEquals(1, executor.getRejectedCount());
+        assertEquals(2, executor.getCompletedCount());
+        assertEquals(1, executor.getStats().get("peakActive"));
+        assertEquals(0, executor.getActiveCount());
+    }
+
+    @Test
+    void requestsAfterShutdownAreShedInsteadOfDropped() throws InterruptedException {
+        RequestExecutor executor = RequestExecutor.pool(1, 1);
+        executor.shutdown(1000);
+        AtomicBoolean shedFlag = new AtomicBoolean();
+        executor.execute(() -> shedFlag.set(RequestExecutor.isShedding()));
+        // 拒绝线程也已停止，在调用线程上返回503
+        assertTrue(shedFlag.get());
+        assertEquals(1, executor.getRejectedCount());
+        assertEquals(0, executor.getCompletedCount());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.totp.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * HOTPService测试：RFC 4226附录D测试向量下的计数器推进、重用拒绝、向后查找、重新同步、
+ * 过期句柄，以及算法名称规范化与参数校验
+ */
+class HOTPServiceTest {
+
+    private static final byte[] KEY = "12345678901234567890".getBytes();
+
+    // RFC 4226 附录D：计数器0到9对应的6位验证码
+    private static final String[] RFC4226 = {
+        "755224", "287082", "359152", "969429", "338314", "254676", "287922", "162583", "399871", "520489"
+    };
+
+    @Test
+    void acceptedCounterAdvancesAndCannotBeReused() {
+        HOTPService service = new HOTPService(16);
+        service.register("alice", KEY, "SHA1", 6, 0);
+        for (int counter = 0; counter < RFC4226.length; counter++) {
+            assertEquals(counter, service.verify("alice", RFC4226[counter]));
+            assertEquals(counter + 1, service.getCounter("alice"));
+            assertEquals(HOTPService.NO_MATCH, service.verify("alice", RFC4226[counter]));
+        }
+    }
+
+    @Test
+    void lookAheadSkipsMissedCountersButNotEarlierOnes() {
+        HOTPService service = new HOTPService(16, 3, 10);
+        service.register("alice", KEY, "SHA1", 6, 0);
+        // 计数器3在[0, 0+3]窗口内，4不在
+        assertEquals(HOTPService.NO_MATCH, service.verify("alice", RFC4226[4]));
+        assertEquals(3, service.verify("alice", RFC4226[3]));
+        assertEquals(4, service.getCounter("alice"));
+        // 窗口之前跳过的计数器不再接受
+        assertEquals(HOTPService.NO_MATCH, service.verify("alice", RFC4226[1]));
+        assertEquals(5, service.verify("alice", RFC4226[5]));
+    }
+
+    @Test
+    void resyncNeedsTwoConsecutiveCodes() {
+        HOTPService service = new HOTPService(16, 2, 10);
+        service.register("alice", KEY, "SHA1", 6, 0);
+        assertEquals(HOTPService.NO_MATCH, service.verify("alice", RFC4226[7]));
+        assertFalse(service.resync("alice", RFC4226[7], RFC4226[9]));
+        assertFalse(service.resync("alice", RFC4226[8], RFC4226[7]));
+        assertEquals(0, service.getCounter("alice"));
+
+        assertTrue(service.resync("alice", RFC4226[7], RFC4226[8]));
+        assertEquals(9, service.getCounter("alice"));
+        assertEquals(9, service.verify("alice", RFC4226[9]));
+    }
+
+    @Test
+    void concurrentVerificationsAcceptACounterOnce() throws InterruptedException {
+        HOTPService service = new HOTPService(16);
+        service.register("alice", KEY, "SHA1", 6, 0);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger accepted = new AtomicInteger();
+        try {
+            for (int i = 0; i < threads; i++) {
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    if (service.verify("alice", RFC4226[2]) == 2) {
+                        accepted.incrementAndGet();
+                    }
+                });
+            }
+            start.countDown();
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, accepted.get());
+        assertEquals(3, service.getCounter("alice"));
+    }
+
+    @Test
+    void reRegisterResetsCounterAndStalesTheOldHandle() {
+        HOTPService service = new HOTPService(16);
+        service.register("alice", KEY, "SHA1", 6, 0);
+        assertEquals(0, service.verify("alice", RFC4226[0]));
+        service.register("alice", KEY, "SHA1", 6, 0);
+        assertEquals(0, service.getCounter("alice"));
+        assertEquals(0, service.verify("alice", RFC4226[0]));
+
+        // 旧句柄在换发和释放后既读不到计数器，也无法推进新令牌的计数器
+        HOTPCounterStore counters = new HOTPCounterStore(4);
+        long original = counters.allocate(5);
+        long renewed = counters.renew(original, 0);
+        assertNotEquals(original, renewed);
+        assertEquals(HOTPCounterStore.STALE, counters.get(original));
+        assertFalse(counters.compareAndSet(original, 5, 6));
+        assertFalse(counters.compareAndSet(original, 0, 1));
+        assertEquals(0, counters.get(renewed));
+
+        counters.release(renewed);
+        long reused = counters.allocate(0);
+        assertEquals(HOTPCounterStore.STALE, counters.get(renewed));
+        assertFalse(counters.compareAndSet(renewed, 0, 1));
+        assertTrue(counters.compareAndSet(reused, 0, 1));
+        assertEquals(1, counters.get(reused));
+    }
+
+    @Test
+    void otpauthAlgorithmSpellingsAreNormalized() {
+        HOTPService service = new HOTPService(16);
+        service.register("alice", KEY, "SHA1", 6, 0);
+        service.register("bob", KEY, "sha256", 6, 0);
+        service.register("carol", KEY, null, 6, 0);
+        assertEquals("HmacSHA1", service.getAlgorithm("alice"));
+        assertEquals("HmacSHA256", service.getAlgorithm("bob"));
+        assertEquals("HmacSHA1", service.getAlgorithm("carol"));
+        // RFC 4226 附录D：计数器0对应755224
+        assertEquals("755224", service.generate("alice", 0));
+    }
+
+    @Test
+    void invalidArgumentsAreRejected() {
+        HOTPService service = new HOTPService(16);
+        assertThrows(IllegalArgumentException.class, () -> service.register(null, KEY, "SHA1", 6, 0));
+        assertThrows(IllegalArgumentException.class, () -> service.register("alice", KEY, "MD5", 6, 0));
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.totp.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * RateLimiter测试：阈值、扫描攻击填满状态表后的新键，以及二进制键
+ */
+class RateLimiterTest {
+
+    private static final long NOW = 1_000_000L;
+
+    @Test
+    void rejectsKeyOverLimit() {
+        RateLimiter limiter = new RateLimiter(3, 60_000L, 1024);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryAcquire("alice", NOW));
+        }
+        assertFalse(limiter.tryAcquire("alice", NOW));
+        assertTrue(limiter.tryAcquire("bob", NOW));
+    }
+
+    @Test
+    void tableFullOfThrottledKeysDoesNotLockOutNewKeys() {
+        RateLimiter limiter = new RateLimiter(2, 60_000L, 64);
+        // 扫描攻击：大量不同的键各自用满额度，整张表都处于限流状态
+        for (int key = 0; key < 10_000; key++) {
+            for (int i = 0; i < 3; i++) {
+                limiter.tryAcquire("scan-" + key, NOW);
+            }
+        }
+        int admitted = 0;
+        for (int user = 0; user < 100; user++) {
+            if (limiter.tryAcquire("user-" + user, NOW)) {
+                admitted++;
+            }
+        }
+        assertTrue(admitted == 100, "admitted " + admitted + " of 100");
+    }
+
+    @Test
+    void byteKeysAreLimitedByContent() {
+        RateLimiter limiter = new RateLimiter(1, 60_000L, 1024);
+        byte[] address = "2001:db8::1".getBytes(StandardCharsets.US_ASCII);
+        assertTrue(limiter.tryAcquire(address, NOW));
+        assertFalse(limiter.tryAcquire(address.clone(), NOW));
+        assertTrue(limiter.tryAcquire("2001:db8::2".getBytes(StandardCharsets.US_ASCII), NOW));
+    }
+}
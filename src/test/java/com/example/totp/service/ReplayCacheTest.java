@@ -0,0 +1,36 @@
+package com.example.totp.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * ReplayCache测试：重放拦截与启动恢复的计数
+ */
+class ReplayCacheTest {
+
+    @Test
+    void secondUseOfAStepIsAReplay() {
+        ReplayCache cache = new ReplayCache(3, 64);
+        assertTrue(cache.markUsed(7, 100));
+        assertFalse(cache.markUsed(7, 100));
+        assertTrue(cache.markUsed(7, 101));
+        assertEquals(1, cache.getReplayCount());
+    }
+
+    @Test
+    void restoringMarksDoesNotCountReplays() {
+        ReplayCache cache = new ReplayCache(3, 64);
+        cache.restore(7, 200);
+        // 重复恢复与已过期的时间步都直接忽略
+        cache.restore(7, 200);
+        cache.restore(7, 100);
+        assertEquals(0, cache.getReplayCount());
+
+        assertTrue(cache.isUsed(7, 200));
+        assertFalse(cache.markUsed(7, 200));
+        assertEquals(1, cache.getReplayCount());
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.totp.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * StepCodeCache测试：与引擎计算结果一致、命中统计，以及容量上限
+ */
+class StepCodeCacheTest {
+
+    private static final long STEP = 40_000_000L;
+
+    private final TOTPEngine engine = new TOTPEngine("HmacSHA1", 6, 30, TOTPEngine.Implementation.DIGEST);
+
+    @Test
+    void matchesEngineWindow() {
+        StepCodeCache cache = new StepCodeCache(1, 1, 16);
+        byte[] key = key(1);
+        for (int offset = -1; offset <= 1; offset++) {
+            int code = engine.generateAtStep(key, STEP + offset);
+            assertEquals(offset, cache.match(1, engine, key, STEP, code));
+        }
+        assertEquals(engine.generateAtStep(key, STEP), cache.current(1, engine, key, STEP));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(3, cache.getHitCount());
+
+        // 时间步前移后复用重叠部分，结果仍与引擎一致
+        assertEquals(engine.generateAtStep(key, STEP + 1), cache.current(1, engine, key, STEP + 1));
+    }
+
+    @Test
+    void recentlyInsertedEntryStaysCached() {
+        StepCodeCache cache = new StepCodeCache(1, 1, 64);
+        byte[] hot = key(0);
+        cache.current(0, engine, hot, STEP);
+        for (long id = 1; id <= 10_000; id++) {
+            cache.current(id, engine, key(id), STEP);
+            // 刚插入的条目再次访问时命中，不会被插入它时的替换或并发插入挤掉
+            long hits = cache.getHitCount();
+            cache.current(id, engine, key(id), STEP);
+            assertEquals(hits + 1, cache.getHitCount(), "credential " + id);
+        }
+        assertTrue(cache.size() <= 64, "size " + cache.size());
+        assertTrue(cache.getEvictionCount() > 0);
+    }
+
+    private static byte[] key(long id) {
+        byte[] key = new byte[20];
+        for (int i = 0; i < 8; i++) {
+            key[i] = (byte) (id >>> (i * 8));
+        }
+        return key;
+    }
+}
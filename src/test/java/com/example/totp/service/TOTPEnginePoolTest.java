@@ -0,0 +1,38 @@
+package com.example.totp.service;
+
+import com.example.totp.model.Credential;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * TOTPEnginePool测试：按凭据查找引擎与按输入参数查找得到同一个共享引擎
+ */
+class TOTPEnginePoolTest {
+
+    private static final byte[] KEY = new byte[20];
+
+    @Test
+    void credentialLookupSharesEnginesWithInputLookup() {
+        TOTPEnginePool pool = new TOTPEnginePool(new TOTPEngine());
+        TOTPEngine engine = pool.get("sha256", 8, 60);
+        // 从日志恢复的算法名称是新建的字符串
+        Credential replayed = new Credential(1, "alice", "Issuer", KEY, new String("HmacSHA256"), 8, 60);
+        assertSame(Credential.ALGORITHM_SHA256, replayed.getAlgorithm());
+        assertSame(engine, pool.get(replayed));
+        assertSame(engine, pool.get(replayed));
+
+        Credential defaults = new Credential(2, "bob", "Issuer", KEY);
+        assertSame(pool.getDefault(), pool.get(defaults));
+    }
+
+    @Test
+    void unsupportedCredentialParametersAreRejected() {
+        TOTPEnginePool pool = new TOTPEnginePool(new TOTPEngine());
+        assertThrows(IllegalArgumentException.class,
+                () -> pool.get(new Credential(1, "alice", "Issuer", KEY, "HmacMD5", 6, 30)));
+        assertThrows(IllegalArgumentException.class,
+                () -> pool.get(new Credential(2, "bob", "Issuer", KEY, Credential.ALGORITHM_SHA512, 9, 30)));
+    }
+}
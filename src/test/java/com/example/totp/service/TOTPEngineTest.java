@@ -0,0 +1,132 @@
+package com.example.totp.service;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * TOTPEngine测试：RFC 4226附录D与RFC 6238附录B的测试向量，
+ * 以及手写HMAC与javax.crypto.Mac的随机对照
+ */
+class TOTPEngineTest {
+
+    private static final byte[] SEED_SHA1 = ascii("12345678901234567890");
+    private static final byte[] SEED_SHA256 = ascii("12345678901234567890123456789012");
+    private static final byte[] SEED_SHA512 = ascii(
+            "1234567890123456789012345678901234567890123456789012345678901234");
+
+    // RFC 4226 附录D：计数器0-9对应的6位HOTP值
+    private static final int[] RFC4226_HOTP = {
+        755224, 287082, 359152, 969429, 338314, 254676, 287922, 162583, 399871, 520489
+    };
+
+    // RFC 6238 附录B：时间点与SHA1/SHA256/SHA512的8位TOTP值
+    private static final long[] RFC6238_TIMES = {
+        59L, 1111111109L, 1111111111L, 1234567890L, 2000000000L, 20000000000L
+    };
+    private static final String[][] RFC6238_CODES = {
+        {"94287082", "46119246", "90693936"},
+        {"07081804", "68084774", "25091201"},
+        {"14050471", "67062674", "99943326"},
+        {"89005924", "91819424", "93441116"},
+        {"69279037", "90698825", "38618901"},
+        {"65353130", "77737706", "47863826"}
+    };
+
+    private static final String[] ALGORITHMS = {"HmacSHA1", "HmacSHA256", "HmacSHA512"};
+
+    private static final byte[][] SEEDS = {SEED_SHA1, SEED_SHA256, SEED_SHA512};
+
+    @ParameterizedTest
+    @EnumSource(TOTPEngine.Implementation.class)
+    void rfc4226HotpVectors(TOTPEngine.Implementation implementation) {
+        TOTPEngine engine = new TOTPEngine("HmacSHA1", 6, 30, implementation);
+        for (int counter = 0; counter < RFC4226_HOTP.length; counter++) {
+            assertEquals(RFC4226_HOTP[counter], engine.generateAtStep(SEED_SHA1, counter),
+                    "counter " + counter);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(TOTPEngine.Implementation.class)
+    void rfc6238TotpVectors(TOTPEngine.Implementation implementation) {
+        for (int a = 0; a < ALGORITHMS.length; a++) {
+            TOTPEngine engine = new TOTPEngine(ALGORITHMS[a], 8, 30, implementation);
+            for (int t = 0; t < RFC6238_TIMES.length; t++) {
+                String code = engine.format(engine.generate(SEEDS[a], RFC6238_TIMES[t]));
+                assertEquals(RFC6238_CODES[t][a], code, ALGORITHMS[a] + " @ " + RFC6238_TIMES[t]);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(TOTPEngine.Implementation.class)
+    void rfc6238VectorsVerify(TOTPEngine.Implementation implementation) {
+        for (int a = 0; a < ALGORITHMS.length; a++) {
+            TOTPEngine engine = new TOTPEngine(ALGORITHMS[a], 8, 30, implementation);
+            for (int t = 0; t < RFC6238_TIMES.length; t++) {
+                int code = engine.parseCode(RFC6238_CODES[t][a]);
+                assertEquals(0, engine.verifyWindow(SEEDS[a], RFC6238_TIMES[t], code, 1, 1));
+                assertEquals(-1, engine.verifyWindow(SEEDS[a], RFC6238_TIMES[t] + 30, code, 1, 1));
+            }
+        }
+    }
+
+    /**
+     * 随机密钥（1到200字节，覆盖短于、等于和超过分组长度的情况）与随机计数器下，
+     * 引擎输出必须与javax.crypto.Mac计算的HOTP值一致。
+     * 同一个引擎交替使用不同密钥，同时覆盖填充块的重新计算
+     */
+    @ParameterizedTest
+    @EnumSource(TOTPEngine.Implementation.class)
+    void matchesJavaxCryptoMacForRandomKeys(TOTPEngine.Implementation implementation) throws Exception {
+        Random random = new Random(0x5EED);
+        for (String algorithm : new String[] {"HmacSHA1", "HmacSHA256", "HmacSHA384", "HmacSHA512"}) {
+            TOTPEngine engine = new TOTPEngine(algorithm, 9, 30, implementation);
+            Mac mac = Mac.getInstance(algorithm);
+            for (int length = 1; length <= 200; length++) {
+                byte[] key = new byte[length];
+                random.nextBytes(key);
+                mac.init(new SecretKeySpec(key, algorithm));
+                for (int i = 0; i < 4; i++) {
+                    long counter = i == 0 ? 0 : random.nextLong() >>> 1;
+                    byte[] hash = mac.doFinal(ByteBuffer.allocate(8).putLong(counter).array());
+                    int expected = HotpCore.truncate(hash, hash.length) % 1000000000;
+                    assertEquals(expected, engine.generateAtStep(key, counter),
+                            algorithm + " key length " + length + " counter " + counter);
+                }
+            }
+        }
+    }
+
+    /**
+     * 调用方把新密钥解码进同一个复用数组时，引擎必须按新密钥计算，而不是沿用上一个密钥的填充块
+     */
+    @ParameterizedTest
+    @EnumSource(TOTPEngine.Implementation.class)
+    void keyArrayMutatedInPlaceYieldsNewCodes(TOTPEngine.Implementation implementation) {
+        TOTPEngine engine = new TOTPEngine("HmacSHA1", 8, 30, implementation);
+        byte[] buffer = SEED_SHA1.clone();
+        assertEquals(RFC6238_CODES[0][0], engine.format(engine.generate(buffer, RFC6238_TIMES[0])));
+
+        byte[] other = ascii("abcdefghijabcdefghij");
+        int expected = new TOTPEngine("HmacSHA1", 8, 30, implementation).generate(other, RFC6238_TIMES[0]);
+        System.arraycopy(other, 0, buffer, 0, buffer.length);
+        assertEquals(expected, engine.generate(buffer, RFC6238_TIMES[0]));
+
+        System.arraycopy(SEED_SHA1, 0, buffer, 0, buffer.length);
+        int code = engine.parseCode(RFC6238_CODES[0][0]);
+        assertEquals(0, engine.verifyWindow(buffer, RFC6238_TIMES[0], code, 1, 1));
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,224 @@
+package com.example.totp.store;
+
+import com.example.totp.audit.AuditLog;
+import com.example.totp.model.Credential;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * CredentialLog测试：不完整记录的截断、校验失败的记录、压缩改名顺序的崩溃安全性
+ */
+class CredentialLogTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    @TempDir
+    Path directory;
+
+    private AuditLog auditLog;
+
+    @BeforeEach
+    void openAuditLog() throws IOException {
+        auditLog = new AuditLog(directory.resolve("audit").resolve("audit.log"), 64, 1024 * 1024, 0);
+    }
+
+    @AfterEach
+    void closeAuditLog() {
+        auditLog.close();
+    }
+
+    @Test
+    void tornTailIsTruncatedAndOverwritten() throws IOException {
+        Path segments = directory.resolve("segments");
+        try (CredentialLog log = open(segments, new CredentialStore(16))) {
+            enroll(log, "alice");
+            enroll(log, "bob");
+        }
+
+        // 模拟崩溃时只写了一半的记录：长度已写入，数据不完整
+        Path file = segments.resolve("credentials-000001.seg");
+        byte[] bytes = Files.readAllBytes(file);
+        int end = recordOffsets(bytes).get(2);
+        ByteBuffer.wrap(bytes).putInt(end, 30).putInt(end + 4, 0x12345678);
+        for (int i = 0; i < 10; i++) {
+            bytes[end + 8 + i] = 0x7F;
+        }
+        Files.write(file, bytes);
+
+        CredentialStore store = new CredentialStore(16);
+        try (CredentialLog log = open(segments, store)) {
+            assertNotNull(store.get("alice"));
+            assertNotNull(store.get("bob"));
+            assertEquals(1, auditLog.getPublishedCount());
+            enroll(log, "carol");
+        }
+
+        CredentialStore reopened = new CredentialStore(16);
+        try (CredentialLog log = open(segments, reopened)) {
+            assertEquals(1, log.getSegmentCount());
+            assertNotNull(reopened.get("alice"));
+            assertNotNull(reopened.get("bob"));
+            assertNotNull(reopened.get("carol"));
+            // 截断并重新追加后不会再次发现不完整记录
+            assertEquals(1, auditLog.getPublishedCount());
+        }
+    }
+
+    @Test
+    void recordFailingCrcIsDroppedWithEverythingAfterIt() throws IOException {
+        Path segments = directory.resolve("segments");
+        try (CredentialLog log = open(segments, new CredentialStore(16))) {
+            enroll(log, "alice");
+            enroll(log, "bob");
+            enroll(log, "carol");
+        }
+
+        Path file = segments.resolve("credentials-000001.seg");
+        byte[] bytes = Files.readAllBytes(file);
+        List<Integer> offsets = recordOffsets(bytes);
+        bytes[offsets.get(2) - 1] ^= 0x01;
+        Files.write(file, bytes);
+
+        CredentialStore store = new CredentialStore(16);
+        try (CredentialLog log = open(segments, store)) {
+            assertEquals(1, log.getSegmentCount());
+            assertNotNull(store.get("alice"));
+            assertNull(store.get("bob"));
+            assertNull(store.get("carol"));
+        }
+        byte[] truncated = Files.readAllBytes(file);
+        for (int i = offsets.get(1); i < truncated.length; i++) {
+            assertEquals(0, truncated[i], "偏移" + i + "处未清零");
+        }
+    }
+
+    @Test
+    void compactionInterruptedAtAnyRenameReplaysToTheSameState() throws IOException {
+        Path segments = directory.resolve("segments");
+        try (CredentialLog log = open(segments, new CredentialStore(256))) {
+            for (int i = 0; i < 150; i++) {
+                enroll(log, String.format("user-%03d", i));
+            }
+            // 覆盖一部分账户，旧记录在压缩时被丢弃
+            for (int i = 0; i < 50; i++) {
+                enroll(log, String.format("user-%03d", i));
+            }
+        }
+        Map<String, byte[]> oldSegments = readSegments(segments);
+        assertTrue(oldSegments.size() > 1);
+
+        CredentialStore store = new CredentialStore(256);
+        try (CredentialLog log = open(segments, store)) {
+            assertTrue(log.compact());
+        }
+        Map<String, byte[]> newSegments = readSegments(segments);
+        assertTrue(newSegments.size() > 1);
+        for (String name : newSegments.keySet()) {
+            assertFalse(oldSegments.containsKey(name), "压缩结果必须写在旧段之后: " + name);
+        }
+        Map<String, Credential> expected = new HashMap<>();
+        store.forEach(credential -> expected.put(credential.getAccountName(), credential));
+
+        // 改名按段号从大到小进行：崩溃时已改名的总是新段的后缀，其余仍是临时段
+        List<String> newNames = new ArrayList<>(newSegments.keySet());
+        for (int renamed = 1; renamed <= newNames.size(); renamed++) {
+            clear(segments);
+            for (Map.Entry<String, byte[]> entry : oldSegments.entrySet()) {
+                Files.write(segments.resolve(entry.getKey()), entry.getValue());
+            }
+            int firstRenamed = newNames.size() - renamed;
+            for (int i = 0; i < newNames.size(); i++) {
+                String name = i >= firstRenamed ? newNames.get(i)
+                        : String.format("credentials-%06d.seg.compact", i);
+                Files.write(segments.resolve(name), newSegments.get(newNames.get(i)));
+            }
+
+            CredentialStore recovered = new CredentialStore(256);
+            try (CredentialLog log = open(segments, recovered)) {
+                // 临时段不算作段文件
+                assertEquals(oldSegments.size() + renamed, log.getSegmentCount());
+                assertEquals(expected.size(), recovered.size());
+                for (Credential credential : expected.values()) {
+                    Credential actual = recovered.get(credential.getAccountName());
+                    assertNotNull(actual);
+                    assertEquals(credential.getId(), actual.getId());
+                    assertArrayEquals(credential.getKey(), actual.getKey());
+                }
+            }
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(segments, "*.seg.compact")) {
+                assertFalse(stream.iterator().hasNext(), "未改名的临时段应在启动时删除");
+            }
+        }
+    }
+
+    private CredentialLog open(Path segments, CredentialStore store) throws IOException {
+        return CredentialLog.open(segments, store, SEGMENT_SIZE, 60_000L, auditLog);
+    }
+
+    private static void enroll(CredentialLog log, String accountName) throws IOException {
+        byte[] key = new byte[20];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = (byte) (accountName.hashCode() + i);
+        }
+        log.enroll(accountName, "Issuer", key, Credential.DEFAULT_ALGORITHM, Credential.DEFAULT_DIGITS,
+                Credential.DEFAULT_PERIOD);
+    }
+
+    /**
+     * 段内各条记录的起始偏移，最后一个元素是段尾（下一条记录的写入位置）
+     */
+    private static List<Integer> recordOffsets(byte[] segment) {
+        ByteBuffer buffer = ByteBuffer.wrap(segment);
+        List<Integer> offsets = new ArrayList<>();
+        int offset = 0;
+        while (true) {
+            offsets.add(offset);
+            int length = buffer.getInt(offset);
+            if (length == 0) {
+                return offsets;
+            }
+            offset += 8 + length;
+        }
+    }
+
+    /**
+     * 读取所有正式段文件，按文件名排序
+     */
+    private static Map<String, byte[]> readSegments(Path segments) throws IOException {
+        Map<String, byte[]> contents = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(segments, "*.seg")) {
+            for (Path path : stream) {
+                contents.put(path.getFileName().toString(), Files.readAllBytes(path));
+            }
+        }
+        return contents;
+    }
+
+    private static void clear(Path segments) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(segments)) {
+            for (Path path : stream) {
+                Files.delete(path);
+            }
+        }
+    }
+}
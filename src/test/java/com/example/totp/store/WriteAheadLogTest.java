@@ -0,0 +1,150 @@
+package com.example.totp.store;
+
+import com.example.totp.audit.AuditLog;
+import com.example.totp.model.Credential;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * WriteAheadLog测试：注册记录先落盘再发布，段文件缺失的注册从日志回放，校验失败的记录停止回放
+ */
+class WriteAheadLogTest {
+
+    private static final byte[] KEY = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+
+    @TempDir
+    Path directory;
+
+    private AuditLog auditLog;
+
+    @BeforeEach
+    void openAuditLog() throws IOException {
+        auditLog = new AuditLog(directory.resolve("audit").resolve("audit.log"), 64, 1024 * 1024, 0);
+    }
+
+    @AfterEach
+    void closeAuditLog() {
+        auditLog.close();
+    }
+
+    @Test
+    void failedWalWriteDoesNotTakeTheAccount() throws IOException {
+        CredentialStore store = new CredentialStore(16);
+        try (CredentialLog credentialLog = CredentialLog.open(directory.resolve("segments"), store, 4096, 60_000L,
+                auditLog)) {
+            WriteAheadLog failed = openWal(directory.resolve("wal-failed"));
+            failed.close();
+            assertThrows(IOException.class, () -> credentialLog.enrollIfAbsent("alice", "Issuer", KEY,
+                    Credential.DEFAULT_ALGORITHM, Credential.DEFAULT_DIGITS, Credential.DEFAULT_PERIOD, failed));
+            assertNull(store.get("alice"));
+
+            // 重试不会因为上一次失败的注册得到409
+            try (WriteAheadLog wal = openWal(directory.resolve("wal"))) {
+                assertNotNull(credentialLog.enrollIfAbsent("alice", "Issuer", KEY, Credential.DEFAULT_ALGORITHM,
+                        Credential.DEFAULT_DIGITS, Credential.DEFAULT_PERIOD, wal));
+                assertNotNull(store.get("alice"));
+                assertNull(credentialLog.enrollIfAbsent("alice", "Issuer", KEY, Credential.DEFAULT_ALGORITHM,
+                        Credential.DEFAULT_DIGITS, Credential.DEFAULT_PERIOD, wal));
+            }
+        }
+    }
+
+    @Test
+    void durableEnrollmentMissingFromSegmentsIsReplayed() throws IOException {
+        Path segments = directory.resolve("segments");
+        Path walDirectory = directory.resolve("wal");
+        CredentialStore store = new CredentialStore(16);
+        Credential credential;
+        // 模拟注册记录落盘后、追加到段文件之前崩溃
+        try (CredentialLog credentialLog = CredentialLog.open(segments, store, 4096, 60_000L, auditLog);
+             WriteAheadLog wal = openWal(walDirectory)) {
+            credential = store.create("alice", "Issuer", KEY, Credential.DEFAULT_ALGORITHM,
+                    Credential.DEFAULT_DIGITS, Credential.DEFAULT_PERIOD);
+            wal.awaitDurable(wal.logEnroll(credential));
+            assertEquals(Long.MAX_VALUE, credentialLog.getOldestPendingLsn());
+        }
+
+        CredentialStore recovered = new CredentialStore(16);
+        List<String> beforeReplay = new ArrayList<>();
+        // 与TOTPServer的回放回调一致：恢复到存储并补写到段文件
+        try (CredentialLog credentialLog = CredentialLog.open(segments, recovered, 4096, 60_000L, auditLog);
+             WriteAheadLog wal = openWal(walDirectory, new WriteAheadLog.Listener() {
+                 @Override
+                 public void onEnroll(Credential replayed) {
+                     if (recovered.get(replayed.getAccountName()) == null) {
+                         beforeReplay.add(replayed.getAccountName());
+                     }
+                     recovered.restore(replayed);
+                     try {
+                         credentialLog.append(replayed);
+                     } catch (IOException e) {
+                         throw new UncheckedIOException(e);
+                     }
+                 }
+             })) {
+            assertEquals(Collections.singletonList("alice"), beforeReplay);
+            wal.checkpoint(credentialLog);
+            Credential replayed = recovered.get("alice");
+            assertNotNull(replayed);
+            assertEquals(credential.getId(), replayed.getId());
+            assertArrayEquals(KEY, replayed.getKey());
+        }
+
+        CredentialStore reopened = new CredentialStore(16);
+        try (CredentialLog credentialLog = CredentialLog.open(segments, reopened, 4096, 60_000L, auditLog)) {
+            assertEquals(1, credentialLog.getSegmentCount());
+            assertNotNull(reopened.get("alice"));
+        }
+    }
+
+    @Test
+    void replayStopsAtARecordFailingItsCrc() throws IOException {
+        Path walDirectory = directory.resolve("wal");
+        try (WriteAheadLog wal = openWal(walDirectory)) {
+            wal.logReplayMark(1, 100, 30);
+            wal.awaitDurable(wal.logReplayMark(2, 100, 30));
+        }
+        Path file = walDirectory.resolve("wal-000001.log");
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 1] ^= 0x01;
+        Files.write(file, bytes);
+
+        List<Long> replayed = new ArrayList<>();
+        try (WriteAheadLog wal = openWal(walDirectory, new WriteAheadLog.Listener() {
+            @Override
+            public void onReplayMark(long credentialId, long step, int period) {
+                replayed.add(credentialId);
+            }
+        })) {
+            assertEquals(Collections.singletonList(1L), replayed);
+            assertEquals(1, auditLog.getPublishedCount());
+            // 被忽略的记录不占用LSN
+            assertEquals(2, wal.logReplayMark(3, 101, 30));
+        }
+    }
+
+    private WriteAheadLog openWal(Path path) throws IOException {
+        return openWal(path, new WriteAheadLog.Listener() {
+        });
+    }
+
+    private WriteAheadLog openWal(Path path, WriteAheadLog.Listener listener) throws IOException {
+        return WriteAheadLog.open(path, 4096, 0L, 0L, listener, auditLog);
+    }
+}
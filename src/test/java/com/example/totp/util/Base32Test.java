@@ -0,0 +1,97 @@
+package com.example.totp.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Base32编解码测试：RFC 4648测试向量、往返、小写、忽略字符和无效尾部
+ */
+class Base32Test {
+
+    // RFC 4648 第10节
+    private static final String[][] RFC4648 = {
+        {"f", "MY"}, {"fo", "MZXQ"}, {"foo", "MZXW6"}, {"foob", "MZXW6YQ"}, {"fooba", "MZXW6YTB"},
+        {"foobar", "MZXW6YTBOI"}
+    };
+
+    @Test
+    void rfc4648Vectors() {
+        for (String[] vector : RFC4648) {
+            byte[] data = vector[0].getBytes(StandardCharsets.US_ASCII);
+            assertEquals(vector[1], Base32.encode(data));
+            assertArrayEquals(data, Base32.decode(vector[1]));
+            assertTrue(Base32.isValid(vector[1]));
+        }
+        assertEquals("MZXW6YQ=", Base32.encode("foob".getBytes(StandardCharsets.US_ASCII), true));
+    }
+
+    @Test
+    void roundTripsAllLengths() {
+        Random random = new Random(0xB32);
+        for (int length = 0; length <= 64; length++) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            String encoded = Base32.encode(data);
+            assertArrayEquals(data, Base32.decode(encoded), "length " + length);
+            assertArrayEquals(data, Base32.decode(Base32.encode(data, true)), "padded length " + length);
+
+            byte[] dst = new byte[length + 3];
+            assertEquals(length, Base32.decode(encoded, dst, 3));
+            for (int i = 0; i < length; i++) {
+                assertEquals(data[i], dst[i + 3]);
+            }
+
+            ByteBuffer ascii = ByteBuffer.allocate(Base32.encodedLength(length));
+            Base32.encode(ByteBuffer.wrap(data), ascii);
+            ascii.flip();
+            ByteBuffer decoded = ByteBuffer.allocate(length);
+            assertEquals(length, Base32.decode(ascii, decoded));
+            assertArrayEquals(data, decoded.array());
+        }
+    }
+
+    @Test
+    void acceptsLowerCaseAndSkipCharacters() {
+        byte[] expected = Base32.decode("JBSWY3DPEHPK3PXP");
+        assertArrayEquals(expected, Base32.decode("jbswy3dpehpk3pxp"));
+        assertArrayEquals(expected, Base32.decode("JBSW Y3DP-EHPK 3PXP"));
+        assertArrayEquals(expected, Base32.decode("jbsw-y3dp-ehpk-3pxp===="));
+        assertTrue(Base32.isValid("jbsw y3dp ehpk 3pxp"));
+    }
+
+    @Test
+    void rejectsInvalidTails() {
+        for (String input : new String[] {"A", "MZX", "MZXW6Y", "JBSWY3DPE", "JBSWY3DPEHP", "JBSWY3DPEHPK3P"}) {
+            assertThrows(IllegalArgumentException.class, () -> Base32.decode(input), input);
+            assertThrows(IllegalArgumentException.class, () -> Base32.decode(input, new byte[16], 0), input);
+            assertThrows(IllegalArgumentException.class, () -> Base32.decode(
+                    ByteBuffer.wrap(input.getBytes(StandardCharsets.US_ASCII)), ByteBuffer.allocate(16)), input);
+            assertFalse(Base32.isValid(input), input);
+        }
+    }
+
+    @Test
+    void rejectsInvalidCharacters() {
+        for (String input : new String[] {"JBSWY3DP1", "JBSWY3D0", "JBSW_Y3DP", "JBSWY3DPÉ"}) {
+            assertThrows(IllegalArgumentException.class, () -> Base32.decode(input), input);
+            assertFalse(Base32.isValid(input.toUpperCase(Locale.ROOT)), input);
+        }
+    }
+
+    @Test
+    void isValidRequiresAtLeastOneByte() {
+        assertFalse(Base32.isValid(null));
+        assertFalse(Base32.isValid(""));
+        assertFalse(Base32.isValid("===="));
+    }
+}
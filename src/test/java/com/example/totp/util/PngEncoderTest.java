@@ -0,0 +1,53 @@
+package com.example.totp.util;
+
+import com.google.zxing.common.BitMatrix;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * PngEncoder测试：输出能被ImageIO解码且逐像素与矩阵一致，二维码PNG命中缓存
+ */
+class PngEncoderTest {
+
+    private static final int BLACK = 0xFF000000;
+    private static final int WHITE = 0xFFFFFFFF;
+
+    @Test
+    void decodesToTheSamePixels() throws IOException {
+        // 宽度不是8的倍数，行尾需要填充
+        BitMatrix matrix = new BitMatrix(21, 13);
+        for (int y = 0; y < matrix.getHeight(); y++) {
+            for (int x = 0; x < matrix.getWidth(); x++) {
+                if ((x * 7 + y * 3) % 5 < 2 || x == matrix.getWidth() - 1) {
+                    matrix.set(x, y);
+                }
+            }
+        }
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(PngEncoder.encode(matrix)));
+        assertNotNull(image);
+        assertEquals(matrix.getWidth(), image.getWidth());
+        assertEquals(matrix.getHeight(), image.getHeight());
+        for (int y = 0; y < matrix.getHeight(); y++) {
+            for (int x = 0; x < matrix.getWidth(); x++) {
+                assertEquals(matrix.get(x, y) ? BLACK : WHITE, image.getRGB(x, y), "像素(" + x + ", " + y + ")");
+            }
+        }
+    }
+
+    @Test
+    void qrCodePngIsServedFromCache() throws IOException {
+        byte[] first = QRCodeGenerator.generateTOTPQRCodePng("JBSWY3DPEHPK3PXP", "png-cache@example.com", "Issuer");
+        byte[] second = QRCodeGenerator.generateTOTPQRCodePng("JBSWY3DPEHPK3PXP", "png-cache@example.com", "Issuer");
+        assertSame(first, second);
+        assertNotNull(ImageIO.read(new ByteArrayInputStream(first)));
+    }
+}